@@ -0,0 +1,145 @@
+package org.global.dax.client;
+
+import org.global.dax.commands.RequestSender;
+import org.global.dax.shared.CacheProtocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces the requests of concurrent callers into batched writes on one channel.
+ *
+ * A caller finding no write in progress becomes the writer and flushes right away, so a lone request is never
+ * delayed. Requests sent while a write is in progress are queued, and the writer sends all of them with the
+ * next write instead of one write per request. Before writing, the writer waits at most {@code maxDelayNanos}
+ * for callers that are enqueuing at that very moment, so a burst of concurrent requests ends up in one write.
+ *
+ * Thread safe. A failed write closes the pipeline: later requests fail right away, requests of the failed
+ * batch are left to the in-flight cleanup of the connection.
+ */
+public final class AutoPipeline implements RequestSender {
+
+    public static final long DEFAULT_MAX_DELAY_NANOS = 20_000; // 20us
+    private static final int BATCH_BYTES = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final long maxDelayNanos;
+    private final Queue<ByteBuffer[]> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private final AtomicInteger enqueuing = new AtomicInteger();
+
+    // Only used by the current writer
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_BYTES);
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private volatile IOException failure;
+
+    public AutoPipeline(SocketChannel channel) {
+        this(channel, DEFAULT_MAX_DELAY_NANOS);
+    }
+
+    public AutoPipeline(SocketChannel channel, long maxDelayNanos) {
+        this.channel = channel;
+        this.maxDelayNanos = maxDelayNanos;
+    }
+
+    @Override
+    public void send(CacheProtocol.Message message) throws IOException {
+        // The chunks of a large value are queued together, no other frame can end up between them
+        ByteBuffer[] frames = CacheProtocol.encodeFrames(message);
+        if (failure != null) {
+            throw failure;
+        }
+
+        enqueuing.incrementAndGet();
+        queue.add(frames);
+        enqueuing.decrementAndGet();
+        requests.incrementAndGet();
+
+        // Whoever wins becomes the writer, the others leave their frame to it
+        while (!queue.isEmpty() && writing.compareAndSet(false, true)) {
+            try {
+                drain();
+            } catch (IOException e) {
+                failure = e;
+                queue.clear();
+                throw e;
+            } finally {
+                writing.set(false);
+            }
+            // A frame queued after the last drain but before the flag was released is picked up by the loop
+        }
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getWrites() {
+        return writes.get();
+    }
+
+    private void drain() throws IOException {
+        awaitConcurrentSenders();
+
+        ByteBuffer[] frames;
+        while ((frames = queue.poll()) != null) {
+            for (ByteBuffer frame : frames) {
+                if (frame.remaining() > batch.remaining()) {
+                    write();
+                }
+                if (frame.remaining() > batch.capacity()) {
+                    // Too large to be batched, written as is
+                    writeFully(frame);
+                    writes.incrementAndGet();
+                    continue;
+                }
+                batch.put(frame);
+            }
+
+            if (queue.isEmpty()) {
+                awaitConcurrentSenders();
+            }
+        }
+        write();
+    }
+
+    /**
+     * Gives callers in the middle of enqueuing a chance to join the batch, for at most the maximum delay
+     */
+    private void awaitConcurrentSenders() {
+        if (maxDelayNanos <= 0 || enqueuing.get() == 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (enqueuing.get() > 0 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private void write() throws IOException {
+        if (batch.position() == 0) {
+            return;
+        }
+        batch.flip();
+        writeFully(batch);
+        batch.clear();
+        writes.incrementAndGet();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        // The channel may be non-blocking, keep writing until the socket took everything
+        while (buffer.hasRemaining()) {
+            if (channel.write(buffer) == 0) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
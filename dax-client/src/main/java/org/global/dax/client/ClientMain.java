@@ -1,30 +1,44 @@
 package org.global.dax.client;
 
 import org.global.dax.commands.Add;
+import org.global.dax.commands.CompareAndSet;
 import org.global.dax.commands.Delete;
 import org.global.dax.commands.Get;
+import org.global.dax.commands.GetAndSet;
+import org.global.dax.commands.Gets;
 import org.global.dax.commands.Hearbeat;
+import org.global.dax.commands.Increment;
+import org.global.dax.commands.Range;
+import org.global.dax.commands.Stats;
+import org.global.dax.commands.Subscribe;
+import org.global.dax.commands.Watch;
+import org.global.dax.shared.BusyPoll;
 import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ChunkAssembler;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.Iterator;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 import java.util.Scanner;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
+import static org.global.dax.shared.Properties.BUSY_POLL_PROPERTY;
 import static org.global.dax.shared.Properties.HOST;
 import static org.global.dax.shared.Properties.PORT;
+import static org.global.dax.shared.Properties.UNIX_SOCKET_PROPERTY;
+import static org.global.dax.shared.StringUtil.encodeKey;
+import static org.global.dax.shared.StringUtil.encodeValue;
 import static org.global.dax.shared.StringUtil.limitKey;
-import static org.global.dax.shared.StringUtil.limitValue;
 
 public final class ClientMain {
 
@@ -34,8 +48,13 @@ public final class ClientMain {
     private static final int MAX_RETRY_DELAY_MS = 30000; // Max 30 seconds between retries
     private static final int MAX_RETRY_ATTEMPTS = 10; // Maximum number of retry attempts
 
+    private static final long DEFAULT_WATCH_TIMEOUT_MS = 30000;
+
     private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ChunkAssembler chunkAssembler = new ChunkAssembler();
     private SocketChannel channel;
+    // Coalesces the requests of the connected channel into batched writes
+    private volatile AutoPipeline pipeline;
     private Selector selector;
     private boolean running = true;
 
@@ -45,8 +64,54 @@ public final class ClientMain {
 
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
 
-    // Map to store pending requests and their callbacks
-    private final Map<String, Consumer<CacheProtocol.Message>> pendingRequests = new ConcurrentHashMap<>();
+    // Pending requests and their callbacks, failed when their deadline passes or the connection is lost
+    private final PendingRequests pendingRequests = new PendingRequests();
+
+    // Optional local copy of read values, kept coherent by server invalidations
+    private final NearCache nearCache;
+
+    // Listeners of the keys subscribed to, printing their changes
+    private final Subscriptions subscriptions = new Subscriptions();
+
+    // Server to connect to, over TCP or a Unix domain socket
+    private final SocketAddress server;
+
+    // Low-latency mode of the loop, null when it blocks in select
+    private final BusyPoll busyPoll;
+    private int idlePolls = 0;
+
+    // Handles each selected key, bound once instead of iterating over the selected-key set
+    private final Consumer<SelectionKey> keyHandler = this::handleKey;
+
+    public ClientMain() {
+        this(0);
+    }
+
+    /**
+     * @param nearCacheSize maximum number of values kept in the near cache, 0 disables it
+     */
+    public ClientMain(int nearCacheSize) {
+        this(nearCacheSize, new InetSocketAddress(HOST, PORT));
+    }
+
+    /**
+     * @param nearCacheSize maximum number of values kept in the near cache, 0 disables it
+     * @param server        TCP address of the server, or the {@link UnixDomainSocketAddress} of a server on this host
+     */
+    public ClientMain(int nearCacheSize, SocketAddress server) {
+        this(nearCacheSize, server, null);
+    }
+
+    /**
+     * @param nearCacheSize maximum number of values kept in the near cache, 0 disables it
+     * @param server        TCP address of the server, or the {@link UnixDomainSocketAddress} of a server on this host
+     * @param busyPoll      low-latency mode of the event loop, null to block in select
+     */
+    public ClientMain(int nearCacheSize, SocketAddress server, BusyPoll busyPoll) {
+        this.nearCache = nearCacheSize > 0 ? new NearCache(nearCacheSize) : null;
+        this.server = server;
+        this.busyPoll = busyPoll;
+    }
 
     public void start() throws IOException {
         // Create selector and register for connect, read operations
@@ -57,24 +122,17 @@ public final class ClientMain {
         try {
             // Event loop
             while (running) {
-                selector.select(1000);
-
-                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
-                while (keys.hasNext()) {
-                    SelectionKey key = keys.next();
-                    keys.remove();
-
-                    if (!key.isValid()) {
-                        continue;
-                    }
-
-                    if (key.isConnectable()) {
-                        finishConnection(key);
-                    } else if (key.isReadable()) {
-                        read(key);
-                    }
+                if (busyPoll == null) {
+                    // Wakes up at least every tick to expire requests without response
+                    selector.select(keyHandler, PendingRequests.TICK_MS);
+                } else if (selector.selectNow(keyHandler) == 0) {
+                    busyPoll.idle(idlePolls++);
+                } else {
+                    idlePolls = 0;
                 }
 
+                pendingRequests.expire();
+
                 // Check connection state if we're not connected
                 if (channel == null || !channel.isConnected()) {
                     handleReconnect();
@@ -83,6 +141,8 @@ public final class ClientMain {
             }
         } finally {
             executor.shutdownNow();
+            pendingRequests.failAll();
+            chunkAssembler.clear();
             if (channel != null) {
                 channel.close();
             }
@@ -90,6 +150,18 @@ public final class ClientMain {
         }
     }
 
+    private void handleKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+
+        if (key.isConnectable()) {
+            finishConnection(key);
+        } else if (key.isReadable()) {
+            read(key);
+        }
+    }
+
     public void finishConnection(SelectionKey key){
         SocketChannel channel = (SocketChannel) key.channel();
 
@@ -102,6 +174,11 @@ public final class ClientMain {
 
             // Register for read operations
             channel.register(selector, SelectionKey.OP_READ);
+            pipeline = new AutoPipeline(channel);
+
+            if (nearCache != null) {
+                enableTracking();
+            }
 
             // Create a thread for command processing when the server is up
             executor.submit(this::handleUserInput);
@@ -118,9 +195,18 @@ public final class ClientMain {
     }
 
 
+    private void enableTracking() throws IOException {
+        // Invalidations missed while disconnected cannot be recovered, start from an empty near cache
+        nearCache.clear();
+        pendingRequests.send("tracking", response ->
+                System.out.println("Near cache " + (response.getStatus() == CacheProtocol.STATUS_OK ? "enabled" : "rejected")),
+                pipeline, CacheProtocol.createTrackingMessage());
+    }
+
     private void attemptConnection() {
         try {
-            // Close any existing channel
+            // Close any existing channel, its requests will never be answered
+            pendingRequests.failAll();
             if (channel != null) {
                 try {
                     channel.close();
@@ -130,9 +216,15 @@ public final class ClientMain {
             }
 
             // Open new channel and connect to server
-            channel = SocketChannel.open();
+            channel = server instanceof UnixDomainSocketAddress
+                    ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                    : SocketChannel.open();
             channel.configureBlocking(false);
-            channel.connect(new InetSocketAddress(HOST, PORT));
+            if (busyPoll != null) {
+                // Before connecting, the TCP window is negotiated with the receive buffer size of the handshake
+                busyPoll.configure(channel);
+            }
+            channel.connect(server);
 
             // Register for connect operations
             channel.register(selector, SelectionKey.OP_CONNECT);
@@ -177,15 +269,17 @@ public final class ClientMain {
         SocketChannel channel = (SocketChannel) key.channel();
 
         try {
-            // Try to read a message
-            CacheProtocol.Message message = CacheProtocol.readMessage(channel, buffer);
-
-            // If message is complete, process it
-            if (message != null) {
-                handleResponse(message);
+            // A single read can carry several messages, or only part of a chunked value
+            CacheProtocol.Message message;
+            while ((message = CacheProtocol.readMessage(channel, buffer)) != null) {
+                message = chunkAssembler.accept(message);
+                if (message != null) {
+                    handleResponse(message);
+                }
             }
         } catch (IOException e) {
             System.err.println("Error reading from server: " + e.getMessage());
+            pendingRequests.failAll();
             running = false;
         }
     }
@@ -193,14 +287,27 @@ public final class ClientMain {
     private void handleResponse(CacheProtocol.Message message) {
         String key = message.getKeyAsString();
 
-        // Find and execute the callback for this key
-        if (key != null) {
-            Consumer<CacheProtocol.Message> callback = pendingRequests.remove(key);
-            if (callback != null) {
-                callback.accept(message);
-            } else {
-                System.out.println("Received response: " + message);
+        // Server initiated, never answers a pending request
+        if (message.getOperation() == CacheProtocol.OP_INVALIDATE) {
+            if (nearCache != null && key != null) {
+                nearCache.invalidate(key);
             }
+            return;
+        }
+        if (message.getOperation() == CacheProtocol.OP_NOTIFY) {
+            subscriptions.dispatch(message);
+            return;
+        }
+
+        // Find and execute the callback for this watch, or for this key
+        Consumer<CacheProtocol.Message> callback = null;
+        if (message.getOperation() == CacheProtocol.OP_WATCHED) {
+            callback = pendingRequests.removeWatch(CacheProtocol.getWatchId(message));
+        } else if (key != null) {
+            callback = pendingRequests.remove(key);
+        }
+        if (callback != null) {
+            callback.accept(message);
         } else {
             System.out.println("Received response: " + message);
         }
@@ -209,7 +316,9 @@ public final class ClientMain {
     public void handleUserInput() {
         Scanner scanner = new Scanner(System.in);
         System.out.println("Cache Client");
-        System.out.println("Commands: ADD <key> <value>, GET <key>, DELETE <key>, HEARTBEAT, EXIT");
+        System.out.println("Commands: ADD <key> <value>, GET <key>, DELETE <key>, GETS <key>, CAS <key> <version> <value>,");
+        System.out.println("          INCR <key> [delta], DECR <key> [delta], GETSET <key> <value>, RANGE <from> [to],");
+        System.out.println("          WATCH <key> [timeoutMs], SUBSCRIBE <key>, UNSUBSCRIBE <key>, HEARTBEAT, STATS, EXIT");
 
         try {
             while (running) {
@@ -223,7 +332,7 @@ public final class ClientMain {
                 }
 
                 if ("heartbeat".equalsIgnoreCase(input)) {
-                    new Hearbeat(channel, pendingRequests).heartbeat().thenAccept(result ->
+                    new Hearbeat(pipeline, pendingRequests).heartbeat().thenAccept(result ->
                         System.out.println(result ? "OK" : "FAILED")
                     ).exceptionally(e -> {
                         System.err.println("Error during heartbeat: " + e.getMessage());
@@ -232,6 +341,15 @@ public final class ClientMain {
                     break;
                 }
 
+                if ("stats".equalsIgnoreCase(input)) {
+                    new Stats(pipeline, pendingRequests).stats().thenAccept(System.out::println
+                    ).exceptionally(e -> {
+                        System.err.println("Error during stats: " + e.getMessage());
+                        return null;
+                    });
+                    continue;
+                }
+
                 String[] parts = input.split("\\s+", 3);
                 String command = parts[0].toLowerCase();
                 if (parts.length < 2) {
@@ -240,10 +358,10 @@ public final class ClientMain {
                     break;
                 }
 
-                String key = parts[1];
-                if (!"ALL".equalsIgnoreCase(key)) {
-                    key = limitKey(key);
-                }
+                // Encoded once, the commands taking bytes send them as they are
+                byte[] keyBytes = "ALL".equalsIgnoreCase(parts[1])
+                        ? parts[1].getBytes(StandardCharsets.UTF_8) : encodeKey(parts[1]);
+                String key = new String(keyBytes, StandardCharsets.UTF_8);
 
                 switch (command) {
                     case "add":
@@ -251,9 +369,7 @@ public final class ClientMain {
                             System.out.println("Add command requires a value");
                             continue;
                         }
-                        String value = parts[2];
-                        value = limitValue(value);
-                        new Add(channel, pendingRequests).add(key, value).thenAccept(result ->
+                        new Add(pipeline, pendingRequests, nearCache).add(keyBytes, encodeValue(parts[2])).thenAccept(result ->
                             System.out.println("Add operation " + (result ? "succeeded" : "failed"))
                         ).exceptionally(e -> {
                             System.err.println("Error during add: " + e.getMessage());
@@ -262,7 +378,7 @@ public final class ClientMain {
                         break;
 
                     case "get":
-                        new Get(channel, pendingRequests).get(key).thenAccept(result ->
+                        new Get(pipeline, pendingRequests, nearCache).get(keyBytes).thenAccept(result ->
                             System.out.println(Objects.requireNonNullElse(result, "Key not found"))
                         ).exceptionally(e -> {
                             System.err.println("Error during get: " + e.getMessage());
@@ -271,7 +387,7 @@ public final class ClientMain {
                         break;
 
                     case "delete":
-                        new Delete(channel, pendingRequests).delete(key).thenAccept(result ->
+                        new Delete(pipeline, pendingRequests, nearCache).delete(keyBytes).thenAccept(result ->
                             System.out.println("Delete operation " + (result ? "succeeded" : "failed"))
                         ).exceptionally(e -> {
                             System.err.println("Error during delete: " + e.getMessage());
@@ -279,6 +395,103 @@ public final class ClientMain {
                         });
                         break;
 
+                    case "gets":
+                        new Gets(pipeline, pendingRequests).gets(key).thenAccept(result ->
+                            System.out.println(result != null ? result : "Key not found")
+                        ).exceptionally(e -> {
+                            System.err.println("Error during gets: " + e.getMessage());
+                            return null;
+                        });
+                        break;
+
+                    case "cas":
+                        String[] casArgs = parts.length == 3 ? parts[2].split("\\s+", 2) : new String[0];
+                        if (casArgs.length < 2) {
+                            System.out.println("CAS command requires a version and a value");
+                            continue;
+                        }
+                        new CompareAndSet(pipeline, pendingRequests, nearCache)
+                                .compareAndSet(keyBytes, Long.parseLong(casArgs[0]), encodeValue(casArgs[1])).thenAccept(result ->
+                            System.out.println(result ? "CAS succeeded" : "CAS failed, the value changed")
+                        ).exceptionally(e -> {
+                            System.err.println("Error during cas: " + e.getMessage());
+                            return null;
+                        });
+                        break;
+
+                    case "incr":
+                    case "decr":
+                        long delta = parts.length == 3 ? Long.parseLong(parts[2]) : 1;
+                        Increment increment = new Increment(pipeline, pendingRequests, nearCache);
+                        ("incr".equals(command) ? increment.increment(key, delta) : increment.decrement(key, delta))
+                                .thenAccept(System.out::println
+                        ).exceptionally(e -> {
+                            System.err.println("Error during " + command + ": " + e.getMessage());
+                            return null;
+                        });
+                        break;
+
+                    case "getset":
+                        if (parts.length < 3) {
+                            System.out.println("GetSet command requires a value");
+                            continue;
+                        }
+                        new GetAndSet(pipeline, pendingRequests, nearCache).getAndSet(keyBytes, encodeValue(parts[2])).thenAccept(result ->
+                            System.out.println(Objects.requireNonNullElse(result, "Key was not set"))
+                        ).exceptionally(e -> {
+                            System.err.println("Error during getset: " + e.getMessage());
+                            return null;
+                        });
+                        break;
+
+                    case "range":
+                        String to = parts.length == 3 ? limitKey(parts[2]) : null;
+                        new Range(pipeline, pendingRequests).range(key, to).thenAccept(result ->
+                            System.out.println(result.isEmpty() ? "No key in range" : result)
+                        ).exceptionally(e -> {
+                            System.err.println("Error during range: " + e.getMessage());
+                            return null;
+                        });
+                        break;
+
+                    case "watch":
+                        long timeoutMillis = parts.length == 3 ? Long.parseLong(parts[2]) : DEFAULT_WATCH_TIMEOUT_MS;
+                        new Watch(pipeline, pendingRequests).watch(key, timeoutMillis).thenAccept(result ->
+                            System.out.println(Objects.requireNonNullElse(result, "Key not added in time"))
+                        ).exceptionally(e -> {
+                            System.err.println("Error during watch: " + e.getMessage());
+                            return null;
+                        });
+                        break;
+
+                    case "subscribe":
+                        new Subscribe(pipeline, pendingRequests, subscriptions).subscribe(key, new KeyListener() {
+                            @Override
+                            public void onChange(String changedKey, String value) {
+                                System.out.println(changedKey + (value != null ? " changed: " + value : " removed"));
+                            }
+
+                            @Override
+                            public void onOverflow() {
+                                System.out.println("Missed changes, the subscribed keys may have changed");
+                            }
+                        }).thenAccept(result ->
+                            System.out.println(result ? "Subscribed" : "Subscribe failed")
+                        ).exceptionally(e -> {
+                            System.err.println("Error during subscribe: " + e.getMessage());
+                            return null;
+                        });
+                        break;
+
+                    case "unsubscribe":
+                        new Subscribe(pipeline, pendingRequests, subscriptions).unsubscribe(key).thenAccept(result ->
+                            System.out.println(result ? "Unsubscribed" : "Not subscribed")
+                        ).exceptionally(e -> {
+                            System.err.println("Error during unsubscribe: " + e.getMessage());
+                            return null;
+                        });
+                        break;
+
                     default:
                         System.out.println("Unknown command: " + command);
                 }
@@ -290,9 +503,18 @@ public final class ClientMain {
         }
     }
 
+    /**
+     * Usage: ClientMain [nearCacheSize]
+     */
     public static void main(String[] args) {
         try {
-            new ClientMain().start();
+            int nearCacheSize = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+            String unixSocket = System.getProperty(UNIX_SOCKET_PROPERTY);
+            SocketAddress server = unixSocket != null
+                    ? UnixDomainSocketAddress.of(unixSocket)
+                    : new InetSocketAddress(HOST, PORT);
+            BusyPoll busyPoll = Boolean.getBoolean(BUSY_POLL_PROPERTY) ? new BusyPoll() : null;
+            new ClientMain(nearCacheSize, server, busyPoll).start();
         } catch (IOException e) {
             System.err.println("Error starting client: " + e.getMessage());
         }
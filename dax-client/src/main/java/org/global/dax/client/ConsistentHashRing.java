@@ -0,0 +1,102 @@
+package org.global.dax.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Consistent hash ring mapping keys to nodes.
+ *
+ * Each node is placed on the ring at several virtual positions so keys spread evenly across nodes.
+ * Adding or removing a node only moves the keys falling in the ring segments that node owns,
+ * roughly 1/n of the keyspace, every other key keeps its node.
+ *
+ * Lookups are lock-free, membership changes are serialised.
+ */
+public class ConsistentHashRing<T> {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final int virtualNodes;
+    private final NavigableMap<Long, T> ring = new ConcurrentSkipListMap<>();
+    private final Set<T> nodes = new CopyOnWriteArraySet<>();
+
+    public ConsistentHashRing() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be at least 1.");
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    public synchronized void addNode(T node) {
+        if (!nodes.add(node)) {
+            return;
+        }
+        for (int i = 0; i < virtualNodes; i++) {
+            // On the (unlikely) collision of two virtual nodes the first one keeps the position
+            ring.putIfAbsent(virtualNodeHash(node, i), node);
+        }
+    }
+
+    public synchronized void removeNode(T node) {
+        if (!nodes.remove(node)) {
+            return;
+        }
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.remove(virtualNodeHash(node, i), node);
+        }
+    }
+
+    /**
+     * Returns the node owning the key: the first virtual node clockwise from the key hash
+     */
+    public T nodeFor(String key) {
+        if (ring.isEmpty()) {
+            throw new IllegalStateException("No node in the ring");
+        }
+        Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key.getBytes(StandardCharsets.UTF_8)));
+        if (entry == null) {
+            // Wrap around the ring
+            entry = ring.firstEntry();
+        }
+        return entry.getValue();
+    }
+
+    public Set<T> getNodes() {
+        return Collections.unmodifiableSet(nodes);
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    private static long virtualNodeHash(Object node, int index) {
+        return hash((node + "#" + index).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 64-bit FNV-1a followed by the MurmurHash3 finalizer, so short and similar inputs
+     * (4 byte keys, "host:port#i") still spread over the whole ring
+     */
+    static long hash(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h;
+    }
+}
@@ -0,0 +1,147 @@
+package org.global.dax.client;
+
+import org.global.dax.shared.CacheException;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.RequestTimeoutException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Client of the UDP listener of a server, for small loss-tolerant ADD and GET requests.
+ *
+ * ADD is fire-and-forget: the datagram is sent without asking for a response and may be lost. GET waits for the
+ * response matching its request id and sends the request again when none arrived within the timeout, up to a
+ * number of attempts. Responses to an earlier attempt still count, responses to earlier requests are skipped.
+ * Values must fit in a datagram with their key ({@link CacheProtocol#MAX_DATAGRAM_SIZE}), larger ones go over TCP.
+ *
+ * Thread safe, requests of concurrent callers are sent one at a time.
+ */
+public final class DatagramClient implements Closeable {
+
+    public static final long DEFAULT_TIMEOUT_MS = 50;
+    public static final int DEFAULT_ATTEMPTS = 3;
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final long timeoutMillis;
+    private final int attempts;
+
+    private final ByteBuffer request = ByteBuffer.allocateDirect(CacheProtocol.MAX_DATAGRAM_SIZE);
+    private final ByteBuffer response = ByteBuffer.allocateDirect(CacheProtocol.MAX_DATAGRAM_SIZE);
+
+    private int nextRequestId = 1;
+    private long retries = 0;
+
+    public DatagramClient(InetSocketAddress server) throws IOException {
+        this(server, DEFAULT_TIMEOUT_MS, DEFAULT_ATTEMPTS);
+    }
+
+    /**
+     * @param timeoutMillis time to wait for the response of each attempt of a GET
+     * @param attempts      times a GET is sent before giving up
+     */
+    public DatagramClient(InetSocketAddress server, long timeoutMillis, int attempts) throws IOException {
+        if (timeoutMillis < 1 || attempts < 1) {
+            throw new IllegalArgumentException("Timeout and attempts must be positive");
+        }
+        this.timeoutMillis = timeoutMillis;
+        this.attempts = attempts;
+        this.selector = Selector.open();
+        this.channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(server);
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Sends an ADD without waiting for an acknowledgement, the value is lost along with the datagram if it is dropped
+     */
+    public synchronized void add(String key, byte[] value) throws IOException {
+        CacheProtocol.encodeDatagram(CacheProtocol.NO_RESPONSE,
+                new CacheProtocol.Message(CacheProtocol.OP_ADD, key.getBytes(StandardCharsets.UTF_8), value), request);
+        channel.write(request);
+    }
+
+    /**
+     * Returns the value of the key, or null if the server does not have it
+     *
+     * @throws RequestTimeoutException when no response arrived after every attempt
+     */
+    public synchronized byte[] get(String key) throws IOException {
+        int requestId = nextRequestId();
+        CacheProtocol.encodeDatagram(requestId, CacheProtocol.createGetMessage(key), request);
+
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            if (attempt > 0) {
+                retries++;
+            }
+            channel.write(request.duplicate());
+
+            CacheProtocol.Message message = awaitResponse(requestId);
+            if (message == null) {
+                continue;
+            }
+            switch (message.getStatus()) {
+                case CacheProtocol.STATUS_OK:
+                    return message.getValue();
+                case CacheProtocol.STATUS_NOT_FOUND:
+                    return null;
+                default:
+                    throw new CacheException(new String(message.getValue(), StandardCharsets.UTF_8));
+            }
+        }
+        throw new RequestTimeoutException(key, timeoutMillis * attempts);
+    }
+
+    /**
+     * GET requests sent again after a lost request or response
+     */
+    public synchronized long getRetries() {
+        return retries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        selector.close();
+        channel.close();
+    }
+
+    /**
+     * Waits up to the timeout for the response to the request, null if it did not arrive
+     */
+    private CacheProtocol.Message awaitResponse(int requestId) throws IOException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        long remainingMillis = timeoutMillis;
+        while (remainingMillis > 0) {
+            selector.select(remainingMillis);
+            selector.selectedKeys().clear();
+
+            response.clear();
+            while (channel.receive(response) != null) {
+                response.flip();
+                // Responses to requests that were given up on arrive late, they are skipped
+                if (response.remaining() >= CacheProtocol.REQUEST_ID_SIZE && response.getInt() == requestId) {
+                    return CacheProtocol.decodeDatagram(response);
+                }
+                response.clear();
+            }
+            remainingMillis = (deadline - System.nanoTime()) / 1_000_000;
+        }
+        return null;
+    }
+
+    private int nextRequestId() {
+        int requestId = nextRequestId++;
+        if (nextRequestId == CacheProtocol.NO_RESPONSE) {
+            nextRequestId++;
+        }
+        return requestId;
+    }
+}
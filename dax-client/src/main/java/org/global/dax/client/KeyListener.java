@@ -0,0 +1,25 @@
+package org.global.dax.client;
+
+/**
+ * Callback of a subscription to a key or to a range of keys.
+ *
+ * Called from the thread reading responses, in the order the server sent the notifications: it must not block.
+ */
+@FunctionalInterface
+public interface KeyListener {
+
+    /**
+     * A subscribed key was added or removed. Changes made in a quick succession may only be notified once, with
+     * the latest value.
+     *
+     * @param value new value of the key, null when it was removed
+     */
+    void onChange(String key, String value);
+
+    /**
+     * The server dropped notifications of this connection because it was not reading them fast enough, the keys
+     * subscribed to may have changed without a call to {@link #onChange}
+     */
+    default void onOverflow() {
+    }
+}
@@ -0,0 +1,96 @@
+package org.global.dax.client;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded in-process cache of values read from the server.
+ *
+ * Kept coherent by the INVALIDATE messages the server pushes to tracking connections. Values must only
+ * be put from the thread reading responses, so a value and a later invalidation of it are applied in
+ * the order the server sent them.
+ *
+ * Reads are lock-free. When full, an entry is evicted with a second-chance sweep: entries read since the
+ * last sweep are skipped once, so hot keys stay cached.
+ */
+public class NearCache {
+
+    private final int capacity;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private long hits = 0;
+    private long misses = 0;
+
+    public NearCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1.");
+        }
+        this.capacity = capacity;
+    }
+
+    public String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        entry.referenced = true;
+        hits++;
+        return entry.value;
+    }
+
+    public void put(String key, String value) {
+        if (entries.size() >= capacity && !entries.containsKey(key)) {
+            evict();
+        }
+        entries.put(key, new Entry(value));
+    }
+
+    public void invalidate(String key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Hit and miss counters are not synchronised, they are indicative only
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    private void evict() {
+        // Two sweeps at most: the first one clears the reference bits it passes
+        for (int sweep = 0; sweep < 2; sweep++) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next().getValue();
+                if (!entry.referenced) {
+                    iterator.remove();
+                    return;
+                }
+                entry.referenced = false;
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String value;
+        private volatile boolean referenced;
+
+        private Entry(String value) {
+            this.value = value;
+        }
+    }
+}
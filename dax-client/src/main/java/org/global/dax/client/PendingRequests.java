@@ -0,0 +1,247 @@
+package org.global.dax.client;
+
+import org.global.dax.commands.PendingRequest;
+import org.global.dax.commands.RequestSender;
+import org.global.dax.commands.ResponseCallbacks;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ConnectionLostException;
+import org.global.dax.shared.RequestTimeoutException;
+import org.global.dax.shared.TimerWheel;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Requests of a connection waiting for their response, each one with a deadline.
+ *
+ * Commands register their callback with {@link #send} and the event loop of the connection removes it with
+ * {@link #remove} when the response arrives. The server answers the requests of a connection in order, so the
+ * requests waiting for the same key are queued and a response goes to the oldest of them. A request is queued and
+ * written under a lock of its key, so concurrent requests of a key are written in the order of the queue. A WATCH
+ * is answered out of
+ * that order, whenever its key is added, so it is registered with {@link #putWatch} under an id of its own and its
+ * answer removed with {@link #removeWatch}. Every callback is wrapped with its deadline, kept in a single
+ * {@link TimerWheel} advanced by the event loop in {@link #expire}: a request still waiting at its deadline has its
+ * {@link PendingRequest} failed with a {@link RequestTimeoutException}, and stays queued for another timeout: its
+ * late response is dropped rather than taken for the answer to a later request, and a request that is never answered
+ * does not hold the head of its key for good. {@link #failAll} fails every waiting request at once when the
+ * connection is lost.
+ *
+ * Registrations from caller threads reach the wheel through a queue, the wheel itself, {@link #expire} and the
+ * callbacks removed from the map are only used by the event loop thread.
+ */
+public final class PendingRequests implements ResponseCallbacks {
+
+    public static final long DEFAULT_TIMEOUT_MS = 5000;
+    public static final long TICK_MS = 50;
+    private static final int NO_WATCH = 0;
+    private static final int WHEEL_BUCKETS = 256;
+    private static final int KEY_LOCKS = 64;
+
+    private final long timeoutMillis;
+    // Requests waiting for each key, oldest first, a queue is only used inside a compute of its key
+    private final ConcurrentHashMap<String, Queue<Deadline>> waiting = new ConcurrentHashMap<>();
+    // Watches waiting for their answer, by watch id
+    private final ConcurrentHashMap<Integer, Deadline> watches = new ConcurrentHashMap<>();
+    private final AtomicInteger watchIds = new AtomicInteger();
+    private final Queue<Deadline> registrations = new ConcurrentLinkedQueue<>();
+    private final TimerWheel<Deadline> wheel;
+    // Striped by key, held while a request is queued and written
+    private final Object[] keyLocks = new Object[KEY_LOCKS];
+
+    public PendingRequests() {
+        this(DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * @param timeoutMillis time a request may wait for its response, 0 to wait forever
+     */
+    public PendingRequests(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.wheel = new TimerWheel<>(TICK_MS, WHEEL_BUCKETS, nowMillis());
+        for (int i = 0; i < KEY_LOCKS; i++) {
+            keyLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public void send(String key, Consumer<CacheProtocol.Message> callback, RequestSender sender,
+                     CacheProtocol.Message request) throws IOException {
+        synchronized (keyLocks[Math.floorMod(key.hashCode(), KEY_LOCKS)]) {
+            Deadline deadline = new Deadline(key, callback, timeoutMillis, nowMillis() + timeoutMillis);
+            waiting.compute(key, (k, queue) -> {
+                Queue<Deadline> requests = queue != null ? queue : new ArrayDeque<>();
+                requests.add(deadline);
+                return requests;
+            });
+            try {
+                sender.send(request);
+            } catch (IOException | RuntimeException e) {
+                // Never written, no response will come for it
+                deadline.done.set(true);
+                drop(deadline);
+                throw e;
+            }
+            schedule(deadline);
+        }
+    }
+
+    @Override
+    public int putWatch(String key, Consumer<CacheProtocol.Message> callback, long holdMillis) {
+        long watchTimeout = timeoutMillis > 0
+                ? timeoutMillis + Math.min(holdMillis, CacheProtocol.MAX_WATCH_TIMEOUT_MS) : 0;
+        Deadline deadline = new Deadline(key, callback, watchTimeout, nowMillis() + watchTimeout);
+        int watchId;
+        do {
+            watchId = watchIds.incrementAndGet();
+        } while (watchId == NO_WATCH);
+        deadline.watchId = watchId;
+        watches.put(watchId, deadline);
+        schedule(deadline);
+        return watchId;
+    }
+
+    /**
+     * Removes the callback of the oldest request waiting for the key, null if none is
+     */
+    public Consumer<CacheProtocol.Message> remove(String key) {
+        Deadline[] oldest = new Deadline[1];
+        waiting.computeIfPresent(key, (k, requests) -> {
+            oldest[0] = requests.poll();
+            return requests.isEmpty() ? null : requests;
+        });
+        return oldest[0];
+    }
+
+    /**
+     * Removes the callback of a watch, null if it is not waiting
+     */
+    public Consumer<CacheProtocol.Message> removeWatch(int watchId) {
+        return watches.remove(watchId);
+    }
+
+    /**
+     * Fails the requests past their deadline, called by the event loop at least every {@link #TICK_MS}
+     */
+    public int expire() {
+        long now = nowMillis();
+        Deadline registration;
+        while ((registration = registrations.poll()) != null) {
+            if (!registration.done.get()) {
+                registration.timeout = wheel.schedule(registration, registration.deadlineMillis);
+            }
+        }
+        return wheel.advance(now, deadline -> {
+            if (deadline.done.compareAndSet(false, true)) {
+                fail(deadline.callback, new RequestTimeoutException(deadline.key, deadline.timeoutMillis));
+                // Left queued for another timeout, its late response is dropped if it arrives
+                deadline.timeout = wheel.schedule(deadline, now + deadline.timeoutMillis);
+            } else {
+                drop(deadline);
+            }
+        });
+    }
+
+    /**
+     * Fails every waiting request, for a connection that will not deliver their response
+     */
+    public int failAll() {
+        int failed = 0;
+        for (String key : waiting.keySet()) {
+            Queue<Deadline> requests = waiting.remove(key);
+            if (requests == null) {
+                continue;
+            }
+            for (Deadline deadline : requests) {
+                if (failLost(deadline)) {
+                    failed++;
+                }
+            }
+        }
+        for (Integer watchId : watches.keySet()) {
+            Deadline deadline = watches.remove(watchId);
+            if (deadline != null && failLost(deadline)) {
+                failed++;
+            }
+        }
+        // Their deadlines are skipped as they expire
+        return failed;
+    }
+
+    /**
+     * Removes a request that will not be answered, or not anymore, from the requests waiting for a response
+     */
+    private void drop(Deadline deadline) {
+        if (deadline.watchId != NO_WATCH) {
+            watches.remove(deadline.watchId, deadline);
+            return;
+        }
+        waiting.computeIfPresent(deadline.key, (k, requests) -> {
+            requests.remove(deadline);
+            return requests.isEmpty() ? null : requests;
+        });
+    }
+
+    private void schedule(Deadline deadline) {
+        if (deadline.timeoutMillis > 0) {
+            registrations.add(deadline);
+        }
+    }
+
+    private static boolean failLost(Deadline deadline) {
+        if (!deadline.done.compareAndSet(false, true)) {
+            return false;
+        }
+        fail(deadline.callback, new ConnectionLostException(deadline.key));
+        return true;
+    }
+
+    private static void fail(Consumer<CacheProtocol.Message> callback, RuntimeException cause) {
+        // Plain callbacks have no future to fail, they are only dropped
+        if (callback instanceof PendingRequest) {
+            ((PendingRequest) callback).fail(cause);
+        }
+    }
+
+    private static long nowMillis() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    /**
+     * A registered callback with its deadline, the response cancels the deadline
+     */
+    private static final class Deadline implements Consumer<CacheProtocol.Message> {
+
+        private final String key;
+        private final Consumer<CacheProtocol.Message> callback;
+        private final long timeoutMillis;
+        private final long deadlineMillis;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private TimerWheel.Timeout<Deadline> timeout;
+        private int watchId = NO_WATCH;
+
+        private Deadline(String key, Consumer<CacheProtocol.Message> callback, long timeoutMillis, long deadlineMillis) {
+            this.key = key;
+            this.callback = callback;
+            this.timeoutMillis = timeoutMillis;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        @Override
+        public void accept(CacheProtocol.Message response) {
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            if (!done.compareAndSet(false, true)) {
+                return; // already timed out
+            }
+            callback.accept(response);
+        }
+    }
+}
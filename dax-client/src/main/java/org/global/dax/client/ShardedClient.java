@@ -0,0 +1,485 @@
+package org.global.dax.client;
+
+import org.global.dax.commands.Add;
+import org.global.dax.commands.Delete;
+import org.global.dax.commands.Get;
+import org.global.dax.commands.Subscribe;
+import org.global.dax.commands.Watch;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ChunkAssembler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Client spreading keys over several cache servers.
+ *
+ * Each key is routed to one server with a {@link ConsistentHashRing}. Multi-key operations are grouped
+ * per server and every group is sent at once, so all servers work on their share in parallel and the
+ * responses are merged when the last one arrives. A single event loop thread reads the responses of
+ * every server connection.
+ *
+ * A server whose connection is lost leaves the ring, its keys go to the next servers. The event loop
+ * reconnects to it with an exponential backoff and puts it back in the ring once connected.
+ */
+public final class ShardedClient implements Closeable {
+
+    private static final int BUFFER_SIZE = 1024 * 1024; // 1MB buffer
+    private static final String NO_KEY_IN_CACHE = "NO KEY IN CACHE";
+    private static final long INITIAL_RETRY_DELAY_MS = 100;
+    private static final long MAX_RETRY_DELAY_MS = 30_000;
+
+    private final ConsistentHashRing<InetSocketAddress> ring;
+    private final Map<InetSocketAddress, ShardConnection> connections = new ConcurrentHashMap<>();
+
+    // Connections opened by caller threads, registered on the selector by the event loop
+    private final Queue<ShardConnection> pendingRegistrations = new ConcurrentLinkedQueue<>();
+
+    // Servers out of the ring since their connection was lost, reconnected by the event loop
+    private final Map<InetSocketAddress, Reconnection> lostServers = new ConcurrentHashMap<>();
+
+    // Listeners of the notifications pushed by every server
+    private final Subscriptions subscriptions = new Subscriptions();
+
+    private final Selector selector;
+    private final Thread eventLoop;
+    private volatile boolean running = true;
+
+    public ShardedClient(List<InetSocketAddress> servers) throws IOException {
+        this(servers, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ShardedClient(List<InetSocketAddress> servers, int virtualNodes) throws IOException {
+        this.ring = new ConsistentHashRing<>(virtualNodes);
+        this.selector = Selector.open();
+        this.eventLoop = new Thread(this::runEventLoop, "sharded-client-event-loop");
+        this.eventLoop.setDaemon(true);
+        this.eventLoop.start();
+
+        for (InetSocketAddress server : servers) {
+            addServer(server);
+        }
+    }
+
+    /**
+     * Connects to a new server and adds it to the ring, only the keys of the ring segments it takes over move to it
+     */
+    public synchronized void addServer(InetSocketAddress server) throws IOException {
+        if (connections.containsKey(server)) {
+            return;
+        }
+
+        SocketChannel channel = SocketChannel.open(server);
+        channel.configureBlocking(false);
+        ShardConnection connection = new ShardConnection(server, channel, subscriptions);
+        lostServers.remove(server);
+        connections.put(server, connection);
+        pendingRegistrations.add(connection);
+        selector.wakeup();
+
+        ring.addNode(server);
+        System.out.println("Added cache server " + server);
+    }
+
+    /**
+     * Removes a server from the ring, its keys are routed to the next servers on the ring
+     */
+    public synchronized void removeServer(InetSocketAddress server) {
+        ring.removeNode(server);
+        lostServers.remove(server);
+        ShardConnection connection = connections.remove(server);
+        if (connection != null) {
+            connection.close();
+        }
+        System.out.println("Removed cache server " + server);
+    }
+
+    public InetSocketAddress serverFor(String key) {
+        return ring.nodeFor(key);
+    }
+
+    public CompletableFuture<Boolean> add(String key, String value) {
+        ShardConnection connection = connectionFor(key);
+        return new Add(connection.pipeline, connection.pendingRequests, null).add(key, value);
+    }
+
+    public CompletableFuture<String> get(String key) {
+        ShardConnection connection = connectionFor(key);
+        return new Get(connection.pipeline, connection.pendingRequests, null).get(key);
+    }
+
+    /**
+     * Gets a key, waiting up to the timeout for it to be added when it is missing (null if it never was)
+     */
+    public CompletableFuture<String> watch(String key, long timeoutMillis) {
+        ShardConnection connection = connectionFor(key);
+        return new Watch(connection.pipeline, connection.pendingRequests).watch(key, timeoutMillis);
+    }
+
+    public CompletableFuture<Boolean> delete(String key) {
+        ShardConnection connection = connectionFor(key);
+        return new Delete(connection.pipeline, connection.pendingRequests, null).delete(key);
+    }
+
+    /**
+     * Calls the listener whenever the key is added or removed, on the event loop thread
+     */
+    public CompletableFuture<Boolean> subscribe(String key, KeyListener listener) {
+        ShardConnection connection = connectionFor(key);
+        return new Subscribe(connection.pipeline, connection.pendingRequests, subscriptions).subscribe(key, listener);
+    }
+
+    public CompletableFuture<Boolean> unsubscribe(String key) {
+        ShardConnection connection = connectionFor(key);
+        return new Subscribe(connection.pipeline, connection.pendingRequests, subscriptions).unsubscribe(key);
+    }
+
+    /**
+     * Subscribes to a range of keys on every server, completing with true once all of them push its changes.
+     * Servers added later are not subscribed.
+     */
+    public CompletableFuture<Boolean> subscribeRange(String from, String to, KeyListener listener) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (ShardConnection connection : connections.values()) {
+            futures.add(new Subscribe(connection.pipeline, connection.pendingRequests, subscriptions)
+                    .subscribeRange(from, to, listener));
+        }
+        return allTrue(futures);
+    }
+
+    public CompletableFuture<Boolean> unsubscribeRange(String from, String to) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (ShardConnection connection : connections.values()) {
+            futures.add(new Subscribe(connection.pipeline, connection.pendingRequests, subscriptions)
+                    .unsubscribeRange(from, to));
+        }
+        return allTrue(futures);
+    }
+
+    /**
+     * Gets several keys at once, returning the values found (missing keys are left out)
+     */
+    public CompletableFuture<Map<String, String>> getAll(Collection<String> keys) {
+        Map<String, CompletableFuture<String>> futures = new HashMap<>();
+        groupByShard(keys).forEach((connection, shardKeys) -> {
+            Get get = new Get(connection.pipeline, connection.pendingRequests, null);
+            for (String key : shardKeys) {
+                futures.put(key, get.get(key));
+            }
+        });
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    Map<String, String> values = new HashMap<>();
+                    futures.forEach((key, future) -> {
+                        String value = future.join();
+                        if (value != null) {
+                            values.put(key, value);
+                        }
+                    });
+                    return values;
+                });
+    }
+
+    /**
+     * Adds several entries at once, completing with true only if every add succeeded
+     */
+    public CompletableFuture<Boolean> addAll(Map<String, String> entries) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        groupByShard(entries.keySet()).forEach((connection, shardKeys) -> {
+            Add add = new Add(connection.pipeline, connection.pendingRequests, null);
+            for (String key : shardKeys) {
+                futures.add(add.add(key, entries.get(key)));
+            }
+        });
+        return allTrue(futures);
+    }
+
+    /**
+     * Deletes several keys at once, completing with true only if every key was deleted
+     */
+    public CompletableFuture<Boolean> deleteAll(Collection<String> keys) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        groupByShard(keys).forEach((connection, shardKeys) -> {
+            Delete delete = new Delete(connection.pipeline, connection.pendingRequests, null);
+            for (String key : shardKeys) {
+                futures.add(delete.delete(key));
+            }
+        });
+        return allTrue(futures);
+    }
+
+    /**
+     * GET ALL on every server, merging the listings in key order
+     */
+    public CompletableFuture<String> getAllKeys() {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (ShardConnection connection : connections.values()) {
+            futures.add(new Get(connection.pipeline, connection.pendingRequests, null).get("ALL"));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    String merged = futures.stream()
+                            .map(CompletableFuture::join)
+                            .filter(listing -> listing != null && !NO_KEY_IN_CACHE.equals(listing))
+                            .flatMap(String::lines)
+                            .sorted()
+                            .collect(Collectors.joining(System.lineSeparator()));
+                    return merged.isEmpty() ? NO_KEY_IN_CACHE : merged;
+                });
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            eventLoop.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        connections.values().forEach(ShardConnection::close);
+        connections.clear();
+        for (Reconnection reconnection : lostServers.values()) {
+            if (reconnection.attempt != null) {
+                reconnection.attempt.close();
+            }
+        }
+        lostServers.clear();
+    }
+
+    private ShardConnection connectionFor(String key) {
+        ShardConnection connection = connections.get(ring.nodeFor(key));
+        if (connection == null) {
+            throw new IllegalStateException("No connection for key " + key);
+        }
+        return connection;
+    }
+
+    private Map<ShardConnection, List<String>> groupByShard(Collection<String> keys) {
+        Map<ShardConnection, List<String>> groups = new HashMap<>();
+        for (String key : keys) {
+            groups.computeIfAbsent(connectionFor(key), connection -> new ArrayList<>()).add(key);
+        }
+        return groups;
+    }
+
+    private static CompletableFuture<Boolean> allTrue(List<CompletableFuture<Boolean>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> futures.stream().allMatch(CompletableFuture::join));
+    }
+
+    private void runEventLoop() {
+        try {
+            while (running) {
+                // Wakes up at least every tick to expire requests without response
+                selector.select(PendingRequests.TICK_MS);
+
+                ShardConnection registration;
+                while ((registration = pendingRegistrations.poll()) != null) {
+                    try {
+                        registration.channel.register(selector, SelectionKey.OP_READ, registration);
+                    } catch (IOException e) {
+                        lose(registration, e); // closed before the event loop got to it
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    ShardConnection connection = (ShardConnection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isConnectable()) {
+                            finishReconnection(key, connection);
+                        } else if (key.isValid() && key.isReadable()) {
+                            connection.read();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        lose(connection, e);
+                    }
+                }
+
+                for (ShardConnection connection : connections.values()) {
+                    try {
+                        connection.pendingRequests.expire();
+                    } catch (RuntimeException e) {
+                        System.err.println("Failed to expire the requests to " + connection.server + ": " + e);
+                    }
+                }
+                reconnectLostServers();
+            }
+        } catch (IOException e) {
+            System.err.println("Sharded client event loop failed: " + e.getMessage());
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Ignore errors during close
+            }
+        }
+    }
+
+    /**
+     * Takes the server of a failed connection out of the ring and schedules its reconnection, unless the connection
+     * was already replaced or removed
+     */
+    private synchronized void lose(ShardConnection connection, Exception cause) {
+        connection.close();
+        Reconnection reconnection = lostServers.get(connection.server);
+        if (reconnection != null && reconnection.attempt == connection) {
+            System.err.println("Failed to reconnect to " + connection.server + ": " + cause.getMessage());
+            reconnection.retryLater();
+        } else if (connections.remove(connection.server, connection)) {
+            ring.removeNode(connection.server);
+            lostServers.put(connection.server, new Reconnection());
+            System.err.println("Lost cache server " + connection.server + ", its keys go to the next servers: "
+                    + cause.getMessage());
+        }
+    }
+
+    /**
+     * Starts a connection to each lost server whose backoff delay has passed, run on the event loop
+     */
+    private void reconnectLostServers() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<InetSocketAddress, Reconnection> lost : lostServers.entrySet()) {
+            Reconnection reconnection = lost.getValue();
+            if (reconnection.attempt != null || now < reconnection.nextAttemptTime) {
+                continue;
+            }
+            try {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                reconnection.attempt = new ShardConnection(lost.getKey(), channel, subscriptions);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_CONNECT, reconnection.attempt);
+                if (channel.connect(lost.getKey())) {
+                    finishReconnection(key, reconnection.attempt);
+                }
+            } catch (IOException e) {
+                if (reconnection.attempt != null) {
+                    lose(reconnection.attempt, e);
+                } else {
+                    System.err.println("Failed to reconnect to " + lost.getKey() + ": " + e.getMessage());
+                    reconnection.retryLater();
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts a lost server back in the ring once its new connection is established
+     */
+    private synchronized void finishReconnection(SelectionKey key, ShardConnection connection) throws IOException {
+        connection.channel.finishConnect();
+        Reconnection reconnection = lostServers.get(connection.server);
+        if (reconnection == null || reconnection.attempt != connection) {
+            connection.close(); // removed or added again meanwhile
+            return;
+        }
+        key.interestOps(SelectionKey.OP_READ);
+        lostServers.remove(connection.server);
+        connections.put(connection.server, connection);
+        ring.addNode(connection.server);
+        System.out.println("Reconnected to cache server " + connection.server);
+    }
+
+    /**
+     * Backoff of the reconnection to a lost server, only used by the event loop
+     */
+    private static final class Reconnection {
+
+        private long delay = INITIAL_RETRY_DELAY_MS;
+        private long nextAttemptTime = System.currentTimeMillis() + delay;
+        private ShardConnection attempt;
+
+        private void retryLater() {
+            attempt = null;
+            delay = Math.min(delay * 2, MAX_RETRY_DELAY_MS);
+            // Jitter, servers lost together are not all retried at once
+            nextAttemptTime = System.currentTimeMillis() + (long) (delay * (0.8 + Math.random() * 0.4));
+        }
+    }
+
+    /**
+     * Connection to one server of the ring with its own read buffer and pending requests
+     */
+    private static final class ShardConnection {
+
+        private final InetSocketAddress server;
+        private final SocketChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final ChunkAssembler chunkAssembler = new ChunkAssembler();
+        private final PendingRequests pendingRequests = new PendingRequests();
+        private final Subscriptions subscriptions;
+
+        // Requests of concurrent callers share writes
+        private final AutoPipeline pipeline;
+
+        private ShardConnection(InetSocketAddress server, SocketChannel channel, Subscriptions subscriptions) {
+            this.server = server;
+            this.channel = channel;
+            this.subscriptions = subscriptions;
+            this.pipeline = new AutoPipeline(channel);
+        }
+
+        private void read() throws IOException {
+            CacheProtocol.Message message;
+            while ((message = CacheProtocol.readMessage(channel, buffer)) != null) {
+                message = chunkAssembler.accept(message);
+                if (message == null) {
+                    continue; // more chunks of a large value to come
+                }
+                // Server initiated, never answers a pending request
+                if (message.getOperation() == CacheProtocol.OP_NOTIFY) {
+                    try {
+                        subscriptions.dispatch(message);
+                    } catch (RuntimeException e) {
+                        // A failing listener is no reason to drop the connection
+                        System.err.println("Key listener failed on " + message.getKeyAsString() + ": " + e);
+                    }
+                    continue;
+                }
+                Consumer<CacheProtocol.Message> callback;
+                if (message.getOperation() == CacheProtocol.OP_WATCHED) {
+                    callback = pendingRequests.removeWatch(CacheProtocol.getWatchId(message));
+                } else {
+                    callback = message.getKey() != null ? pendingRequests.remove(message.getKeyAsString()) : null;
+                }
+                if (callback != null) {
+                    callback.accept(message);
+                } else {
+                    System.out.println("Received response from " + server + ": " + message);
+                }
+            }
+        }
+
+        private void close() {
+            pendingRequests.failAll();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore errors during close
+            }
+        }
+    }
+}
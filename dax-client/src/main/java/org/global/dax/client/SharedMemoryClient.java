@@ -0,0 +1,135 @@
+package org.global.dax.client;
+
+import org.global.dax.shared.CacheException;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ChunkAssembler;
+import org.global.dax.shared.ConnectionLostException;
+import org.global.dax.shared.RequestTimeoutException;
+import org.global.dax.shared.SharedMemoryChannel;
+import org.global.dax.shared.WaitStrategy;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Client of a server on the same host, exchanging frames through a {@link SharedMemoryChannel} published in the
+ * shared memory directory of the server instead of a socket.
+ *
+ * Requests are synchronous: the calling thread writes the request into the ring and polls for the response with
+ * the {@link WaitStrategy} of the client, spinning for the lowest latency or parking to leave the core to others.
+ * The server only accepts the channel on its next directory scan, the first request waits for it.
+ *
+ * Thread safe, requests of concurrent callers are sent one at a time.
+ */
+public final class SharedMemoryClient implements Closeable {
+
+    private static final int BUFFER_SIZE = 1024 * 1024; // 1MB buffer
+
+    private final SharedMemoryChannel channel;
+    private final WaitStrategy waitStrategy;
+    private final long timeoutMillis;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ChunkAssembler chunkAssembler = new ChunkAssembler();
+
+    public SharedMemoryClient(Path directory) throws IOException {
+        this(directory, WaitStrategy.BUSY_SPIN, PendingRequests.DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * @param directory     shared memory directory of the server
+     * @param timeoutMillis time a request may wait for its response
+     */
+    public SharedMemoryClient(Path directory, WaitStrategy waitStrategy, long timeoutMillis) throws IOException {
+        this.channel = SharedMemoryChannel.create(directory, UUID.randomUUID().toString(), SharedMemoryChannel.DEFAULT_CAPACITY);
+        this.waitStrategy = waitStrategy;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Returns the value of the key, or null if the server does not have it
+     */
+    public byte[] get(String key) throws IOException {
+        CacheProtocol.Message response = request(CacheProtocol.createGetMessage(key));
+        if (response.getStatus() == CacheProtocol.STATUS_NOT_FOUND) {
+            return null;
+        }
+        return checkStatus(response).getValue();
+    }
+
+    public void add(String key, byte[] value) throws IOException {
+        checkStatus(request(new CacheProtocol.Message(CacheProtocol.OP_ADD, key.getBytes(StandardCharsets.UTF_8), value)));
+    }
+
+    /**
+     * Sends a request and waits for its response
+     *
+     * @throws RequestTimeoutException when the response did not arrive in time, the client is closed
+     * @throws ConnectionLostException when the server closed the channel
+     */
+    public synchronized CacheProtocol.Message request(CacheProtocol.Message message) throws IOException {
+        String key = message.getKeyAsString();
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        try {
+            ByteBuffer[] frames = CacheProtocol.encodeFrames(message);
+            for (ByteBuffer frame : frames) {
+                frame = frame.duplicate();
+                for (int idleCount = 0; frame.hasRemaining(); idleCount++) {
+                    if (channel.write(frame) == 0) {
+                        awaitProgress(key, deadline, idleCount);
+                    }
+                }
+            }
+
+            for (int idleCount = 0; ; idleCount++) {
+                CacheProtocol.Message response = CacheProtocol.readMessage(channel, buffer);
+                if (response != null) {
+                    response = chunkAssembler.accept(response);
+                    // Invalidations are never enabled on this channel, the first response is ours
+                    if (response != null) {
+                        return response;
+                    }
+                    idleCount = 0;
+                    continue;
+                }
+                awaitProgress(key, deadline, idleCount);
+            }
+        } catch (RequestTimeoutException e) {
+            // A late response would be taken for the one of the next request
+            close();
+            throw e;
+        } catch (EOFException e) {
+            throw new ConnectionLostException(key);
+        } catch (IOException e) {
+            if (channel.isPeerClosed()) {
+                throw new ConnectionLostException(key);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void awaitProgress(String key, long deadline, int idleCount) {
+        if (System.nanoTime() > deadline) {
+            throw new RequestTimeoutException(key, timeoutMillis);
+        }
+        waitStrategy.idle(idleCount);
+    }
+
+    private static CacheProtocol.Message checkStatus(CacheProtocol.Message response) {
+        if (response.getStatus() != CacheProtocol.STATUS_OK) {
+            String reason = response.getValue() != null ? new String(response.getValue(), StandardCharsets.UTF_8) : "";
+            throw new CacheException("Request failed with status " + response.getStatus() + ": " + reason);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,99 @@
+package org.global.dax.client;
+
+import org.global.dax.shared.CacheProtocol;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Listeners of the keys and key ranges a client subscribed to, called with the OP_NOTIFY messages pushed by the
+ * servers.
+ *
+ * Subscribing again to the same key or range replaces its listener.
+ */
+public final class Subscriptions {
+
+    private final Map<String, KeyListener> keyListeners = new ConcurrentHashMap<>();
+    private final Map<Range, KeyListener> rangeListeners = new ConcurrentHashMap<>();
+
+    public void addKey(String key, KeyListener listener) {
+        keyListeners.put(key, listener);
+    }
+
+    public void removeKey(String key) {
+        keyListeners.remove(key);
+    }
+
+    /**
+     * @param to upper bound, exclusive, null for no upper bound
+     */
+    public void addRange(String from, String to, KeyListener listener) {
+        rangeListeners.put(new Range(from, to), listener);
+    }
+
+    public void removeRange(String from, String to) {
+        rangeListeners.remove(new Range(from, to));
+    }
+
+    public boolean isEmpty() {
+        return keyListeners.isEmpty() && rangeListeners.isEmpty();
+    }
+
+    /**
+     * Calls the listeners of the key of a notification, or every listener when notifications were dropped
+     */
+    public void dispatch(CacheProtocol.Message notification) {
+        if (notification.getStatus() == CacheProtocol.STATUS_ERROR) {
+            keyListeners.values().stream().distinct().forEach(KeyListener::onOverflow);
+            rangeListeners.values().stream().distinct().forEach(KeyListener::onOverflow);
+            return;
+        }
+
+        String key = notification.getKeyAsString();
+        String value = notification.getStatus() == CacheProtocol.STATUS_OK ? notification.getValueAsString() : null;
+        KeyListener listener = keyListeners.get(key);
+        if (listener != null) {
+            listener.onChange(key, value);
+        }
+        if (!rangeListeners.isEmpty()) {
+            rangeListeners.forEach((range, rangeListener) -> {
+                if (range.contains(key) && rangeListener != listener) {
+                    rangeListener.onChange(key, value);
+                }
+            });
+        }
+    }
+
+    private static final class Range {
+
+        private final String from;
+        private final String to;
+
+        private Range(String from, String to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        private boolean contains(String key) {
+            return key.compareTo(from) >= 0 && (to == null || key.compareTo(to) < 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Range)) {
+                return false;
+            }
+            Range that = (Range) o;
+            return from.equals(that.from) && Objects.equals(to, that.to);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(from, to);
+        }
+    }
+}
@@ -1,39 +1,70 @@
 package org.global.dax.commands;
 
+import org.global.dax.client.NearCache;
 import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ServerBusyException;
+import org.global.dax.shared.StringUtil;
 
 import java.nio.channels.SocketChannel;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Consumer;
 
 public class Add {
 
-    private final SocketChannel channel;
-    private final Map<String, Consumer<CacheProtocol.Message>> pendingRequests;
+    private final RequestSender sender;
+    private final ResponseCallbacks pendingRequests;
+    private final NearCache nearCache;
 
-    public Add(SocketChannel channel, Map<String, Consumer<CacheProtocol.Message>> pendingRequests) {
-        this.channel = channel;
+    public Add(SocketChannel channel, ResponseCallbacks pendingRequests) {
+        this(channel, pendingRequests, null);
+    }
+
+    public Add(SocketChannel channel, ResponseCallbacks pendingRequests, NearCache nearCache) {
+        this(RequestSender.of(channel), pendingRequests, nearCache);
+    }
+
+    public Add(RequestSender sender, ResponseCallbacks pendingRequests, NearCache nearCache) {
+        this.sender = sender;
         this.pendingRequests = pendingRequests;
+        this.nearCache = nearCache;
     }
 
     public CompletableFuture<Boolean> add(String key, String value) {
+        return add(key, key.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Adds a key and value already encoded, by {@link StringUtil#encodeKey} and {@link StringUtil#encodeValue} for
+     * instance, without encoding them again
+     */
+    public CompletableFuture<Boolean> add(byte[] key, byte[] value) {
+        return add(new String(key, StandardCharsets.UTF_8), key, value);
+    }
+
+    private CompletableFuture<Boolean> add(String key, byte[] keyBytes, byte[] value) {
         CompletableFuture<Boolean> future = new CompletableFuture<>();
 
         try {
-            CacheProtocol.Message message = CacheProtocol.createAddMessage(key, value);
+            CacheProtocol.Message message = CacheProtocol.createAddMessage(keyBytes, value);
+
+            // Drop the local copy right away, the server invalidation only follows the write
+            if (nearCache != null) {
+                nearCache.invalidate(key);
+            }
 
-            // Register callback for this request
-            pendingRequests.put(key, response -> {
+            // Register the callback of this request and send it
+            pendingRequests.send(key, PendingRequest.of(future, response -> {
+                if (response.getStatus() == CacheProtocol.STATUS_BUSY) {
+                    future.completeExceptionally(new ServerBusyException(key));
+                    return;
+                }
                 if (response.getOperation() == CacheProtocol.OP_RESPONSE &&
                         response.getStatus() == CacheProtocol.STATUS_OK) {
                     future.complete(true);
                 } else {
                     future.complete(false);
                 }
-            });
-
-            CacheProtocol.sendMessage(channel, message);
+            }), sender, message);
         } catch (Exception e) {
             future.completeExceptionally(e);
         }
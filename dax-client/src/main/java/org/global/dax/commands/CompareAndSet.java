@@ -0,0 +1,89 @@
+package org.global.dax.commands;
+
+import org.global.dax.client.NearCache;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ServerBusyException;
+import org.global.dax.shared.StringUtil;
+
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sets a value only if it did not change since it was read with {@link Gets}
+ */
+public class CompareAndSet {
+
+    /**
+     * Expected version of a key that must not exist yet
+     */
+    public static final long NO_VERSION = 0;
+
+    private final RequestSender sender;
+    private final ResponseCallbacks pendingRequests;
+    private final NearCache nearCache;
+
+    public CompareAndSet(SocketChannel channel, ResponseCallbacks pendingRequests) {
+        this(channel, pendingRequests, null);
+    }
+
+    public CompareAndSet(SocketChannel channel, ResponseCallbacks pendingRequests, NearCache nearCache) {
+        this(RequestSender.of(channel), pendingRequests, nearCache);
+    }
+
+    public CompareAndSet(RequestSender sender, ResponseCallbacks pendingRequests, NearCache nearCache) {
+        this.sender = sender;
+        this.pendingRequests = pendingRequests;
+        this.nearCache = nearCache;
+    }
+
+    /**
+     * Completes with true if the value was set, false if the key is no longer at the expected version
+     */
+    public CompletableFuture<Boolean> compareAndSet(String key, long expectedVersion, String value) {
+        return compareAndSet(key, key.getBytes(StandardCharsets.UTF_8), expectedVersion,
+                value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Same with a key and value already encoded, by {@link StringUtil#encodeKey} and {@link StringUtil#encodeValue}
+     * for instance, without encoding them again
+     */
+    public CompletableFuture<Boolean> compareAndSet(byte[] key, long expectedVersion, byte[] value) {
+        return compareAndSet(new String(key, StandardCharsets.UTF_8), key, expectedVersion, value);
+    }
+
+    private CompletableFuture<Boolean> compareAndSet(String key, byte[] keyBytes, long expectedVersion, byte[] value) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        try {
+            CacheProtocol.Message message = CacheProtocol.createCasMessage(keyBytes, expectedVersion, value);
+
+            if (nearCache != null) {
+                nearCache.invalidate(key);
+            }
+
+            // Register the callback of this request and send it
+            pendingRequests.send(key, PendingRequest.of(future, response -> {
+                if (response.getStatus() == CacheProtocol.STATUS_BUSY) {
+                    future.completeExceptionally(new ServerBusyException(key));
+                    return;
+                }
+                if (response.getOperation() == CacheProtocol.OP_RESPONSE &&
+                        response.getStatus() == CacheProtocol.STATUS_OK) {
+                    future.complete(true);
+                } else if (response.getStatus() == CacheProtocol.STATUS_CONFLICT) {
+                    future.complete(false);
+                } else {
+                    future.completeExceptionally(
+                            new RuntimeException("Error setting value: " + response.getValueAsString()));
+                }
+            }), sender, message);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+}
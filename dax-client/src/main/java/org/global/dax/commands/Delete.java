@@ -1,39 +1,69 @@
 package org.global.dax.commands;
 
+import org.global.dax.client.NearCache;
 import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ServerBusyException;
+import org.global.dax.shared.StringUtil;
 
 import java.nio.channels.SocketChannel;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Consumer;
 
 public class Delete {
 
-    private final SocketChannel channel;
-    private final Map<String, Consumer<CacheProtocol.Message>> pendingRequests;
+    private final RequestSender sender;
+    private final ResponseCallbacks pendingRequests;
+    private final NearCache nearCache;
 
-    public Delete(SocketChannel channel, Map<String, Consumer<CacheProtocol.Message>> pendingRequests) {
-        this.channel = channel;
+    public Delete(SocketChannel channel, ResponseCallbacks pendingRequests) {
+        this(channel, pendingRequests, null);
+    }
+
+    public Delete(SocketChannel channel, ResponseCallbacks pendingRequests, NearCache nearCache) {
+        this(RequestSender.of(channel), pendingRequests, nearCache);
+    }
+
+    public Delete(RequestSender sender, ResponseCallbacks pendingRequests, NearCache nearCache) {
+        this.sender = sender;
         this.pendingRequests = pendingRequests;
+        this.nearCache = nearCache;
     }
 
     public CompletableFuture<Boolean> delete(String key) {
+        return delete(key, key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Deletes a key already encoded, by {@link StringUtil#encodeKey} for instance, without encoding it again
+     */
+    public CompletableFuture<Boolean> delete(byte[] key) {
+        return delete(new String(key, StandardCharsets.UTF_8), key);
+    }
+
+    private CompletableFuture<Boolean> delete(String key, byte[] keyBytes) {
         CompletableFuture<Boolean> future = new CompletableFuture<>();
 
         try {
-            CacheProtocol.Message message = CacheProtocol.createRemoveMessage(key);
+            CacheProtocol.Message message = CacheProtocol.createRemoveMessage(keyBytes);
+
+            // Drop the local copy right away, the server invalidation only follows the write
+            if (nearCache != null) {
+                nearCache.invalidate(key);
+            }
 
-            // Register callback for this request
-            pendingRequests.put(key, response -> {
+            // Register the callback of this request and send it
+            pendingRequests.send(key, PendingRequest.of(future, response -> {
+                if (response.getStatus() == CacheProtocol.STATUS_BUSY) {
+                    future.completeExceptionally(new ServerBusyException(key));
+                    return;
+                }
                 if (response.getOperation() == CacheProtocol.OP_RESPONSE) {
                     future.complete(response.getStatus() == CacheProtocol.STATUS_OK);
                 } else {
                     future.completeExceptionally(
                             new RuntimeException("Unexpected response type: " + response.getOperation()));
                 }
-            });
-
-            CacheProtocol.sendMessage(channel, message);
+            }), sender, message);
         } catch (Exception e) {
             future.completeExceptionally(e);
         }
@@ -1,32 +1,71 @@
 package org.global.dax.commands;
 
+import org.global.dax.client.NearCache;
 import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ServerBusyException;
+import org.global.dax.shared.StringUtil;
 
 import java.nio.channels.SocketChannel;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Consumer;
 
 public class Get {
 
-    private final SocketChannel channel;
-    private final Map<String, Consumer<CacheProtocol.Message>> pendingRequests;
+    private final RequestSender sender;
+    private final ResponseCallbacks pendingRequests;
+    private final NearCache nearCache;
 
-    public Get(SocketChannel channel, Map<String, Consumer<CacheProtocol.Message>> pendingRequests) {
-        this.channel = channel;
+    public Get(SocketChannel channel, ResponseCallbacks pendingRequests) {
+        this(channel, pendingRequests, null);
+    }
+
+    public Get(SocketChannel channel, ResponseCallbacks pendingRequests, NearCache nearCache) {
+        this(RequestSender.of(channel), pendingRequests, nearCache);
+    }
+
+    public Get(RequestSender sender, ResponseCallbacks pendingRequests, NearCache nearCache) {
+        this.sender = sender;
         this.pendingRequests = pendingRequests;
+        this.nearCache = nearCache;
     }
 
     public CompletableFuture<String> get(String key) {
+        return get(key, key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Gets a key already encoded, by {@link StringUtil#encodeKey} for instance, without encoding it again
+     */
+    public CompletableFuture<String> get(byte[] key) {
+        return get(new String(key, StandardCharsets.UTF_8), key);
+    }
+
+    private CompletableFuture<String> get(String key, byte[] keyBytes) {
         CompletableFuture<String> future = new CompletableFuture<>();
 
+        if (nearCache != null) {
+            String cached = nearCache.get(key);
+            if (cached != null) {
+                future.complete(cached);
+                return future;
+            }
+        }
+
         try {
-            CacheProtocol.Message message = CacheProtocol.createGetMessage(key);
+            CacheProtocol.Message message = CacheProtocol.createGetMessage(keyBytes);
 
-            // Register callback for this request
-            pendingRequests.put(key, response -> {
+            // Register the callback of this request and send it
+            pendingRequests.send(key, PendingRequest.of(future, response -> {
+                if (response.getStatus() == CacheProtocol.STATUS_BUSY) {
+                    future.completeExceptionally(new ServerBusyException(key));
+                    return;
+                }
                 if (response.getOperation() == CacheProtocol.OP_RESPONSE) {
                     if (response.getStatus() == CacheProtocol.STATUS_OK) {
+                        // Runs on the thread reading responses, before any later invalidation of this key
+                        if (nearCache != null && !"ALL".equalsIgnoreCase(key)) {
+                            nearCache.put(key, response.getValueAsString());
+                        }
                         future.complete(response.getValueAsString());
                     } else if (response.getStatus() == CacheProtocol.STATUS_NOT_FOUND) {
                         future.complete(null);
@@ -38,9 +77,7 @@ public class Get {
                     future.completeExceptionally(
                             new RuntimeException("Unexpected response type: " + response.getOperation()));
                 }
-            });
-
-            CacheProtocol.sendMessage(channel, message);
+            }), sender, message);
         } catch (Exception e) {
             future.completeExceptionally(e);
         }
@@ -0,0 +1,80 @@
+package org.global.dax.commands;
+
+import org.global.dax.client.NearCache;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ServerBusyException;
+import org.global.dax.shared.StringUtil;
+
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+public class GetAndSet {
+
+    private final RequestSender sender;
+    private final ResponseCallbacks pendingRequests;
+    private final NearCache nearCache;
+
+    public GetAndSet(SocketChannel channel, ResponseCallbacks pendingRequests) {
+        this(channel, pendingRequests, null);
+    }
+
+    public GetAndSet(SocketChannel channel, ResponseCallbacks pendingRequests, NearCache nearCache) {
+        this(RequestSender.of(channel), pendingRequests, nearCache);
+    }
+
+    public GetAndSet(RequestSender sender, ResponseCallbacks pendingRequests, NearCache nearCache) {
+        this.sender = sender;
+        this.pendingRequests = pendingRequests;
+        this.nearCache = nearCache;
+    }
+
+    /**
+     * Sets the value, completing with the previous one or null if the key was not in the cache
+     */
+    public CompletableFuture<String> getAndSet(String key, String value) {
+        return getAndSet(key, key.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Same with a key and value already encoded, by {@link StringUtil#encodeKey} and {@link StringUtil#encodeValue}
+     * for instance, without encoding them again
+     */
+    public CompletableFuture<String> getAndSet(byte[] key, byte[] value) {
+        return getAndSet(new String(key, StandardCharsets.UTF_8), key, value);
+    }
+
+    private CompletableFuture<String> getAndSet(String key, byte[] keyBytes, byte[] value) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+
+        try {
+            CacheProtocol.Message message = CacheProtocol.createGetSetMessage(keyBytes, value);
+
+            if (nearCache != null) {
+                nearCache.invalidate(key);
+            }
+
+            // Register the callback of this request and send it
+            pendingRequests.send(key, PendingRequest.of(future, response -> {
+                if (response.getStatus() == CacheProtocol.STATUS_BUSY) {
+                    future.completeExceptionally(new ServerBusyException(key));
+                    return;
+                }
+                if (response.getOperation() == CacheProtocol.OP_RESPONSE &&
+                        response.getStatus() == CacheProtocol.STATUS_OK) {
+                    future.complete(response.getValueAsString());
+                } else if (response.getStatus() == CacheProtocol.STATUS_NOT_FOUND) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(
+                            new RuntimeException("Error setting value: " + response.getValueAsString()));
+                }
+            }), sender, message);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+}
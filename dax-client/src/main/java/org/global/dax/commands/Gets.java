@@ -0,0 +1,87 @@
+package org.global.dax.commands;
+
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ServerBusyException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * GET returning the version of the value, to be passed to {@link CompareAndSet}
+ */
+public class Gets {
+
+    private final RequestSender sender;
+    private final ResponseCallbacks pendingRequests;
+
+    public Gets(SocketChannel channel, ResponseCallbacks pendingRequests) {
+        this(RequestSender.of(channel), pendingRequests);
+    }
+
+    public Gets(RequestSender sender, ResponseCallbacks pendingRequests) {
+        this.sender = sender;
+        this.pendingRequests = pendingRequests;
+    }
+
+    /**
+     * Completes with the value and its version, or null if the key is not in the cache
+     */
+    public CompletableFuture<Versioned> gets(String key) {
+        CompletableFuture<Versioned> future = new CompletableFuture<>();
+
+        try {
+            CacheProtocol.Message message = CacheProtocol.createGetsMessage(key);
+
+            // Register the callback of this request and send it
+            pendingRequests.send(key, PendingRequest.of(future, response -> {
+                if (response.getStatus() == CacheProtocol.STATUS_BUSY) {
+                    future.completeExceptionally(new ServerBusyException(key));
+                    return;
+                }
+                if (response.getOperation() == CacheProtocol.OP_RESPONSE &&
+                        response.getStatus() == CacheProtocol.STATUS_OK) {
+                    ByteBuffer value = ByteBuffer.wrap(response.getValue());
+                    long version = value.getLong();
+                    future.complete(new Versioned(
+                            new String(value.array(), value.position(), value.remaining(), StandardCharsets.UTF_8),
+                            version));
+                } else if (response.getStatus() == CacheProtocol.STATUS_NOT_FOUND) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(
+                            new RuntimeException("Error getting value: " + response.getValueAsString()));
+                }
+            }), sender, message);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    public static final class Versioned {
+
+        private final String value;
+        private final long version;
+
+        public Versioned(String value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        @Override
+        public String toString() {
+            return value + " (version " + version + ")";
+        }
+    }
+}
@@ -3,17 +3,19 @@ package org.global.dax.commands;
 import org.global.dax.shared.CacheProtocol;
 
 import java.nio.channels.SocketChannel;
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Consumer;
 
 public class Hearbeat {
 
-    private final SocketChannel channel;
-    private final Map<String, Consumer<CacheProtocol.Message>> pendingRequests;
+    private final RequestSender sender;
+    private final ResponseCallbacks pendingRequests;
 
-    public Hearbeat(SocketChannel channel, Map<String, Consumer<CacheProtocol.Message>> pendingRequests) {
-        this.channel = channel;
+    public Hearbeat(SocketChannel channel, ResponseCallbacks pendingRequests) {
+        this(RequestSender.of(channel), pendingRequests);
+    }
+
+    public Hearbeat(RequestSender sender, ResponseCallbacks pendingRequests) {
+        this.sender = sender;
         this.pendingRequests = pendingRequests;
     }
 
@@ -23,17 +25,15 @@ public class Hearbeat {
         try {
             CacheProtocol.Message message = CacheProtocol.createHeartbeatMessage();
 
-            // Register callback for this request
-            pendingRequests.put("heartbeat", response -> {
+            // Register the callback of this request and send it
+            pendingRequests.send("heartbeat", PendingRequest.of(future, response -> {
                 if (response.getOperation() == CacheProtocol.OP_RESPONSE) {
                     future.complete(response.getStatus() == CacheProtocol.STATUS_OK);
                 } else {
                     future.completeExceptionally(
                             new RuntimeException("Unexpected response type: " + response.getOperation()));
                 }
-            });
-
-            CacheProtocol.sendMessage(channel, message);
+            }), sender, message);
         } catch (Exception e) {
             future.completeExceptionally(e);
         }
@@ -0,0 +1,76 @@
+package org.global.dax.commands;
+
+import org.global.dax.client.NearCache;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ServerBusyException;
+
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Atomic counter operations on values holding a decimal integer, a missing key counts as 0
+ */
+public class Increment {
+
+    private final RequestSender sender;
+    private final ResponseCallbacks pendingRequests;
+    private final NearCache nearCache;
+
+    public Increment(SocketChannel channel, ResponseCallbacks pendingRequests) {
+        this(channel, pendingRequests, null);
+    }
+
+    public Increment(SocketChannel channel, ResponseCallbacks pendingRequests, NearCache nearCache) {
+        this(RequestSender.of(channel), pendingRequests, nearCache);
+    }
+
+    public Increment(RequestSender sender, ResponseCallbacks pendingRequests, NearCache nearCache) {
+        this.sender = sender;
+        this.pendingRequests = pendingRequests;
+        this.nearCache = nearCache;
+    }
+
+    /**
+     * Completes with the new value
+     */
+    public CompletableFuture<Long> increment(String key, long delta) {
+        return send(key, CacheProtocol.createIncrMessage(key, delta));
+    }
+
+    /**
+     * Completes with the new value
+     */
+    public CompletableFuture<Long> decrement(String key, long delta) {
+        return send(key, CacheProtocol.createDecrMessage(key, delta));
+    }
+
+    private CompletableFuture<Long> send(String key, CacheProtocol.Message message) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+
+        try {
+            if (nearCache != null) {
+                nearCache.invalidate(key);
+            }
+
+            // Register the callback of this request and send it
+            pendingRequests.send(key, PendingRequest.of(future, response -> {
+                if (response.getStatus() == CacheProtocol.STATUS_BUSY) {
+                    future.completeExceptionally(new ServerBusyException(key));
+                    return;
+                }
+                if (response.getOperation() == CacheProtocol.OP_RESPONSE &&
+                        response.getStatus() == CacheProtocol.STATUS_OK) {
+                    future.complete(Long.parseLong(response.getValueAsString()));
+                } else {
+                    future.completeExceptionally(
+                            new RuntimeException("Error incrementing value: " + response.getValueAsString()));
+                }
+            }), sender, message);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+}
@@ -0,0 +1,31 @@
+package org.global.dax.commands;
+
+import org.global.dax.shared.CacheProtocol;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Callback of a request waiting for its response, which can also be failed when no response will come
+ */
+public interface PendingRequest extends Consumer<CacheProtocol.Message> {
+
+    void fail(Throwable cause);
+
+    /**
+     * Handles the response with the given callback, or fails the future of the command
+     */
+    static PendingRequest of(CompletableFuture<?> future, Consumer<CacheProtocol.Message> onResponse) {
+        return new PendingRequest() {
+            @Override
+            public void accept(CacheProtocol.Message response) {
+                onResponse.accept(response);
+            }
+
+            @Override
+            public void fail(Throwable cause) {
+                future.completeExceptionally(cause);
+            }
+        };
+    }
+}
@@ -0,0 +1,62 @@
+package org.global.dax.commands;
+
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ServerBusyException;
+
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Lists the keys between two bounds in order, with their values, one "key: value" line per key
+ */
+public class Range {
+
+    private final RequestSender sender;
+    private final ResponseCallbacks pendingRequests;
+
+    public Range(SocketChannel channel, ResponseCallbacks pendingRequests) {
+        this(RequestSender.of(channel), pendingRequests);
+    }
+
+    public Range(RequestSender sender, ResponseCallbacks pendingRequests) {
+        this.sender = sender;
+        this.pendingRequests = pendingRequests;
+    }
+
+    /**
+     * Completes with the listing of the keys from {@code from} (inclusive) to {@code to} (exclusive, null for no
+     * upper bound), empty when no key is in the range
+     *
+     * @param from lower bound, not empty since the response is matched to the request by it
+     */
+    public CompletableFuture<String> range(String from, String to) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        if (from.isEmpty()) {
+            future.completeExceptionally(new IllegalArgumentException("The lower bound of a range cannot be empty"));
+            return future;
+        }
+
+        try {
+            CacheProtocol.Message message = CacheProtocol.createRangeMessage(from, to);
+
+            // Register the callback of this request and send it
+            pendingRequests.send(from, PendingRequest.of(future, response -> {
+                if (response.getStatus() == CacheProtocol.STATUS_BUSY) {
+                    future.completeExceptionally(new ServerBusyException(from));
+                    return;
+                }
+                if (response.getOperation() == CacheProtocol.OP_RESPONSE &&
+                        response.getStatus() == CacheProtocol.STATUS_OK) {
+                    future.complete(response.getValueAsString());
+                } else {
+                    future.completeExceptionally(
+                            new RuntimeException("Error listing range: " + response.getValueAsString()));
+                }
+            }), sender, message);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+}
@@ -0,0 +1,22 @@
+package org.global.dax.commands;
+
+import org.global.dax.shared.CacheProtocol;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Sends the request of a command to the server
+ */
+@FunctionalInterface
+public interface RequestSender {
+
+    void send(CacheProtocol.Message message) throws IOException;
+
+    /**
+     * Writes each request straight to the channel
+     */
+    static RequestSender of(SocketChannel channel) {
+        return message -> CacheProtocol.sendMessage(channel, message);
+    }
+}
@@ -0,0 +1,26 @@
+package org.global.dax.commands;
+
+import org.global.dax.shared.CacheProtocol;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Callbacks of the requests of a connection waiting for their response, which is matched to them by its key, or by
+ * the id of the watch for a WATCH
+ */
+public interface ResponseCallbacks {
+
+    /**
+     * Registers the callback of a request and sends it, answered after the requests already waiting for the same key.
+     * The requests of a key are written in the order their callbacks are registered.
+     */
+    void send(String key, Consumer<CacheProtocol.Message> callback, RequestSender sender, CacheProtocol.Message request)
+            throws IOException;
+
+    /**
+     * Registers the callback of a WATCH the server may hold up to {@code holdMillis}, its deadline is pushed back by
+     * that time. Returns the id to send with the watch, its answer is matched by that id.
+     */
+    int putWatch(String key, Consumer<CacheProtocol.Message> callback, long holdMillis);
+}
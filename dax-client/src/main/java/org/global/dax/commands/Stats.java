@@ -0,0 +1,45 @@
+package org.global.dax.commands;
+
+import org.global.dax.shared.CacheProtocol;
+
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+
+public class Stats {
+
+    private final RequestSender sender;
+    private final ResponseCallbacks pendingRequests;
+
+    public Stats(SocketChannel channel, ResponseCallbacks pendingRequests) {
+        this(RequestSender.of(channel), pendingRequests);
+    }
+
+    public Stats(RequestSender sender, ResponseCallbacks pendingRequests) {
+        this.sender = sender;
+        this.pendingRequests = pendingRequests;
+    }
+
+    public CompletableFuture<String> stats() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+
+        try {
+            CacheProtocol.Message message = CacheProtocol.createStatsMessage();
+
+            // Register the callback of this request and send it
+            pendingRequests.send("stats", PendingRequest.of(future, response -> {
+                if (response.getOperation() == CacheProtocol.OP_RESPONSE &&
+                        response.getStatus() == CacheProtocol.STATUS_OK) {
+                    future.complete(response.getValueAsString());
+                } else {
+                    future.completeExceptionally(
+                            new RuntimeException("Unexpected response: " + response));
+                }
+            }), sender, message);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+}
@@ -0,0 +1,106 @@
+package org.global.dax.commands;
+
+import org.global.dax.client.KeyListener;
+import org.global.dax.client.Subscriptions;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ServerBusyException;
+
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Subscribes to the changes of a key or of a range of keys, pushed by the server until unsubscribed
+ */
+public class Subscribe {
+
+    private final RequestSender sender;
+    private final ResponseCallbacks pendingRequests;
+    private final Subscriptions subscriptions;
+
+    public Subscribe(SocketChannel channel, ResponseCallbacks pendingRequests,
+                     Subscriptions subscriptions) {
+        this(RequestSender.of(channel), pendingRequests, subscriptions);
+    }
+
+    public Subscribe(RequestSender sender, ResponseCallbacks pendingRequests,
+                     Subscriptions subscriptions) {
+        this.sender = sender;
+        this.pendingRequests = pendingRequests;
+        this.subscriptions = subscriptions;
+    }
+
+    /**
+     * Calls the listener whenever the key is added or removed, completes once the server is pushing its changes
+     */
+    public CompletableFuture<Boolean> subscribe(String key, KeyListener listener) {
+        // Registered first, the server may push a change right behind its response
+        subscriptions.addKey(key, listener);
+        CompletableFuture<Boolean> future = send(key, CacheProtocol.createSubscribeMessage(key));
+        future.whenComplete((subscribed, e) -> {
+            if (e != null || !subscribed) {
+                subscriptions.removeKey(key);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Calls the listener whenever a key from {@code from} (inclusive) to {@code to} (exclusive, null for no upper
+     * bound) is added or removed
+     *
+     * @param from lower bound, not empty since the response is matched to the request by it
+     */
+    public CompletableFuture<Boolean> subscribeRange(String from, String to, KeyListener listener) {
+        if (from.isEmpty()) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("The lower bound of a range cannot be empty"));
+        }
+        subscriptions.addRange(from, to, listener);
+        CompletableFuture<Boolean> future = send(from, CacheProtocol.createSubscribeRangeMessage(from, to));
+        future.whenComplete((subscribed, e) -> {
+            if (e != null || !subscribed) {
+                subscriptions.removeRange(from, to);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Completes with false when the key was not subscribed to
+     */
+    public CompletableFuture<Boolean> unsubscribe(String key) {
+        subscriptions.removeKey(key);
+        return send(key, CacheProtocol.createUnsubscribeMessage(key));
+    }
+
+    public CompletableFuture<Boolean> unsubscribeRange(String from, String to) {
+        if (from.isEmpty()) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("The lower bound of a range cannot be empty"));
+        }
+        subscriptions.removeRange(from, to);
+        return send(from, CacheProtocol.createUnsubscribeRangeMessage(from, to));
+    }
+
+    private CompletableFuture<Boolean> send(String key, CacheProtocol.Message message) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        try {
+            // Register the callback of this request and send it
+            pendingRequests.send(key, PendingRequest.of(future, response -> {
+                if (response.getStatus() == CacheProtocol.STATUS_BUSY) {
+                    future.completeExceptionally(new ServerBusyException(key));
+                    return;
+                }
+                if (response.getOperation() == CacheProtocol.OP_RESPONSE &&
+                        response.getStatus() != CacheProtocol.STATUS_ERROR) {
+                    future.complete(response.getStatus() == CacheProtocol.STATUS_OK);
+                } else {
+                    future.completeExceptionally(
+                            new RuntimeException("Error subscribing: " + response.getValueAsString()));
+                }
+            }), sender, message);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+}
@@ -0,0 +1,61 @@
+package org.global.dax.commands;
+
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ServerBusyException;
+
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Gets the value of a key, waiting on the server for a missing key to be added instead of polling it
+ */
+public class Watch {
+
+    private final RequestSender sender;
+    private final ResponseCallbacks pendingRequests;
+
+    public Watch(SocketChannel channel, ResponseCallbacks pendingRequests) {
+        this(RequestSender.of(channel), pendingRequests);
+    }
+
+    public Watch(RequestSender sender, ResponseCallbacks pendingRequests) {
+        this.sender = sender;
+        this.pendingRequests = pendingRequests;
+    }
+
+    /**
+     * Completes with the value of the key as soon as it is present, or with null if it is still missing after the
+     * timeout
+     */
+    public CompletableFuture<String> watch(String key, long timeoutMillis) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+
+        try {
+            // Register callback for this request
+            PendingRequest callback = PendingRequest.of(future, response -> {
+                if (response.getStatus() == CacheProtocol.STATUS_BUSY) {
+                    future.completeExceptionally(new ServerBusyException(key));
+                    return;
+                }
+                if (response.getOperation() == CacheProtocol.OP_WATCHED &&
+                        response.getStatus() == CacheProtocol.STATUS_OK) {
+                    future.complete(response.getValueAsString());
+                } else if (response.getOperation() == CacheProtocol.OP_WATCHED &&
+                        response.getStatus() == CacheProtocol.STATUS_NOT_FOUND) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(
+                            new RuntimeException("Error watching key: " + response.getValueAsString()));
+                }
+            });
+            // The server holds the request up to the timeout, it must not expire on the client before
+            int watchId = pendingRequests.putWatch(key, callback, timeoutMillis);
+
+            sender.send(CacheProtocol.createWatchMessage(key, timeoutMillis, watchId));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+}
@@ -0,0 +1,121 @@
+package org.global.dax.client;
+
+import org.global.dax.shared.CacheProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AutoPipelineTest {
+
+    private static final int THREADS = 8;
+    private static final int REQUESTS_PER_THREAD = 5_000;
+
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private SocketChannel peer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        client.configureBlocking(false);
+        peer = server.accept();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        peer.close();
+        server.close();
+    }
+
+    @Test
+    void sendsTheRequestsOfConcurrentCallersIntactAndInOrder() throws Exception {
+        AutoPipeline pipeline = new AutoPipeline(client);
+        Future<Map<String, List<Integer>>> received = Executors.newSingleThreadExecutor()
+                .submit(() -> readAll(THREADS * REQUESTS_PER_THREAD));
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> senders = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                String key = "T" + thread + "..";
+                senders.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        pipeline.send(CacheProtocol.createAddMessage(key, Integer.toString(i)));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> sender : senders) {
+                sender.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Map<String, List<Integer>> values = received.get();
+        assertThat(values).hasSize(THREADS);
+        for (List<Integer> sequence : values.values()) {
+            assertThat(sequence).hasSize(REQUESTS_PER_THREAD).isSorted();
+        }
+        assertThat(pipeline.getRequests()).isEqualTo(THREADS * REQUESTS_PER_THREAD);
+        // Concurrent callers share writes
+        assertThat(pipeline.getWrites()).isLessThan(pipeline.getRequests());
+    }
+
+    @Test
+    void writesALoneRequestRightAway() throws Exception {
+        AutoPipeline pipeline = new AutoPipeline(client);
+
+        pipeline.send(CacheProtocol.createGetMessage("KEY1"));
+
+        assertThat(readAll(1)).containsOnlyKeys("KEY1");
+        assertThat(pipeline.getWrites()).isEqualTo(1);
+    }
+
+    @Test
+    void failsLaterRequestsOnceAWriteFailed() throws Exception {
+        AutoPipeline pipeline = new AutoPipeline(client);
+        client.close();
+
+        assertThatThrownBy(() -> pipeline.send(CacheProtocol.createGetMessage("KEY1"))).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> pipeline.send(CacheProtocol.createGetMessage("KEY2"))).isInstanceOf(IOException.class);
+    }
+
+    private Map<String, List<Integer>> readAll(int count) throws IOException {
+        Map<String, List<Integer>> values = new HashMap<>();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        for (int read = 0; read < count; ) {
+            CacheProtocol.Message message = CacheProtocol.readMessage(peer, buffer);
+            if (message != null) {
+                List<Integer> sequence = values.computeIfAbsent(message.getKeyAsString(), key -> new ArrayList<>());
+                if (message.getValue() != null) {
+                    sequence.add(Integer.parseInt(message.getValueAsString()));
+                }
+                read++;
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,93 @@
+package org.global.dax.client;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@ExtendWith(MockitoExtension.class)
+class ConsistentHashRingTest {
+
+    private static final int KEY_COUNT = 60_000;
+
+    @Test
+    void spreadsKeysEvenlyAcrossNodes() {
+        ConsistentHashRing<String> ring = ringOf("a", "b", "c", "d");
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            counts.merge(ring.nodeFor(key(i)), 1, Integer::sum);
+        }
+
+        assertThat(counts).hasSize(4);
+        // Each node should own roughly a quarter of the keys
+        assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(KEY_COUNT / 6, KEY_COUNT / 3));
+    }
+
+    @Test
+    void addingNodeOnlyMovesKeysToTheNewNode() {
+        ConsistentHashRing<String> ring = ringOf("a", "b", "c");
+        Map<String, String> before = assignments(ring);
+
+        ring.addNode("d");
+
+        int moved = 0;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            String owner = ring.nodeFor(entry.getKey());
+            if (!owner.equals(entry.getValue())) {
+                assertThat(owner).isEqualTo("d");
+                moved++;
+            }
+        }
+        // About a quarter of the keys move, never a full reshuffle
+        assertThat(moved).isBetween(KEY_COUNT / 8, KEY_COUNT / 3);
+    }
+
+    @Test
+    void removingNodeOnlyMovesItsOwnKeys() {
+        ConsistentHashRing<String> ring = ringOf("a", "b", "c", "d");
+        Map<String, String> before = assignments(ring);
+
+        ring.removeNode("b");
+
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            String owner = ring.nodeFor(entry.getKey());
+            if (entry.getValue().equals("b")) {
+                assertThat(owner).isNotEqualTo("b");
+            } else {
+                assertThat(owner).isEqualTo(entry.getValue());
+            }
+        }
+    }
+
+    @Test
+    void failsWhenEmpty() {
+        assertThatThrownBy(() -> new ConsistentHashRing<String>().nodeFor("ABCD"))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static ConsistentHashRing<String> ringOf(String... nodes) {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>();
+        for (String node : nodes) {
+            ring.addNode(node);
+        }
+        return ring;
+    }
+
+    private static Map<String, String> assignments(ConsistentHashRing<String> ring) {
+        Map<String, String> assignments = new HashMap<>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            assignments.put(key(i), ring.nodeFor(key(i)));
+        }
+        return assignments;
+    }
+
+    private static String key(int i) {
+        return String.format("%04x", i);
+    }
+}
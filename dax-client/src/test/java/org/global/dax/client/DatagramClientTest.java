@@ -0,0 +1,86 @@
+package org.global.dax.client;
+
+import org.global.dax.server.ServerConfig;
+import org.global.dax.server.ServerMain;
+import org.global.dax.server.TestServers;
+import org.global.dax.shared.CacheException;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.RequestTimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+@Tag("integration")
+class DatagramClientTest {
+
+    private static final int PORT = 19291;
+    private static final int UDP_PORT = 19292;
+
+    private ServerMain server;
+    private DatagramClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = TestServers.start(new ServerConfig().withPort(PORT).withUdpPort(UDP_PORT));
+
+        client = new DatagramClient(new InetSocketAddress("localhost", UDP_PORT));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    void addsAndGetsSmallValuesOverUdp() throws Exception {
+        client.add("sensor", "42".getBytes(StandardCharsets.UTF_8));
+
+        // Fire-and-forget, the value shows up once the server handled the datagram
+        await().atMost(Duration.ofSeconds(2)).until(() -> client.get("sensor") != null);
+        assertThat(new String(client.get("sensor"), StandardCharsets.UTF_8)).isEqualTo("42");
+        assertThat(client.get("missing")).isNull();
+    }
+
+    @Test
+    void rejectsValuesLargerThanADatagram() throws Exception {
+        assertThatThrownBy(() -> client.add("large", new byte[2048]))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        // Added over TCP, too large for a UDP response
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", PORT))) {
+            CacheProtocol.sendMessage(channel, new CacheProtocol.Message(
+                    CacheProtocol.OP_ADD, "large".getBytes(StandardCharsets.UTF_8), new byte[1460]));
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            while (CacheProtocol.readMessage(channel, buffer) == null) {
+                // blocking channel, keep reading until the response is complete
+            }
+        }
+        assertThatThrownBy(() -> client.get("large"))
+                .isInstanceOf(CacheException.class)
+                .hasMessageContaining("use TCP");
+    }
+
+    @Test
+    void retriesGetsAndTimesOutWithoutResponse() throws Exception {
+        // A bound socket nobody answers from swallows every attempt
+        try (DatagramSocket silent = new DatagramSocket(0);
+             DatagramClient lost = new DatagramClient(new InetSocketAddress("localhost", silent.getLocalPort()), 20, 3)) {
+            assertThatThrownBy(() -> lost.get("sensor")).isInstanceOf(RequestTimeoutException.class);
+            assertThat(lost.getRetries()).isEqualTo(2);
+        }
+    }
+}
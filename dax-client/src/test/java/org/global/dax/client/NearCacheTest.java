@@ -0,0 +1,41 @@
+package org.global.dax.client;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(MockitoExtension.class)
+class NearCacheTest {
+
+    @Test
+    void servesPutValuesUntilInvalidated() {
+        NearCache nearCache = new NearCache(10);
+        nearCache.put("ABCD", "value");
+
+        assertThat(nearCache.get("ABCD")).isEqualTo("value");
+
+        nearCache.invalidate("ABCD");
+        assertThat(nearCache.get("ABCD")).isNull();
+        assertThat(nearCache.getHits()).isEqualTo(1);
+        assertThat(nearCache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void staysBoundedAndKeepsRecentlyReadKeys() {
+        NearCache nearCache = new NearCache(3);
+        nearCache.put("AAAA", "1");
+        nearCache.put("BBBB", "2");
+        nearCache.put("CCCC", "3");
+
+        // Every entry but BBBB loses its second chance
+        nearCache.get("BBBB");
+        nearCache.put("DDDD", "4");
+        nearCache.put("EEEE", "5");
+
+        assertThat(nearCache.size()).isEqualTo(3);
+        assertThat(nearCache.get("BBBB")).isEqualTo("2");
+        assertThat(nearCache.get("EEEE")).isEqualTo("5");
+    }
+}
@@ -0,0 +1,218 @@
+package org.global.dax.client;
+
+import org.global.dax.commands.PendingRequest;
+import org.global.dax.commands.RequestSender;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ConnectionLostException;
+import org.global.dax.shared.RequestTimeoutException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class PendingRequestsTest {
+
+    private static final long TIMEOUT_MS = 100;
+
+    private final PendingRequests pendingRequests = new PendingRequests(TIMEOUT_MS);
+
+    @Test
+    void failsRequestsWithoutResponseAfterTheirTimeout() {
+        CompletableFuture<String> future = register("KEY1");
+
+        await().atMost(Duration.ofSeconds(2)).until(() -> {
+            pendingRequests.expire();
+            return future.isDone();
+        });
+
+        assertThat(future).failsWithin(Duration.ZERO)
+                .withThrowableOfType(Exception.class)
+                .withCauseInstanceOf(RequestTimeoutException.class);
+    }
+
+    @Test
+    void responseCancelsTheTimeout() throws Exception {
+        CompletableFuture<String> future = register("KEY1");
+        pendingRequests.expire();
+
+        pendingRequests.remove("KEY1").accept(response("KEY1"));
+        Thread.sleep(2 * TIMEOUT_MS);
+        pendingRequests.expire();
+
+        assertThat(future).isCompletedWithValue("value");
+    }
+
+    @Test
+    void failsEveryRequestWhenTheConnectionIsLost() {
+        CompletableFuture<String> first = register("KEY1");
+        CompletableFuture<String> second = register("KEY2");
+        CompletableFuture<String> watch = new CompletableFuture<>();
+        pendingRequests.putWatch("KEY3",
+                PendingRequest.of(watch, response -> watch.complete(response.getValueAsString())), 10 * TIMEOUT_MS);
+
+        assertThat(pendingRequests.failAll()).isEqualTo(3);
+
+        assertThat(first).isCompletedExceptionally();
+        assertThat(watch).isCompletedExceptionally();
+        assertThat(second).failsWithin(Duration.ZERO)
+                .withThrowableOfType(Exception.class)
+                .withCauseInstanceOf(ConnectionLostException.class);
+        assertThat(pendingRequests.remove("KEY1")).isNull();
+    }
+
+    @Test
+    void requestsForTheSameKeyAreAnsweredInOrder() {
+        CompletableFuture<String> first = register("KEY1");
+        CompletableFuture<String> second = register("KEY1");
+
+        pendingRequests.remove("KEY1").accept(response("KEY1", "first"));
+        assertThat(first).isCompletedWithValue("first");
+        assertThat(second).isNotDone();
+
+        pendingRequests.remove("KEY1").accept(response("KEY1", "second"));
+        assertThat(second).isCompletedWithValue("second");
+        assertThat(pendingRequests.remove("KEY1")).isNull();
+    }
+
+    @Test
+    void lateResponseOfATimedOutRequestIsNotTakenForTheNextOne() {
+        CompletableFuture<String> timedOut = register("KEY1");
+        await().atMost(Duration.ofSeconds(2)).until(() -> {
+            pendingRequests.expire();
+            return timedOut.isDone();
+        });
+        CompletableFuture<String> next = register("KEY1");
+
+        pendingRequests.remove("KEY1").accept(response("KEY1", "late"));
+        assertThat(next).isNotDone();
+
+        pendingRequests.remove("KEY1").accept(response("KEY1"));
+        assertThat(timedOut).isCompletedExceptionally();
+        assertThat(next).isCompletedWithValue("value");
+    }
+
+    @Test
+    void requestNeverAnsweredIsDroppedAfterAnotherTimeout() throws Exception {
+        CompletableFuture<String> lost = register("KEY1");
+        await().atMost(Duration.ofSeconds(2)).until(() -> {
+            pendingRequests.expire();
+            return lost.isDone();
+        });
+        Thread.sleep(2 * TIMEOUT_MS);
+        pendingRequests.expire();
+
+        CompletableFuture<String> next = register("KEY1");
+        pendingRequests.remove("KEY1").accept(response("KEY1"));
+        assertThat(next).isCompletedWithValue("value");
+    }
+
+    @Test
+    void requestsOfAKeyAreWrittenInTheOrderTheyAreQueued() throws Exception {
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        RequestSender sender = message -> written.add(message.getValueAsString());
+        List<CompletableFuture<String>> futures = Collections.synchronizedList(new ArrayList<>());
+        Map<CompletableFuture<String>, String> values = new ConcurrentHashMap<>();
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                String value = Integer.toString(i);
+                callers.execute(() -> {
+                    CompletableFuture<String> future = new CompletableFuture<>();
+                    values.put(future, value);
+                    futures.add(future);
+                    try {
+                        pendingRequests.send("KEY1", PendingRequest.of(future,
+                                response -> future.complete(response.getValueAsString())),
+                                sender, CacheProtocol.createAddMessage("KEY1", value));
+                    } catch (IOException e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+            }
+        } finally {
+            callers.shutdown();
+            assertThat(callers.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+
+        // The server answers in the order the requests were written
+        for (String value : written) {
+            pendingRequests.remove("KEY1").accept(response("KEY1", value));
+        }
+        assertThat(futures).hasSize(1000).allSatisfy(future ->
+                assertThat(future).isCompletedWithValue(values.get(future)));
+    }
+
+    @Test
+    void requestThatFailedToBeWrittenIsNotQueued() {
+        assertThatThrownBy(() -> pendingRequests.send("KEY1", response -> { }, message -> {
+            throw new IOException("closed");
+        }, CacheProtocol.createGetMessage("KEY1"))).isInstanceOf(IOException.class);
+
+        assertThat(pendingRequests.remove("KEY1")).isNull();
+    }
+
+    @Test
+    void watchGetsTheTimeTheServerHoldsIt() throws Exception {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        int watchId = pendingRequests.putWatch("KEY1",
+                PendingRequest.of(future, response -> future.complete(response.getValueAsString())), 10 * TIMEOUT_MS);
+
+        Thread.sleep(2 * TIMEOUT_MS);
+        pendingRequests.expire();
+        assertThat(future).isNotDone();
+
+        pendingRequests.removeWatch(watchId).accept(response("KEY1"));
+        assertThat(future).isCompletedWithValue("value");
+    }
+
+    @Test
+    void parkedWatchIsNotAnsweredByTheResponseToAnotherRequestOfItsKey() {
+        CompletableFuture<String> watch = new CompletableFuture<>();
+        int watchId = pendingRequests.putWatch("KEY1",
+                PendingRequest.of(watch, response -> watch.complete(response.getValueAsString())), 10 * TIMEOUT_MS);
+        CompletableFuture<String> get = register("KEY1");
+
+        pendingRequests.remove("KEY1").accept(response("KEY1", "get"));
+        assertThat(get).isCompletedWithValue("get");
+        assertThat(watch).isNotDone();
+
+        pendingRequests.removeWatch(watchId).accept(response("KEY1", "watched"));
+        assertThat(watch).isCompletedWithValue("watched");
+        assertThat(pendingRequests.removeWatch(watchId)).isNull();
+    }
+
+    private CompletableFuture<String> register(String key) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            pendingRequests.send(key,
+                    PendingRequest.of(future, response -> future.complete(response.getValueAsString())),
+                    message -> { }, CacheProtocol.createGetMessage(key));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return future;
+    }
+
+    private static CacheProtocol.Message response(String key) {
+        return response(key, "value");
+    }
+
+    private static CacheProtocol.Message response(String key, String value) {
+        return CacheProtocol.createResponseMessage(CacheProtocol.STATUS_OK, key.getBytes(), value.getBytes());
+    }
+}
@@ -0,0 +1,160 @@
+package org.global.dax.client;
+
+import org.global.dax.server.ServerMain;
+import org.global.dax.server.TestServers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@Tag("integration")
+class ShardedClientTest {
+
+    private static final int FIRST_PORT = 19191;
+    private static final int SERVER_COUNT = 3;
+
+    private final List<ServerMain> servers = new ArrayList<>();
+    private final List<InetSocketAddress> addresses = new ArrayList<>();
+    private ShardedClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (int i = 0; i < SERVER_COUNT; i++) {
+            addresses.add(startServer(FIRST_PORT + i));
+        }
+        client = new ShardedClient(addresses);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        servers.forEach(ServerMain::stop);
+    }
+
+    @Test
+    void routesKeysAcrossAllServers() throws Exception {
+        Map<String, String> entries = entries(200);
+
+        assertThat(client.addAll(entries).get(5, TimeUnit.SECONDS)).isTrue();
+
+        Set<InetSocketAddress> usedServers = new HashSet<>();
+        for (String key : entries.keySet()) {
+            usedServers.add(client.serverFor(key));
+            assertThat(client.get(key).get(5, TimeUnit.SECONDS)).isEqualTo(entries.get(key));
+        }
+        assertThat(usedServers).containsExactlyInAnyOrderElementsOf(addresses);
+    }
+
+    @Test
+    void mergesMultiKeyResultsFromEveryShard() throws Exception {
+        Map<String, String> entries = entries(50);
+        client.addAll(entries).get(5, TimeUnit.SECONDS);
+
+        List<String> keys = new ArrayList<>(entries.keySet());
+        keys.add("MISS");
+
+        assertThat(client.getAll(keys).get(5, TimeUnit.SECONDS)).isEqualTo(entries);
+        assertThat(client.getAllKeys().get(5, TimeUnit.SECONDS).lines()).hasSize(entries.size()).isSorted();
+
+        assertThat(client.deleteAll(entries.keySet()).get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(client.getAllKeys().get(5, TimeUnit.SECONDS)).isEqualTo("NO KEY IN CACHE");
+    }
+
+    @Test
+    void addingServerOnlyRemapsKeysToIt() throws Exception {
+        Map<String, String> entries = entries(200);
+        Map<String, InetSocketAddress> before = new HashMap<>();
+        entries.keySet().forEach(key -> before.put(key, client.serverFor(key)));
+
+        InetSocketAddress added = startServer(FIRST_PORT + SERVER_COUNT);
+        client.addServer(added);
+
+        for (String key : entries.keySet()) {
+            InetSocketAddress owner = client.serverFor(key);
+            assertThat(owner).isIn(before.get(key), added);
+        }
+    }
+
+    @Test
+    void notifiesListenersOfKeysOnTheirShardAndRangesOnEveryShard() throws Exception {
+        BlockingQueue<String> changes = new LinkedBlockingQueue<>();
+        KeyListener listener = (key, value) -> changes.add(key + "=" + value);
+
+        assertThat(client.subscribe("K000", listener).get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(client.subscribeRange("R", "S", listener).get(5, TimeUnit.SECONDS)).isTrue();
+
+        client.add("K000", "v1").get(5, TimeUnit.SECONDS);
+        assertThat(changes.poll(5, TimeUnit.SECONDS)).isEqualTo("K000=v1");
+        client.delete("K000").get(5, TimeUnit.SECONDS);
+        assertThat(changes.poll(5, TimeUnit.SECONDS)).isEqualTo("K000=null");
+
+        Map<String, String> entries = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            entries.put("R" + i, "v" + i);
+        }
+        client.addAll(entries).get(5, TimeUnit.SECONDS);
+        Set<String> notified = new HashSet<>();
+        for (int i = 0; i < entries.size(); i++) {
+            notified.add(changes.poll(5, TimeUnit.SECONDS));
+        }
+        assertThat(notified).hasSize(entries.size()).contains("R0=v0", "R19=v19");
+
+        assertThat(client.unsubscribe("K000").get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(client.unsubscribeRange("R", "S").get(5, TimeUnit.SECONDS)).isTrue();
+        client.add("K000", "v2").get(5, TimeUnit.SECONDS);
+        assertThat(changes.poll(200, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void routesTheKeysOfALostServerToTheOthersUntilItIsBack() throws Exception {
+        InetSocketAddress lost = addresses.get(0);
+        servers.get(0).stop();
+        await().atMost(Duration.ofSeconds(5)).until(() -> !routesKeysTo(lost));
+
+        Map<String, String> entries = entries(50);
+        assertThat(client.addAll(entries).get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(client.getAll(entries.keySet()).get(5, TimeUnit.SECONDS)).isEqualTo(entries);
+
+        startServer(lost.getPort());
+        await().atMost(Duration.ofSeconds(10)).until(() -> routesKeysTo(lost));
+        String key = entries(200).keySet().stream()
+                .filter(candidate -> client.serverFor(candidate).equals(lost))
+                .findFirst()
+                .orElseThrow();
+        assertThat(client.add(key, "back").get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(client.get(key).get(5, TimeUnit.SECONDS)).isEqualTo("back");
+    }
+
+    private boolean routesKeysTo(InetSocketAddress server) {
+        return entries(200).keySet().stream().anyMatch(key -> client.serverFor(key).equals(server));
+    }
+
+    private InetSocketAddress startServer(int port) {
+        servers.add(TestServers.start(port, null));
+        return TestServers.address(port);
+    }
+
+    private static Map<String, String> entries(int count) {
+        Map<String, String> entries = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            entries.put(String.format("K%03d", i), "value-" + i);
+        }
+        return entries;
+    }
+}
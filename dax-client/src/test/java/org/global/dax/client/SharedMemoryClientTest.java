@@ -0,0 +1,83 @@
+package org.global.dax.client;
+
+import org.global.dax.server.ServerConfig;
+import org.global.dax.server.ServerMain;
+import org.global.dax.server.TestServers;
+import org.global.dax.shared.ConnectionLostException;
+import org.global.dax.shared.WaitStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+@Tag("integration")
+class SharedMemoryClientTest {
+
+    private static final int PORT = 19293;
+
+    @TempDir
+    Path directory;
+
+    private ServerMain server;
+
+    @BeforeEach
+    void setUp() {
+        server = TestServers.start(new ServerConfig().withPort(PORT).withSharedMemory(directory, WaitStrategy.PARK));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void addsAndGetsValuesOverSharedMemory() throws Exception {
+        try (SharedMemoryClient client = new SharedMemoryClient(directory, WaitStrategy.PARK, 5000)) {
+            client.add("greeting", "hello".getBytes(StandardCharsets.UTF_8));
+
+            assertThat(new String(client.get("greeting"), StandardCharsets.UTF_8)).isEqualTo("hello");
+            assertThat(client.get("missing")).isNull();
+        }
+
+        // The server deletes the ring once it sees the client closed it
+        await().atMost(Duration.ofSeconds(2)).until(() -> {
+            try (var files = Files.list(directory)) {
+                return files.findAny().isEmpty();
+            }
+        });
+    }
+
+    @Test
+    void sendsValuesLargerThanTheRingInChunks() throws Exception {
+        byte[] value = new byte[3 * 1024 * 1024];
+        new Random(42).nextBytes(value);
+
+        try (SharedMemoryClient client = new SharedMemoryClient(directory, WaitStrategy.PARK, 5000)) {
+            client.add("large", value);
+
+            assertThat(client.get("large")).isEqualTo(value);
+        }
+    }
+
+    @Test
+    void failsRequestsOnceTheServerStopped() throws Exception {
+        try (SharedMemoryClient client = new SharedMemoryClient(directory, WaitStrategy.PARK, 5000)) {
+            client.add("key", "value".getBytes(StandardCharsets.UTF_8));
+            server.stop();
+
+            await().atMost(Duration.ofSeconds(2)).untilAsserted(() ->
+                    assertThatThrownBy(() -> client.get("key")).isInstanceOf(ConnectionLostException.class));
+        }
+    }
+}
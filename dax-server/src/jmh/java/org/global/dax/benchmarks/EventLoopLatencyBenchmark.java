@@ -0,0 +1,122 @@
+package org.global.dax.benchmarks;
+
+import org.global.dax.server.ServerConfig;
+import org.global.dax.server.ServerMain;
+import org.global.dax.shared.BusyPoll;
+import org.global.dax.shared.CacheProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a small GET over loopback TCP, with both event loops blocking in select (default) or busy polling.
+ *
+ * The client waits for the response the way {@code ClientMain} does in each mode: a blocking select, or
+ * {@code selectNow} polls backing off to parks. Sample time mode reports the percentiles, p50 and p99 are the
+ * ones to compare. Busy polling needs a core for each spinning loop, on fewer cores the loops steal the CPU from
+ * each other and the tail gets worse instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EventLoopLatencyBenchmark {
+
+    private static final int PORT = 19402;
+
+    @Param({"default", "busy-poll"})
+    public String mode;
+
+    private ServerMain server;
+    private BusyPoll busyPoll;
+    private SocketChannel channel;
+    private Selector selector;
+    private ByteBuffer request;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        busyPoll = "busy-poll".equals(mode) ? new BusyPoll() : null;
+        server = new ServerMain(new ServerConfig().withPort(PORT).withRequestLogging(false).withBusyPoll(busyPoll));
+        Thread thread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, "server-" + PORT);
+        thread.setDaemon(true);
+        thread.start();
+
+        channel = connect();
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+
+        request = CacheProtocol.encode(CacheProtocol.createGetMessage("key"));
+        CacheProtocol.sendMessage(channel, CacheProtocol.createAddMessage("key", "value"));
+        receive();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        selector.close();
+        channel.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public CacheProtocol.Message get() throws IOException {
+        CacheProtocol.sendEncoded(channel, request);
+        return receive();
+    }
+
+    private SocketChannel connect() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            SocketChannel tcp = SocketChannel.open();
+            try {
+                if (busyPoll != null) {
+                    busyPoll.configure(tcp);
+                }
+                tcp.connect(new InetSocketAddress("localhost", PORT));
+                return tcp;
+            } catch (IOException e) {
+                tcp.close();
+                // Server still starting
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private CacheProtocol.Message receive() throws IOException {
+        int idlePolls = 0;
+        CacheProtocol.Message response;
+        while ((response = CacheProtocol.readMessage(channel, buffer)) == null) {
+            if (busyPoll == null) {
+                selector.select();
+            } else if (selector.selectNow() == 0) {
+                busyPoll.idle(idlePolls++);
+            }
+            selector.selectedKeys().clear();
+        }
+        return response;
+    }
+}
@@ -0,0 +1,98 @@
+package org.global.dax.benchmarks;
+
+import org.global.dax.server.ServerConfig;
+import org.global.dax.server.ServerMain;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.SharedMemoryChannel;
+import org.global.dax.shared.WaitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a small GET through the server loop over a shared memory ring, both sides spinning or parking.
+ * Compare with {@link TransportBenchmark}; spinning needs a core for each side to make sense.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SharedMemoryBenchmark {
+
+    private static final int PORT = 19401;
+
+    @Param({"BUSY_SPIN", "PARK"})
+    public WaitStrategy waitStrategy;
+
+    private ServerMain server;
+    private SharedMemoryChannel channel;
+    private ByteBuffer request;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // The server logs every request, which would dominate the round trip
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        Path directory = Files.createTempDirectory("dax-bench");
+        server = new ServerMain(new ServerConfig().withPort(PORT).withSharedMemory(directory, waitStrategy));
+        Thread thread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, "server-" + PORT);
+        thread.setDaemon(true);
+        thread.start();
+
+        // Picked up by the server on its next directory scan
+        channel = SharedMemoryChannel.create(directory, "bench", SharedMemoryChannel.DEFAULT_CAPACITY);
+        request = CacheProtocol.encode(CacheProtocol.createGetMessage("key"));
+        send(CacheProtocol.encode(CacheProtocol.createAddMessage("key", "value")));
+        receive();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        channel.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public CacheProtocol.Message get() throws IOException {
+        send(request);
+        return receive();
+    }
+
+    private void send(ByteBuffer frame) throws IOException {
+        ByteBuffer remaining = frame.duplicate();
+        for (int idleCount = 0; remaining.hasRemaining(); idleCount++) {
+            if (channel.write(remaining) == 0) {
+                waitStrategy.idle(idleCount);
+            }
+        }
+    }
+
+    private CacheProtocol.Message receive() throws IOException {
+        CacheProtocol.Message response;
+        for (int idleCount = 0; (response = CacheProtocol.readMessage(channel, buffer)) == null; idleCount++) {
+            waitStrategy.idle(idleCount);
+        }
+        return response;
+    }
+}
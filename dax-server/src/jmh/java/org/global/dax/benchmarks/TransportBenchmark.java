@@ -0,0 +1,112 @@
+package org.global.dax.benchmarks;
+
+import org.global.dax.server.ServerConfig;
+import org.global.dax.server.ServerMain;
+import org.global.dax.shared.CacheProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a small GET through the server loop, over loopback TCP or a Unix domain socket.
+ *
+ * Run with {@code -prof perfnorm} (Linux) to compare the CPU cycles spent per request on top of the latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransportBenchmark {
+
+    private static final int PORT = 19400;
+
+    @Param({"tcp", "unix"})
+    public String transport;
+
+    private ServerMain server;
+    private Path socketPath;
+    private SocketChannel channel;
+    private ByteBuffer request;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // The server logs every request, which would dominate the round trip
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        socketPath = Files.createTempDirectory("dax-bench").resolve("dax.sock");
+        server = new ServerMain(new ServerConfig().withPort(PORT).withUnixSocketPath(socketPath));
+        Thread thread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, "server-" + PORT);
+        thread.setDaemon(true);
+        thread.start();
+
+        channel = connect();
+        request = CacheProtocol.encode(CacheProtocol.createGetMessage("key"));
+        CacheProtocol.sendMessage(channel, CacheProtocol.createAddMessage("key", "value"));
+        receive();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        channel.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public CacheProtocol.Message get() throws IOException {
+        CacheProtocol.sendEncoded(channel, request);
+        return receive();
+    }
+
+    private SocketChannel connect() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            try {
+                if ("unix".equals(transport)) {
+                    return SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+                }
+                SocketChannel tcp = SocketChannel.open(new InetSocketAddress("localhost", PORT));
+                tcp.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                return tcp;
+            } catch (IOException e) {
+                // Server still starting
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private CacheProtocol.Message receive() throws IOException {
+        CacheProtocol.Message response;
+        while ((response = CacheProtocol.readMessage(channel, buffer)) == null) {
+            // blocking channel, keep reading until the response is complete
+        }
+        return response;
+    }
+}
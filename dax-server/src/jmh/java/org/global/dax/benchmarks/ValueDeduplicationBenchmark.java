@@ -0,0 +1,87 @@
+package org.global.dax.benchmarks;
+
+import org.global.dax.store.CacheStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ADD throughput of the store with and without value deduplication, over a corpus where most values are copies of
+ * a few common ones: empty JSON objects, a handful of default configs, and a share of unique values.
+ *
+ * Every write gets its own array, as a value decoded from a request does. The bytes saved by the deduplication
+ * are printed at the end of each trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ValueDeduplicationBenchmark {
+
+    private static final int KEYS = 10_000;
+    private static final int DEFAULT_CONFIGS = 4;
+
+    @Param({"false", "true"})
+    public boolean deduplicate;
+
+    private CacheStore store;
+    private String[] keys;
+    private byte[][] values;
+    private long valueBytes;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        byte[][] configs = new byte[DEFAULT_CONFIGS][];
+        for (int i = 0; i < DEFAULT_CONFIGS; i++) {
+            configs[i] = ("{\"version\": " + i + ", \"retries\": 3, \"timeoutMs\": 2500, \"endpoints\": "
+                    + "[\"https://a.example.com\", \"https://b.example.com\"], \"features\": {\"search\": true, "
+                    + "\"export\": false, \"beta\": false}, \"padding\": \"" + "x".repeat(120) + "\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+
+        keys = new String[KEYS];
+        values = new byte[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "key:" + i;
+            int kind = random.nextInt(10);
+            if (kind < 4) {
+                values[i] = "{}".getBytes(StandardCharsets.UTF_8); // 40% empty objects
+            } else if (kind < 7) {
+                values[i] = configs[random.nextInt(DEFAULT_CONFIGS)].clone(); // 30% default configs
+            } else {
+                values[i] = new byte[200]; // 30% unique
+                random.nextBytes(values[i]);
+            }
+            valueBytes += values[i].length;
+        }
+
+        store = new CacheStore(deduplicate);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (store.getValuePool() != null) {
+            System.out.println("values: " + valueBytes + " bytes, deduplicated: " + store.getValuePool().getSavedBytes()
+                    + " bytes, unique values: " + store.getValuePool().getUniqueValues());
+        }
+    }
+
+    @Benchmark
+    public byte[] add() {
+        int i = next;
+        next = (i + 1) % KEYS;
+        return store.put(keys[i], values[i].clone());
+    }
+}
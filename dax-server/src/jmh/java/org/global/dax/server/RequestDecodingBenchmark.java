@@ -0,0 +1,82 @@
+package org.global.dax.server;
+
+import org.global.dax.handlers.CacheMessageHandler;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.FrameView;
+import org.global.dax.shared.SharedMemoryChannel;
+import org.global.dax.store.CacheStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A GET going through the server side of a connection on the benchmark thread: the request frame is decoded from
+ * the read buffer, looked up and answered, either in place or through a decoded message.
+ *
+ * Run with {@code -prof gc}: gc.alloc.rate.norm is the allocation per GET, 0 B/op for the in-place path.
+ * Lives in the server package to build a {@link Connection} without the selector loop, the frames go through a
+ * shared memory channel the benchmark plays the client of.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestDecodingBenchmark {
+
+    @Param({"in-place", "message"})
+    public String path;
+
+    private SharedMemoryChannel client;
+    private SharedMemoryChannel server;
+    private Connection connection;
+    private CacheMessageHandler handler;
+    private final FrameView frame = new FrameView();
+    private ByteBuffer request;
+    private final ByteBuffer response = ByteBuffer.allocate(64 * 1024);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        client = SharedMemoryChannel.create(Files.createTempDirectory("dax-bench"), "bench", SharedMemoryChannel.DEFAULT_CAPACITY);
+        server = SharedMemoryChannel.open(client.getPath());
+        connection = new Connection(server, ByteBuffer.allocate(64 * 1024), new AdmissionControl(new ServerConfig()));
+
+        CacheStore cache = new CacheStore();
+        cache.put("user:1234", new byte[100]);
+        handler = new CacheMessageHandler(cache, false, null, null, null, false, null);
+        request = CacheProtocol.encode(CacheProtocol.createGetMessage("user:1234"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public int get() throws IOException {
+        request.rewind();
+        client.write(request);
+
+        if ("in-place".equals(path)) {
+            CacheProtocol.readFrame(server, connection.getReadBuffer(), frame);
+            handler.handleInPlace(frame, connection);
+            frame.release();
+        } else {
+            handler.handleMessage(CacheProtocol.readMessage(server, connection.getReadBuffer()), connection);
+        }
+
+        response.clear();
+        return client.read(response);
+    }
+}
@@ -0,0 +1,58 @@
+package org.global.dax.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A request served by the server loop, from the moment its frame was read to the moment its response was written
+ * or queued, with the time spent in each phase.
+ *
+ * Responses sent later, like full scans or values loaded from the backend, are not part of the request.
+ */
+@Category({"Dax", "Server"})
+@StackTrace(false)
+public abstract class AbstractRequestEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Key")
+    public String key;
+
+    @Label("Client")
+    public String client;
+
+    @Label("Request Size")
+    @Description("Bytes of the request frame, the last one for a value sent in chunks")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Response Size")
+    @Description("Bytes of the responses written or queued while serving the request")
+    @DataAmount
+    public long responseBytes;
+
+    @Label("Decode Time")
+    @Description("Time building the request message from its frames, zero for a request served in place")
+    @Timespan
+    public long decodeTime;
+
+    @Label("Handle Time")
+    @Description("Time in the handler and the store, encoding and writing the response excluded")
+    @Timespan
+    public long handleTime;
+
+    @Label("Encode Time")
+    @Timespan
+    public long encodeTime;
+
+    @Label("Write Time")
+    @Description("Time in socket writes, a long write time means a blocked write")
+    @Timespan
+    public long writeTime;
+}
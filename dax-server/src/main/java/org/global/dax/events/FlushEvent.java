@@ -0,0 +1,31 @@
+package org.global.dax.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Responses queued behind a full socket, written once the socket accepts data again
+ */
+@Name("org.global.dax.Flush")
+@Label("Queued Responses Flush")
+@Category({"Dax", "Server"})
+@StackTrace(false)
+public final class FlushEvent extends Event {
+
+    @Label("Client")
+    public String client;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long writtenBytes;
+
+    @Label("Bytes Still Queued")
+    @Description("Left queued because the socket was full again, the client reads its responses too slowly")
+    @DataAmount
+    public long queuedBytes;
+}
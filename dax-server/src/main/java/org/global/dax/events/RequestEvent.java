@@ -0,0 +1,15 @@
+package org.global.dax.events;
+
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Every request served, disabled by default: turn it on for a short recording, with a threshold of 0 it records
+ * each request of the server
+ */
+@Name("org.global.dax.Request")
+@Label("Request")
+@Enabled(false)
+public final class RequestEvent extends AbstractRequestEvent {
+}
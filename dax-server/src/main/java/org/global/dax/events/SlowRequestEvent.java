@@ -0,0 +1,14 @@
+package org.global.dax.events;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Requests served slower than the threshold, cheap enough to record continuously
+ */
+@Name("org.global.dax.SlowRequest")
+@Label("Slow Request")
+@Threshold("1 ms")
+public final class SlowRequestEvent extends AbstractRequestEvent {
+}
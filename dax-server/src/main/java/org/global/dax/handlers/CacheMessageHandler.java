@@ -1,52 +1,215 @@
 package org.global.dax.handlers;
 
+import org.global.dax.hotkeys.EncodedResponseCache;
+import org.global.dax.hotkeys.HotKeyTracker;
+import org.global.dax.loader.ReadThrough;
+import org.global.dax.server.Connection;
 import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.FrameView;
+import org.global.dax.shared.KeyView;
 import org.global.dax.shared.MessageHandler;
+import org.global.dax.store.CacheEntry;
+import org.global.dax.store.CacheStore;
+import org.global.dax.tracking.InvalidationTracker;
 
 import java.io.IOException;
-import java.nio.channels.SocketChannel;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.StringJoiner;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 // Message handler implementation for cache operations
-public class CacheMessageHandler implements MessageHandler {
+public class CacheMessageHandler implements MessageHandler<Connection> {
 
-    private final Map<String, byte[]> cache;
+    private final CacheStore cache;
 
-    public CacheMessageHandler(Map<String, byte[]> cache) {
+    // Replicas only serve reads, their store is written by the replication stream
+    private final boolean readOnly;
+
+    // Records the keys read by connections holding a near cache, may be null
+    private final InvalidationTracker invalidationTracker;
+
+    // Runs full scans off the selector thread and hands their responses back to it, both null to scan inline
+    private final Executor scanExecutor;
+    private final Executor selectorExecutor;
+
+    // Whether each request is logged, formatting the lines allocates
+    private final boolean logRequests;
+
+    // Loads the keys a GET misses from the backend, null to answer a miss with STATUS_NOT_FOUND
+    private final ReadThrough readThrough;
+
+    // Hot keys get their GET response encoded once and shared until the key changes
+    private final EncodedResponseCache encodedResponses = new EncodedResponseCache();
+    private final HotKeyTracker hotKeys = new HotKeyTracker(encodedResponses::remove);
+
+    public CacheMessageHandler(CacheStore cache) {
+        this(cache, false, null, null, null, true, null);
+    }
+
+    public CacheMessageHandler(CacheStore cache, boolean readOnly, InvalidationTracker invalidationTracker,
+                               Executor scanExecutor, Executor selectorExecutor, boolean logRequests,
+                               ReadThrough readThrough) {
         this.cache = cache;
+        this.readOnly = readOnly;
+        this.invalidationTracker = invalidationTracker;
+        this.scanExecutor = scanExecutor;
+        this.selectorExecutor = selectorExecutor;
+        this.logRequests = logRequests;
+        this.readThrough = readThrough;
+        cache.addListener(encodedResponses);
+    }
+
+    public HotKeyTracker getHotKeys() {
+        return hotKeys;
+    }
+
+    public EncodedResponseCache getEncodedResponses() {
+        return encodedResponses;
     }
 
     @Override
-    public void handleMessage(CacheProtocol.Message message, SocketChannel channel) throws IOException {
+    public void handleMessage(CacheProtocol.Message message, Connection connection) throws IOException {
         try {
             switch (message.getOperation()) {
                 case CacheProtocol.OP_ADD:
-                    handleAddOperation(message, channel);
+                    if (readOnly) {
+                        sendReadOnlyResponse(message, connection);
+                        break;
+                    }
+                    handleAddOperation(message, connection);
                     break;
 
                 case CacheProtocol.OP_GET:
-                    handleGetOperation(message, channel);
+                    handleGetOperation(message, connection);
                     break;
 
                 case CacheProtocol.OP_REMOVE:
-                    handleRemoveOperation(message, channel);
+                    if (readOnly) {
+                        sendReadOnlyResponse(message, connection);
+                        break;
+                    }
+                    handleRemoveOperation(message, connection);
                     break;
 
                 case CacheProtocol.OP_HEARTBEAT:
-                    handleHeartbeatOperation(channel);
+                    handleHeartbeatOperation(connection);
+                    break;
+
+                case CacheProtocol.OP_GETS:
+                    handleGetsOperation(message, connection);
+                    break;
+
+                case CacheProtocol.OP_RANGE:
+                    runScan(message, connection, () -> createRangeResponse(message));
+                    break;
+
+                case CacheProtocol.OP_CAS:
+                case CacheProtocol.OP_INCR:
+                case CacheProtocol.OP_DECR:
+                case CacheProtocol.OP_GETSET:
+                    if (readOnly) {
+                        sendReadOnlyResponse(message, connection);
+                        break;
+                    }
+                    handleAtomicOperation(message, connection);
                     break;
 
                 default:
-                    sendErrorResponse(channel, "Unsupported operation: " + message.getOperation());
+                    sendErrorResponse(message, connection, "Unsupported operation: " + message.getOperation());
             }
         } catch (Exception e) {
-            sendErrorResponse(channel, "Server error: " + e.getMessage());
+            sendErrorResponse(message, connection, "Server error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Serves a GET or a REMOVE straight from its frame in the read buffer, without decoding it into a message:
+     * the key is looked up in place and the response encoded into the connection, so such a request allocates
+     * nothing. Returns false, having done nothing, for a request that needs {@link #handleMessage} instead.
+     */
+    public boolean handleInPlace(FrameView frame, Connection connection) throws IOException {
+        switch (frame.getOperation()) {
+            case CacheProtocol.OP_GET:
+                return handleGetInPlace(frame.getKey(), connection);
+
+            case CacheProtocol.OP_REMOVE:
+                return !readOnly && handleRemoveInPlace(frame.getKey(), connection);
+
+            default:
+                return false;
+        }
+    }
+
+    private boolean handleGetInPlace(KeyView key, Connection connection) throws IOException {
+        // GET ALL scans the store, large values may need chunks
+        if (key.equalsIgnoreCase("ALL")) {
+            return false;
+        }
+        byte[] value = cache.get(key);
+        // A miss waits for the loader, its response is sent once the frame is gone
+        if (value == null && readThrough != null) {
+            return false;
+        }
+        if (!connection.fitsResponseBuffer(key, value != null ? value.length : 0)) {
+            return false;
+        }
+
+        boolean hot = hotKeys.record(key);
+        if (value == null) {
+            connection.sendResponse(CacheProtocol.STATUS_NOT_FOUND, key, null);
+            if (logRequests) {
+                System.out.println("Key not found: " + key);
+            }
+            return true;
+        }
+
+        if (invalidationTracker != null && invalidationTracker.isTracking(connection)) {
+            invalidationTracker.onRead(key.toString(), connection);
+        }
+
+        if (hot) {
+            ByteBuffer frame = encodedResponses.get(key);
+            if (frame == null) {
+                frame = ByteBuffer.allocate(CacheProtocol.HEADER_SIZE + key.size() + 1 + value.length);
+                CacheProtocol.encodeResponse(frame, CacheProtocol.STATUS_OK, key, value);
+                frame = frame.flip().asReadOnlyBuffer();
+                encodedResponses.put(key.toString(), frame);
+            }
+            connection.sendCopy(frame);
+        } else {
+            connection.sendResponse(CacheProtocol.STATUS_OK, key, value);
         }
+
+        if (logRequests) {
+            System.out.println("Retrieved key: " + key + ", value size: " + value.length + " bytes");
+        }
+        return true;
     }
 
-    private void handleAddOperation(CacheProtocol.Message message, SocketChannel channel) throws IOException {
+    private boolean handleRemoveInPlace(KeyView key, Connection connection) throws IOException {
+        if (!connection.fitsResponseBuffer(key, 0)) {
+            return false;
+        }
+
+        if (cache.remove(key) != null) {
+            connection.sendResponse(CacheProtocol.STATUS_OK, key, null);
+            if (logRequests) {
+                System.out.println("Removed key: " + key);
+            }
+        } else {
+            connection.sendResponse(CacheProtocol.STATUS_NOT_FOUND, key, null);
+            if (logRequests) {
+                System.out.println("Remove failed, key not found: " + key);
+            }
+        }
+        return true;
+    }
+
+    private void handleAddOperation(CacheProtocol.Message message, Connection connection) throws IOException {
         String key = message.getKeyAsString();
         byte[] value = message.getValue();
 
@@ -59,37 +222,47 @@ public class CacheMessageHandler implements MessageHandler {
                 message.getKey(),
                 new byte[]{CacheProtocol.STATUS_OK});
 
-        CacheProtocol.sendMessage(channel, response);
-        System.out.println("Added key: " + key + ", value size: " + value.length + " bytes");
+        connection.send(response);
+        log("Added key: " + key + ", value size: " + value.length + " bytes");
     }
 
-    private void handleGetOperation(CacheProtocol.Message message, SocketChannel channel) throws IOException {
+    private void handleGetOperation(CacheProtocol.Message message, Connection connection) throws IOException {
         String key = message.getKeyAsString();
         CacheProtocol.Message response;
 
         if ("ALL".equalsIgnoreCase(key)) {
-            byte[] value;
-            if (cache.isEmpty()) {
-                value = "NO KEY IN CACHE".getBytes();
-            } else {
-                value = convertMaptoString(cache).getBytes();
+            runScan(message, connection, () -> createGetAllResponse(message));
+            return;
+        }
+
+        boolean hot = hotKeys.record(key);
+        if (hot) {
+            ByteBuffer frame = encodedResponses.get(key);
+            if (frame != null) {
+                if (invalidationTracker != null) {
+                    invalidationTracker.onRead(key, connection);
+                }
+                connection.send(frame);
+                return;
             }
-            // Create response with value
-            byte[] responseValue = new byte[value.length + 1];
-            responseValue[0] = CacheProtocol.STATUS_OK;
-            System.arraycopy(value, 0, responseValue, 1, value.length);
+        }
 
-            response = CacheProtocol.createResponseMessage(
-                    CacheProtocol.STATUS_OK,
-                    message.getKey(),
-                    responseValue);
+        byte[] value = cache.get(key);
 
-            System.out.println("Retrieved all cache keys");
-            CacheProtocol.sendMessage(channel, response);
+        if (value == null && readThrough != null) {
+            readThrough.load(key, (loaded, failure) -> sendLoadedValue(message, connection, loaded, failure));
             return;
         }
-        byte[] value = cache.get(key);
 
+        if (value != null && CacheProtocol.CHUNK_SIZE < value.length + 1) {
+            // Too large for one frame, sent in chunks straight from the stored value
+            if (invalidationTracker != null) {
+                invalidationTracker.onRead(key, connection);
+            }
+            log("Retrieved key: " + key + ", value size: " + value.length + " bytes, chunked");
+            connection.send(CacheProtocol.encodeResponseFrames(CacheProtocol.STATUS_OK, message.getKey(), value));
+            return;
+        }
 
         if (value != null) {
             // Create response with value
@@ -102,7 +275,18 @@ public class CacheMessageHandler implements MessageHandler {
                     message.getKey(),
                     responseValue);
 
-            System.out.println("Retrieved key: " + key + ", value size: " + value.length + " bytes");
+            if (invalidationTracker != null) {
+                invalidationTracker.onRead(key, connection);
+            }
+
+            log("Retrieved key: " + key + ", value size: " + value.length + " bytes");
+
+            if (hot) {
+                ByteBuffer frame = CacheProtocol.encode(response);
+                encodedResponses.put(key, frame);
+                connection.send(frame);
+                return;
+            }
         } else {
             // Key not found
             response = CacheProtocol.createResponseMessage(
@@ -110,19 +294,143 @@ public class CacheMessageHandler implements MessageHandler {
                     message.getKey(),
                     new byte[]{CacheProtocol.STATUS_NOT_FOUND});
 
-            System.out.println("Key not found: " + key);
+            log("Key not found: " + key);
+        }
+
+        connection.send(response);
+    }
+
+    /**
+     * Answers a GET that missed the store once the loader is done with its key, on the selector thread
+     */
+    private void sendLoadedValue(CacheProtocol.Message message, Connection connection, byte[] value, Exception failure) {
+        if (!connection.isOpen()) {
+            return;
         }
+        String key = message.getKeyAsString();
+        try {
+            if (failure != null) {
+                sendResponse(message, connection, CacheProtocol.STATUS_ERROR,
+                        ("Failed to load key: " + failure.getMessage()).getBytes(StandardCharsets.UTF_8));
+                log("Failed to load key: " + key);
+            } else if (value == null) {
+                sendResponse(message, connection, CacheProtocol.STATUS_NOT_FOUND, new byte[0]);
+                log("Key not found: " + key);
+            } else {
+                if (invalidationTracker != null) {
+                    invalidationTracker.onRead(key, connection);
+                }
+                if (CacheProtocol.CHUNK_SIZE < value.length + 1) {
+                    connection.send(CacheProtocol.encodeResponseFrames(CacheProtocol.STATUS_OK, message.getKey(), value));
+                } else {
+                    sendResponse(message, connection, CacheProtocol.STATUS_OK, value);
+                }
+                log("Loaded key: " + key + ", value size: " + value.length + " bytes");
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to send loaded value: " + e.getMessage());
+        } catch (RuntimeException e) {
+            sendFailure(message, connection, e);
+        }
+    }
+
+    /**
+     * Sends the response of a scan of the store. A scan can take seconds on a large cache, it runs off the
+     * selector thread when there is a scan executor. The store is concurrent, the scan sees a weakly consistent
+     * view of it.
+     */
+    private void runScan(CacheProtocol.Message message, Connection connection, Supplier<CacheProtocol.Message> scan)
+            throws IOException {
+        if (scanExecutor == null) {
+            connection.send(scan.get());
+            return;
+        }
+
+        scanExecutor.execute(() -> {
+            CacheProtocol.Message scanResponse;
+            try {
+                scanResponse = scan.get();
+            } catch (Exception e) {
+                scanResponse = CacheProtocol.createErrorMessage(message.getKey(), "Server error: " + e.getMessage());
+            }
+            CacheProtocol.Message result = scanResponse;
+            selectorExecutor.execute(() -> {
+                try {
+                    if (connection.isOpen()) {
+                        connection.send(result);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Failed to send scan response: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    sendFailure(message, connection, e);
+                }
+            });
+        });
+    }
+
+    /**
+     * Answers with an error a request that failed on a selector callback, out of the reach of
+     * {@link #handleMessage}
+     */
+    private void sendFailure(CacheProtocol.Message message, Connection connection, RuntimeException failure) {
+        try {
+            sendErrorResponse(message, connection, "Server error: " + failure.getMessage());
+        } catch (IOException e) {
+            System.err.println("Failed to send error response: " + e.getMessage());
+        }
+    }
+
+    private CacheProtocol.Message createGetAllResponse(CacheProtocol.Message message) {
+        byte[] value;
+        if (cache.isEmpty()) {
+            value = "NO KEY IN CACHE".getBytes();
+        } else {
+            value = convertKeysToString(cache.sortedKeys()).getBytes();
+        }
+        // Create response with value
+        byte[] responseValue = new byte[value.length + 1];
+        responseValue[0] = CacheProtocol.STATUS_OK;
+        System.arraycopy(value, 0, responseValue, 1, value.length);
+
+        log("Retrieved all cache keys");
+        return CacheProtocol.createResponseMessage(
+                CacheProtocol.STATUS_OK,
+                message.getKey(),
+                responseValue);
+    }
+
+    /**
+     * Lists the keys in [key, value) of the request, an empty value leaving the range open ended
+     */
+    private CacheProtocol.Message createRangeResponse(CacheProtocol.Message message) {
+        String from = message.getKeyAsString() != null ? message.getKeyAsString() : "";
+        String to = message.getValue() != null && message.getValue().length > 0 ? message.getValueAsString() : null;
+        byte[] value = convertKeysToString(cache.keysBetween(from, to)).getBytes(StandardCharsets.UTF_8);
 
-        CacheProtocol.sendMessage(channel, response);
+        byte[] responseValue = new byte[value.length + 1];
+        responseValue[0] = CacheProtocol.STATUS_OK;
+        System.arraycopy(value, 0, responseValue, 1, value.length);
+
+        log("Listed keys from " + from + " to " + (to != null ? to : "the end"));
+        return CacheProtocol.createResponseMessage(CacheProtocol.STATUS_OK, message.getKey(), responseValue);
     }
 
-    public String convertMaptoString(Map<String, byte[]> map) {
-        return map.keySet().stream().sorted()
-                .map(key -> key + ": " + new String(map.get(key)))
-                .collect(Collectors.joining(System.lineSeparator()));
+    /**
+     * One "key: value" line per key, in the order of the keys, skipping keys removed since they were listed.
+     * Demoted values are peeked from disk, a listing must not pull the whole store back in memory.
+     */
+    public String convertKeysToString(Collection<String> keys) {
+        StringJoiner lines = new StringJoiner(System.lineSeparator());
+        for (String key : keys) {
+            byte[] value = cache.peek(key);
+            if (value != null) {
+                lines.add(key + ": " + new String(value));
+            }
+        }
+        return lines.toString();
     }
 
-    private void handleRemoveOperation(CacheProtocol.Message message, SocketChannel channel) throws IOException {
+    private void handleRemoveOperation(CacheProtocol.Message message, Connection connection) throws IOException {
         String key = message.getKeyAsString();
         byte[] removedValue = cache.remove(key);
 
@@ -134,7 +442,7 @@ public class CacheMessageHandler implements MessageHandler {
                     message.getKey(),
                     new byte[]{CacheProtocol.STATUS_OK});
 
-            System.out.println("Removed key: " + key);
+            log("Removed key: " + key);
         } else {
             // Key not found
             response = CacheProtocol.createResponseMessage(
@@ -142,25 +450,139 @@ public class CacheMessageHandler implements MessageHandler {
                     message.getKey(),
                     new byte[]{CacheProtocol.STATUS_NOT_FOUND});
 
-            System.out.println("Remove failed, key not found: " + key);
+            log("Remove failed, key not found: " + key);
         }
 
-        CacheProtocol.sendMessage(channel, response);
+        connection.send(response);
     }
 
-    private void handleHeartbeatOperation(SocketChannel channel) throws IOException {
+    private void handleGetsOperation(CacheProtocol.Message message, Connection connection) throws IOException {
+        String key = message.getKeyAsString();
+        CacheEntry entry = cache.getEntry(key);
+
+        if (entry == null) {
+            sendResponse(message, connection, CacheProtocol.STATUS_NOT_FOUND, new byte[0]);
+            log("Key not found: " + key);
+            return;
+        }
+
+        if (invalidationTracker != null) {
+            invalidationTracker.onRead(key, connection);
+        }
+        sendResponse(message, connection, CacheProtocol.STATUS_OK, ByteBuffer.allocate(CacheProtocol.VERSION_SIZE + entry.getValue().length)
+                .putLong(entry.getVersion())
+                .put(entry.getValue())
+                .array());
+        log("Retrieved key: " + key + ", version: " + entry.getVersion());
+    }
+
+    /**
+     * CAS, INCR, DECR and GETSET, each one is a single atomic update of the key in the store
+     */
+    private void handleAtomicOperation(CacheProtocol.Message message, Connection connection) throws IOException {
+        String key = message.getKeyAsString();
+        byte[] value = message.getValue();
+
+        switch (message.getOperation()) {
+            case CacheProtocol.OP_CAS: {
+                if (value.length < CacheProtocol.VERSION_SIZE) {
+                    sendResponse(message, connection, CacheProtocol.STATUS_ERROR, "Missing CAS version".getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                long expectedVersion = ByteBuffer.wrap(value).getLong();
+                byte[] newValue = Arrays.copyOfRange(value, CacheProtocol.VERSION_SIZE, value.length);
+
+                CacheEntry written = cache.compareAndSet(key, expectedVersion, newValue);
+                if (written != null) {
+                    sendResponse(message, connection, CacheProtocol.STATUS_OK, versionBytes(written.getVersion()));
+                    log("CAS succeeded on key: " + key + ", version: " + written.getVersion());
+                } else {
+                    // Informative only, the key may have changed again since the failed attempt
+                    CacheEntry current = cache.getEntry(key);
+                    long currentVersion = current != null ? current.getVersion() : CacheEntry.NO_VERSION;
+                    sendResponse(message, connection, CacheProtocol.STATUS_CONFLICT, versionBytes(currentVersion));
+                    log("CAS conflict on key: " + key + ", expected version: " + expectedVersion);
+                }
+                return;
+            }
+
+            case CacheProtocol.OP_INCR:
+            case CacheProtocol.OP_DECR: {
+                long delta;
+                try {
+                    delta = value.length == 0 ? 1 : Long.parseLong(new String(value, StandardCharsets.US_ASCII));
+                    if (message.getOperation() == CacheProtocol.OP_DECR) {
+                        delta = Math.negateExact(delta);
+                    }
+                    CacheEntry updated = cache.increment(key, delta);
+                    sendResponse(message, connection, CacheProtocol.STATUS_OK, updated.getValue());
+                    log("Incremented key: " + key + " by " + delta);
+                } catch (NumberFormatException e) {
+                    sendResponse(message, connection, CacheProtocol.STATUS_ERROR, "Value is not an integer".getBytes(StandardCharsets.UTF_8));
+                } catch (ArithmeticException e) {
+                    sendResponse(message, connection, CacheProtocol.STATUS_ERROR, "Increment overflows".getBytes(StandardCharsets.UTF_8));
+                }
+                return;
+            }
+
+            case CacheProtocol.OP_GETSET: {
+                CacheEntry previous = cache.getAndSet(key, value);
+                if (previous != null) {
+                    sendResponse(message, connection, CacheProtocol.STATUS_OK, previous.getValue());
+                } else {
+                    sendResponse(message, connection, CacheProtocol.STATUS_NOT_FOUND, new byte[0]);
+                }
+                log("Replaced key: " + key + ", value size: " + value.length + " bytes");
+                return;
+            }
+
+            default:
+                sendErrorResponse(message, connection, "Unsupported operation: " + message.getOperation());
+        }
+    }
+
+    private static byte[] versionBytes(long version) {
+        return ByteBuffer.allocate(CacheProtocol.VERSION_SIZE).putLong(version).array();
+    }
+
+    private void handleHeartbeatOperation(Connection connection) throws IOException {
         // Heartbeat
         CacheProtocol.Message response  = CacheProtocol.createResponseMessage(
                 CacheProtocol.STATUS_OK,
                 "heartbeat".getBytes(StandardCharsets.UTF_8),
                 new byte[]{CacheProtocol.STATUS_OK});
 
-        System.out.println("Heartbeat operation executed on server");
-        CacheProtocol.sendMessage(channel, response);
+        log("Heartbeat operation executed on server");
+        connection.send(response);
     }
 
-    private void sendErrorResponse(SocketChannel channel, String errorMessage) throws IOException {
-        CacheProtocol.Message response = CacheProtocol.createErrorMessage(errorMessage);
-        CacheProtocol.sendMessage(channel, response);
+    private void sendReadOnlyResponse(CacheProtocol.Message message, Connection connection) throws IOException {
+        // Answer against the request key so the client can resolve its pending request
+        byte[] reason = "Read-only replica, send writes to the primary".getBytes(StandardCharsets.UTF_8);
+        sendResponse(message, connection, CacheProtocol.STATUS_ERROR, reason);
+        log("Rejected write on read-only replica: " + message.getKeyAsString());
+    }
+
+    /**
+     * Sends a response to the request key, the status goes in front of the body
+     */
+    private void sendResponse(CacheProtocol.Message message, Connection connection, byte status, byte[] body) throws IOException {
+        byte[] responseValue = new byte[body.length + 1];
+        responseValue[0] = status;
+        System.arraycopy(body, 0, responseValue, 1, body.length);
+
+        connection.send(CacheProtocol.createResponseMessage(status, message.getKey(), responseValue));
+    }
+
+    private void sendErrorResponse(CacheProtocol.Message message, Connection connection, String errorMessage)
+            throws IOException {
+        CacheProtocol.Message response = CacheProtocol.createErrorMessage(message.getKey(), errorMessage);
+        connection.send(response);
+    }
+
+    private void log(String line) {
+        if (logRequests) {
+            System.out.println(line);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package org.global.dax.hotkeys;
+
+import org.global.dax.shared.KeyView;
+import org.global.dax.store.MutationListener;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encoded GET responses of hot keys.
+ *
+ * A frame is shared by every GET of its key until the key is added, removed or stops being hot,
+ * so a flash crowd on one key does not encode and allocate a response per request.
+ *
+ * Must only be used from the server selector thread.
+ */
+public class EncodedResponseCache implements MutationListener {
+
+    private final Map<String, ByteBuffer> frames = new HashMap<>();
+
+    private long hits = 0;
+
+    public ByteBuffer get(String key) {
+        return lookup(key);
+    }
+
+    /**
+     * Gets the frame of a key read in place in a request
+     */
+    public ByteBuffer get(KeyView key) {
+        return lookup(key);
+    }
+
+    private ByteBuffer lookup(Object key) {
+        ByteBuffer frame = frames.get(key);
+        if (frame != null) {
+            hits++;
+        }
+        return frame;
+    }
+
+    public void put(String key, ByteBuffer frame) {
+        frames.put(key, frame);
+    }
+
+    public void remove(String key) {
+        frames.remove(key);
+    }
+
+    @Override
+    public void onAdd(String key, byte[] value) {
+        frames.remove(key);
+    }
+
+    @Override
+    public void onRemove(String key) {
+        frames.remove(key);
+    }
+
+    public int size() {
+        return frames.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+}
@@ -0,0 +1,199 @@
+package org.global.dax.hotkeys;
+
+import org.global.dax.shared.KeyView;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Sampled top-K tracker of the most requested keys, using the Space-Saving algorithm.
+ *
+ * One request in {@code sampleRate}, picked at random, is counted. At most {@code capacity} keys are monitored: a sampled key
+ * that is not monitored replaces the key with the lowest count, inheriting that count as its error bound.
+ * Counts are halved every {@link #DECAY_INTERVAL} samples so the top-K follows the current traffic.
+ *
+ * A key is hot when its guaranteed count (count - error) reaches the hot threshold.
+ *
+ * Must only be used from the server selector thread.
+ */
+public class HotKeyTracker {
+
+    public static final int DEFAULT_CAPACITY = 32;
+    public static final int DEFAULT_HOT_THRESHOLD = 16;
+    public static final int DEFAULT_SAMPLE_RATE = 4; // count one request in 4
+    public static final int DECAY_INTERVAL = 16384; // halve counts every 16K samples
+
+    private final int capacity;
+    private final int hotThreshold;
+    private final int sampleRate;
+    private final Map<String, Counter> counters = new HashMap<>();
+
+    // Notified when a key stops being monitored
+    private final Consumer<String> evictionListener;
+
+    private long requests = 0;
+    private long samples = 0;
+
+    // xorshift state, random sampling avoids aliasing with periodic request patterns
+    private long random = System.nanoTime() | 1;
+
+    public HotKeyTracker(Consumer<String> evictionListener) {
+        this(DEFAULT_CAPACITY, DEFAULT_HOT_THRESHOLD, DEFAULT_SAMPLE_RATE, evictionListener);
+    }
+
+    public HotKeyTracker(int capacity, int hotThreshold, int sampleRate, Consumer<String> evictionListener) {
+        if (capacity < 1 || sampleRate < 1) {
+            throw new IllegalArgumentException("capacity and sampleRate must be at least 1.");
+        }
+        this.capacity = capacity;
+        this.hotThreshold = hotThreshold;
+        this.sampleRate = sampleRate;
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Records a request for the key, returning whether the key is hot
+     */
+    public boolean record(String key) {
+        return recordKey(key);
+    }
+
+    /**
+     * Records a request for a key read in place in the request, only decoded when it starts being monitored
+     */
+    public boolean record(KeyView key) {
+        return recordKey(key);
+    }
+
+    public boolean isHot(String key) {
+        return isHotKey(key);
+    }
+
+    // A String or a KeyView, both look up the counters the same way
+    private boolean recordKey(Object key) {
+        requests++;
+        if (sampleRate == 1 || nextRandom() % sampleRate == 0) {
+            sample(key);
+        }
+        return isHotKey(key);
+    }
+
+    private boolean isHotKey(Object key) {
+        Counter counter = counters.get(key);
+        return counter != null && counter.count - counter.error >= hotThreshold;
+    }
+
+    /**
+     * Monitored keys by descending estimated request count
+     */
+    public List<HotKey> topKeys(int limit) {
+        List<HotKey> hotKeys = new ArrayList<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            Counter counter = entry.getValue();
+            hotKeys.add(new HotKey(entry.getKey(), counter.count * sampleRate, counter.error * sampleRate));
+        }
+        hotKeys.sort(Comparator.comparingLong(HotKey::getEstimatedCount).reversed());
+        return hotKeys.subList(0, Math.min(limit, hotKeys.size()));
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    private void sample(Object key) {
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            counter.count++;
+        } else if (counters.size() < capacity) {
+            counters.put(key.toString(), new Counter(1, 0));
+        } else {
+            // Replace the least counted key, its count bounds the error of the new one
+            Map.Entry<String, Counter> min = null;
+            for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+                if (min == null || entry.getValue().count < min.getValue().count) {
+                    min = entry;
+                }
+            }
+            long minCount = min.getValue().count;
+            evict(min.getKey());
+            counters.put(key.toString(), new Counter(minCount + 1, minCount));
+        }
+
+        if (++samples % DECAY_INTERVAL == 0) {
+            decay();
+        }
+    }
+
+    private long nextRandom() {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return random & Long.MAX_VALUE;
+    }
+
+    private void decay() {
+        Iterator<Map.Entry<String, Counter>> iterator = counters.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Counter> entry = iterator.next();
+            Counter counter = entry.getValue();
+            counter.count /= 2;
+            counter.error /= 2;
+            if (counter.count == 0) {
+                iterator.remove();
+                evictionListener.accept(entry.getKey());
+            }
+        }
+    }
+
+    private void evict(String key) {
+        counters.remove(key);
+        evictionListener.accept(key);
+    }
+
+    private static final class Counter {
+        private long count;
+        private long error;
+
+        private Counter(long count, long error) {
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    /**
+     * A monitored key with its estimated request count, over-estimated by at most the error
+     */
+    public static final class HotKey {
+        private final String key;
+        private final long estimatedCount;
+        private final long error;
+
+        public HotKey(String key, long estimatedCount, long error) {
+            this.key = key;
+            this.estimatedCount = estimatedCount;
+            this.error = error;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getEstimatedCount() {
+            return estimatedCount;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return key + " ~" + estimatedCount + " (+/-" + error + ")";
+        }
+    }
+}
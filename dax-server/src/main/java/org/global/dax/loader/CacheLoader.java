@@ -0,0 +1,26 @@
+package org.global.dax.loader;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The backend a server loads missing keys from, and writes its changes back to.
+ *
+ * Both calls take whole batches, so a backend with bulk reads and writes (a multi-row SELECT, a batched UPSERT)
+ * serves many requests in one round trip. They run on the server loader threads, never on the selector thread,
+ * and may block.
+ */
+public interface CacheLoader {
+
+    /**
+     * Loads the values of the keys, a key missing from the result is not in the backend either
+     */
+    Map<String, byte[]> loadAll(Set<String> keys) throws Exception;
+
+    /**
+     * Writes back the latest value of the keys written, and deletes the keys removed since the previous call.
+     * The default is a read-only backend, writes stay in the cache.
+     */
+    default void writeAll(Map<String, byte[]> values, Set<String> removedKeys) throws Exception {
+    }
+}
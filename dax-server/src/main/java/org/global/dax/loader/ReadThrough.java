@@ -0,0 +1,207 @@
+package org.global.dax.loader;
+
+import org.global.dax.store.CacheEntry;
+import org.global.dax.store.CacheStore;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Loads the keys missing from the store from a {@link CacheLoader}, so that clients missing a key do not all go
+ * to the backend themselves.
+ *
+ * Misses of a key already being loaded wait for that load instead of starting another one. Keys missed within a
+ * short window, or until a batch is full, are loaded by a single {@link CacheLoader#loadAll} call on the loader
+ * thread. The values are then handed back to the selector thread, added to the store (unless the key was written
+ * in the meantime) and passed to every request waiting for them.
+ *
+ * {@link #load} must only be called from the selector thread, the callbacks run on it.
+ */
+public final class ReadThrough implements Closeable {
+
+    public static final long DEFAULT_BATCH_WINDOW_MS = 2;
+    public static final int DEFAULT_MAX_BATCH_KEYS = 256;
+
+    private final CacheLoader loader;
+    private final CacheStore store;
+    private final Executor selectorExecutor;
+    private final WriteBehind writeBehind;
+    private final long batchWindowMillis;
+    private final int maxBatchKeys;
+    private final ScheduledExecutorService executor;
+
+    // Requests waiting for each key being loaded, selector thread only
+    private final Map<String, List<BiConsumer<byte[], Exception>>> waiting = new HashMap<>();
+
+    // Keys to load in the next batch, handed to the loader thread
+    private final Queue<String> queued = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedCount = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private long misses = 0;
+    private long collapsed = 0;
+    private volatile long backendCalls = 0;
+    private volatile long loadedKeys = 0;
+
+    /**
+     * @param selectorExecutor runs the completion of the loads on the selector thread
+     * @param writeBehind      the write-behind of the same loader, null without one
+     */
+    public ReadThrough(CacheLoader loader, CacheStore store, Executor selectorExecutor, WriteBehind writeBehind) {
+        this(loader, store, selectorExecutor, writeBehind, DEFAULT_BATCH_WINDOW_MS, DEFAULT_MAX_BATCH_KEYS);
+    }
+
+    public ReadThrough(CacheLoader loader, CacheStore store, Executor selectorExecutor, WriteBehind writeBehind,
+                       long batchWindowMillis, int maxBatchKeys) {
+        this.loader = loader;
+        this.store = store;
+        this.selectorExecutor = selectorExecutor;
+        this.writeBehind = writeBehind;
+        this.batchWindowMillis = batchWindowMillis;
+        this.maxBatchKeys = maxBatchKeys;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Loads a key missing from the store, the callback gets its value (null if the backend does not have it either)
+     * or the failure of the load
+     */
+    public void load(String key, BiConsumer<byte[], Exception> callback) {
+        misses++;
+        List<BiConsumer<byte[], Exception>> callbacks = waiting.get(key);
+        if (callbacks != null) {
+            collapsed++;
+            callbacks.add(callback);
+            return;
+        }
+
+        // Removed here and not yet in the backend, loading it would bring the old value back
+        if (writeBehind != null && writeBehind.isRemovalPending(key)) {
+            callback.accept(null, null);
+            return;
+        }
+
+        callbacks = new ArrayList<>(1);
+        callbacks.add(callback);
+        waiting.put(key, callbacks);
+        queued.add(key);
+
+        if (queuedCount.incrementAndGet() >= maxBatchKeys) {
+            executor.execute(this::loadQueued);
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::loadQueued, batchWindowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Loads the queued keys in batches, on the loader thread
+     */
+    private void loadQueued() {
+        // Keys queued from now on schedule another run, if this one does not take them
+        flushScheduled.set(false);
+
+        while (true) {
+            Set<String> batch = new LinkedHashSet<>();
+            String key;
+            while (batch.size() < maxBatchKeys && (key = queued.poll()) != null) {
+                batch.add(key);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            queuedCount.addAndGet(-batch.size());
+
+            Map<String, byte[]> values;
+            Exception failure = null;
+            try {
+                backendCalls++;
+                values = loader.loadAll(Collections.unmodifiableSet(batch));
+            } catch (Exception e) {
+                values = Collections.emptyMap();
+                failure = e;
+            }
+            loadedKeys += values.size();
+
+            Map<String, byte[]> loaded = values;
+            Exception loadFailure = failure;
+            selectorExecutor.execute(() -> complete(batch, loaded, loadFailure));
+        }
+    }
+
+    private void complete(Set<String> batch, Map<String, byte[]> values, Exception failure) {
+        for (String key : batch) {
+            List<BiConsumer<byte[], Exception>> callbacks = waiting.remove(key);
+            byte[] value = failure == null ? apply(key, values.get(key)) : null;
+            for (BiConsumer<byte[], Exception> callback : callbacks) {
+                callback.accept(value, failure);
+            }
+        }
+    }
+
+    /**
+     * Adds a loaded value to the store, returning the value of the key, which a write may have set since the miss
+     */
+    private byte[] apply(String key, byte[] loaded) {
+        if (loaded == null || (writeBehind != null && writeBehind.isRemovalPending(key))) {
+            return store.get(key);
+        }
+
+        CacheEntry[] written = new CacheEntry[1];
+        Runnable add = () -> written[0] = store.compareAndSet(key, CacheEntry.NO_VERSION, loaded);
+        if (writeBehind != null) {
+            writeBehind.applyLoads(add);
+        } else {
+            add.run();
+        }
+        return written[0] != null ? loaded : store.get(key);
+    }
+
+    /**
+     * GET requests that missed the store
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Misses that waited for a load already running for their key
+     */
+    public long getCollapsed() {
+        return collapsed;
+    }
+
+    /**
+     * Calls to {@link CacheLoader#loadAll}, each one loading a batch of keys
+     */
+    public long getBackendCalls() {
+        return backendCalls;
+    }
+
+    public long getLoadedKeys() {
+        return loadedKeys;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,170 @@
+package org.global.dax.loader;
+
+import org.global.dax.store.MutationListener;
+
+import java.io.Closeable;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the changes of the store back to a {@link CacheLoader}, in batches, off the selector thread.
+ *
+ * Every write or removal marks its key dirty with its latest value, so a key written many times between two
+ * flushes is written back once. A background thread flushes the dirty keys periodically, and a key is only marked
+ * clean when the value written back is still its latest. A failed flush leaves the keys dirty for the next one.
+ *
+ * Values loaded from the backend by {@link ReadThrough} are not written back.
+ */
+public final class WriteBehind implements MutationListener, Closeable {
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 50;
+    private static final int MAX_BATCH_KEYS = 1024; // keys per writeAll call
+
+    // Latest value of a removed key
+    private static final byte[] REMOVED = new byte[0];
+
+    private final CacheLoader loader;
+    private final long flushIntervalMillis;
+    private final ConcurrentHashMap<String, byte[]> dirty = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+
+    // Set while loaded values are applied to the store, on the selector thread
+    private boolean applyingLoads = false;
+
+    private volatile long flushedKeys = 0;
+    private volatile long backendCalls = 0;
+    private volatile long failedCalls = 0;
+
+    public WriteBehind(CacheLoader loader, long flushIntervalMillis) {
+        this.loader = loader;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        executor.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onAdd(String key, byte[] value) {
+        if (!applyingLoads) {
+            dirty.put(key, value);
+        }
+    }
+
+    @Override
+    public void onRemove(String key) {
+        if (!applyingLoads) {
+            dirty.put(key, REMOVED);
+        }
+    }
+
+    /**
+     * Applies values loaded from the backend to the store without marking them dirty
+     */
+    void applyLoads(Runnable apply) {
+        applyingLoads = true;
+        try {
+            apply.run();
+        } finally {
+            applyingLoads = false;
+        }
+    }
+
+    /**
+     * Whether the key was removed and the removal not yet written back, the backend still has its old value
+     */
+    boolean isRemovalPending(String key) {
+        return dirty.get(key) == REMOVED;
+    }
+
+    /**
+     * Writes back the keys dirty when it starts, in batches, stopping at the first failure
+     */
+    void flush() {
+        Map<String, byte[]> batch = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> entry : dirty.entrySet()) {
+            batch.put(entry.getKey(), entry.getValue());
+            if (batch.size() == MAX_BATCH_KEYS) {
+                if (!write(batch)) {
+                    return;
+                }
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    private boolean write(Map<String, byte[]> batch) {
+        Map<String, byte[]> values = new LinkedHashMap<>();
+        Set<String> removedKeys = new HashSet<>();
+        for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+            if (entry.getValue() == REMOVED) {
+                removedKeys.add(entry.getKey());
+            } else {
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        try {
+            backendCalls++;
+            loader.writeAll(values, removedKeys);
+        } catch (Exception e) {
+            failedCalls++;
+            System.err.println("Failed to write back " + batch.size() + " keys: " + e.getMessage());
+            return false;
+        }
+
+        // Stored values are never modified, the same array means the key was not written again since
+        for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+            dirty.remove(entry.getKey(), entry.getValue());
+        }
+        flushedKeys += batch.size();
+        return true;
+    }
+
+    /**
+     * Keys written or removed and not yet written back
+     */
+    public int getDirtyKeys() {
+        return dirty.size();
+    }
+
+    public long getFlushedKeys() {
+        return flushedKeys;
+    }
+
+    public long getBackendCalls() {
+        return backendCalls;
+    }
+
+    public long getFailedCalls() {
+        return failedCalls;
+    }
+
+    /**
+     * Stops the periodic flushes and writes back what is still dirty
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,240 @@
+package org.global.dax.notifications;
+
+import org.global.dax.server.Connection;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.TimerWheel;
+import org.global.dax.store.MutationListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * WATCH requests waiting for their key to be added.
+ *
+ * A watcher is parked without any thread waiting for it: it is linked at the tail of the list of its key and
+ * scheduled in a {@link TimerWheel}, both O(1) however many watchers the key already has. An ADD of the key only
+ * detaches its list, the watchers are answered by {@link #flush} after the loop served its requests. Each answer is
+ * keyed by the id of its watch, only its header is encoded per watcher and the value is shared by all of them.
+ * A watcher still parked at its deadline is unlinked and answered with {@code STATUS_NOT_FOUND}.
+ *
+ * The watchers of a connection are also tracked by connection, so they are dropped as soon as it closes.
+ *
+ * Must only be used from the server selector thread.
+ */
+public class KeyWatchers implements MutationListener {
+
+    public static final long TICK_MS = 10;
+    private static final int WHEEL_BUCKETS = 1024;
+
+    private final Map<String, WatcherList> watchersByKey = new HashMap<>();
+    private final Map<Connection, Set<Watcher>> watchersByConnection = new HashMap<>();
+    private final TimerWheel<Watcher> deadlines;
+
+    // Keys added since the last flush, with the watchers they complete
+    private final List<WatcherList> completed = new ArrayList<>();
+
+    private int size = 0;
+    private long watchesCompleted = 0;
+    private long watchesTimedOut = 0;
+
+    public KeyWatchers(long nowMillis) {
+        this.deadlines = new TimerWheel<>(TICK_MS, WHEEL_BUCKETS, nowMillis);
+    }
+
+    /**
+     * Parks a watcher of a missing key until it is added or the deadline passes
+     */
+    public void watch(String key, int watchId, Connection connection, long deadlineMillis) {
+        WatcherList list = watchersByKey.computeIfAbsent(key, WatcherList::new);
+        Watcher watcher = new Watcher(list, watchId, connection);
+        list.append(watcher);
+        watcher.timeout = deadlines.schedule(watcher, deadlineMillis);
+        watchersByConnection.computeIfAbsent(connection, c -> new HashSet<>()).add(watcher);
+        size++;
+    }
+
+    /**
+     * Drops the watchers of a closed connection, without answering them
+     */
+    public void removeConnection(Connection connection) {
+        Set<Watcher> watchers = watchersByConnection.remove(connection);
+        if (watchers == null) {
+            return;
+        }
+        for (Watcher watcher : watchers) {
+            watcher.timeout.cancel();
+            unlink(watcher);
+            size--;
+        }
+    }
+
+    @Override
+    public void onAdd(String key, byte[] value) {
+        WatcherList list = watchersByKey.remove(key);
+        if (list != null) {
+            list.value = value;
+            completed.add(list);
+        }
+    }
+
+    @Override
+    public void onRemove(String key) {
+        // Watchers only wait for a value
+    }
+
+    /**
+     * Answers the watchers of the keys added since the last call, and the ones past their deadline
+     */
+    public void flush(long nowMillis) {
+        if (!completed.isEmpty()) {
+            for (WatcherList list : completed) {
+                complete(list);
+            }
+            completed.clear();
+        }
+        if (size > 0) {
+            deadlines.advance(nowMillis, this::expire);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0 && completed.isEmpty();
+    }
+
+    /**
+     * Watchers currently parked
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getWatchedKeyCount() {
+        return watchersByKey.size();
+    }
+
+    public long getWatchesCompleted() {
+        return watchesCompleted;
+    }
+
+    public long getWatchesTimedOut() {
+        return watchesTimedOut;
+    }
+
+    private void complete(WatcherList list) {
+        for (Watcher watcher = list.head; watcher != null; watcher = watcher.next) {
+            watcher.timeout.cancel();
+            forget(watcher);
+            size--;
+            watchesCompleted++;
+            if (watcher.connection.isOpen()) {
+                send(watcher.connection,
+                        CacheProtocol.encodeWatchedFrames(CacheProtocol.STATUS_OK, watcher.id, list.value));
+            }
+        }
+    }
+
+    private void expire(Watcher watcher) {
+        unlink(watcher);
+        forget(watcher);
+        size--;
+        watchesTimedOut++;
+        send(watcher.connection,
+                CacheProtocol.encodeWatchedFrames(CacheProtocol.STATUS_NOT_FOUND, watcher.id, new byte[0]));
+    }
+
+    /**
+     * Unlinks a watcher from the list of its key, dropping the list of the key once it is empty
+     */
+    private void unlink(Watcher watcher) {
+        watcher.list.unlink(watcher);
+        if (watcher.list.head == null && watchersByKey.get(watcher.list.key) == watcher.list) {
+            watchersByKey.remove(watcher.list.key);
+        }
+    }
+
+    /**
+     * Removes a watcher answered or timed out from the watchers of its connection
+     */
+    private void forget(Watcher watcher) {
+        Set<Watcher> watchers = watchersByConnection.get(watcher.connection);
+        if (watchers != null && watchers.remove(watcher) && watchers.isEmpty()) {
+            watchersByConnection.remove(watcher.connection);
+        }
+    }
+
+    private static void send(Connection connection, ByteBuffer[] frames) {
+        if (!connection.isOpen()) {
+            return;
+        }
+        try {
+            connection.send(frames);
+        } catch (IOException e) {
+            // The server loop closes the channel when its next read fails
+            System.err.println("Failed to answer watch: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Watchers of a key, in the order they arrived, linked through the watchers themselves
+     */
+    private static final class WatcherList {
+
+        private final String key;
+        private Watcher head;
+        private Watcher tail;
+        // Value the key was added with, set once the list is detached
+        private byte[] value;
+
+        private WatcherList(String key) {
+            this.key = key;
+        }
+
+        private void append(Watcher watcher) {
+            watcher.previous = tail;
+            if (tail != null) {
+                tail.next = watcher;
+            } else {
+                head = watcher;
+            }
+            tail = watcher;
+        }
+
+        private void unlink(Watcher watcher) {
+            if (watcher.previous != null) {
+                watcher.previous.next = watcher.next;
+            } else {
+                head = watcher.next;
+            }
+            if (watcher.next != null) {
+                watcher.next.previous = watcher.previous;
+            } else {
+                tail = watcher.previous;
+            }
+            watcher.next = null;
+            watcher.previous = null;
+        }
+    }
+
+    private static final class Watcher {
+
+        private final WatcherList list;
+        private final int id;
+        private final Connection connection;
+        private TimerWheel.Timeout<Watcher> timeout;
+
+        private Watcher next;
+        private Watcher previous;
+
+        private Watcher(WatcherList list, int id, Connection connection) {
+            this.list = list;
+            this.id = id;
+            this.connection = connection;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package org.global.dax.notifications;
+
+import org.global.dax.server.AdmissionControl;
+import org.global.dax.server.Connection;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.store.MutationListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Pushes an OP_NOTIFY message to the connections subscribed to a key, or to a range of keys, when it is added or
+ * removed.
+ *
+ * Changes are not sent as they happen but queued per connection and sent by {@link #flush}, once per turn of the
+ * server loop, in a single gathering write. A key changed again before its notification was sent only has its
+ * latest value sent. A connection whose responses are backing up, or any connection while the server is overloaded,
+ * keeps its changes queued; once more than its limit of keys are queued they are dropped and it is sent a single
+ * overflow notification instead, after which it should read again the keys it cares about.
+ *
+ * Must only be used from the server selector thread.
+ */
+public class KeyspaceNotifier implements MutationListener {
+
+    // Queued in place of the value of a removed key
+    private static final byte[] REMOVED = new byte[0];
+
+    private final AdmissionControl admissionControl;
+    private final int maxQueuedChanges;
+
+    private final Map<Connection, Subscriber> subscribers = new HashMap<>();
+    private final Map<String, Set<Subscriber>> subscribersByKey = new HashMap<>();
+    // Checked against every changed key, ranges are expected to be few
+    private final List<RangeSubscription> rangeSubscriptions = new ArrayList<>();
+    // Subscribers with changes waiting for the next flush
+    private final Set<Subscriber> pending = new LinkedHashSet<>();
+
+    private long notificationsSent = 0;
+    private long notificationsCoalesced = 0;
+    private long overflows = 0;
+
+    /**
+     * @param maxQueuedChanges keys queued for a connection before they are dropped for an overflow notification
+     */
+    public KeyspaceNotifier(AdmissionControl admissionControl, int maxQueuedChanges) {
+        this.admissionControl = admissionControl;
+        this.maxQueuedChanges = maxQueuedChanges;
+    }
+
+    public void subscribe(Connection connection, String key) {
+        Subscriber subscriber = subscribers.computeIfAbsent(connection, Subscriber::new);
+        if (subscriber.keys.add(key)) {
+            subscribersByKey.computeIfAbsent(key, k -> new HashSet<>()).add(subscriber);
+        }
+    }
+
+    /**
+     * Subscribes to the keys from {@code from} (inclusive) to {@code to} (exclusive, null for no upper bound)
+     */
+    public void subscribeRange(Connection connection, String from, String to) {
+        Subscriber subscriber = subscribers.computeIfAbsent(connection, Subscriber::new);
+        RangeSubscription range = new RangeSubscription(subscriber, from, to);
+        if (subscriber.ranges.add(range)) {
+            rangeSubscriptions.add(range);
+        }
+    }
+
+    /**
+     * @return whether the connection was subscribed to the key
+     */
+    public boolean unsubscribe(Connection connection, String key) {
+        Subscriber subscriber = subscribers.get(connection);
+        if (subscriber == null || !subscriber.keys.remove(key)) {
+            return false;
+        }
+        removeKey(subscriber, key);
+        removeIfUnused(subscriber);
+        return true;
+    }
+
+    /**
+     * @return whether the connection was subscribed to this exact range
+     */
+    public boolean unsubscribeRange(Connection connection, String from, String to) {
+        Subscriber subscriber = subscribers.get(connection);
+        if (subscriber == null) {
+            return false;
+        }
+        RangeSubscription range = new RangeSubscription(subscriber, from, to);
+        if (!subscriber.ranges.remove(range)) {
+            return false;
+        }
+        rangeSubscriptions.remove(range);
+        removeIfUnused(subscriber);
+        return true;
+    }
+
+    public void removeConnection(Connection connection) {
+        Subscriber subscriber = subscribers.remove(connection);
+        if (subscriber == null) {
+            return;
+        }
+        for (String key : subscriber.keys) {
+            removeKey(subscriber, key);
+        }
+        rangeSubscriptions.removeAll(subscriber.ranges);
+        pending.remove(subscriber);
+    }
+
+    @Override
+    public void onAdd(String key, byte[] value) {
+        notify(key, value);
+    }
+
+    @Override
+    public void onRemove(String key) {
+        notify(key, REMOVED);
+    }
+
+    /**
+     * Sends the queued changes of every connection that can take them
+     */
+    public void flush() {
+        if (pending.isEmpty() || admissionControl.isOverloaded()) {
+            return;
+        }
+        Iterator<Subscriber> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            Subscriber subscriber = iterator.next();
+            if (admissionControl.shouldPause(subscriber.connection)) {
+                continue;
+            }
+            iterator.remove();
+            try {
+                subscriber.connection.send(subscriber.drain());
+            } catch (IOException e) {
+                // The server loop closes the channel when its next read fails
+                System.err.println("Failed to send notifications: " + e.getMessage());
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public long getNotificationsSent() {
+        return notificationsSent;
+    }
+
+    public long getNotificationsCoalesced() {
+        return notificationsCoalesced;
+    }
+
+    public long getOverflows() {
+        return overflows;
+    }
+
+    private void notify(String key, byte[] value) {
+        Set<Subscriber> keySubscribers = subscribersByKey.get(key);
+        if (keySubscribers != null) {
+            for (Subscriber subscriber : keySubscribers) {
+                queue(subscriber, key, value);
+            }
+        }
+        for (RangeSubscription range : rangeSubscriptions) {
+            if (range.contains(key)) {
+                // Queued once per connection however many of its subscriptions match
+                queue(range.subscriber, key, value);
+            }
+        }
+    }
+
+    private void queue(Subscriber subscriber, String key, byte[] value) {
+        if (subscriber.changes.put(key, value) != null) {
+            notificationsCoalesced++;
+        } else if (subscriber.changes.size() > maxQueuedChanges) {
+            subscriber.changes.clear();
+            subscriber.overflowed = true;
+            overflows++;
+        }
+        pending.add(subscriber);
+    }
+
+    private void removeKey(Subscriber subscriber, String key) {
+        Set<Subscriber> keySubscribers = subscribersByKey.get(key);
+        if (keySubscribers != null) {
+            keySubscribers.remove(subscriber);
+            if (keySubscribers.isEmpty()) {
+                subscribersByKey.remove(key);
+            }
+        }
+    }
+
+    private void removeIfUnused(Subscriber subscriber) {
+        if (subscriber.keys.isEmpty() && subscriber.ranges.isEmpty()) {
+            subscribers.remove(subscriber.connection);
+            pending.remove(subscriber);
+        }
+    }
+
+    private final class Subscriber {
+
+        private final Connection connection;
+        private final Set<String> keys = new HashSet<>();
+        private final Set<RangeSubscription> ranges = new HashSet<>();
+
+        // Latest value of each changed key, in the order the keys first changed
+        private final Map<String, byte[]> changes = new LinkedHashMap<>();
+        private boolean overflowed = false;
+
+        private Subscriber(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Encodes the queued changes, behind the overflow notification if changes were dropped
+         */
+        private ByteBuffer[] drain() {
+            List<ByteBuffer> frames = new ArrayList<>(changes.size() + 1);
+            if (overflowed) {
+                frames.add(CacheProtocol.encodeNotificationFrames(CacheProtocol.STATUS_ERROR, new byte[0], null)[0]);
+                overflowed = false;
+                notificationsSent++;
+            }
+            for (Map.Entry<String, byte[]> change : changes.entrySet()) {
+                byte[] key = change.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] value = change.getValue();
+                Collections.addAll(frames, value == REMOVED
+                        ? CacheProtocol.encodeNotificationFrames(CacheProtocol.STATUS_NOT_FOUND, key, null)
+                        : CacheProtocol.encodeNotificationFrames(CacheProtocol.STATUS_OK, key, value));
+                notificationsSent++;
+            }
+            changes.clear();
+            return frames.toArray(new ByteBuffer[0]);
+        }
+    }
+
+    private static final class RangeSubscription {
+
+        private final Subscriber subscriber;
+        private final String from;
+        private final String to;
+
+        private RangeSubscription(Subscriber subscriber, String from, String to) {
+            this.subscriber = subscriber;
+            this.from = from;
+            this.to = to;
+        }
+
+        private boolean contains(String key) {
+            return key.compareTo(from) >= 0 && (to == null || key.compareTo(to) < 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RangeSubscription)) {
+                return false;
+            }
+            RangeSubscription that = (RangeSubscription) o;
+            return subscriber == that.subscriber && from.equals(that.from) && Objects.equals(to, that.to);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(from, to);
+        }
+    }
+}
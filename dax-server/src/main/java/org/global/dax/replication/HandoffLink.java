@@ -0,0 +1,137 @@
+package org.global.dax.replication;
+
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ChunkAssembler;
+import org.global.dax.store.CacheStore;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * New process side of a hot restart.
+ *
+ * Connects to the handoff socket of the server being replaced and copies its store before this process binds the
+ * port, so it never serves clients from a cold cache. The store comes as the snapshot batches sent to a replica,
+ * followed by the mutation stream: writes still made on the old process while it drains its connections are
+ * applied here until it closes the link.
+ *
+ * Must only be used from the server selector thread once registered.
+ */
+public class HandoffLink {
+
+    // Large enough for a batch holding the biggest mutation a server connection can decode
+    private static final int BUFFER_SIZE = 2 * 1024 * 1024;
+
+    private final SocketChannel channel;
+    private final CacheStore store;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ChunkAssembler chunkAssembler = new ChunkAssembler();
+
+    private long appliedMutations = 0;
+
+    private HandoffLink(SocketChannel channel, CacheStore store) {
+        this.channel = channel;
+        this.store = store;
+    }
+
+    /**
+     * Connects to the server listening on the handoff socket, or returns null when there is none to replace
+     */
+    public static HandoffLink connect(Path path, CacheStore store) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(path));
+            } catch (IOException e) {
+                // A socket file left by a process that is gone
+                channel.close();
+                return null;
+            }
+            return new HandoffLink(channel, store);
+        } catch (IOException e) {
+            System.err.println("Failed to open the handoff socket: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Copies the store of the old process, blocking until its snapshot is applied
+     *
+     * @return number of entries received
+     */
+    public long receiveSnapshot() throws IOException {
+        CacheProtocol.sendMessage(channel, CacheProtocol.createHandoffMessage(CacheProtocol.HANDOFF_SYNC));
+        while (true) {
+            CacheProtocol.Message message = CacheProtocol.readMessage(channel, buffer);
+            if (message == null || (message = chunkAssembler.accept(message)) == null) {
+                continue; // blocking channel, keep reading until the message is complete
+            }
+            if (message.getOperation() == CacheProtocol.OP_RESPONSE && message.getStatus() == CacheProtocol.STATUS_OK) {
+                return appliedMutations; // end of the snapshot
+            }
+            apply(message);
+        }
+    }
+
+    /**
+     * Tells the old process this one accepts clients on the port, and keeps applying its mutations from the loop
+     */
+    public void ready(Selector selector) throws IOException {
+        CacheProtocol.sendMessage(channel, CacheProtocol.createHandoffMessage(CacheProtocol.HANDOFF_READY));
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * Applies the mutations received, returning false once the old process closed the link
+     */
+    public boolean read() {
+        try {
+            CacheProtocol.Message message;
+            while ((message = CacheProtocol.readMessage(channel, buffer)) != null) {
+                message = chunkAssembler.accept(message);
+                if (message != null) {
+                    apply(message);
+                }
+            }
+            return true;
+        } catch (EOFException e) {
+            close();
+            return false;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Handoff from the old process failed: " + e.getMessage());
+            close();
+            return false;
+        }
+    }
+
+    public long getAppliedMutations() {
+        return appliedMutations;
+    }
+
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignore errors during close
+        }
+    }
+
+    private void apply(CacheProtocol.Message message) throws IOException {
+        if (message.getOperation() != CacheProtocol.OP_REPL_BATCH) {
+            throw new IOException("Unexpected message from the old process: " + message);
+        }
+        appliedMutations += MutationBatch.apply(message.getValue(), store);
+    }
+}
@@ -0,0 +1,88 @@
+package org.global.dax.replication;
+
+import org.global.dax.store.CacheStore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encoding of the mutations carried by a REPL_BATCH message.
+ *
+ * Batch header (message key):
+ * [8 bytes: Sequence of the last mutation in the batch] [8 bytes: Primary timestamp in millis]
+ *
+ * Records (message value), repeated:
+ * [1 byte: Operation code] [4 bytes: Key length] [4 bytes: Value length] [n bytes: Key] [m bytes: Value]
+ */
+public final class MutationBatch {
+
+    public static final int BATCH_HEADER_SIZE = 16;
+    public static final int RECORD_HEADER_SIZE = 9;
+
+    public static final byte RECORD_ADD = 0x01;
+    public static final byte RECORD_REMOVE = 0x03;
+
+    private MutationBatch() {}
+
+    public static int recordSize(byte[] key, byte[] value) {
+        return RECORD_HEADER_SIZE + key.length + (value != null ? value.length : 0);
+    }
+
+    public static void writeRecord(ByteBuffer buffer, byte operation, byte[] key, byte[] value) {
+        buffer.put(operation);
+        buffer.putInt(key.length);
+        buffer.putInt(value != null ? value.length : 0);
+        buffer.put(key);
+        if (value != null) {
+            buffer.put(value);
+        }
+    }
+
+    public static byte[] header(long sequence, long timestampMillis) {
+        return ByteBuffer.allocate(BATCH_HEADER_SIZE)
+                .putLong(sequence)
+                .putLong(timestampMillis)
+                .array();
+    }
+
+    public static long sequence(byte[] header) {
+        return ByteBuffer.wrap(header).getLong(0);
+    }
+
+    public static long timestamp(byte[] header) {
+        return ByteBuffer.wrap(header).getLong(8);
+    }
+
+    /**
+     * Applies every record of the batch to the store, returning the number of records applied
+     */
+    public static int apply(byte[] records, CacheStore store) {
+        if (records == null) {
+            return 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+        int applied = 0;
+        while (buffer.hasRemaining()) {
+            byte operation = buffer.get();
+            byte[] key = new byte[buffer.getInt()];
+            byte[] value = new byte[buffer.getInt()];
+            buffer.get(key);
+            buffer.get(value);
+
+            String keyString = new String(key, StandardCharsets.UTF_8);
+            switch (operation) {
+                case RECORD_ADD:
+                    store.put(keyString, value);
+                    break;
+                case RECORD_REMOVE:
+                    store.remove(keyString);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown replication record: " + operation);
+            }
+            applied++;
+        }
+        return applied;
+    }
+}
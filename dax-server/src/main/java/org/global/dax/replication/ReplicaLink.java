@@ -0,0 +1,216 @@
+package org.global.dax.replication;
+
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ChunkAssembler;
+import org.global.dax.store.CacheStore;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Replica side of replication.
+ *
+ * Keeps a connection to the primary registered on the server selector, requests a sync on every
+ * (re)connection and applies the snapshot and mutation batches it receives to the local store.
+ * Lag is measured as the time between the primary producing a batch and the replica applying it.
+ *
+ * Must only be used from the server selector thread, metrics can be read from any thread.
+ */
+public class ReplicaLink {
+
+    // Large enough for a batch holding the biggest mutation a server connection can decode
+    private static final int BUFFER_SIZE = 2 * 1024 * 1024;
+
+    private static final int INITIAL_RETRY_DELAY_MS = 1000; // Start with 1-second delay
+    private static final int MAX_RETRY_DELAY_MS = 30000; // Max 30 seconds between retries
+
+    // Keeps the link from being closed as idle by the primary, which only hears from the replica at sync time
+    private static final long HEARTBEAT_INTERVAL_MS = 10_000;
+    // The primary sends a batch at least every second, a silent primary is considered gone
+    private static final long PRIMARY_TIMEOUT_MS = 30 * ReplicationSource.IDLE_BATCH_INTERVAL_MS;
+
+    private final InetSocketAddress primary;
+    private final CacheStore store;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ChunkAssembler chunkAssembler = new ChunkAssembler();
+
+    private SocketChannel channel;
+    private long nextConnectAttemptTime = 0;
+    private int currentRetryDelay = INITIAL_RETRY_DELAY_MS;
+    private long lastHeartbeatTime = 0;
+    private long lastReceivedTime = 0;
+
+    private volatile boolean synced = false;
+    private volatile long lastAppliedSequence = -1;
+    private volatile long lastBatchReceivedTime = 0;
+    private volatile long lagMillis = 0;
+    private volatile long maxLagMillis = 0;
+    private volatile long appliedMutations = 0;
+
+    public ReplicaLink(InetSocketAddress primary, CacheStore store) {
+        this.primary = primary;
+        this.store = store;
+    }
+
+    /**
+     * Called on every server loop iteration, (re)connects to the primary once the backoff delay has passed
+     */
+    public void tick(Selector selector) {
+        if (channel != null) {
+            if (channel.isConnected()) {
+                keepAlive();
+            }
+            return;
+        }
+        if (System.currentTimeMillis() < nextConnectAttemptTime) {
+            return;
+        }
+
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(primary);
+            channel.register(selector, SelectionKey.OP_CONNECT, this);
+            System.out.println("Connecting to primary " + primary);
+        } catch (IOException e) {
+            System.err.println("Connection to primary failed: " + e.getMessage());
+            disconnect();
+        }
+    }
+
+    /**
+     * Handles a selected key whose attachment is this link
+     */
+    public void handle(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                finishConnection(key);
+            } else if (key.isReadable()) {
+                read();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Replication from primary failed: " + e.getMessage());
+            disconnect();
+        }
+    }
+
+    private void keepAlive() {
+        long now = System.currentTimeMillis();
+        if (now - lastReceivedTime > PRIMARY_TIMEOUT_MS) {
+            System.err.println("No batch from primary for " + PRIMARY_TIMEOUT_MS + " ms, reconnecting");
+            disconnect();
+            return;
+        }
+
+        if (now - lastHeartbeatTime >= HEARTBEAT_INTERVAL_MS) {
+            try {
+                CacheProtocol.sendMessage(channel, CacheProtocol.createHeartbeatMessage());
+                lastHeartbeatTime = now;
+            } catch (IOException e) {
+                System.err.println("Heartbeat to primary failed: " + e.getMessage());
+                disconnect();
+            }
+        }
+    }
+
+    private void finishConnection(SelectionKey key) throws IOException {
+        channel.finishConnect();
+        key.interestOps(SelectionKey.OP_READ);
+        currentRetryDelay = INITIAL_RETRY_DELAY_MS;
+        lastReceivedTime = System.currentTimeMillis();
+        lastHeartbeatTime = lastReceivedTime;
+
+        // The snapshot replaces whatever this replica held before
+        buffer.clear();
+        chunkAssembler.clear();
+        store.clear();
+        CacheProtocol.sendMessage(channel, CacheProtocol.createSyncMessage());
+
+        System.out.println("Connected to primary " + primary + ", waiting for snapshot");
+    }
+
+    private void read() throws IOException {
+        CacheProtocol.Message message;
+        while ((message = CacheProtocol.readMessage(channel, buffer)) != null) {
+            lastReceivedTime = System.currentTimeMillis();
+            message = chunkAssembler.accept(message);
+            if (message == null) {
+                continue; // batch larger than a frame, more chunks to come
+            }
+            if (message.getOperation() == CacheProtocol.OP_RESPONSE) {
+                continue; // heartbeat acknowledgement
+            }
+            if (message.getOperation() != CacheProtocol.OP_REPL_BATCH) {
+                throw new IOException("Unexpected message from primary: " + message);
+            }
+
+            int applied = MutationBatch.apply(message.getValue(), store);
+
+            long now = System.currentTimeMillis();
+            byte[] header = message.getKey();
+            lastAppliedSequence = MutationBatch.sequence(header);
+            lastBatchReceivedTime = now;
+            lagMillis = Math.max(0, now - MutationBatch.timestamp(header));
+            maxLagMillis = Math.max(maxLagMillis, lagMillis);
+            appliedMutations += applied;
+            synced = true;
+        }
+    }
+
+    private void disconnect() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore errors during close
+            }
+            channel = null;
+        }
+        synced = false;
+
+        nextConnectAttemptTime = System.currentTimeMillis() + currentRetryDelay;
+        currentRetryDelay = Math.min(currentRetryDelay * 2, MAX_RETRY_DELAY_MS);
+    }
+
+    public void close() {
+        disconnect();
+    }
+
+    /**
+     * Whether batches from the primary have been applied since the last (re)connection
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    public long getLastAppliedSequence() {
+        return lastAppliedSequence;
+    }
+
+    /**
+     * Delay between the primary sending the last batch and this replica applying it
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    /**
+     * Time since the last batch was received. The primary sends a batch at least every
+     * {@link ReplicationSource#IDLE_BATCH_INTERVAL_MS}, so a larger value means the stream has stalled.
+     */
+    public long getStalenessMillis() {
+        return lastBatchReceivedTime == 0 ? -1 : System.currentTimeMillis() - lastBatchReceivedTime;
+    }
+
+    public long getAppliedMutations() {
+        return appliedMutations;
+    }
+}
@@ -0,0 +1,175 @@
+package org.global.dax.replication;
+
+import org.global.dax.server.Connection;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.store.CacheStore;
+import org.global.dax.store.MutationListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Primary side of replication.
+ *
+ * Mutations applied to the store are appended to a pending batch, which is streamed to every
+ * connected replica when {@link #flush()} is called from the server loop (or as soon as it fills up).
+ * A newly registered replica first receives a snapshot of the store, followed by the live stream.
+ *
+ * Must only be used from the server selector thread.
+ */
+public class ReplicationSource implements MutationListener {
+
+    public static final int MAX_BATCH_BYTES = 256 * 1024; // 256KB per batch
+    public static final long IDLE_BATCH_INTERVAL_MS = 1000; // empty batch sent at least every second
+
+    private final CacheStore store;
+    private final List<Connection> replicas = new ArrayList<>();
+    private final ByteBuffer batch = ByteBuffer.allocate(MAX_BATCH_BYTES);
+
+    private long sequence = 0;
+    private long lastSentMillis = 0;
+
+    public ReplicationSource(CacheStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void onAdd(String key, byte[] value) {
+        append(MutationBatch.RECORD_ADD, key, value);
+    }
+
+    @Override
+    public void onRemove(String key) {
+        append(MutationBatch.RECORD_REMOVE, key, null);
+    }
+
+    /**
+     * Registers a replica: pending mutations are flushed to the existing replicas, then the new replica
+     * receives the full store as snapshot batches before joining the live stream
+     */
+    public void addReplica(Connection connection) {
+        flush(true);
+
+        try {
+            sendSnapshot(connection);
+            replicas.add(connection);
+            System.out.println("Replica registered: " + connection.getRemoteAddress() + " at sequence " + sequence);
+        } catch (IOException e) {
+            System.err.println("Failed to send snapshot to replica: " + e.getMessage());
+        }
+    }
+
+    public void removeReplica(Connection connection) {
+        if (replicas.remove(connection)) {
+            System.out.println("Replica removed");
+        }
+    }
+
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Sends the pending batch to the replicas. When there is nothing pending, an empty batch is still sent
+     * once per {@link #IDLE_BATCH_INTERVAL_MS} so replicas can keep measuring their lag.
+     */
+    public void flush() {
+        flush(false);
+    }
+
+    private void flush(boolean force) {
+        if (replicas.isEmpty()) {
+            batch.clear();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (batch.position() == 0 && !force && now - lastSentMillis < IDLE_BATCH_INTERVAL_MS) {
+            return;
+        }
+
+        byte[] records = Arrays.copyOf(batch.array(), batch.position());
+        batch.clear();
+        send(records);
+    }
+
+    private void send(byte[] records) {
+        lastSentMillis = System.currentTimeMillis();
+        // Encoded once, shared by every replica, in chunks when a single large mutation exceeds a frame
+        ByteBuffer[] frames = CacheProtocol.encodeFrames(CacheProtocol.createBatchMessage(
+                MutationBatch.header(sequence, lastSentMillis), records));
+
+        Iterator<Connection> iterator = replicas.iterator();
+        while (iterator.hasNext()) {
+            Connection replica = iterator.next();
+            try {
+                replica.send(frames);
+            } catch (IOException e) {
+                // The server loop closes the channel when its next read fails
+                System.err.println("Failed to stream to replica, dropping it: " + e.getMessage());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void append(byte operation, String key, byte[] value) {
+        if (replicas.isEmpty()) {
+            sequence++;
+            return;
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int recordSize = MutationBatch.recordSize(keyBytes, value);
+        if (recordSize > batch.remaining()) {
+            flush(true);
+        }
+        sequence++;
+
+        if (recordSize > batch.capacity()) {
+            // Oversized mutation goes out as a batch of its own
+            ByteBuffer single = ByteBuffer.allocate(recordSize);
+            MutationBatch.writeRecord(single, operation, keyBytes, value);
+            send(single.array());
+        } else {
+            MutationBatch.writeRecord(batch, operation, keyBytes, value);
+        }
+    }
+
+    private void sendSnapshot(Connection connection) throws IOException {
+        ByteBuffer snapshot = ByteBuffer.allocate(MAX_BATCH_BYTES);
+        for (Map.Entry<String, byte[]> entry : store.asMap().entrySet()) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] value = entry.getValue();
+            int recordSize = MutationBatch.recordSize(key, value);
+            if (recordSize > snapshot.remaining()) {
+                sendSnapshotBatch(connection, snapshot);
+            }
+            if (recordSize > snapshot.capacity()) {
+                ByteBuffer single = ByteBuffer.allocate(recordSize);
+                MutationBatch.writeRecord(single, MutationBatch.RECORD_ADD, key, value);
+                sendSnapshotBatch(connection, single);
+            } else {
+                MutationBatch.writeRecord(snapshot, MutationBatch.RECORD_ADD, key, value);
+            }
+        }
+        // Always send the last batch, even if empty, so the replica learns the current sequence
+        sendSnapshotBatch(connection, snapshot);
+    }
+
+    private void sendSnapshotBatch(Connection connection, ByteBuffer snapshot) throws IOException {
+        connection.send(CacheProtocol.createBatchMessage(
+                MutationBatch.header(sequence, System.currentTimeMillis()),
+                Arrays.copyOf(snapshot.array(), snapshot.position())));
+        snapshot.clear();
+    }
+}
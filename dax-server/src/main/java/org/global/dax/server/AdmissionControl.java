@@ -0,0 +1,94 @@
+package org.global.dax.server;
+
+/**
+ * Limits on the work a server accepts.
+ *
+ * A connection whose queued responses exceed its own limits stops being read until its queue drains
+ * below half of them, pushing back on that client only. When the server-wide totals exceed their
+ * limits, new requests are answered with {@code STATUS_BUSY} without being executed so clients back off.
+ *
+ * Must only be used from the server selector thread.
+ */
+public final class AdmissionControl {
+
+    private final int maxPendingResponsesPerConnection;
+    private final long maxOutboundBytesPerConnection;
+    private final long maxPendingResponses;
+    private final long maxOutboundBytes;
+
+    private long pendingResponses = 0;
+    private long outboundBytes = 0;
+    private long rejectedRequests = 0;
+    private int pausedConnections = 0;
+
+    public AdmissionControl(ServerConfig config) {
+        this.maxPendingResponsesPerConnection = config.getMaxPendingResponsesPerConnection();
+        this.maxOutboundBytesPerConnection = config.getMaxOutboundBytesPerConnection();
+        this.maxPendingResponses = config.getMaxPendingResponses();
+        this.maxOutboundBytes = config.getMaxOutboundBytes();
+    }
+
+    /**
+     * Whether the connection has queued enough that it should stop being read
+     */
+    public boolean shouldPause(Connection connection) {
+        return connection.getPendingResponses() >= maxPendingResponsesPerConnection
+                || connection.getOutboundBytes() >= maxOutboundBytesPerConnection;
+    }
+
+    /**
+     * Whether a paused connection has drained enough to be read again
+     */
+    public boolean canResume(Connection connection) {
+        return connection.getPendingResponses() <= maxPendingResponsesPerConnection / 2
+                && connection.getOutboundBytes() <= maxOutboundBytesPerConnection / 2;
+    }
+
+    /**
+     * Whether new requests should be rejected as busy
+     */
+    public boolean isOverloaded() {
+        return pendingResponses >= maxPendingResponses || outboundBytes >= maxOutboundBytes;
+    }
+
+    void onQueued(long bytes) {
+        pendingResponses++;
+        outboundBytes += bytes;
+    }
+
+    void onBytesWritten(long bytes) {
+        outboundBytes -= bytes;
+    }
+
+    void onFrameWritten() {
+        pendingResponses--;
+    }
+
+    void onRejected() {
+        rejectedRequests++;
+    }
+
+    void onPaused() {
+        pausedConnections++;
+    }
+
+    void onResumed() {
+        pausedConnections--;
+    }
+
+    public long getPendingResponses() {
+        return pendingResponses;
+    }
+
+    public long getOutboundBytes() {
+        return outboundBytes;
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests;
+    }
+
+    public int getPausedConnections() {
+        return pausedConnections;
+    }
+}
@@ -0,0 +1,396 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ChunkAssembler;
+import org.global.dax.shared.FrameView;
+import org.global.dax.shared.KeyView;
+import org.global.dax.shared.SharedMemoryChannel;
+import org.global.dax.shared.TimerWheel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A client connection of the server: its read buffer and the frames waiting to be written.
+ *
+ * A frame is written straight to the socket when nothing is queued ahead of it. Whatever the socket
+ * does not accept is queued, and written once the channel becomes writable again, so a slow reader
+ * never blocks the selector thread. Queued frames are accounted by {@link AdmissionControl}.
+ *
+ * Same-host clients may connect through a {@link SharedMemoryChannel} instead of a socket. Such a connection
+ * has no selection key, the server loop polls it for requests and flushes it while frames are queued.
+ *
+ * Must only be used from the server selector thread.
+ */
+public final class Connection {
+
+    private static final int MAX_GATHERED_FRAMES = 64; // frames handed to a single gathering write
+    private static final int RESPONSE_BUFFER_SIZE = 16 * 1024; // 16KB, larger responses are encoded as messages
+
+    // The socket and its key, both null for a shared memory connection
+    private final SocketChannel channel;
+    private final SelectionKey key;
+
+    // The socket, or the shared memory channel
+    private final ReadableByteChannel input;
+    private final GatheringByteChannel output;
+    private final ByteBuffer readBuffer;
+    private final AdmissionControl admissionControl;
+
+    // Values larger than a frame, read chunk by chunk
+    private final ChunkAssembler chunkAssembler = new ChunkAssembler();
+
+    // Reused for every frame read, requests are handled in place in the read buffer
+    private final FrameView frameView = new FrameView();
+
+    // Small responses are encoded here and written right away, only what the socket leaves is copied to the queue
+    private final ByteBuffer responseBuffer = ByteBuffer.allocate(RESPONSE_BUFFER_SIZE);
+
+    private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHERED_FRAMES];
+    private long outboundBytes = 0;
+    private boolean readPaused = false;
+
+    // Whether the connection waits in the ready queue of the server loop
+    private boolean scheduled = false;
+
+    // Last time the peer showed it is alive, and the idle check pending for the connection
+    private long lastActivityMillis;
+    private TimerWheel.Timeout<Connection> idleTimeout;
+
+    // Times the encoding and writing of the responses to a recorded request, null when requests are not recorded
+    private RequestRecorder recorder;
+
+    Connection(SocketChannel channel, SelectionKey key, ByteBuffer readBuffer, AdmissionControl admissionControl) {
+        this.channel = channel;
+        this.key = key;
+        this.input = channel;
+        this.output = channel;
+        this.readBuffer = readBuffer;
+        this.admissionControl = admissionControl;
+    }
+
+    Connection(SharedMemoryChannel channel, ByteBuffer readBuffer, AdmissionControl admissionControl) {
+        this.channel = null;
+        this.key = null;
+        this.input = channel;
+        this.output = channel;
+        this.readBuffer = readBuffer;
+        this.admissionControl = admissionControl;
+    }
+
+    public void send(CacheProtocol.Message message) throws IOException {
+        long start = isRecording() ? System.nanoTime() : 0;
+        if (CacheProtocol.isChunked(message)) {
+            ByteBuffer[] frames = CacheProtocol.encodeFrames(message);
+            addEncodeTime(start);
+            send(frames);
+        } else {
+            ByteBuffer frame = CacheProtocol.encode(message);
+            addEncodeTime(start);
+            send(frame);
+        }
+    }
+
+    /**
+     * Sends a sequence of frames built by {@link CacheProtocol#encodeFrames}, with a single gathering write
+     * when nothing is queued ahead of them
+     */
+    public void send(ByteBuffer[] frames) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            buffers[i] = frames[i].duplicate();
+            if (isRecording()) {
+                recorder.addResponseBytes(buffers[i].remaining());
+            }
+        }
+
+        int first = 0;
+        if (outbound.isEmpty()) {
+            long start = isRecording() ? System.nanoTime() : 0;
+            output.write(buffers);
+            addWriteTime(start);
+            while (first < buffers.length && !buffers[first].hasRemaining()) {
+                first++;
+            }
+            if (first == buffers.length) {
+                return;
+            }
+            setInterest(SelectionKey.OP_WRITE, true);
+        }
+
+        for (int i = first; i < buffers.length; i++) {
+            outbound.add(buffers[i]);
+            outboundBytes += buffers[i].remaining();
+            admissionControl.onQueued(buffers[i].remaining());
+        }
+    }
+
+    /**
+     * Sends a frame built by {@link CacheProtocol#encode}, the frame itself is left untouched so it can be shared
+     */
+    public void send(ByteBuffer frame) throws IOException {
+        ByteBuffer buffer = frame.duplicate();
+        if (isRecording()) {
+            recorder.addResponseBytes(buffer.remaining());
+        }
+        if (outbound.isEmpty()) {
+            long start = isRecording() ? System.nanoTime() : 0;
+            output.write(buffer);
+            addWriteTime(start);
+            if (!buffer.hasRemaining()) {
+                return;
+            }
+            setInterest(SelectionKey.OP_WRITE, true);
+        }
+
+        outbound.add(buffer);
+        outboundBytes += buffer.remaining();
+        admissionControl.onQueued(buffer.remaining());
+    }
+
+    /**
+     * Whether a response with this key and value is small enough for {@link #sendResponse}
+     */
+    public boolean fitsResponseBuffer(KeyView key, int valueLength) {
+        return CacheProtocol.HEADER_SIZE + key.size() + 1 + valueLength <= RESPONSE_BUFFER_SIZE;
+    }
+
+    /**
+     * Sends a response to a request key read in place, without allocating when the socket takes it whole.
+     * The response must fit in the response buffer, see {@link #fitsResponseBuffer}.
+     *
+     * @param value the value, null for a response with the status alone
+     */
+    public void sendResponse(byte status, KeyView key, byte[] value) throws IOException {
+        long start = isRecording() ? System.nanoTime() : 0;
+        responseBuffer.clear();
+        if (!CacheProtocol.encodeResponse(responseBuffer, status, key, value)) {
+            throw new IllegalArgumentException("Response too large for the response buffer");
+        }
+        responseBuffer.flip();
+        addEncodeTime(start);
+        sendResponseBuffer();
+    }
+
+    /**
+     * Sends a copy of a shared frame built by {@link CacheProtocol#encode}, without allocating when it fits in
+     * the response buffer and the socket takes it whole
+     */
+    public void sendCopy(ByteBuffer frame) throws IOException {
+        if (frame.remaining() > RESPONSE_BUFFER_SIZE) {
+            send(frame);
+            return;
+        }
+        // Absolute copy, the shared frame is left untouched
+        responseBuffer.clear();
+        responseBuffer.put(0, frame, frame.position(), frame.remaining());
+        responseBuffer.limit(frame.remaining());
+        sendResponseBuffer();
+    }
+
+    private void sendResponseBuffer() throws IOException {
+        if (isRecording()) {
+            recorder.addResponseBytes(responseBuffer.remaining());
+        }
+        if (outbound.isEmpty()) {
+            long start = isRecording() ? System.nanoTime() : 0;
+            output.write(responseBuffer);
+            addWriteTime(start);
+            if (!responseBuffer.hasRemaining()) {
+                return;
+            }
+            setInterest(SelectionKey.OP_WRITE, true);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(responseBuffer.remaining());
+        buffer.put(responseBuffer).flip();
+        outbound.add(buffer);
+        outboundBytes += buffer.remaining();
+        admissionControl.onQueued(buffer.remaining());
+    }
+
+    void setRecorder(RequestRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    private boolean isRecording() {
+        return recorder != null && recorder.isRecording();
+    }
+
+    private void addEncodeTime(long start) {
+        if (start != 0) {
+            recorder.addEncodeTime(System.nanoTime() - start);
+        }
+    }
+
+    private void addWriteTime(long start) {
+        if (start != 0) {
+            recorder.addWriteTime(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Writes queued frames until the queue is empty or the socket stops accepting data
+     */
+    void flush() throws IOException {
+        while (!outbound.isEmpty()) {
+            int count = 0;
+            for (ByteBuffer buffer : outbound) {
+                gather[count++] = buffer;
+                if (count == gather.length) {
+                    break;
+                }
+            }
+
+            long written = output.write(gather, 0, count);
+            boolean socketFull = gather[count - 1].hasRemaining();
+            Arrays.fill(gather, 0, count, null);
+
+            outboundBytes -= written;
+            admissionControl.onBytesWritten(written);
+            while (!outbound.isEmpty() && !outbound.peek().hasRemaining()) {
+                outbound.poll();
+                admissionControl.onFrameWritten();
+            }
+
+            if (socketFull) {
+                // Wait for the channel to be writable again
+                return;
+            }
+        }
+
+        setInterest(SelectionKey.OP_WRITE, false);
+    }
+
+    void pauseReading() {
+        if (!readPaused) {
+            readPaused = true;
+            setInterest(SelectionKey.OP_READ, false);
+            admissionControl.onPaused();
+        }
+    }
+
+    void resumeReading() {
+        if (readPaused) {
+            readPaused = false;
+            setInterest(SelectionKey.OP_READ, true);
+            admissionControl.onResumed();
+        }
+    }
+
+    private void setInterest(int operation, boolean interested) {
+        // Shared memory connections are polled, they have no key
+        if (key != null) {
+            key.interestOps(interested ? key.interestOps() | operation : key.interestOps() & ~operation);
+        }
+    }
+
+    boolean isReadPaused() {
+        return readPaused;
+    }
+
+    boolean isScheduled() {
+        return scheduled;
+    }
+
+    void setScheduled(boolean scheduled) {
+        this.scheduled = scheduled;
+    }
+
+    long getLastActivityMillis() {
+        return lastActivityMillis;
+    }
+
+    /**
+     * Records activity of the peer, the pending idle check sees it when it expires
+     */
+    void touch(long nowMillis) {
+        lastActivityMillis = nowMillis;
+    }
+
+    void setIdleTimeout(TimerWheel.Timeout<Connection> idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public boolean isOpen() {
+        return output.isOpen();
+    }
+
+    void close() throws IOException {
+        output.close();
+    }
+
+    /**
+     * Releases the accounting of the frames left unwritten, the channel itself is closed by the caller
+     */
+    void release() {
+        if (idleTimeout != null) {
+            idleTimeout.cancel();
+            idleTimeout = null;
+        }
+        while (!outbound.isEmpty()) {
+            admissionControl.onBytesWritten(outbound.poll().remaining());
+            admissionControl.onFrameWritten();
+        }
+        outboundBytes = 0;
+        if (readPaused) {
+            readPaused = false;
+            admissionControl.onResumed();
+        }
+    }
+
+    /**
+     * The socket of the connection, null for a shared memory connection
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    ReadableByteChannel getInput() {
+        return input;
+    }
+
+    /**
+     * Address of the peer for logs: its socket address, or the file of a shared memory connection
+     */
+    public String getRemoteAddress() {
+        if (channel == null) {
+            return ((SharedMemoryChannel) output).getPath().toString();
+        }
+        try {
+            return String.valueOf(channel.getRemoteAddress());
+        } catch (IOException e) {
+            return "closed socket";
+        }
+    }
+
+    ByteBuffer getReadBuffer() {
+        return readBuffer;
+    }
+
+    FrameView getFrameView() {
+        return frameView;
+    }
+
+    ChunkAssembler getChunkAssembler() {
+        return chunkAssembler;
+    }
+
+    /**
+     * Responses queued but not yet fully written
+     */
+    public int getPendingResponses() {
+        return outbound.size();
+    }
+
+    public long getOutboundBytes() {
+        return outboundBytes;
+    }
+}
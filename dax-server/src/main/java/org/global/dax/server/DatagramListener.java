@@ -0,0 +1,156 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.store.CacheStore;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UDP listener serving ADD and GET of small values from the same store as the TCP connections.
+ *
+ * Each datagram holds a request id and a single frame (see {@link CacheProtocol#encodeDatagram}), the response
+ * echoes the request id so clients can match it and retry lost requests. Requests with
+ * {@link CacheProtocol#NO_RESPONSE} as request id are fire-and-forget and never answered. There is no flow
+ * control: responses the socket cannot take right away are dropped, like datagrams lost on the way, and
+ * values too large for a datagram are answered with an error telling the client to use TCP.
+ *
+ * Datagram reads have no connection, so they are neither tracked for invalidations nor counted as hot keys.
+ *
+ * Must only be used from the server selector thread.
+ */
+final class DatagramListener {
+
+    // Datagrams handled per readiness event, the TCP connections get their turn in between
+    private static final int MAX_DATAGRAMS_PER_TURN = 64;
+
+    private final DatagramChannel channel;
+    private final CacheStore cache;
+    private final boolean readOnly;
+
+    // Reused for every datagram, received and sent ones are never larger than the MTU
+    private final ByteBuffer request = ByteBuffer.allocateDirect(CacheProtocol.MAX_DATAGRAM_SIZE);
+    private final ByteBuffer response = ByteBuffer.allocateDirect(CacheProtocol.MAX_DATAGRAM_SIZE);
+
+    private long received = 0;
+    private long malformed = 0;
+    private long dropped = 0;
+
+    DatagramListener(int port, CacheStore cache, boolean readOnly) throws IOException {
+        this.channel = DatagramChannel.open();
+        this.cache = cache;
+        this.readOnly = readOnly;
+        channel.configureBlocking(false);
+        channel.bind(new InetSocketAddress(port));
+    }
+
+    void register(Selector selector) throws IOException {
+        channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * Serves the datagrams waiting on the socket, up to a bounded number per call
+     */
+    void receive() throws IOException {
+        for (int i = 0; i < MAX_DATAGRAMS_PER_TURN; i++) {
+            request.clear();
+            SocketAddress sender = channel.receive(request);
+            if (sender == null) {
+                return;
+            }
+            request.flip();
+            received++;
+
+            if (request.remaining() < CacheProtocol.REQUEST_ID_SIZE) {
+                malformed++;
+                continue;
+            }
+            int requestId = request.getInt();
+            CacheProtocol.Message message;
+            try {
+                message = CacheProtocol.decodeDatagram(request);
+            } catch (IOException e) {
+                // A datagram is complete or lost, a broken one is only skipped
+                malformed++;
+                continue;
+            }
+
+            CacheProtocol.Message reply = handle(message);
+            if (requestId != CacheProtocol.NO_RESPONSE) {
+                send(sender, requestId, reply);
+            }
+        }
+    }
+
+    private CacheProtocol.Message handle(CacheProtocol.Message message) {
+        switch (message.getOperation()) {
+            case CacheProtocol.OP_ADD:
+                if (readOnly) {
+                    return response(CacheProtocol.STATUS_ERROR, message.getKey(),
+                            "Read-only replica, send writes to the primary".getBytes(StandardCharsets.UTF_8));
+                }
+                if (message.getKey() == null) {
+                    return response(CacheProtocol.STATUS_ERROR, null, "Missing key".getBytes(StandardCharsets.UTF_8));
+                }
+                cache.put(message.getKeyAsString(), message.getValue() != null ? message.getValue() : new byte[0]);
+                return response(CacheProtocol.STATUS_OK, message.getKey(), new byte[0]);
+
+            case CacheProtocol.OP_GET:
+                byte[] value = message.getKey() != null ? cache.get(message.getKeyAsString()) : null;
+                if (value == null) {
+                    return response(CacheProtocol.STATUS_NOT_FOUND, message.getKey(), new byte[0]);
+                }
+                return response(CacheProtocol.STATUS_OK, message.getKey(), value);
+
+            default:
+                return response(CacheProtocol.STATUS_ERROR, message.getKey(),
+                        ("Unsupported datagram operation: " + message.getOperation()).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void send(SocketAddress target, int requestId, CacheProtocol.Message reply) throws IOException {
+        try {
+            CacheProtocol.encodeDatagram(requestId, reply, response);
+        } catch (IllegalArgumentException e) {
+            byte[] reason = "Value too large for a datagram, use TCP".getBytes(StandardCharsets.UTF_8);
+            try {
+                CacheProtocol.encodeDatagram(requestId, response(CacheProtocol.STATUS_ERROR, reply.getKey(), reason), response);
+            } catch (IllegalArgumentException keyTooLarge) {
+                dropped++; // not even the error fits, the client times out
+                return;
+            }
+        }
+        if (channel.send(response, target) == 0) {
+            dropped++; // socket buffer full
+        }
+    }
+
+    private static CacheProtocol.Message response(byte status, byte[] key, byte[] body) {
+        byte[] value = new byte[body.length + 1];
+        value[0] = status;
+        System.arraycopy(body, 0, value, 1, body.length);
+        return CacheProtocol.createResponseMessage(status, key, value);
+    }
+
+    long getReceived() {
+        return received;
+    }
+
+    long getMalformed() {
+        return malformed;
+    }
+
+    long getDropped() {
+        return dropped;
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
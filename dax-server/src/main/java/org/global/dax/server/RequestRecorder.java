@@ -0,0 +1,164 @@
+package org.global.dax.server;
+
+import jdk.jfr.EventType;
+import org.global.dax.events.AbstractRequestEvent;
+import org.global.dax.events.FlushEvent;
+import org.global.dax.events.RequestEvent;
+import org.global.dax.events.SlowRequestEvent;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.KeyView;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Times the requests of the server loop and records them as Flight Recorder events.
+ *
+ * While no recording has the events enabled, {@link #begin} is a check of two flags: nothing is timed or allocated.
+ * Otherwise the events are created when a request starts, and the phases are added up as it goes, the encoding and
+ * socket writes by the {@link Connection} sending its responses. Events are only filled in, with the key and client
+ * strings, once they pass the threshold of their recording.
+ *
+ * Must only be used from the server selector thread.
+ */
+final class RequestRecorder {
+
+    private static final EventType REQUESTS = EventType.getEventType(RequestEvent.class);
+    private static final EventType SLOW_REQUESTS = EventType.getEventType(SlowRequestEvent.class);
+    private static final EventType FLUSHES = EventType.getEventType(FlushEvent.class);
+
+    // Events of the request being served, both null when it is not recorded
+    private RequestEvent request;
+    private SlowRequestEvent slowRequest;
+    private FlushEvent flush;
+
+    private long startNanos;
+    private long decodedNanos;
+    private long encodeNanos;
+    private long writeNanos;
+    private long requestBytes;
+    private long responseBytes;
+
+    /**
+     * Starts recording a request whose frame was just read
+     */
+    void begin(int frameSize) {
+        request = REQUESTS.isEnabled() ? new RequestEvent() : null;
+        slowRequest = SLOW_REQUESTS.isEnabled() ? new SlowRequestEvent() : null;
+        if (request == null && slowRequest == null) {
+            return;
+        }
+        if (request != null) {
+            request.begin();
+        }
+        if (slowRequest != null) {
+            slowRequest.begin();
+        }
+        startNanos = System.nanoTime();
+        decodedNanos = startNanos;
+        encodeNanos = 0;
+        writeNanos = 0;
+        requestBytes = frameSize;
+        responseBytes = 0;
+    }
+
+    boolean isRecording() {
+        return request != null || slowRequest != null;
+    }
+
+    /**
+     * Drops the request being recorded, a frame carrying a chunk of a value is recorded with the last one
+     */
+    void cancel() {
+        request = null;
+        slowRequest = null;
+    }
+
+    /**
+     * The request message was built from its frames, the handler takes it from here
+     */
+    void decoded() {
+        if (isRecording()) {
+            decodedNanos = System.nanoTime();
+        }
+    }
+
+    void addEncodeTime(long nanos) {
+        encodeNanos += nanos;
+    }
+
+    void addWriteTime(long nanos) {
+        writeNanos += nanos;
+    }
+
+    void addResponseBytes(long bytes) {
+        responseBytes += bytes;
+    }
+
+    /**
+     * The request was served, commits its events if they pass their threshold
+     *
+     * @param key the key of the request, a {@link KeyView} whose frame is not yet released or the bytes of the key
+     */
+    void end(byte operation, Object key, Connection connection) {
+        if (!isRecording()) {
+            return;
+        }
+        long endNanos = System.nanoTime();
+        if (request != null) {
+            request.end();
+            if (request.shouldCommit()) {
+                fill(request, operation, key, connection, endNanos);
+                request.commit();
+            }
+            request = null;
+        }
+        if (slowRequest != null) {
+            slowRequest.end();
+            if (slowRequest.shouldCommit()) {
+                fill(slowRequest, operation, key, connection, endNanos);
+                slowRequest.commit();
+            }
+            slowRequest = null;
+        }
+    }
+
+    private void fill(AbstractRequestEvent event, byte operation, Object key, Connection connection, long endNanos) {
+        event.operation = CacheProtocol.operationToString(operation);
+        if (key instanceof byte[]) {
+            event.key = new String((byte[]) key, StandardCharsets.UTF_8);
+        } else if (key != null) {
+            event.key = key.toString();
+        }
+        event.client = connection.getRemoteAddress();
+        event.requestBytes = requestBytes;
+        event.responseBytes = responseBytes;
+        event.decodeTime = decodedNanos - startNanos;
+        event.encodeTime = encodeNanos;
+        event.writeTime = writeNanos;
+        event.handleTime = Math.max(0, endNanos - decodedNanos - encodeNanos - writeNanos);
+    }
+
+    /**
+     * Starts recording a flush of the responses queued for a connection
+     */
+    void beginFlush() {
+        flush = FLUSHES.isEnabled() ? new FlushEvent() : null;
+        if (flush != null) {
+            flush.begin();
+        }
+    }
+
+    void endFlush(Connection connection, long writtenBytes) {
+        if (flush == null) {
+            return;
+        }
+        flush.end();
+        if (flush.shouldCommit()) {
+            flush.client = connection.getRemoteAddress();
+            flush.writtenBytes = writtenBytes;
+            flush.queuedBytes = connection.getOutboundBytes();
+            flush.commit();
+        }
+        flush = null;
+    }
+}
@@ -0,0 +1,262 @@
+package org.global.dax.server;
+
+import org.global.dax.loader.CacheLoader;
+import org.global.dax.shared.BusyPoll;
+import org.global.dax.shared.WaitStrategy;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+
+import static org.global.dax.shared.Properties.PORT;
+
+/**
+ * Settings of a {@link ServerMain}, defaults match a standalone primary on {@code Properties.PORT}
+ */
+public final class ServerConfig {
+
+    private int port = PORT;
+    private int udpPort = 0;
+    private Path unixSocketPath = null;
+    private Path sharedMemoryDirectory = null;
+    private WaitStrategy sharedMemoryWaitStrategy = WaitStrategy.PARK;
+    private InetSocketAddress primaryAddress = null;
+    private Path diskTierDirectory = null;
+    private long maxResidentBytes = 0;
+    private boolean valueDeduplication = false;
+    private CacheLoader cacheLoader = null;
+    private BusyPoll busyPoll = null;
+    private Path handoffSocketPath = null;
+    private long drainTimeoutMillis = 10_000;
+
+    private int maxPendingResponsesPerConnection = 1024;
+    private long maxOutboundBytesPerConnection = 4 * 1024 * 1024; // 4MB
+    private long maxPendingResponses = 64 * 1024;
+    private long maxOutboundBytes = 256 * 1024 * 1024; // 256MB
+
+    private int maxFramesPerTurn = 16;
+    private int maxBytesPerTurn = 64 * 1024; // 64KB
+    private int scanThreads = 2;
+
+    private long idleTimeoutMillis = 5 * 60 * 1000; // 5 minutes
+    private boolean requestLogging = true;
+
+    public int getPort() {
+        return port;
+    }
+
+    public ServerConfig withPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public int getUdpPort() {
+        return udpPort;
+    }
+
+    /**
+     * Port of the UDP listener serving small ADD and GET requests, 0 to only listen on TCP
+     */
+    public ServerConfig withUdpPort(int udpPort) {
+        this.udpPort = udpPort;
+        return this;
+    }
+
+    public Path getUnixSocketPath() {
+        return unixSocketPath;
+    }
+
+    /**
+     * Path of a Unix domain socket accepting same-host clients next to the TCP port, null to only listen on TCP
+     */
+    public ServerConfig withUnixSocketPath(Path unixSocketPath) {
+        this.unixSocketPath = unixSocketPath;
+        return this;
+    }
+
+    public Path getSharedMemoryDirectory() {
+        return sharedMemoryDirectory;
+    }
+
+    public WaitStrategy getSharedMemoryWaitStrategy() {
+        return sharedMemoryWaitStrategy;
+    }
+
+    /**
+     * Directory where same-host clients publish their shared memory rings, null to not accept such clients.
+     * The wait strategy is how the server loop waits between polls while shared memory connections are open.
+     */
+    public ServerConfig withSharedMemory(Path directory, WaitStrategy waitStrategy) {
+        this.sharedMemoryDirectory = directory;
+        this.sharedMemoryWaitStrategy = waitStrategy;
+        return this;
+    }
+
+    /**
+     * Address of the primary to replicate from, null when running as a primary
+     */
+    public InetSocketAddress getPrimaryAddress() {
+        return primaryAddress;
+    }
+
+    public ServerConfig withPrimaryAddress(InetSocketAddress primaryAddress) {
+        this.primaryAddress = primaryAddress;
+        return this;
+    }
+
+    public Path getDiskTierDirectory() {
+        return diskTierDirectory;
+    }
+
+    public long getMaxResidentBytes() {
+        return maxResidentBytes;
+    }
+
+    /**
+     * Directory of the disk tier the cold values are demoted to once the values in memory exceed the budget,
+     * null to keep every value in memory
+     */
+    public ServerConfig withDiskTier(Path directory, long maxResidentBytes) {
+        this.diskTierDirectory = directory;
+        this.maxResidentBytes = maxResidentBytes;
+        return this;
+    }
+
+    public Path getHandoffSocketPath() {
+        return handoffSocketPath;
+    }
+
+    public long getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    /**
+     * Hot restart: the port is bound with SO_REUSEPORT, and a server started with the same handoff socket takes over
+     * the store and the port of this one, which then drains its connections for up to the timeout and stops.
+     * Null, the default, binds the port for this process only.
+     */
+    public ServerConfig withHotRestart(Path handoffSocketPath, long drainTimeoutMillis) {
+        this.handoffSocketPath = handoffSocketPath;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+        return this;
+    }
+
+    public boolean isValueDeduplication() {
+        return valueDeduplication;
+    }
+
+    /**
+     * Whether byte-identical values share a single copy in memory, every value written is hashed to find its copy
+     */
+    public ServerConfig withValueDeduplication(boolean valueDeduplication) {
+        this.valueDeduplication = valueDeduplication;
+        return this;
+    }
+
+    public CacheLoader getCacheLoader() {
+        return cacheLoader;
+    }
+
+    /**
+     * Backend the keys missed by a GET are loaded from, and the writes are written back to, null for none.
+     * Only used by a primary, a replica gets the loaded values through replication.
+     */
+    public ServerConfig withCacheLoader(CacheLoader cacheLoader) {
+        this.cacheLoader = cacheLoader;
+        return this;
+    }
+
+    public BusyPoll getBusyPoll() {
+        return busyPoll;
+    }
+
+    /**
+     * Runs the server loop in low-latency mode, polling the selector instead of blocking in it and tuning the
+     * sockets of the clients. Null, the default, blocks in select and leaves the sockets as the system sets them up.
+     */
+    public ServerConfig withBusyPoll(BusyPoll busyPoll) {
+        this.busyPoll = busyPoll;
+        return this;
+    }
+
+    public int getMaxPendingResponsesPerConnection() {
+        return maxPendingResponsesPerConnection;
+    }
+
+    public long getMaxOutboundBytesPerConnection() {
+        return maxOutboundBytesPerConnection;
+    }
+
+    public ServerConfig withConnectionLimits(int maxPendingResponses, long maxOutboundBytes) {
+        this.maxPendingResponsesPerConnection = maxPendingResponses;
+        this.maxOutboundBytesPerConnection = maxOutboundBytes;
+        return this;
+    }
+
+    public long getMaxPendingResponses() {
+        return maxPendingResponses;
+    }
+
+    public long getMaxOutboundBytes() {
+        return maxOutboundBytes;
+    }
+
+    public ServerConfig withServerLimits(long maxPendingResponses, long maxOutboundBytes) {
+        this.maxPendingResponses = maxPendingResponses;
+        this.maxOutboundBytes = maxOutboundBytes;
+        return this;
+    }
+
+    public int getMaxFramesPerTurn() {
+        return maxFramesPerTurn;
+    }
+
+    public int getMaxBytesPerTurn() {
+        return maxBytesPerTurn;
+    }
+
+    /**
+     * Work a connection may do each time it is served by the server loop, before the next ready connection gets its turn
+     */
+    public ServerConfig withTurnLimits(int maxFramesPerTurn, int maxBytesPerTurn) {
+        this.maxFramesPerTurn = maxFramesPerTurn;
+        this.maxBytesPerTurn = maxBytesPerTurn;
+        return this;
+    }
+
+    public int getScanThreads() {
+        return scanThreads;
+    }
+
+    /**
+     * Threads running full scans (GET ALL) off the selector thread, 0 to run them inline
+     */
+    public ServerConfig withScanThreads(int scanThreads) {
+        this.scanThreads = scanThreads;
+        return this;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Connections without any request (HEARTBEAT included) for this long are closed, 0 to never close them
+     */
+    public ServerConfig withIdleTimeout(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        return this;
+    }
+
+    public boolean isRequestLogging() {
+        return requestLogging;
+    }
+
+    /**
+     * Whether every request is logged to stdout. Formatting the log lines allocates on each request, turn it off
+     * where the allocation rate matters.
+     */
+    public ServerConfig withRequestLogging(boolean requestLogging) {
+        this.requestLogging = requestLogging;
+        return this;
+    }
+}
@@ -1,116 +1,1067 @@
 package org.global.dax.server;
 
 import org.global.dax.handlers.CacheMessageHandler;
+import org.global.dax.hotkeys.HotKeyTracker;
+import org.global.dax.loader.ReadThrough;
+import org.global.dax.loader.WriteBehind;
+import org.global.dax.notifications.KeyWatchers;
+import org.global.dax.notifications.KeyspaceNotifier;
+import org.global.dax.replication.HandoffLink;
+import org.global.dax.replication.ReplicaLink;
+import org.global.dax.replication.ReplicationSource;
+import org.global.dax.shared.BusyPoll;
 import org.global.dax.shared.CacheProtocol;
-import org.global.dax.shared.MessageHandler;
+import org.global.dax.shared.FrameView;
+import org.global.dax.shared.SharedMemoryChannel;
+import org.global.dax.shared.TimerWheel;
+import org.global.dax.shared.WaitStrategy;
+import org.global.dax.store.CacheStore;
+import org.global.dax.store.SegmentLog;
+import org.global.dax.store.TieredStorage;
+import org.global.dax.store.ValuePool;
+import org.global.dax.tracking.InvalidationTracker;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+import static org.global.dax.shared.Properties.BUSY_POLL_PROPERTY;
+import static org.global.dax.shared.Properties.DEDUP_PROPERTY;
+import static org.global.dax.shared.Properties.DISK_TIER_MEMORY_PROPERTY;
+import static org.global.dax.shared.Properties.DISK_TIER_PROPERTY;
+import static org.global.dax.shared.Properties.HANDOFF_SOCKET_PROPERTY;
 import static org.global.dax.shared.Properties.PORT;
+import static org.global.dax.shared.Properties.SHARED_MEMORY_PROPERTY;
+import static org.global.dax.shared.Properties.UNIX_SOCKET_PROPERTY;
 
 public final class ServerMain {
     private static final int BUFFER_SIZE = 1024 * 1024; // 1MB buffer
+    private static final long SELECT_TIMEOUT_MS = 100; // bounds the delay of periodic work (replication)
+    private static final int STATS_HOT_KEYS = 10; // hot keys listed by STATS
+    private static final int MAX_POOLED_BUFFERS = 16; // read buffers of closed connections kept for new ones
+    private static final int IDLE_WHEEL_BUCKETS = 16;
+    private static final long MIN_IDLE_TICK_MS = 10;
+    private static final long DRAIN_TIMEOUT_MS = 10_000;
+    private static final long DRAIN_QUIET_MS = 100; // a draining connection is closed once quiet for this long
 
-    // The cache storage using ConcurrentHashMap
-    private final Map<String, byte[]> cache = new ConcurrentHashMap<>();
+    private final ServerConfig config;
 
-    // Store buffers for each client connection
-    private final Map<SocketChannel, ByteBuffer> clientBuffers = new HashMap<>();
+    // The cache storage
+    private final CacheStore cache;
+
+    // Read buffer and outbound queue of each client connection
+    private final Set<Connection> connections = new HashSet<>();
+
+    // Limits on queued responses, with busy rejection when the server is overloaded
+    private final AdmissionControl admissionControl;
+
+    // Connections with requests to serve, each one gets a bounded turn in round-robin order
+    private final Queue<Connection> readyConnections = new ArrayDeque<>();
+
+    // Tasks handed back to the selector thread by other threads
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+
+    // Runs full scans off the selector thread, null when scans run inline
+    private final ExecutorService scanExecutor;
+
+    // Idle check of every connection, null when idle connections are never closed
+    private final TimerWheel<Connection> idleTimeouts;
+    private volatile long reapedConnections = 0;
+
+    // Read buffers of closed connections, reused instead of allocating 1MB per accepted connection
+    private final ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<>();
 
     // Protocol message handler
-    private final MessageHandler messageHandler = new CacheMessageHandler(cache);
+    private final CacheMessageHandler messageHandler;
+
+    // Records requests and flushes as Flight Recorder events, only while a recording enables them
+    private final RequestRecorder recorder = new RequestRecorder();
+
+    // Pushes invalidations to the connections holding a key in their near cache
+    private final InvalidationTracker invalidationTracker = new InvalidationTracker();
+
+    // Pushes the changes of the keys and key ranges connections subscribed to
+    private final KeyspaceNotifier keyspaceNotifier;
+
+    // WATCH requests parked until their key is added
+    private final KeyWatchers keyWatchers;
+
+    // Set on a primary, streams mutations to the connected replicas
+    private final ReplicationSource replicationSource;
+
+    // Set on a replica, applies the mutation stream of the primary
+    private final ReplicaLink replicaLink;
+
+    // Load missed keys from the backend and write changes back to it, null without a cache loader
+    private final ReadThrough readThrough;
+    private final WriteBehind writeBehind;
+
+    // Serves small ADD and GET requests over UDP, null when disabled
+    private DatagramListener datagramListener;
+
+    // Accepts same-host clients over shared memory, null when disabled
+    private SharedMemoryListener sharedMemoryListener;
+
+    // Demotes cold values to disk, null when every value stays in memory
+    private TieredStorage tieredStorage;
+
+    // Listening sockets, closed early when the next process takes the port and the Unix socket over
+    private ServerSocketChannel serverChannel;
+    private ServerSocketChannel unixChannel;
+
+    // Hot restart: the next process connects to the handoff socket to take the store over, the process being
+    // replaced streams its store through the handoff link. Both null without hot restart.
+    private ServerSocketChannel handoffChannel;
+    private HandoffLink handoffLink;
+    private final Set<Connection> successors = new HashSet<>();
+    // Set once the next process accepts on the port, this one then closes its connections as they go quiet
+    private Connection successor;
+    private long drainDeadline;
+
+    // Low-latency mode of the loop, null when it blocks in select
+    private final BusyPoll busyPoll;
+    private int idlePolls = 0;
+
+    // Handles each selected key, bound once instead of iterating over the selected-key set
+    private final Consumer<SelectionKey> keyHandler = this::handleKey;
+
+    private volatile boolean running = true;
+    private volatile Selector selector;
+    private volatile Thread selectorThread;
+
+    public ServerMain() {
+        this(new ServerConfig());
+    }
+
+    /**
+     * @param port           port to listen on
+     * @param primaryAddress address of the primary to replicate from, or null to run as a primary
+     */
+    public ServerMain(int port, InetSocketAddress primaryAddress) {
+        this(new ServerConfig().withPort(port).withPrimaryAddress(primaryAddress));
+    }
+
+    public ServerMain(ServerConfig config) {
+        this.config = config;
+        this.cache = new CacheStore(config.isValueDeduplication());
+        this.admissionControl = new AdmissionControl(config);
+        this.busyPoll = config.getBusyPoll();
+
+        InetSocketAddress primaryAddress = config.getPrimaryAddress();
+        if (primaryAddress == null) {
+            this.replicationSource = new ReplicationSource(cache);
+            this.replicaLink = null;
+            cache.addListener(replicationSource);
+        } else {
+            this.replicationSource = null;
+            this.replicaLink = new ReplicaLink(primaryAddress, cache);
+        }
+        cache.addListener(invalidationTracker);
+        this.keyspaceNotifier = new KeyspaceNotifier(admissionControl, config.getMaxPendingResponsesPerConnection());
+        cache.addListener(keyspaceNotifier);
+        this.keyWatchers = new KeyWatchers(nowMillis());
+        cache.addListener(keyWatchers);
+
+        if (config.getCacheLoader() != null && replicaLink == null) {
+            this.writeBehind = new WriteBehind(config.getCacheLoader(), WriteBehind.DEFAULT_FLUSH_INTERVAL_MS);
+            this.readThrough = new ReadThrough(config.getCacheLoader(), cache, this::runOnSelector, writeBehind);
+            cache.addListener(writeBehind);
+        } else {
+            this.writeBehind = null;
+            this.readThrough = null;
+        }
+
+        this.scanExecutor = config.getScanThreads() > 0
+                ? Executors.newFixedThreadPool(config.getScanThreads(), runnable -> {
+                    Thread thread = new Thread(runnable, "cache-scan");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+        this.messageHandler = new CacheMessageHandler(cache, replicaLink != null, invalidationTracker,
+                scanExecutor, scanExecutor != null ? this::runOnSelector : null, config.isRequestLogging(), readThrough);
+
+        // A tick of an eighth of the timeout closes idle connections at most 12.5% late
+        long idleTimeout = config.getIdleTimeoutMillis();
+        this.idleTimeouts = idleTimeout > 0
+                ? new TimerWheel<>(Math.max(MIN_IDLE_TICK_MS, idleTimeout / 8), IDLE_WHEEL_BUCKETS, nowMillis())
+                : null;
+    }
 
     public void start() throws IOException {
         // Create selector
-        Selector selector = Selector.open();
+        selector = Selector.open();
+        selectorThread = Thread.currentThread();
+
+        // Copies the store of the process being replaced before sharing the port, clients never hit a cold cache.
+        // A replica copies the store of its primary instead.
+        boolean hotRestart = config.getHandoffSocketPath() != null && replicationSource != null;
+        if (hotRestart) {
+            takeOver(config.getHandoffSocketPath());
+        }
 
         // Create server socket channel
-        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel = ServerSocketChannel.open();
         serverChannel.configureBlocking(false);
-        serverChannel.bind(new InetSocketAddress(PORT));
+        if (busyPoll != null) {
+            busyPoll.configureListener(serverChannel);
+        }
+        if (hotRestart) {
+            // Bound by the old and the new process at once during a hot restart
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        serverChannel.bind(new InetSocketAddress(config.getPort()));
         serverChannel.register(selector, SelectionKey.OP_ACCEPT);
 
-        System.out.println("Cache server started on port " + PORT);
+        if (handoffLink != null) {
+            handoffLink.ready(selector);
+        } else if (hotRestart) {
+            listenForHandoff();
+        }
 
-        // Process events
-        while (true) {
-            selector.select();
+        if (config.getUnixSocketPath() != null) {
+            unixChannel = openUnixSocket(config.getUnixSocketPath());
+            unixChannel.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("Listening on Unix domain socket " + config.getUnixSocketPath());
+        }
 
-            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
-            while (keys.hasNext()) {
-                SelectionKey key = keys.next();
-                keys.remove();
+        if (config.getSharedMemoryDirectory() != null) {
+            sharedMemoryListener = new SharedMemoryListener(config.getSharedMemoryDirectory(), config.getSharedMemoryWaitStrategy());
+            System.out.println("Accepting shared memory clients in " + config.getSharedMemoryDirectory());
+        }
 
-                if (!key.isValid()) {
-                    continue;
+        if (config.getDiskTierDirectory() != null) {
+            tieredStorage = new TieredStorage(cache, config.getDiskTierDirectory(), config.getMaxResidentBytes());
+            tieredStorage.start();
+            System.out.println("Demoting cold values to " + config.getDiskTierDirectory()
+                    + " above " + config.getMaxResidentBytes() + " bytes in memory");
+        }
+
+        if (writeBehind != null) {
+            writeBehind.start();
+        }
+
+        if (config.getUdpPort() > 0) {
+            datagramListener = new DatagramListener(config.getUdpPort(), cache, replicaLink != null);
+            datagramListener.register(selector);
+            System.out.println("Listening for datagrams on port " + config.getUdpPort());
+        }
+
+        System.out.println("Cache server started on port " + config.getPort() + (replicaLink != null ? " as replica" : "")
+                + (busyPoll != null ? ", busy polling" : ""));
+
+        try {
+            // Process events
+            while (running) {
+                // Do not wait for new events while connections still have buffered requests
+                if (!readyConnections.isEmpty() || !selectorTasks.isEmpty()) {
+                    selector.selectNow(keyHandler);
+                    idlePolls = 0;
+                } else if (busyPoll != null) {
+                    // Polls instead of blocking, a request is picked up without waking the thread up
+                    if (selector.selectNow(keyHandler) == 0) {
+                        busyPoll.idle(idlePolls++);
+                    } else {
+                        idlePolls = 0;
+                    }
+                } else if (sharedMemoryListener != null && !sharedMemoryListener.getConnections().isEmpty()) {
+                    // Shared memory cannot wake the selector up, it is polled between non-blocking selects
+                    if (selector.selectNow(keyHandler) == 0) {
+                        sharedMemoryListener.idle();
+                    }
+                } else {
+                    // Parked watches expire on time
+                    selector.select(keyHandler, keyWatchers.isEmpty() ? SELECT_TIMEOUT_MS : KeyWatchers.TICK_MS);
+                }
+
+                if (sharedMemoryListener != null) {
+                    pollSharedMemory();
                 }
+                runSelectorTasks();
+                serveReadyConnections();
 
-                if (key.isAcceptable()) {
-                    accept(selector, key);
-                } else if (key.isReadable()) {
-                    read(key);
+                keyspaceNotifier.flush();
+                keyWatchers.flush(nowMillis());
+                if (successor != null) {
+                    drain();
                 }
+                if (replicationSource != null) {
+                    replicationSource.flush();
+                }
+                if (replicaLink != null) {
+                    replicaLink.tick(selector);
+                }
+                if (idleTimeouts != null) {
+                    idleTimeouts.advance(nowMillis(), this::checkIdle);
+                }
+            }
+        } finally {
+            if (scanExecutor != null) {
+                scanExecutor.shutdownNow();
+            }
+            if (tieredStorage != null) {
+                tieredStorage.close();
+            }
+            if (readThrough != null) {
+                readThrough.close();
+                writeBehind.close();
+            }
+            if (replicaLink != null) {
+                replicaLink.close();
             }
+            for (Connection connection : connections) {
+                connection.close();
+            }
+            connections.clear();
+            if (datagramListener != null) {
+                datagramListener.close();
+            }
+            if (unixChannel != null) {
+                unixChannel.close();
+                Files.deleteIfExists(config.getUnixSocketPath());
+            }
+            if (handoffLink != null) {
+                handoffLink.close();
+            }
+            if (handoffChannel != null) {
+                handoffChannel.close();
+                Files.deleteIfExists(config.getHandoffSocketPath());
+            }
+            serverChannel.close();
+            selector.close();
+        }
+    }
+
+    /**
+     * Stops the event loop, closing the listening socket and every connection
+     */
+    public void stop() {
+        running = false;
+        Selector current = selector;
+        if (current != null) {
+            current.wakeup();
         }
     }
 
-    private void accept(Selector selector, SelectionKey key) throws IOException {
-        ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
-        SocketChannel clientChannel = serverChannel.accept();
+    CacheStore getCache() {
+        return cache;
+    }
+
+    ReplicaLink getReplicaLink() {
+        return replicaLink;
+    }
+
+    ReplicationSource getReplicationSource() {
+        return replicationSource;
+    }
+
+    InvalidationTracker getInvalidationTracker() {
+        return invalidationTracker;
+    }
+
+    KeyspaceNotifier getKeyspaceNotifier() {
+        return keyspaceNotifier;
+    }
+
+    KeyWatchers getKeyWatchers() {
+        return keyWatchers;
+    }
+
+    AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    private void handleKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+
+        if (key.attachment() == replicaLink && replicaLink != null) {
+            replicaLink.handle(key);
+        } else if (key.attachment() == handoffLink && handoffLink != null) {
+            if (!handoffLink.read()) {
+                completeTakeOver();
+            }
+        } else if (key.attachment() == datagramListener && datagramListener != null) {
+            receiveDatagrams();
+        } else if (key.isAcceptable()) {
+            try {
+                accept(selector, key);
+            } catch (IOException e) {
+                // The listening socket stays open for the next clients
+                System.err.println("Error accepting connection: " + e.getMessage());
+            }
+        } else {
+            Connection connection = (Connection) key.attachment();
+            if (key.isWritable()) {
+                write(connection);
+            }
+            if (key.isValid() && key.isReadable()) {
+                schedule(connection);
+            }
+        }
+    }
+
+    /**
+     * Accepts a connection, returning false when none was waiting
+     */
+    private boolean accept(Selector selector, SelectionKey key) throws IOException {
+        ServerSocketChannel listener = (ServerSocketChannel) key.channel();
+        SocketChannel clientChannel = listener.accept();
+        if (clientChannel == null) {
+            return false; // the client gave up before it was accepted
+        }
         clientChannel.configureBlocking(false);
-        clientChannel.register(selector, SelectionKey.OP_READ);
+        if (busyPoll != null) {
+            busyPoll.configure(clientChannel);
+        }
+        SelectionKey clientKey = clientChannel.register(selector, SelectionKey.OP_READ);
 
         // Create a buffer for this client
-        clientBuffers.put(clientChannel, ByteBuffer.allocate(BUFFER_SIZE));
+        ByteBuffer readBuffer = freeBuffers.isEmpty() ? ByteBuffer.allocate(BUFFER_SIZE) : freeBuffers.pop();
+        Connection connection = new Connection(clientChannel, clientKey, readBuffer, admissionControl);
+        clientKey.attach(connection);
+        register(connection);
+        if (listener == handoffChannel) {
+            successors.add(connection);
+        }
 
         System.out.println("Accepted connection from " + clientChannel.getRemoteAddress());
+        return true;
+    }
+
+    private void register(Connection connection) {
+        connections.add(connection);
+        connection.setRecorder(recorder);
+        long now = nowMillis();
+        connection.touch(now);
+        if (idleTimeouts != null) {
+            connection.setIdleTimeout(idleTimeouts.schedule(connection, now + config.getIdleTimeoutMillis()));
+        }
+    }
+
+    /**
+     * Accepts new shared memory clients, flushes the connections with queued responses and schedules the ones
+     * with requests, as the selector does for sockets
+     */
+    private void pollSharedMemory() {
+        for (SharedMemoryChannel channel : sharedMemoryListener.accept(nowMillis())) {
+            ByteBuffer readBuffer = freeBuffers.isEmpty() ? ByteBuffer.allocate(BUFFER_SIZE) : freeBuffers.pop();
+            Connection connection = new Connection(channel, readBuffer, admissionControl);
+            sharedMemoryListener.add(connection);
+            register(connection);
+            System.out.println("Accepted shared memory connection " + channel.getPath());
+        }
+
+        boolean active = false;
+        // Backwards, a failed write closes the connection and removes it from the list
+        List<Connection> polled = sharedMemoryListener.getConnections();
+        for (int i = polled.size() - 1; i >= 0; i--) {
+            Connection connection = polled.get(i);
+            if (connection.getOutboundBytes() > 0) {
+                write(connection);
+                active = true;
+            }
+            if (connection.isOpen() && !connection.isReadPaused() && sharedMemoryListener.isReadable(connection)) {
+                schedule(connection);
+                active = true;
+            }
+        }
+        if (active) {
+            sharedMemoryListener.onActive();
+            idlePolls = 0;
+        }
     }
 
-    private void read(SelectionKey key) {
-        SocketChannel clientChannel = (SocketChannel) key.channel();
-        ByteBuffer buffer = clientBuffers.get(clientChannel);
+    /**
+     * Binds the Unix domain socket, replacing the file left behind by a server that did not shut down cleanly
+     */
+    private static ServerSocketChannel openUnixSocket(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.configureBlocking(false);
+        channel.bind(UnixDomainSocketAddress.of(path));
+        return channel;
+    }
 
+    private void receiveDatagrams() {
         try {
-            // Try to read a message
-            CacheProtocol.Message message = CacheProtocol.readMessage(clientChannel, buffer);
+            datagramListener.receive();
+        } catch (IOException | RuntimeException e) {
+            // Datagrams have no connection to close, the listener keeps serving the next ones
+            System.err.println("Error serving datagrams: " + e.getMessage());
+        }
+    }
+
+    private void schedule(Connection connection) {
+        if (!connection.isScheduled()) {
+            connection.setScheduled(true);
+            readyConnections.add(connection);
+        }
+    }
 
-            // If message is complete, process it
-            if (message != null) {
-                System.out.println("Received from " + clientChannel.getRemoteAddress() + ": " + message);
-                messageHandler.handleMessage(message, clientChannel);
+    /**
+     * Gives one turn to every connection ready at the start of the round. Connections that used
+     * their whole turn go back at the end of the queue, so a heavy client cannot starve the others.
+     */
+    private void serveReadyConnections() {
+        int turns = readyConnections.size();
+        for (int i = 0; i < turns; i++) {
+            Connection connection = readyConnections.poll();
+            connection.setScheduled(false);
+            if (connection.isOpen() && read(connection)) {
+                schedule(connection);
             }
+        }
+    }
+
+    /**
+     * Processes the requests of a connection up to the turn limits, returning whether it may have more to process
+     */
+    private boolean read(Connection connection) {
+        int frames = 0;
+        long bytes = 0;
+
+        try {
+            // A single read can carry several frames, each one read in place in the read buffer
+            FrameView frame = connection.getFrameView();
+            while (!connection.isReadPaused()
+                    && frames < config.getMaxFramesPerTurn()
+                    && bytes < config.getMaxBytesPerTurn()
+                    && CacheProtocol.readFrame(connection.getInput(), connection.getReadBuffer(), frame)) {
+                frames++;
+                bytes += frame.getFrameSize();
+
+                if (config.isRequestLogging()) {
+                    System.out.println("Received from " + connection.getRemoteAddress() + ": " + frame.toMessage());
+                }
+
+                recorder.begin(frame.getFrameSize());
+                // Data operations are the ones shed under overload, the busy response needs the message
+                if (admissionControl.isOverloaded() || !messageHandler.handleInPlace(frame, connection)) {
+                    CacheProtocol.Message message = connection.getChunkAssembler().accept(frame.toMessage());
+                    frame.release();
+                    if (message == null) {
+                        recorder.cancel();
+                        continue; // more chunks of a large value to come
+                    }
+                    recorder.decoded();
+                    dispatch(message, connection);
+                    recorder.end(message.getOperation(), message.getKey(), connection);
+                } else {
+                    recorder.end(frame.getOperation(), frame.getKey(), connection);
+                    frame.release();
+                }
+
+                // Stop reading a client that does not keep up with its responses
+                if (admissionControl.shouldPause(connection)) {
+                    connection.pauseReading();
+                }
+            }
+            if (frames > 0) {
+                connection.touch(nowMillis());
+            }
+            return !connection.isReadPaused()
+                    && (frames >= config.getMaxFramesPerTurn() || bytes >= config.getMaxBytesPerTurn());
         } catch (IOException e) {
+            recorder.cancel();
             System.err.println("Error reading from client: " + e.getMessage());
-            closeConnection(clientChannel);
+            closeConnection(connection);
+            return false;
+        } catch (RuntimeException e) {
+            // A request the server could not serve, it must not take the other connections down with it
+            recorder.cancel();
+            System.err.println("Failed to serve " + connection.getRemoteAddress() + ": " + e);
+            closeConnection(connection);
+            return false;
+        }
+    }
+
+    private void write(Connection connection) {
+        try {
+            long outboundBytes = connection.getOutboundBytes();
+            recorder.beginFlush();
+            connection.flush();
+            recorder.endFlush(connection, outboundBytes - connection.getOutboundBytes());
+
+            // A peer still consuming its responses is alive, even while it sends nothing
+            if (connection.getOutboundBytes() < outboundBytes) {
+                connection.touch(nowMillis());
+            }
+
+            // Requests left in the read buffer while paused get a turn right away
+            if (connection.isReadPaused() && admissionControl.canResume(connection)) {
+                connection.resumeReading();
+                schedule(connection);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to client: " + e.getMessage());
+            closeConnection(connection);
+        }
+    }
+
+    /**
+     * Runs a task on the selector thread, the only thread allowed to touch connections
+     */
+    private void runOnSelector(Runnable task) {
+        selectorTasks.add(task);
+        if (busyPoll != null) {
+            // The loop never blocks in select, at most it parks between polls
+            LockSupport.unpark(selectorThread);
+            return;
+        }
+        Selector current = selector;
+        if (current != null) {
+            current.wakeup();
+        }
+    }
+
+    private void runSelectorTasks() {
+        Runnable task;
+        while ((task = selectorTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // Tasks answer their own connection, a failed one is logged and the loop goes on
+                System.err.println("Selector task failed: " + e);
+            }
+        }
+    }
+
+    private void dispatch(CacheProtocol.Message message, Connection connection) throws IOException {
+        switch (message.getOperation()) {
+            case CacheProtocol.OP_REPL_SYNC:
+                handleSync(connection);
+                break;
+
+            case CacheProtocol.OP_TRACKING:
+                handleTracking(connection);
+                break;
+
+            case CacheProtocol.OP_HANDOFF:
+                handleHandoff(message, connection);
+                break;
+
+            case CacheProtocol.OP_SUBSCRIBE:
+            case CacheProtocol.OP_UNSUBSCRIBE:
+                handleSubscription(message, connection);
+                break;
+
+            case CacheProtocol.OP_STATS:
+                handleStats(connection);
+                break;
+
+            case CacheProtocol.OP_HEARTBEAT:
+                messageHandler.handleMessage(message, connection);
+                break;
+
+            case CacheProtocol.OP_WATCH:
+                handleWatch(message, connection);
+                break;
+
+            default:
+                // Data operations are the ones shed under overload
+                if (admissionControl.isOverloaded()) {
+                    sendBusyResponse(message, connection);
+                } else {
+                    messageHandler.handleMessage(message, connection);
+                }
+        }
+    }
+
+    private void sendBusyResponse(CacheProtocol.Message message, Connection connection) throws IOException {
+        admissionControl.onRejected();
+        connection.send(CacheProtocol.createResponseMessage(
+                CacheProtocol.STATUS_BUSY,
+                message.getKey(),
+                new byte[]{CacheProtocol.STATUS_BUSY}));
+    }
+
+    private void handleSync(Connection connection) throws IOException {
+        if (replicationSource == null) {
+            connection.send(CacheProtocol.createErrorMessage("Chained replication is not supported"));
+            return;
+        }
+        replicationSource.addReplica(connection);
+    }
+
+    /**
+     * Copies the store of the process being replaced, leaving it running until this one accepts on the port. Starts
+     * with an empty store when there is no process to replace.
+     */
+    private void takeOver(Path handoffPath) {
+        handoffLink = HandoffLink.connect(handoffPath, cache);
+        if (handoffLink == null) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            long entries = handoffLink.receiveSnapshot();
+            System.out.println("Took over " + entries + " entries from the process being replaced in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            System.err.println("Handoff failed, starting with the entries received: " + e.getMessage());
+            handoffLink.close();
+            handoffLink = null;
+        }
+    }
+
+    /**
+     * The process being replaced is gone, this one is now the one the next process takes over from
+     */
+    private void completeTakeOver() {
+        System.out.println("Handoff complete, " + handoffLink.getAppliedMutations() + " mutations applied");
+        handoffLink = null;
+        try {
+            listenForHandoff();
+        } catch (IOException e) {
+            System.err.println("Failed to listen for the next handoff: " + e.getMessage());
+        }
+    }
+
+    private void listenForHandoff() throws IOException {
+        handoffChannel = openUnixSocket(config.getHandoffSocketPath());
+        handoffChannel.register(selector, SelectionKey.OP_ACCEPT);
+        System.out.println("Listening for a hot restart on " + config.getHandoffSocketPath());
+    }
+
+    /**
+     * Handoff requested by the next process, only accepted on the handoff socket
+     */
+    private void handleHandoff(CacheProtocol.Message message, Connection connection) throws IOException {
+        if (!successors.contains(connection) || replicationSource == null) {
+            connection.send(CacheProtocol.createErrorMessage("Handoff is only accepted on the handoff socket of a primary"));
+            return;
+        }
+        byte[] value = message.getValue();
+        byte phase = value != null && value.length > 0 ? value[0] : CacheProtocol.HANDOFF_SYNC;
+        if (phase == CacheProtocol.HANDOFF_SYNC) {
+            // Streamed like to a replica, the response marks the end of the snapshot
+            replicationSource.addReplica(connection);
+            connection.send(CacheProtocol.createResponseMessage(
+                    CacheProtocol.STATUS_OK, message.getKey(), new byte[]{CacheProtocol.STATUS_OK}));
+        } else {
+            beginDrain(connection);
         }
     }
 
-    private void closeConnection(SocketChannel channel) {
+    /**
+     * The next process accepts clients on the port: stops accepting and leaves the sockets to it
+     */
+    private void beginDrain(Connection next) throws IOException {
+        // Connections queued on the listening socket are reset when it closes, they are accepted first
+        SelectionKey key = serverChannel.keyFor(selector);
+        while (accept(selector, key)) {
+            // drained with the others
+        }
+        key.cancel();
+        serverChannel.close();
+
+        // Bound again by the next process, the socket files are now its own
+        if (unixChannel != null) {
+            unixChannel.close();
+            unixChannel = null;
+        }
+        handoffChannel.close();
+        handoffChannel = null;
+
+        successor = next;
+        drainDeadline = nowMillis() + config.getDrainTimeoutMillis();
+        System.out.println("Handed the port over, draining " + (connections.size() - 1) + " connections");
+    }
+
+    /**
+     * Closes the connections of a draining server once they are quiet, or all of them at the drain deadline. Stops
+     * the server once they are closed and the last mutations reached the next process.
+     */
+    private void drain() {
+        long now = nowMillis();
+        boolean deadlinePassed = now >= drainDeadline;
+        List<Connection> quiet = new ArrayList<>();
+        for (Connection connection : connections) {
+            if (!successors.contains(connection) && (deadlinePassed || isQuiet(connection, now))) {
+                quiet.add(connection);
+            }
+        }
+        quiet.forEach(this::closeConnection);
+
+        if (successors.containsAll(connections)) {
+            replicationSource.flush();
+            if (!successor.isOpen() || successor.getOutboundBytes() == 0) {
+                System.out.println("Drained, stopping");
+                running = false;
+            }
+        }
+    }
+
+    private static boolean isQuiet(Connection connection, long now) {
+        return !connection.isScheduled()
+                && connection.getOutboundBytes() == 0
+                && connection.getReadBuffer().position() == 0
+                && now - connection.getLastActivityMillis() >= DRAIN_QUIET_MS;
+    }
+
+    private void handleTracking(Connection connection) throws IOException {
+        invalidationTracker.enableTracking(connection);
+        connection.send(CacheProtocol.createResponseMessage(
+                CacheProtocol.STATUS_OK,
+                CacheProtocol.createTrackingMessage().getKey(),
+                new byte[]{CacheProtocol.STATUS_OK}));
+    }
+
+    /**
+     * Answers with the value of the key if present, otherwise parks the request until the key is added or its
+     * timeout passes. Every answer is an OP_WATCHED carrying the id of the watch.
+     */
+    private void handleWatch(CacheProtocol.Message message, Connection connection) throws IOException {
+        byte[] request = message.getValue();
+        if (request == null || request.length < CacheProtocol.WATCH_REQUEST_SIZE) {
+            connection.send(CacheProtocol.encodeResponseFrames(CacheProtocol.STATUS_ERROR, message.getKey(),
+                    "Missing watch timeout or id".getBytes(StandardCharsets.UTF_8)));
+            return;
+        }
+        ByteBuffer fields = ByteBuffer.wrap(request);
+        long timeoutMillis = Math.min(fields.getLong(), CacheProtocol.MAX_WATCH_TIMEOUT_MS);
+        int watchId = fields.getInt();
+
+        if (admissionControl.isOverloaded()) {
+            admissionControl.onRejected();
+            connection.send(CacheProtocol.encodeWatchedFrames(CacheProtocol.STATUS_BUSY, watchId, new byte[0]));
+            return;
+        }
+
+        String key = message.getKeyAsString();
+        byte[] value = cache.get(key);
+        if (value != null) {
+            connection.send(CacheProtocol.encodeWatchedFrames(CacheProtocol.STATUS_OK, watchId, value));
+        } else if (timeoutMillis <= 0) {
+            connection.send(CacheProtocol.encodeWatchedFrames(CacheProtocol.STATUS_NOT_FOUND, watchId, new byte[0]));
+        } else {
+            keyWatchers.watch(key, watchId, connection, nowMillis() + timeoutMillis);
+        }
+    }
+
+    /**
+     * Subscribes to, or unsubscribes from, a key or a range of keys. The value holds the kind of subscription,
+     * followed by the upper bound of a range.
+     */
+    private void handleSubscription(CacheProtocol.Message message, Connection connection) throws IOException {
+        String key = message.getKeyAsString();
+        byte[] value = message.getValue();
+        // An empty value is decoded to null, it subscribes to the key like a value holding only the kind
+        byte kind = value != null && value.length > 0 ? value[0] : CacheProtocol.SUBSCRIBE_KEY;
+        boolean subscribe = message.getOperation() == CacheProtocol.OP_SUBSCRIBE;
+
+        byte status;
+        if (kind == CacheProtocol.SUBSCRIBE_KEY) {
+            if (subscribe) {
+                keyspaceNotifier.subscribe(connection, key);
+                status = CacheProtocol.STATUS_OK;
+            } else {
+                status = keyspaceNotifier.unsubscribe(connection, key)
+                        ? CacheProtocol.STATUS_OK : CacheProtocol.STATUS_NOT_FOUND;
+            }
+        } else if (kind == CacheProtocol.SUBSCRIBE_RANGE) {
+            String to = value.length > 1 ? new String(value, 1, value.length - 1, StandardCharsets.UTF_8) : null;
+            if (to != null && key.compareTo(to) >= 0) {
+                connection.send(CacheProtocol.encodeResponseFrames(CacheProtocol.STATUS_ERROR, message.getKey(),
+                        ("Empty range [" + key + ", " + to + ")").getBytes(StandardCharsets.UTF_8)));
+                return;
+            }
+            if (subscribe) {
+                keyspaceNotifier.subscribeRange(connection, key, to);
+                status = CacheProtocol.STATUS_OK;
+            } else {
+                status = keyspaceNotifier.unsubscribeRange(connection, key, to)
+                        ? CacheProtocol.STATUS_OK : CacheProtocol.STATUS_NOT_FOUND;
+            }
+        } else {
+            status = CacheProtocol.STATUS_ERROR;
+        }
+        connection.send(CacheProtocol.createResponseMessage(status, message.getKey(), new byte[]{status}));
+    }
+
+    private void handleStats(Connection connection) throws IOException {
+        byte[] stats = stats().getBytes(StandardCharsets.UTF_8);
+        byte[] responseValue = new byte[stats.length + 1];
+        responseValue[0] = CacheProtocol.STATUS_OK;
+        System.arraycopy(stats, 0, responseValue, 1, stats.length);
+
+        connection.send(CacheProtocol.createResponseMessage(
+                CacheProtocol.STATUS_OK,
+                CacheProtocol.createStatsMessage().getKey(),
+                responseValue));
+    }
+
+    String stats() {
+        String newLine = System.lineSeparator();
+        StringBuilder stats = new StringBuilder();
+        stats.append("keys: ").append(cache.size()).append(newLine);
+        ValuePool valuePool = cache.getValuePool();
+        if (valuePool != null) {
+            stats.append("unique values: ").append(valuePool.getUniqueValues())
+                    .append(", deduplicated bytes: ").append(valuePool.getSavedBytes()).append(newLine);
+        }
+        if (tieredStorage != null) {
+            SegmentLog log = tieredStorage.getLog();
+            stats.append("resident bytes: ").append(cache.getResidentBytes())
+                    .append(" of ").append(tieredStorage.getMaxResidentBytes())
+                    .append(", demoted: ").append(tieredStorage.getDemotions())
+                    .append(", promoted: ").append(cache.getPromotions()).append(newLine);
+            stats.append("segments: ").append(log.getSegmentCount())
+                    .append(", disk bytes: ").append(log.getDiskBytes())
+                    .append(", dead bytes: ").append(log.getDeadBytes())
+                    .append(", compacted: ").append(tieredStorage.getCompactedSegments()).append(newLine);
+        }
+        stats.append("connections: ").append(connections.size())
+                .append(", paused: ").append(admissionControl.getPausedConnections())
+                .append(", idle closed: ").append(reapedConnections).append(newLine);
+        if (sharedMemoryListener != null) {
+            stats.append("shared memory connections: ").append(sharedMemoryListener.getConnections().size()).append(newLine);
+        }
+        if (datagramListener != null) {
+            stats.append("datagrams: ").append(datagramListener.getReceived())
+                    .append(", malformed: ").append(datagramListener.getMalformed())
+                    .append(", dropped responses: ").append(datagramListener.getDropped()).append(newLine);
+        }
+        if (readThrough != null) {
+            stats.append("loader misses: ").append(readThrough.getMisses())
+                    .append(", collapsed: ").append(readThrough.getCollapsed())
+                    .append(", load calls: ").append(readThrough.getBackendCalls())
+                    .append(", loaded keys: ").append(readThrough.getLoadedKeys()).append(newLine);
+            stats.append("write-behind dirty keys: ").append(writeBehind.getDirtyKeys())
+                    .append(", flushed: ").append(writeBehind.getFlushedKeys())
+                    .append(", write calls: ").append(writeBehind.getBackendCalls())
+                    .append(", failed: ").append(writeBehind.getFailedCalls()).append(newLine);
+        }
+        stats.append("pending responses: ").append(admissionControl.getPendingResponses())
+                .append(", outbound bytes: ").append(admissionControl.getOutboundBytes())
+                .append(", busy rejections: ").append(admissionControl.getRejectedRequests()).append(newLine);
+
+        HotKeyTracker hotKeys = messageHandler.getHotKeys();
+        stats.append("get requests: ").append(hotKeys.getRequests()).append(newLine);
+        stats.append("hot keys: ").append(hotKeys.topKeys(STATS_HOT_KEYS).stream()
+                .map(hotKey -> hotKey + (hotKeys.isHot(hotKey.getKey()) ? " [hot]" : ""))
+                .collect(Collectors.joining(", "))).append(newLine);
+        stats.append("encoded responses: ").append(messageHandler.getEncodedResponses().size())
+                .append(", hits: ").append(messageHandler.getEncodedResponses().getHits()).append(newLine);
+
+        stats.append("tracked keys: ").append(invalidationTracker.getTrackedKeyCount())
+                .append(", invalidations sent: ").append(invalidationTracker.getInvalidationsSent()).append(newLine);
+        stats.append("subscribers: ").append(keyspaceNotifier.getSubscriberCount())
+                .append(", notifications sent: ").append(keyspaceNotifier.getNotificationsSent())
+                .append(", coalesced: ").append(keyspaceNotifier.getNotificationsCoalesced())
+                .append(", overflows: ").append(keyspaceNotifier.getOverflows()).append(newLine);
+        stats.append("parked watches: ").append(keyWatchers.size())
+                .append(", watched keys: ").append(keyWatchers.getWatchedKeyCount())
+                .append(", completed: ").append(keyWatchers.getWatchesCompleted())
+                .append(", timed out: ").append(keyWatchers.getWatchesTimedOut()).append(newLine);
+
+        if (replicationSource != null) {
+            stats.append("replication: primary, sequence ").append(replicationSource.getSequence())
+                    .append(", replicas ").append(replicationSource.getReplicaCount());
+        } else {
+            stats.append("replication: replica, sequence ").append(replicaLink.getLastAppliedSequence())
+                    .append(", lag ").append(replicaLink.getLagMillis()).append(" ms")
+                    .append(", max lag ").append(replicaLink.getMaxLagMillis()).append(" ms")
+                    .append(", staleness ").append(replicaLink.getStalenessMillis()).append(" ms");
+        }
+        return stats.toString();
+    }
+
+    /**
+     * Runs when the idle check of a connection expires, closes it or checks it again later if it was active since
+     */
+    private void checkIdle(Connection connection) {
+        long idleDeadline = connection.getLastActivityMillis() + config.getIdleTimeoutMillis();
+        if (idleDeadline > nowMillis()) {
+            connection.setIdleTimeout(idleTimeouts.schedule(connection, idleDeadline));
+            return;
+        }
+
+        reapedConnections++;
+        System.out.println("Connection idle for more than " + config.getIdleTimeoutMillis() + " ms");
+        closeConnection(connection);
+    }
+
+    private static long nowMillis() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    private void closeConnection(Connection connection) {
+        if (!connections.remove(connection)) {
+            return; // already closed
+        }
+        if (sharedMemoryListener != null && connection.getChannel() == null) {
+            sharedMemoryListener.remove(connection);
+        }
+        invalidationTracker.removeConnection(connection);
+        keyspaceNotifier.removeConnection(connection);
+        keyWatchers.removeConnection(connection);
+        successors.remove(connection);
+        if (replicationSource != null) {
+            replicationSource.removeReplica(connection);
+        }
+        connection.release();
+        if (freeBuffers.size() < MAX_POOLED_BUFFERS) {
+            freeBuffers.push(connection.getReadBuffer().clear());
+        }
         try {
-            System.out.println("Closing connection with " + channel.getRemoteAddress());
-            channel.close();
-            clientBuffers.remove(channel);
+            System.out.println("Closing connection with " + connection.getRemoteAddress());
+            connection.close();
         } catch (IOException e) {
             System.err.println("An exception occurred when closed the connection: " + e.getMessage());
         }
     }
 
+    /**
+     * Usage: ServerMain [port] [primaryHost:primaryPort]
+     * Passing the address of a primary starts this server as a read replica of it.
+     */
     public static void main(String[] args) {
         try {
-            new ServerMain().start();
+            int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+            InetSocketAddress primaryAddress = null;
+            if (args.length > 1) {
+                String[] hostAndPort = args[1].split(":");
+                primaryAddress = new InetSocketAddress(hostAndPort[0], Integer.parseInt(hostAndPort[1]));
+            }
+            String unixSocket = System.getProperty(UNIX_SOCKET_PROPERTY);
+            String sharedMemory = System.getProperty(SHARED_MEMORY_PROPERTY);
+            String diskTier = System.getProperty(DISK_TIER_PROPERTY);
+            String handoffSocket = System.getProperty(HANDOFF_SOCKET_PROPERTY);
+            long maxResidentBytes = Long.getLong(DISK_TIER_MEMORY_PROPERTY, Runtime.getRuntime().maxMemory() / 2);
+            new ServerMain(new ServerConfig().withPort(port).withPrimaryAddress(primaryAddress)
+                    .withUnixSocketPath(unixSocket != null ? Path.of(unixSocket) : null)
+                    .withSharedMemory(sharedMemory != null ? Path.of(sharedMemory) : null, WaitStrategy.PARK)
+                    .withDiskTier(diskTier != null ? Path.of(diskTier) : null, maxResidentBytes)
+                    .withValueDeduplication(Boolean.getBoolean(DEDUP_PROPERTY))
+                    .withBusyPoll(Boolean.getBoolean(BUSY_POLL_PROPERTY) ? new BusyPoll() : null)
+                    .withHotRestart(handoffSocket != null ? Path.of(handoffSocket) : null, DRAIN_TIMEOUT_MS)).start();
         } catch (IOException e) {
             System.err.println("An exception occurred when started the server: " + e.getMessage());
         }
     }
 }
-
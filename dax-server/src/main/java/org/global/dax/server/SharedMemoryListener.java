@@ -0,0 +1,100 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.SharedMemoryChannel;
+import org.global.dax.shared.WaitStrategy;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Accepts same-host clients connecting through {@link SharedMemoryChannel}s.
+ *
+ * A client connects by publishing a ring file in the directory of the listener, which is scanned periodically.
+ * Shared memory cannot wake the selector up, so while such connections are open the server loop polls them on
+ * every iteration and waits with the {@link WaitStrategy} of the listener instead of blocking in select.
+ *
+ * Must only be used from the server selector thread.
+ */
+final class SharedMemoryListener {
+
+    private static final long SCAN_INTERVAL_MS = 100;
+
+    private final Path directory;
+    private final WaitStrategy waitStrategy;
+
+    private final List<Connection> connections = new ArrayList<>();
+    private final Set<Path> openPaths = new HashSet<>();
+    private long nextScanMillis = 0;
+    private int idleCount = 0;
+
+    SharedMemoryListener(Path directory, WaitStrategy waitStrategy) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Opens the channels published since the last scan, scanning the directory at most every {@link #SCAN_INTERVAL_MS}
+     */
+    List<SharedMemoryChannel> accept(long nowMillis) {
+        if (nowMillis < nextScanMillis) {
+            return List.of();
+        }
+        nextScanMillis = nowMillis + SCAN_INTERVAL_MS;
+
+        List<SharedMemoryChannel> accepted = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SharedMemoryChannel.FILE_SUFFIX)) {
+            for (Path file : files) {
+                if (openPaths.add(file)) {
+                    try {
+                        accepted.add(SharedMemoryChannel.open(file));
+                    } catch (IOException e) {
+                        // Not retried, a client publishes a complete file or none
+                        System.err.println("Failed to open shared memory channel " + file + ": " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to scan " + directory + ": " + e.getMessage());
+        }
+        return accepted;
+    }
+
+    void add(Connection connection) {
+        connections.add(connection);
+    }
+
+    void remove(Connection connection) {
+        if (connections.remove(connection)) {
+            openPaths.remove(((SharedMemoryChannel) connection.getInput()).getPath());
+        }
+    }
+
+    List<Connection> getConnections() {
+        return connections;
+    }
+
+    /**
+     * Whether the connection has requests to read, or its client closed it
+     */
+    boolean isReadable(Connection connection) {
+        SharedMemoryChannel channel = (SharedMemoryChannel) connection.getInput();
+        return channel.available() > 0 || channel.isPeerClosed();
+    }
+
+    /**
+     * Waits before the next poll when the last one found nothing to do
+     */
+    void idle() {
+        waitStrategy.idle(idleCount++);
+    }
+
+    void onActive() {
+        idleCount = 0;
+    }
+}
@@ -0,0 +1,120 @@
+package org.global.dax.store;
+
+/**
+ * A value of the store with the version stamp of the write that produced it.
+ *
+ * Every write gets a new version, so a client holding a version knows the value did not change
+ * as long as the version is still the same. Entries are immutable, a write replaces the entry.
+ *
+ * With a {@link TieredStorage}, the value of a cold entry may live in a {@link SegmentLog} instead of memory:
+ * the entry is then replaced by one pointing at the value on disk, with the same version. The only mutable
+ * state is the access bit the tiering sweep uses to tell hot entries from cold ones.
+ */
+public final class CacheEntry {
+
+    /**
+     * Expected version of a key that is not in the store
+     */
+    public static final long NO_VERSION = 0;
+
+    private final byte[] value;
+    private final long version;
+
+    // Where the value is when it was demoted to disk, segment is null for a value in memory
+    private final SegmentLog.Segment segment;
+    private final int offset;
+    private final int length;
+
+    // Set on access, cleared by the tiering sweep, which demotes the entries it finds cleared
+    private volatile boolean referenced;
+
+    CacheEntry(byte[] value, long version) {
+        this.value = value;
+        this.version = version;
+        this.segment = null;
+        this.offset = 0;
+        this.length = value.length;
+        this.referenced = true;
+    }
+
+    private CacheEntry(SegmentLog.Segment segment, int offset, int length, long version) {
+        this.value = null;
+        this.version = version;
+        this.segment = segment;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * The value, read from disk for a demoted entry
+     */
+    public byte[] getValue() {
+        return value != null ? value : segment.read(offset, length);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Size of the value in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Whether the value was demoted to disk
+     */
+    public boolean isOnDisk() {
+        return segment != null;
+    }
+
+    /**
+     * Whether the value is the one stored at this offset of the segment
+     */
+    boolean isStoredAt(SegmentLog.Segment segment, int offset) {
+        return this.segment == segment && this.offset == offset;
+    }
+
+    /**
+     * Counts the value on disk as dead space, once the entry was replaced or removed
+     */
+    void release() {
+        segment.release(length);
+    }
+
+    /**
+     * Records an access, only writing the bit when the sweep cleared it
+     */
+    void touch() {
+        if (!referenced) {
+            referenced = true;
+        }
+    }
+
+    /**
+     * Clears the access bit, returning whether the entry was accessed since the last sweep
+     */
+    boolean clearReferenced() {
+        if (referenced) {
+            referenced = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The same version with its value stored at the specified offset of a segment
+     */
+    CacheEntry onDisk(SegmentLog.Segment segment, int offset) {
+        return new CacheEntry(segment, offset, length, version);
+    }
+
+    /**
+     * The same version with its value back in memory
+     */
+    CacheEntry inMemory(byte[] value) {
+        return new CacheEntry(value, version);
+    }
+}
@@ -0,0 +1,447 @@
+package org.global.dax.store;
+
+import org.global.dax.shared.KeyView;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The cache storage backing the server.
+ *
+ * Every mutation goes through this class so that registered {@link MutationListener}s
+ * (replication, indexes, ...) observe the same sequence of changes as the map itself.
+ *
+ * Each entry carries a version stamp. Read-modify-write operations (compare-and-set, increment,
+ * get-and-set) run as a single atomic operation of the map on the key, without locks.
+ *
+ * The keys are also kept in order in a concurrent skip list, updated on every write, so sorted listings and
+ * range queries walk the keys they return instead of sorting the whole key set. The index follows the map as
+ * long as writes of a same key do not race, as on the server selector thread.
+ *
+ * With a {@link TieredStorage}, values not accessed since the last sweep are demoted to a {@link SegmentLog} once
+ * the values in memory exceed their budget, the keys and versions stay in memory. A read of a demoted value
+ * promotes it back, scans (GET ALL, RANGE, replication sync) read it from disk without promoting it.
+ *
+ * With value deduplication, byte-identical values held in memory share a single array from a {@link ValuePool}.
+ */
+public class CacheStore {
+
+    private final ConcurrentHashMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<String> keyIndex = new ConcurrentSkipListSet<>();
+    private final List<MutationListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong versions = new AtomicLong(CacheEntry.NO_VERSION);
+    private final Map<String, byte[]> values = new ValuesView();
+
+    // Bytes of the values held in memory without value deduplication, the pool counts them otherwise, and values read
+    // back from the disk tier
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final AtomicLong promotions = new AtomicLong();
+
+    // Shares identical values, null when every entry keeps its own array
+    private final ValuePool valuePool;
+
+    public CacheStore() {
+        this(false);
+    }
+
+    /**
+     * @param deduplicateValues whether byte-identical values share a single array, at the cost of hashing every
+     *                          value written
+     */
+    public CacheStore(boolean deduplicateValues) {
+        this.valuePool = deduplicateValues ? new ValuePool() : null;
+    }
+
+    public byte[] get(String key) {
+        CacheEntry entry = cache.get(key);
+        return entry != null ? access(key, entry).getValue() : null;
+    }
+
+    /**
+     * Gets the value of a key read in place in a request, without decoding the key, unless its value is on disk
+     */
+    public byte[] get(KeyView key) {
+        CacheEntry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        return entry.isOnDisk() ? promote(key.toString(), entry).getValue() : access(null, entry).getValue();
+    }
+
+    /**
+     * Gets the value of a key for a scan, a demoted value is read from its segment and stays on disk. Not counted as
+     * an access, so listing the keys does not keep every value warm either.
+     */
+    public byte[] peek(String key) {
+        CacheEntry entry = cache.get(key);
+        return entry != null ? entry.getValue() : null;
+    }
+
+    /**
+     * Gets the value of a key with its version, null if the key is not in the store
+     */
+    public CacheEntry getEntry(String key) {
+        CacheEntry entry = cache.get(key);
+        return entry != null ? access(key, entry) : null;
+    }
+
+    public byte[] put(String key, byte[] value) {
+        CacheEntry previous = cache.put(key, newEntry(value));
+        notifyAdd(key, value);
+        if (previous != null) {
+            discard(previous);
+        }
+        return previous != null ? previous.getValue() : null;
+    }
+
+    public byte[] remove(String key) {
+        CacheEntry removed = cache.remove(key);
+        if (removed != null) {
+            discard(removed);
+            keyIndex.remove(key);
+            for (MutationListener listener : listeners) {
+                listener.onRemove(key);
+            }
+        }
+        return removed != null ? removed.getValue() : null;
+    }
+
+    /**
+     * Removes a key read in place in a request, the key is only decoded for the listeners when it was removed
+     */
+    public byte[] remove(KeyView key) {
+        CacheEntry removed = cache.remove(key);
+        if (removed != null) {
+            discard(removed);
+            String removedKey = key.toString();
+            keyIndex.remove(removedKey);
+            for (MutationListener listener : listeners) {
+                listener.onRemove(removedKey);
+            }
+        }
+        return removed != null ? removed.getValue() : null;
+    }
+
+    /**
+     * Sets the value only if the key is still at the expected version ({@link CacheEntry#NO_VERSION}
+     * for a key that must not exist), returning the new entry or null if the version did not match
+     */
+    public CacheEntry compareAndSet(String key, long expectedVersion, byte[] value) {
+        CacheEntry[] written = new CacheEntry[2];
+        cache.compute(key, (k, current) -> {
+            long currentVersion = current != null ? current.getVersion() : CacheEntry.NO_VERSION;
+            if (currentVersion != expectedVersion) {
+                return current;
+            }
+            written[0] = newEntry(value);
+            written[1] = current;
+            return written[0];
+        });
+
+        if (written[0] != null) {
+            if (written[1] != null) {
+                discard(written[1]);
+            }
+            notifyAdd(key, value);
+        }
+        return written[0];
+    }
+
+    /**
+     * Adds a delta to a value holding a decimal integer, a missing key counts as 0.
+     *
+     * @throws NumberFormatException if the value is not an integer
+     * @throws ArithmeticException if the result overflows a long
+     */
+    public CacheEntry increment(String key, long delta) {
+        CacheEntry[] previous = new CacheEntry[1];
+        CacheEntry updated = cache.compute(key, (k, current) -> {
+            long number = current != null ? parseLong(current.getValue()) : 0;
+            previous[0] = current;
+            return newEntry(Long.toString(Math.addExact(number, delta)).getBytes(StandardCharsets.US_ASCII));
+        });
+        if (previous[0] != null) {
+            discard(previous[0]);
+        }
+        notifyAdd(key, updated.getValue());
+        return updated;
+    }
+
+    /**
+     * Sets the value, returning the previous entry or null if the key was not in the store
+     */
+    public CacheEntry getAndSet(String key, byte[] value) {
+        CacheEntry previous = cache.put(key, newEntry(value));
+        notifyAdd(key, value);
+        if (previous != null) {
+            discard(previous);
+        }
+        return previous;
+    }
+
+    /**
+     * Removes every entry, notifying listeners of each removal
+     */
+    public void clear() {
+        for (String key : cache.keySet()) {
+            remove(key);
+        }
+    }
+
+    public boolean isEmpty() {
+        return cache.isEmpty();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Keys of the store in ascending order, a read-only and weakly consistent view
+     */
+    public NavigableSet<String> sortedKeys() {
+        return Collections.unmodifiableNavigableSet(keyIndex);
+    }
+
+    /**
+     * Keys from {@code from} (inclusive) to {@code to} (exclusive, null for no upper bound) in ascending order,
+     * found in O(log n) and walked in O(result)
+     */
+    public NavigableSet<String> keysBetween(String from, String to) {
+        if (to != null && from.compareTo(to) >= 0) {
+            return Collections.emptyNavigableSet();
+        }
+        NavigableSet<String> range = to != null
+                ? keyIndex.subSet(from, true, to, false)
+                : keyIndex.tailSet(from, true);
+        return Collections.unmodifiableNavigableSet(range);
+    }
+
+    /**
+     * Bytes of the values held in memory, demoted values excluded. A value shared by several entries counts once.
+     */
+    public long getResidentBytes() {
+        return valuePool != null ? valuePool.getPooledBytes() : residentBytes.get();
+    }
+
+    /**
+     * The pool sharing identical values, null without value deduplication
+     */
+    public ValuePool getValuePool() {
+        return valuePool;
+    }
+
+    /**
+     * Values read back from the disk tier into memory
+     */
+    public long getPromotions() {
+        return promotions.get();
+    }
+
+    /**
+     * Demotes values to the log until the values in memory fit in the budget, returning the number demoted.
+     *
+     * A clock sweep: an entry accessed since the previous sweep gets its access bit cleared and a second chance,
+     * the entries found cleared are demoted. Two passes at most, the second one only demotes entries that were not
+     * accessed in between. Must only run on the tiering thread, the one appending to the log.
+     */
+    int demote(SegmentLog log, long maxResidentBytes) throws IOException {
+        int demoted = 0;
+        for (int pass = 0; pass < 2 && getResidentBytes() > maxResidentBytes; pass++) {
+            for (Map.Entry<String, CacheEntry> mapping : cache.entrySet()) {
+                if (getResidentBytes() <= maxResidentBytes) {
+                    break;
+                }
+                CacheEntry entry = mapping.getValue();
+                if (entry.isOnDisk() || entry.clearReferenced()) {
+                    continue;
+                }
+
+                CacheEntry demotedEntry = log.append(mapping.getKey(), entry, entry.getValue());
+                if (cache.replace(mapping.getKey(), entry, demotedEntry)) {
+                    discard(entry);
+                    demoted++;
+                } else {
+                    demotedEntry.release(); // written since, the copy on disk is dead already
+                }
+            }
+        }
+        return demoted;
+    }
+
+    /**
+     * Finds the entries of the records copied by a compaction of the log
+     */
+    SegmentLog.Relocator relocator() {
+        return new SegmentLog.Relocator() {
+            @Override
+            public CacheEntry liveEntry(String key, SegmentLog.Segment segment, int offset) {
+                CacheEntry entry = cache.get(key);
+                return entry != null && entry.isStoredAt(segment, offset) ? entry : null;
+            }
+
+            @Override
+            public boolean replace(String key, CacheEntry entry, CacheEntry copy) {
+                return cache.replace(key, entry, copy);
+            }
+        };
+    }
+
+    /**
+     * Read-only view of the values of the store
+     */
+    public Map<String, byte[]> asMap() {
+        return values;
+    }
+
+    public void addListener(MutationListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(MutationListener listener) {
+        listeners.remove(listener);
+    }
+
+    private CacheEntry newEntry(byte[] value) {
+        return new CacheEntry(hold(value), versions.incrementAndGet());
+    }
+
+    /**
+     * Counts a value as held in memory, returning the pooled copy to store with value deduplication
+     */
+    private byte[] hold(byte[] value) {
+        if (valuePool != null) {
+            return valuePool.intern(value);
+        }
+        residentBytes.addAndGet(value.length);
+        return value;
+    }
+
+    /**
+     * Counts a value returned by {@link #hold} as no longer held in memory
+     */
+    private void unhold(byte[] value) {
+        if (valuePool != null) {
+            valuePool.release(value);
+        } else {
+            residentBytes.addAndGet(-value.length);
+        }
+    }
+
+    /**
+     * Records an access of the entry, bringing its value back in memory if it was demoted
+     *
+     * @param key the key of the entry, only used when it is on disk
+     */
+    private CacheEntry access(String key, CacheEntry entry) {
+        if (entry.isOnDisk()) {
+            return promote(key, entry);
+        }
+        entry.touch();
+        return entry;
+    }
+
+    private CacheEntry promote(String key, CacheEntry entry) {
+        byte[] value = entry.getValue();
+        CacheEntry promoted = entry.inMemory(hold(value));
+        if (cache.replace(key, entry, promoted)) {
+            entry.release();
+            promotions.incrementAndGet();
+        } else {
+            unhold(promoted.getValue());
+        }
+        // Written or moved in the meantime, the value read is still the one of this version
+        return promoted;
+    }
+
+    /**
+     * Releases the value of an entry replaced or removed from the map. A released value on disk can still be read
+     * through the entry, the mapping of its segment lives as long as the entry.
+     */
+    private void discard(CacheEntry entry) {
+        if (entry.isOnDisk()) {
+            entry.release();
+        } else {
+            unhold(entry.getValue());
+        }
+    }
+
+    private void notifyAdd(String key, byte[] value) {
+        keyIndex.add(key);
+        for (MutationListener listener : listeners) {
+            listener.onAdd(key, value);
+        }
+    }
+
+    private static long parseLong(byte[] value) {
+        return Long.parseLong(new String(value, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Read-only map of the values, without their versions
+     */
+    private final class ValuesView extends AbstractMap<String, byte[]> {
+
+        private final Set<Entry<String, byte[]>> entries = new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, byte[]>> iterator() {
+                Iterator<Entry<String, CacheEntry>> iterator = cache.entrySet().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, byte[]> next() {
+                        Entry<String, CacheEntry> entry = iterator.next();
+                        return new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().getValue());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return cache.size();
+            }
+        };
+
+        @Override
+        public Set<Entry<String, byte[]>> entrySet() {
+            return entries;
+        }
+
+        @Override
+        public byte[] get(Object key) {
+            CacheEntry entry = cache.get(key);
+            return entry != null ? entry.getValue() : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return cache.containsKey(key);
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return Collections.unmodifiableSet(cache.keySet());
+        }
+
+        @Override
+        public int size() {
+            return cache.size();
+        }
+    }
+}
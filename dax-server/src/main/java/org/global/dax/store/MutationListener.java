@@ -0,0 +1,11 @@
+package org.global.dax.store;
+
+/**
+ * Callback notified of every change applied to a {@link CacheStore}
+ */
+public interface MutationListener {
+
+    void onAdd(String key, byte[] value);
+
+    void onRemove(String key);
+}
@@ -0,0 +1,234 @@
+package org.global.dax.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The disk tier of the store: values demoted from memory, appended to memory-mapped segment files.
+ *
+ * A record is {@code [keyLen 4][valueLen 4][key][value]}, the key is only there for the compactor to find the
+ * entry a record belongs to. Records are never updated in place: a value written again or removed leaves a dead
+ * record, counted by its segment, and sealed segments with too much dead space are compacted by copying their
+ * live records to the active segment before deleting the file.
+ *
+ * Appends and compaction run on a single thread, the tiering thread. Reads come from any thread through the
+ * {@link CacheEntry} pointing at a record, and stay valid after the segment was compacted: the file is deleted
+ * but its mapping lives as long as an entry references it.
+ *
+ * Segments do not survive a restart, the keys pointing at them are gone, so the files left by a previous run
+ * are deleted on startup.
+ */
+public final class SegmentLog implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024; // 64MB
+
+    private static final int RECORD_HEADER_SIZE = 8; // key and value lengths
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+
+    // Tiering thread only
+    private Segment active;
+    private int nextId = 0;
+
+    public SegmentLog(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stale) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Appends the value of an entry, returning the entry pointing at it on disk
+     */
+    CacheEntry append(String key, CacheEntry entry, byte[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int recordSize = RECORD_HEADER_SIZE + keyBytes.length + value.length;
+        if (active == null || active.remaining() < recordSize) {
+            active = newSegment(recordSize);
+        }
+        int offset = active.append(keyBytes, value);
+        return entry.onDisk(active, offset);
+    }
+
+    /**
+     * Copies the live records of the sealed segments holding more dead space than the ratio, then deletes them.
+     *
+     * @return the number of segments deleted
+     */
+    int compact(double maxDeadRatio, Relocator relocator) throws IOException {
+        int deleted = 0;
+        for (Segment segment : segments) {
+            if (segment == active || segment.getDeadBytes() < maxDeadRatio * segment.valueBytes) {
+                continue;
+            }
+
+            int position = 0;
+            while (position < segment.writePosition && segment.getDeadBytes() < segment.valueBytes) {
+                int keyLength = segment.buffer.getInt(position);
+                int valueLength = segment.buffer.getInt(position + 4);
+                int offset = position + RECORD_HEADER_SIZE + keyLength;
+                position = offset + valueLength;
+
+                String key = segment.readKey(offset - keyLength, keyLength);
+                CacheEntry entry = relocator.liveEntry(key, segment, offset);
+                if (entry == null) {
+                    continue;
+                }
+                CacheEntry copy = append(key, entry, segment.read(offset, valueLength));
+                if (relocator.replace(key, entry, copy)) {
+                    entry.release();
+                } else {
+                    copy.release(); // written since, the copy is dead already
+                }
+            }
+
+            segments.remove(segment);
+            Files.deleteIfExists(segment.path);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    private Segment newSegment(int recordSize) throws IOException {
+        // A record larger than a segment gets a segment of its own
+        int size = Math.max(segmentSize, recordSize);
+        Path path = directory.resolve(SEGMENT_PREFIX + nextId++ + SEGMENT_SUFFIX);
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping outlives the channel
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        Segment segment = new Segment(path, buffer);
+        segments.add(segment);
+        return segment;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Bytes written to the segments, dead records included
+     */
+    public long getDiskBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.writePosition;
+        }
+        return bytes;
+    }
+
+    /**
+     * Bytes of values replaced or removed since they were written, reclaimed by compaction
+     */
+    public long getDeadBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.getDeadBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Deletes the segment files, the entries still pointing at them can be read until they are collected
+     */
+    @Override
+    public void close() throws IOException {
+        for (Segment segment : segments) {
+            Files.deleteIfExists(segment.path);
+        }
+        segments.clear();
+        active = null;
+    }
+
+    /**
+     * Looks up the entries of the records a compaction copies
+     */
+    interface Relocator {
+
+        /**
+         * The entry of the key if its value is still the one stored at this offset of the segment, null otherwise
+         */
+        CacheEntry liveEntry(String key, Segment segment, int offset);
+
+        /**
+         * Replaces the entry with its copy, false if the key was written or removed in the meantime
+         */
+        boolean replace(String key, CacheEntry entry, CacheEntry copy);
+    }
+
+    /**
+     * A segment file and its mapping, written at its end by the tiering thread
+     */
+    static final class Segment {
+
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final AtomicLong deadBytes = new AtomicLong();
+
+        // Written by the tiering thread, read by stats
+        private volatile int writePosition = 0;
+        private volatile long valueBytes = 0;
+
+        private Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        private int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+
+        /**
+         * Appends a record, returning the offset of its value
+         */
+        private int append(byte[] key, byte[] value) {
+            int position = writePosition;
+            buffer.putInt(position, key.length);
+            buffer.putInt(position + 4, value.length);
+            buffer.put(position + RECORD_HEADER_SIZE, key);
+            int offset = position + RECORD_HEADER_SIZE + key.length;
+            buffer.put(offset, value);
+            valueBytes += value.length;
+            writePosition = offset + value.length;
+            return offset;
+        }
+
+        byte[] read(int offset, int length) {
+            byte[] value = new byte[length];
+            buffer.get(offset, value);
+            return value;
+        }
+
+        private String readKey(int offset, int length) {
+            return new String(read(offset, length), StandardCharsets.UTF_8);
+        }
+
+        void release(int length) {
+            deadBytes.addAndGet(length);
+        }
+
+        private long getDeadBytes() {
+            return deadBytes.get();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.global.dax.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the values of a store within a memory budget by demoting the cold ones to a {@link SegmentLog}.
+ *
+ * A single background thread, the tiering thread, periodically sweeps the store once the values in memory exceed
+ * the budget, demoting values down to a low watermark so that a store growing steadily is not swept on every run,
+ * then compacts the segments holding mostly dead records. Reads never wait for it: a GET of a value in memory is
+ * unchanged, a GET of a demoted value reads it from its mapping and promotes it back.
+ *
+ * The budget is a soft limit: writes are not held back, the values written between two runs are demoted by the next.
+ */
+public final class TieredStorage implements Closeable {
+
+    private static final long RUN_INTERVAL_MS = 100;
+    private static final double LOW_WATERMARK = 0.9; // of the budget, what a sweep demotes down to
+    private static final double MAX_DEAD_RATIO = 0.5; // of a segment, dead space beyond which it is compacted
+
+    private final CacheStore store;
+    private final SegmentLog log;
+    private final long maxResidentBytes;
+    private final ScheduledExecutorService executor;
+
+    private volatile long demotions = 0;
+    private volatile long compactedSegments = 0;
+
+    /**
+     * @param directory        where the segment files are written, the files of a previous run are deleted
+     * @param maxResidentBytes bytes of values kept in memory before demoting the cold ones
+     */
+    public TieredStorage(CacheStore store, Path directory, long maxResidentBytes) throws IOException {
+        this(store, new SegmentLog(directory, SegmentLog.DEFAULT_SEGMENT_SIZE), maxResidentBytes);
+    }
+
+    TieredStorage(CacheStore store, SegmentLog log, long maxResidentBytes) {
+        this.store = store;
+        this.log = log;
+        this.maxResidentBytes = maxResidentBytes;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-tiering");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                run();
+            } catch (IOException e) {
+                // Values stay in memory, the next run tries again
+                System.err.println("Failed to demote values to disk: " + e.getMessage());
+            }
+        }, RUN_INTERVAL_MS, RUN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * One run of the tiering thread: demotes values if over budget, then compacts the log
+     */
+    void run() throws IOException {
+        if (store.getResidentBytes() > maxResidentBytes) {
+            demotions += store.demote(log, (long) (maxResidentBytes * LOW_WATERMARK));
+        }
+        compactedSegments += log.compact(MAX_DEAD_RATIO, store.relocator());
+    }
+
+    public long getMaxResidentBytes() {
+        return maxResidentBytes;
+    }
+
+    public long getDemotions() {
+        return demotions;
+    }
+
+    public long getCompactedSegments() {
+        return compactedSegments;
+    }
+
+    public SegmentLog getLog() {
+        return log;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+}
@@ -0,0 +1,158 @@
+package org.global.dax.store;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/**
+ * Shares one copy of byte-identical values between the entries of a store.
+ *
+ * Values are looked up by content: their hash only picks the bucket, two values are the same only when all their
+ * bytes are equal, so a hash collision never shares the wrong value. Each pooled copy counts the entries using it
+ * and leaves the pool with the last one.
+ *
+ * Every write hashes its value, and the value it replaces, so the hash reads eight bytes at a time instead of the
+ * byte by byte loop of {@link Arrays#hashCode(byte[])}.
+ *
+ * Values must never be modified once stored, which the store already requires since a GET returns the stored array.
+ */
+public final class ValuePool {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L; // 2^64 divided by the golden ratio
+
+    private final ConcurrentHashMap<Content, Pooled> pool = new ConcurrentHashMap<>();
+    private final ToIntFunction<byte[]> hash;
+
+    // Bytes of the distinct values, each counted once however many entries share it, and bytes not allocated thanks
+    // to the sharing, the length of every reference beyond the first of each value
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    public ValuePool() {
+        this(ValuePool::hash);
+    }
+
+    /**
+     * A pool with another hash function, for tests to make values collide
+     */
+    ValuePool(ToIntFunction<byte[]> hash) {
+        this.hash = hash;
+    }
+
+    /**
+     * Returns the pooled copy of the value, the value itself if it is the first of its content
+     */
+    byte[] intern(byte[] value) {
+        boolean[] added = new boolean[1];
+        Pooled pooled = pool.compute(new Content(value, hash.applyAsInt(value)), (content, existing) -> {
+            if (existing == null) {
+                added[0] = true;
+                return new Pooled(value);
+            }
+            existing.references++;
+            return existing;
+        });
+        if (added[0]) {
+            pooledBytes.addAndGet(value.length);
+        } else {
+            savedBytes.addAndGet(value.length);
+        }
+        return pooled.value;
+    }
+
+    /**
+     * Drops a reference to a value returned by {@link #intern}, values that were never pooled are ignored
+     */
+    void release(byte[] value) {
+        boolean[] released = new boolean[1];
+        boolean[] shared = new boolean[1];
+        pool.computeIfPresent(new Content(value, hash.applyAsInt(value)), (content, pooled) -> {
+            if (pooled.value != value) {
+                return pooled; // same content, but not the pooled copy
+            }
+            released[0] = true;
+            shared[0] = pooled.references > 1;
+            return --pooled.references == 0 ? null : pooled;
+        });
+        if (shared[0]) {
+            savedBytes.addAndGet(-value.length);
+        } else if (released[0]) {
+            pooledBytes.addAndGet(-value.length);
+        }
+    }
+
+    /**
+     * Distinct values in the pool
+     */
+    public int getUniqueValues() {
+        return pool.size();
+    }
+
+    /**
+     * Bytes of the distinct values in the pool, what the values of its entries take in memory
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    /**
+     * Multiplicative hash of the value, a long of it at a time
+     */
+    static int hash(byte[] value) {
+        long h = value.length;
+        int i = 0;
+        for (; i + Long.BYTES <= value.length; i += Long.BYTES) {
+            h = (h ^ (long) LONGS.get(value, i)) * MULTIPLIER;
+        }
+        for (; i < value.length; i++) {
+            h = (h ^ value[i]) * MULTIPLIER;
+        }
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * A value as a map key, compared by content
+     */
+    private static final class Content {
+
+        private final byte[] bytes;
+        private final int hash;
+
+        private Content(byte[] bytes, int hash) {
+            this.bytes = bytes;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Content && Arrays.equals(bytes, ((Content) other).bytes);
+        }
+    }
+
+    /**
+     * The shared copy of a value, references only change inside the atomic map operations on its content
+     */
+    private static final class Pooled {
+
+        private final byte[] value;
+        private int references = 1;
+
+        private Pooled(byte[] value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.global.dax.tracking;
+
+import org.global.dax.server.Connection;
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.store.MutationListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks which connections hold which keys in their near cache, and pushes an INVALIDATE message
+ * to those connections when the key is added or removed.
+ *
+ * A connection opts in with a TRACKING message, from then on every key it successfully reads is
+ * recorded. Once invalidated, a key is forgotten until the connection reads it again, so the table
+ * only holds keys read since their last change.
+ *
+ * Must only be used from the server selector thread.
+ */
+public class InvalidationTracker implements MutationListener {
+
+    private final Set<Connection> trackingConnections = new HashSet<>();
+    private final Map<String, Set<Connection>> holdersByKey = new HashMap<>();
+    private final Map<Connection, Set<String>> keysByConnection = new HashMap<>();
+
+    private long invalidationsSent = 0;
+
+    public void enableTracking(Connection connection) {
+        trackingConnections.add(connection);
+    }
+
+    public boolean isTracking(Connection connection) {
+        return trackingConnections.contains(connection);
+    }
+
+    /**
+     * Records that the connection now holds the key, if it tracks its reads
+     */
+    public void onRead(String key, Connection connection) {
+        if (!trackingConnections.contains(connection)) {
+            return;
+        }
+        holdersByKey.computeIfAbsent(key, k -> new HashSet<>()).add(connection);
+        keysByConnection.computeIfAbsent(connection, c -> new HashSet<>()).add(key);
+    }
+
+    public void removeConnection(Connection connection) {
+        trackingConnections.remove(connection);
+        Set<String> keys = keysByConnection.remove(connection);
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            Set<Connection> holders = holdersByKey.get(key);
+            if (holders != null) {
+                holders.remove(connection);
+                if (holders.isEmpty()) {
+                    holdersByKey.remove(key);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onAdd(String key, byte[] value) {
+        invalidate(key);
+    }
+
+    @Override
+    public void onRemove(String key) {
+        invalidate(key);
+    }
+
+    public long getInvalidationsSent() {
+        return invalidationsSent;
+    }
+
+    public int getTrackedKeyCount() {
+        return holdersByKey.size();
+    }
+
+    private void invalidate(String key) {
+        Set<Connection> holders = holdersByKey.remove(key);
+        if (holders == null) {
+            return;
+        }
+
+        // Encoded once, shared by every holder
+        ByteBuffer frame = CacheProtocol.encode(CacheProtocol.createInvalidateMessage(key.getBytes(StandardCharsets.UTF_8)));
+        for (Connection connection : holders) {
+            Set<String> keys = keysByConnection.get(connection);
+            if (keys != null) {
+                keys.remove(key);
+            }
+            try {
+                connection.send(frame);
+                invalidationsSent++;
+            } catch (IOException e) {
+                // The server loop closes the channel when its next read fails
+                System.err.println("Failed to send invalidation: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.global.dax.hotkeys;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(MockitoExtension.class)
+class HotKeyTrackerTest {
+
+    @Test
+    void detectsKeyDominatingTheTraffic() {
+        HotKeyTracker tracker = new HotKeyTracker(8, 16, 4, key -> {});
+
+        for (int i = 0; i < 10_000; i++) {
+            tracker.record("HOT!");
+            tracker.record(String.format("%04d", i));
+        }
+
+        assertThat(tracker.isHot("HOT!")).isTrue();
+        assertThat(tracker.isHot("0001")).isFalse();
+        assertThat(tracker.topKeys(1)).extracting(HotKeyTracker.HotKey::getKey).containsExactly("HOT!");
+        // Half the requests, estimated from a one in 4 sample
+        assertThat(tracker.topKeys(1).get(0).getEstimatedCount()).isBetween(9_000L, 11_000L);
+    }
+
+    @Test
+    void notifiesKeysThatStopBeingMonitored() {
+        List<String> evicted = new ArrayList<>();
+        HotKeyTracker tracker = new HotKeyTracker(2, 1, 1, evicted::add);
+
+        tracker.record("AAAA");
+        tracker.record("BBBB");
+        tracker.record("BBBB");
+        // Replaces the least counted key
+        tracker.record("CCCC");
+
+        assertThat(evicted).containsExactly("AAAA");
+        assertThat(tracker.topKeys(10)).extracting(HotKeyTracker.HotKey::getKey).containsExactlyInAnyOrder("BBBB", "CCCC");
+    }
+}
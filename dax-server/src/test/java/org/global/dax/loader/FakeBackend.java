@@ -0,0 +1,55 @@
+package org.global.dax.loader;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * An in-process backend recording the batches it is called with
+ */
+class FakeBackend implements CacheLoader {
+
+    final Map<String, byte[]> data = new ConcurrentHashMap<>();
+    final List<Set<String>> loadCalls = new CopyOnWriteArrayList<>();
+    final List<Map<String, byte[]>> writeCalls = new CopyOnWriteArrayList<>();
+    final List<Set<String>> deleteCalls = new CopyOnWriteArrayList<>();
+
+    // Loads wait for it when set, to keep a load running
+    volatile CountDownLatch gate;
+    volatile boolean failing;
+
+    @Override
+    public Map<String, byte[]> loadAll(Set<String> keys) throws Exception {
+        loadCalls.add(Set.copyOf(keys));
+        CountDownLatch current = gate;
+        if (current != null) {
+            current.await();
+        }
+        if (failing) {
+            throw new IllegalStateException("backend down");
+        }
+        Map<String, byte[]> values = new HashMap<>();
+        for (String key : keys) {
+            byte[] value = data.get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void writeAll(Map<String, byte[]> values, Set<String> removedKeys) {
+        if (failing) {
+            throw new IllegalStateException("backend down");
+        }
+        writeCalls.add(Map.copyOf(values));
+        deleteCalls.add(Set.copyOf(removedKeys));
+        data.putAll(values);
+        data.keySet().removeAll(removedKeys);
+    }
+}
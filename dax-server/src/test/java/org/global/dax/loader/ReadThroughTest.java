@@ -0,0 +1,135 @@
+package org.global.dax.loader;
+
+import org.global.dax.store.CacheStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class ReadThroughTest {
+
+    private final FakeBackend backend = new FakeBackend();
+    private final CacheStore store = new CacheStore();
+
+    // Stands for the selector thread: completions are queued here and run by the test thread
+    private final BlockingQueue<Runnable> selectorTasks = new LinkedBlockingQueue<>();
+    private final List<String> results = new CopyOnWriteArrayList<>();
+
+    private ReadThrough readThrough = new ReadThrough(backend, store, selectorTasks::add, null, 20, 100);
+
+    @AfterEach
+    void tearDown() {
+        readThrough.close();
+    }
+
+    @Test
+    void collapsesConcurrentMissesOfAKey() throws InterruptedException {
+        backend.data.put("user:1", bytes("Alice"));
+        backend.gate = new CountDownLatch(1);
+
+        readThrough.load("user:1", this::record);
+        await().until(() -> backend.loadCalls.size() == 1);
+        readThrough.load("user:1", this::record);
+        readThrough.load("user:1", this::record);
+        backend.gate.countDown();
+        runSelectorTasks(1);
+
+        assertThat(backend.loadCalls).containsExactly(Set.of("user:1"));
+        assertThat(results).containsExactly("Alice", "Alice", "Alice");
+        assertThat(store.get("user:1")).isEqualTo(bytes("Alice"));
+        assertThat(readThrough.getCollapsed()).isEqualTo(2);
+    }
+
+    @Test
+    void batchesMissesWithinTheWindow() throws InterruptedException {
+        backend.data.put("user:1", bytes("Alice"));
+        backend.data.put("user:2", bytes("Bob"));
+
+        readThrough.load("user:1", this::record);
+        readThrough.load("user:2", this::record);
+        readThrough.load("user:3", this::record);
+        runSelectorTasks(1);
+
+        assertThat(backend.loadCalls).containsExactly(Set.of("user:1", "user:2", "user:3"));
+        assertThat(results).containsExactlyInAnyOrder("Alice", "Bob", "null");
+        assertThat(store.get("user:3")).isNull();
+    }
+
+    @Test
+    void keepsAValueWrittenWhileLoading() throws InterruptedException {
+        backend.data.put("user:1", bytes("Alice"));
+        backend.gate = new CountDownLatch(1);
+
+        readThrough.load("user:1", this::record);
+        await().until(() -> backend.loadCalls.size() == 1);
+        store.put("user:1", bytes("Alicia"));
+        backend.gate.countDown();
+        runSelectorTasks(1);
+
+        assertThat(results).containsExactly("Alicia");
+        assertThat(store.get("user:1")).isEqualTo(bytes("Alicia"));
+    }
+
+    @Test
+    void passesLoadFailuresToEveryWaitingRequest() throws InterruptedException {
+        backend.failing = true;
+
+        readThrough.load("user:1", this::record);
+        readThrough.load("user:1", this::record);
+        runSelectorTasks(1);
+
+        assertThat(results).containsExactly("failed: backend down", "failed: backend down");
+    }
+
+    @Test
+    void doesNotLoadKeysWithARemovalToWriteBack() throws InterruptedException {
+        WriteBehind writeBehind = new WriteBehind(backend, WriteBehind.DEFAULT_FLUSH_INTERVAL_MS);
+        store.addListener(writeBehind);
+        readThrough.close();
+        readThrough = new ReadThrough(backend, store, selectorTasks::add, writeBehind, 20, 100);
+        backend.data.put("user:1", bytes("Alice"));
+        backend.data.put("user:2", bytes("Bob"));
+
+        store.put("user:1", bytes("Alice"));
+        store.remove("user:1");
+        readThrough.load("user:1", this::record);
+        readThrough.load("user:2", this::record);
+        runSelectorTasks(1);
+
+        assertThat(results).containsExactly("null", "Bob");
+        assertThat(backend.loadCalls).containsExactly(Set.of("user:2"));
+        // Only the removal is left to write back, the loaded value is not
+        assertThat(writeBehind.getDirtyKeys()).isEqualTo(1);
+        writeBehind.close();
+    }
+
+    private void record(byte[] value, Exception failure) {
+        if (failure != null) {
+            results.add("failed: " + failure.getMessage());
+        } else {
+            results.add(value != null ? new String(value, StandardCharsets.UTF_8) : "null");
+        }
+    }
+
+    private void runSelectorTasks(int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            Runnable task = selectorTasks.poll(5, TimeUnit.SECONDS);
+            assertThat(task).isNotNull();
+            task.run();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
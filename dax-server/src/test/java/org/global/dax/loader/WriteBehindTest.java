@@ -0,0 +1,74 @@
+package org.global.dax.loader;
+
+import org.global.dax.store.CacheStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WriteBehindTest {
+
+    private final FakeBackend backend = new FakeBackend();
+    private final CacheStore store = new CacheStore();
+    private final WriteBehind writeBehind = new WriteBehind(backend, WriteBehind.DEFAULT_FLUSH_INTERVAL_MS);
+
+    WriteBehindTest() {
+        store.addListener(writeBehind);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeBehind.close();
+    }
+
+    @Test
+    void writesBackTheLatestValuesInOneBatch() {
+        backend.data.put("user:3", bytes("Carol"));
+
+        store.put("user:1", bytes("Alice"));
+        store.put("user:1", bytes("Alicia"));
+        store.put("user:2", bytes("Bob"));
+        store.put("user:3", bytes("Carol"));
+        store.remove("user:3");
+        writeBehind.flush();
+
+        assertThat(backend.writeCalls).hasSize(1);
+        assertThat(backend.writeCalls.get(0)).containsOnlyKeys("user:1", "user:2");
+        assertThat(backend.deleteCalls).containsExactly(Set.of("user:3"));
+        assertThat(backend.data.get("user:1")).isEqualTo(bytes("Alicia"));
+        assertThat(backend.data).doesNotContainKey("user:3");
+        assertThat(writeBehind.getDirtyKeys()).isZero();
+    }
+
+    @Test
+    void keepsKeysDirtyUntilAWriteSucceeds() {
+        store.put("user:1", bytes("Alice"));
+        backend.failing = true;
+        writeBehind.flush();
+
+        assertThat(writeBehind.getDirtyKeys()).isEqualTo(1);
+        assertThat(writeBehind.getFailedCalls()).isEqualTo(1);
+
+        backend.failing = false;
+        writeBehind.flush();
+
+        assertThat(writeBehind.getDirtyKeys()).isZero();
+        assertThat(backend.data.get("user:1")).isEqualTo(bytes("Alice"));
+    }
+
+    @Test
+    void writesBackWhatIsDirtyWhenClosed() {
+        writeBehind.start();
+        store.put("user:1", bytes("Alice"));
+        writeBehind.close();
+
+        assertThat(backend.data.get("user:1")).isEqualTo(bytes("Alice"));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,88 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.global.dax.server.TestServers.connect;
+import static org.global.dax.server.TestServers.request;
+
+@Tag("integration")
+class ServerBackpressureTest {
+
+    private static final int PORT = 19094;
+    private static final int CONNECTION_PENDING_LIMIT = 64;
+
+    private ServerMain server;
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void pausesClientThatDoesNotReadItsResponses() throws Exception {
+        server = TestServers.start(new ServerConfig().withPort(PORT).withConnectionLimits(CONNECTION_PENDING_LIMIT, 256 * 1024));
+
+        try (SocketChannel flood = connect(PORT); SocketChannel light = connect(PORT)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            request(light, buffer, CacheProtocol.createAddMessage("BIG!", "x".repeat(1000)));
+
+            flood(flood, Duration.ofSeconds(1));
+
+            await().atMost(Duration.ofSeconds(5)).until(() -> server.getAdmissionControl().getPausedConnections() == 1);
+            assertThat(server.getAdmissionControl().getPendingResponses()).isLessThanOrEqualTo(CONNECTION_PENDING_LIMIT);
+
+            // Other clients are still served
+            assertThat(request(light, buffer, CacheProtocol.createGetMessage("BIG!")).getStatus())
+                    .isEqualTo(CacheProtocol.STATUS_OK);
+        }
+    }
+
+    @Test
+    void rejectsRequestsAsBusyWhenServerIsOverloaded() throws Exception {
+        server = TestServers.start(new ServerConfig().withPort(PORT)
+                .withConnectionLimits(CONNECTION_PENDING_LIMIT, 256 * 1024)
+                .withServerLimits(CONNECTION_PENDING_LIMIT / 2, 256 * 1024 * 1024));
+
+        try (SocketChannel flood = connect(PORT); SocketChannel light = connect(PORT)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            request(light, buffer, CacheProtocol.createAddMessage("BIG!", "x".repeat(1000)));
+
+            flood(flood, Duration.ofSeconds(1));
+            await().atMost(Duration.ofSeconds(5)).until(() -> server.getAdmissionControl().isOverloaded());
+
+            assertThat(request(light, buffer, CacheProtocol.createGetMessage("BIG!")).getStatus())
+                    .isEqualTo(CacheProtocol.STATUS_BUSY);
+            assertThat(server.getAdmissionControl().getRejectedRequests()).isPositive();
+
+            // Heartbeats are never shed
+            assertThat(request(light, buffer, CacheProtocol.createHeartbeatMessage()).getStatus())
+                    .isEqualTo(CacheProtocol.STATUS_OK);
+        }
+    }
+
+    /**
+     * Pipelines GETs for a large value without ever reading the responses
+     */
+    private static void flood(SocketChannel channel, Duration duration) throws Exception {
+        channel.configureBlocking(false);
+        ByteBuffer frame = CacheProtocol.encode(CacheProtocol.createGetMessage("BIG!"));
+        long deadline = System.nanoTime() + duration.toNanos();
+        while (System.nanoTime() < deadline) {
+            ByteBuffer buffer = frame.duplicate();
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                // Server stopped reading, the socket is full
+                Thread.sleep(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.BusyPoll;
+import org.global.dax.shared.CacheProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.global.dax.server.TestServers.connect;
+import static org.global.dax.server.TestServers.request;
+
+@Tag("integration")
+class ServerBusyPollTest {
+
+    private static final int PORT = 19099;
+
+    private ServerMain server;
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void servesRequestsAndScansHandedBackToThePollingLoop() throws Exception {
+        // Spins briefly, then parks between polls until a request arrives or a scan result unparks it
+        server = TestServers.start(new ServerConfig().withPort(PORT).withScanThreads(1)
+                .withBusyPoll(new BusyPoll().withBackoff(100, 1_000_000)));
+
+        try (SocketChannel channel = connect(PORT)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            for (int i = 0; i < 100; i++) {
+                assertThat(request(channel, buffer, CacheProtocol.createAddMessage("KEY" + i, "value" + i)).getStatus())
+                        .isEqualTo(CacheProtocol.STATUS_OK);
+            }
+
+            CacheProtocol.Message response = request(channel, buffer, CacheProtocol.createGetMessage("KEY42"));
+            assertThat(new String(response.getValue(), StandardCharsets.UTF_8)).isEqualTo("value42");
+
+            // Scanned on the scan thread, sent by the selector thread
+            response = request(channel, buffer, CacheProtocol.createGetMessage("ALL"));
+            assertThat(new String(response.getValue(), StandardCharsets.UTF_8)).contains("KEY0", "KEY99");
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.global.dax.server.TestServers.connect;
+import static org.global.dax.server.TestServers.request;
+
+@Tag("integration")
+class ServerFairnessTest {
+
+    private static final int PORT = 19095;
+    private static final int LIGHT_REQUESTS = 500;
+
+    private ServerMain server;
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void lightClientLatencyStaysLowWhileAnotherClientFloods() throws Exception {
+        server = TestServers.start(new ServerConfig().withPort(PORT));
+
+        try (SocketChannel heavy = connect(PORT); SocketChannel light = connect(PORT)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            for (int i = 0; i < 10_000; i++) {
+                request(light, buffer, CacheProtocol.createAddMessage("KEY" + i, "value" + i));
+            }
+
+            AtomicBoolean flooding = new AtomicBoolean(true);
+            Thread writer = new Thread(() -> flood(heavy, flooding), "heavy-writer");
+            Thread reader = new Thread(() -> drain(heavy, flooding), "heavy-reader");
+            writer.start();
+            reader.start();
+
+            try {
+                long[] latencies = new long[LIGHT_REQUESTS];
+                for (int i = 0; i < LIGHT_REQUESTS; i++) {
+                    long start = System.nanoTime();
+                    CacheProtocol.Message response = request(light, buffer, CacheProtocol.createGetMessage("KEY" + i));
+                    latencies[i] = System.nanoTime() - start;
+                    assertThat(response.getStatus()).isEqualTo(CacheProtocol.STATUS_OK);
+                }
+
+                Arrays.sort(latencies);
+                long p99 = latencies[LIGHT_REQUESTS * 99 / 100];
+                assertThat(TimeUnit.NANOSECONDS.toMillis(p99)).isLessThan(50);
+            } finally {
+                flooding.set(false);
+                heavy.close();
+                writer.join();
+                reader.join();
+            }
+        }
+    }
+
+    /**
+     * Pipelines single-key GETs mixed with full scans as fast as the socket accepts them
+     */
+    private static void flood(SocketChannel channel, AtomicBoolean flooding) {
+        ByteBuffer get = CacheProtocol.encode(CacheProtocol.createGetMessage("KEY1"));
+        ByteBuffer getAll = CacheProtocol.encode(CacheProtocol.createGetMessage("ALL"));
+        try {
+            for (long i = 0; flooding.get(); i++) {
+                ByteBuffer frame = (i % 1000 == 0 ? getAll : get).duplicate();
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+        } catch (IOException e) {
+            // The connection is closed at the end of the test
+        }
+    }
+
+    private static void drain(SocketChannel channel, AtomicBoolean flooding) {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try {
+            while (flooding.get()) {
+                buffer.clear();
+                channel.read(buffer);
+            }
+        } catch (IOException e) {
+            // The connection is closed at the end of the test
+        }
+    }
+}
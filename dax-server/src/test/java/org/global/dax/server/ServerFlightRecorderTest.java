@@ -0,0 +1,77 @@
+package org.global.dax.server;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.global.dax.shared.CacheProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.global.dax.server.TestServers.connect;
+import static org.global.dax.server.TestServers.request;
+
+@Tag("integration")
+class ServerFlightRecorderTest {
+
+    private static final int PORT = 19100;
+
+    @TempDir
+    Path directory;
+
+    private ServerMain server;
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void recordsEveryRequestWithItsPhases() throws Exception {
+        server = TestServers.start(new ServerConfig().withPort(PORT).withRequestLogging(false));
+
+        Path file = directory.resolve("requests.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("org.global.dax.Request").withThreshold(Duration.ZERO);
+            // Nothing is slow enough on loopback
+            recording.enable("org.global.dax.SlowRequest").withThreshold(Duration.ofSeconds(10));
+            recording.start();
+
+            try (SocketChannel channel = connect(PORT)) {
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                request(channel, buffer, CacheProtocol.createAddMessage("KEY", "value"));
+                request(channel, buffer, CacheProtocol.createGetMessage("KEY"));
+            }
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().startsWith("org.global.dax."))
+                .collect(Collectors.toList());
+        assertThat(events).extracting(event -> event.getEventType().getName())
+                .containsExactly("org.global.dax.Request", "org.global.dax.Request");
+
+        RecordedEvent add = events.get(0);
+        assertThat(add.getString("operation")).isEqualTo("ADD");
+        assertThat(add.getString("key")).isEqualTo("KEY");
+        assertThat(add.getLong("requestBytes")).isPositive();
+
+        // Served in place, nothing to decode
+        RecordedEvent get = events.get(1);
+        assertThat(get.getString("operation")).isEqualTo("GET");
+        assertThat(get.getDuration("decodeTime")).isZero();
+        assertThat(get.getLong("responseBytes")).isGreaterThan("value".length());
+        assertThat(get.getDuration("writeTime")).isPositive();
+    }
+}
@@ -0,0 +1,133 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.global.dax.server.TestServers.address;
+import static org.global.dax.server.TestServers.awaitListening;
+import static org.global.dax.server.TestServers.connect;
+import static org.global.dax.server.TestServers.request;
+import static org.global.dax.server.TestServers.run;
+
+@Tag("integration")
+class ServerHotRestartTest {
+
+    private static final int PORT = 19103;
+    private static final int KEYS = 1000;
+
+    @TempDir
+    Path directory;
+
+    private final List<ServerMain> servers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        servers.forEach(ServerMain::stop);
+    }
+
+    @Test
+    void restartsWithoutRefusingConnectionsOrLosingEntries() throws Exception {
+        ServerConfig config = new ServerConfig().withPort(PORT).withRequestLogging(false)
+                .withHotRestart(directory.resolve("handoff.sock"), 2_000);
+        Thread old = startServer(new ServerMain(config));
+        awaitListening(address(PORT));
+        try (SocketChannel channel = connect(PORT)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            for (int i = 0; i < KEYS; i++) {
+                request(channel, buffer, CacheProtocol.createAddMessage("key" + i, "value" + i));
+            }
+        }
+
+        LoadGenerator load = new LoadGenerator();
+        Thread loadThread = new Thread(load, "load-" + PORT);
+        loadThread.start();
+        await().atMost(Duration.ofSeconds(5)).until(() -> load.requests.get() > 100);
+
+        // Takes the store and the port over, the old server stops once its connections are drained
+        ServerMain next = new ServerMain(config);
+        startServer(next);
+        old.join(10_000);
+        assertThat(old.isAlive()).isFalse();
+
+        long served = load.requests.get();
+        await().atMost(Duration.ofSeconds(5)).until(() -> load.requests.get() > served + 100);
+        load.running = false;
+        loadThread.join();
+
+        assertThat(load.failures).noneMatch(ConnectException.class::isInstance);
+        if (migratesQueuedConnections()) {
+            assertThat(load.failures).isEmpty();
+        }
+        assertThat(load.misses.get()).isZero();
+        assertThat(next.getCache().size()).isGreaterThanOrEqualTo(KEYS);
+        // Including the writes made on the old server while it was draining
+        for (String key : load.written) {
+            assertThat(next.getCache().get(key)).as(key).isNotNull();
+        }
+    }
+
+    /**
+     * Otherwise a connection still queued on the listening socket of the old server as it closes is reset
+     */
+    private static boolean migratesQueuedConnections() throws IOException {
+        Path sysctl = Path.of("/proc/sys/net/ipv4/tcp_migrate_req");
+        return Files.exists(sysctl) && Files.readString(sysctl).trim().equals("1");
+    }
+
+    private Thread startServer(ServerMain server) {
+        servers.add(server);
+        return run(server, "server-" + PORT + "-" + servers.size());
+    }
+
+    /**
+     * Reads a preloaded key and writes a new one, on a new connection each time so connections land on both servers
+     */
+    private static final class LoadGenerator implements Runnable {
+
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final Queue<String> written = new ConcurrentLinkedQueue<>();
+        private final Queue<IOException> failures = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+
+        @Override
+        public void run() {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            for (int i = 0; running; i++) {
+                buffer.clear();
+                try (SocketChannel channel = connect(PORT)) {
+                    CacheProtocol.Message response = request(channel, buffer, CacheProtocol.createGetMessage("key" + i % KEYS));
+                    if (response.getStatus() != CacheProtocol.STATUS_OK) {
+                        misses.incrementAndGet();
+                    }
+                    String key = "load" + i;
+                    response = request(channel, buffer, CacheProtocol.createAddMessage(key, "value" + i));
+                    if (response.getStatus() == CacheProtocol.STATUS_OK) {
+                        written.add(key);
+                    }
+                    requests.incrementAndGet();
+                } catch (IOException e) {
+                    failures.add(e);
+                }
+            }
+        }
+    }
+}
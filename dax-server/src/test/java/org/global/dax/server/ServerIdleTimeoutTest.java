@@ -0,0 +1,52 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.global.dax.server.TestServers.connect;
+import static org.global.dax.server.TestServers.request;
+
+@Tag("integration")
+class ServerIdleTimeoutTest {
+
+    private static final int PORT = 19096;
+    private static final long IDLE_TIMEOUT_MS = 300;
+
+    private ServerMain server;
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void closesConnectionsIdleForLongerThanTheTimeout() throws Exception {
+        server = TestServers.start(new ServerConfig().withPort(PORT).withIdleTimeout(IDLE_TIMEOUT_MS));
+
+        try (SocketChannel idle = connect(PORT); SocketChannel active = connect(PORT)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            long deadline = System.currentTimeMillis() + 4 * IDLE_TIMEOUT_MS;
+            while (System.currentTimeMillis() < deadline) {
+                assertThat(request(active, buffer, CacheProtocol.createHeartbeatMessage()).getStatus())
+                        .isEqualTo(CacheProtocol.STATUS_OK);
+                Thread.sleep(IDLE_TIMEOUT_MS / 3);
+            }
+
+            // Closed by the server, the idle peer reads the end of stream
+            idle.configureBlocking(false);
+            await().atMost(Duration.ofSeconds(2)).until(() -> idle.read(ByteBuffer.allocate(1)) == -1);
+            assertThat(server.stats()).contains("idle closed: 1");
+
+            assertThat(request(active, buffer, CacheProtocol.createHeartbeatMessage()).getStatus())
+                    .isEqualTo(CacheProtocol.STATUS_OK);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.global.dax.server.TestServers.connect;
+import static org.global.dax.server.TestServers.read;
+import static org.global.dax.server.TestServers.request;
+
+@Tag("integration")
+class ServerInvalidationTest {
+
+    private static final int PORT = 19093;
+
+    private ServerMain server;
+
+    @BeforeEach
+    void setUp() {
+        server = TestServers.start(PORT, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void pushesInvalidationToConnectionsHoldingTheKey() throws IOException {
+        try (SocketChannel reader = connect(PORT); SocketChannel writer = connect(PORT)) {
+            ByteBuffer readerBuffer = ByteBuffer.allocate(1024 * 1024);
+            ByteBuffer writerBuffer = ByteBuffer.allocate(1024 * 1024);
+
+            request(writer, writerBuffer, CacheProtocol.createAddMessage("ABCD", "v1"));
+            assertThat(request(reader, readerBuffer, CacheProtocol.createTrackingMessage()).getStatus())
+                    .isEqualTo(CacheProtocol.STATUS_OK);
+            assertThat(request(reader, readerBuffer, CacheProtocol.createGetMessage("ABCD")).getValueAsString())
+                    .isEqualTo("v1");
+
+            request(writer, writerBuffer, CacheProtocol.createAddMessage("ABCD", "v2"));
+
+            CacheProtocol.Message invalidation = read(reader, readerBuffer);
+            assertThat(invalidation.getOperation()).isEqualTo(CacheProtocol.OP_INVALIDATE);
+            assertThat(invalidation.getKeyAsString()).isEqualTo("ABCD");
+
+            // Forgotten once invalidated, until read again
+            await().atMost(Duration.ofSeconds(5)).until(() -> server.getInvalidationTracker().getTrackedKeyCount() == 0);
+        }
+    }
+
+    @Test
+    void doesNotInvalidateConnectionsWithoutTracking() throws IOException {
+        try (SocketChannel reader = connect(PORT); SocketChannel writer = connect(PORT)) {
+            ByteBuffer readerBuffer = ByteBuffer.allocate(1024 * 1024);
+            ByteBuffer writerBuffer = ByteBuffer.allocate(1024 * 1024);
+
+            request(writer, writerBuffer, CacheProtocol.createAddMessage("EFGH", "v1"));
+            request(reader, readerBuffer, CacheProtocol.createGetMessage("EFGH"));
+            request(writer, writerBuffer, CacheProtocol.createRemoveMessage("EFGH"));
+
+            // The next message on the reader connection is the answer to its own request
+            CacheProtocol.Message response = request(reader, readerBuffer, CacheProtocol.createHeartbeatMessage());
+            assertThat(response.getOperation()).isEqualTo(CacheProtocol.OP_RESPONSE);
+            assertThat(server.getInvalidationTracker().getInvalidationsSent()).isZero();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ChunkAssembler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.global.dax.server.TestServers.connect;
+import static org.global.dax.server.TestServers.read;
+import static org.global.dax.server.TestServers.request;
+
+@Tag("integration")
+class ServerLargeValueTest {
+
+    private static final int PORT = 19097;
+
+    // Several times the 1MB connection buffers
+    private static final int VALUE_SIZE = 5 * 1024 * 1024 + 17;
+
+    private ServerMain server;
+
+    @BeforeEach
+    void setUp() {
+        server = TestServers.start(new ServerConfig().withPort(PORT));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void storesAndReturnsValuesLargerThanTheConnectionBuffer() throws Exception {
+        byte[] value = randomValue();
+
+        try (SocketChannel channel = connect(PORT)) {
+            // A buffer far smaller than the value, only ever holding one chunk
+            ByteBuffer buffer = ByteBuffer.allocate(CacheProtocol.CHUNK_SIZE + 64 * 1024);
+            ChunkAssembler assembler = new ChunkAssembler();
+
+            CacheProtocol.Message added = request(channel, buffer, assembler, new CacheProtocol.Message(
+                    CacheProtocol.OP_ADD, "large".getBytes(StandardCharsets.UTF_8), value));
+            assertThat(added.getStatus()).isEqualTo(CacheProtocol.STATUS_OK);
+
+            CacheProtocol.Message response = request(channel, buffer, assembler, CacheProtocol.createGetMessage("large"));
+            assertThat(response.getStatus()).isEqualTo(CacheProtocol.STATUS_OK);
+            assertThat(response.getValue()).isEqualTo(value);
+            assertThat(assembler.size()).isZero();
+
+            // Small requests keep flowing on the same connection
+            assertThat(request(channel, buffer, assembler, CacheProtocol.createHeartbeatMessage()).getStatus())
+                    .isEqualTo(CacheProtocol.STATUS_OK);
+        }
+    }
+
+    @Test
+    void sendsValuesStraightFromAFile(@TempDir Path directory) throws Exception {
+        byte[] value = randomValue();
+        Path file = Files.write(directory.resolve("value.bin"), value);
+
+        try (SocketChannel channel = connect(PORT); FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            ChunkAssembler assembler = new ChunkAssembler();
+
+            CacheProtocol.sendChunked(channel, CacheProtocol.OP_ADD, "file".getBytes(StandardCharsets.UTF_8),
+                    source, 0, value.length);
+            assertThat(read(channel, buffer, assembler).getStatus()).isEqualTo(CacheProtocol.STATUS_OK);
+
+            CacheProtocol.Message response = request(channel, buffer, assembler, CacheProtocol.createGetMessage("file"));
+            assertThat(response.getValue()).isEqualTo(value);
+        }
+    }
+
+    @Test
+    void closesAConnectionSendingAnUnchunkedFrameLargerThanItsBuffer() throws Exception {
+        try (SocketChannel channel = connect(PORT)) {
+            // A single frame, as sent by a peer that does not chunk
+            ByteBuffer frame = CacheProtocol.encode(new CacheProtocol.Message(
+                    CacheProtocol.OP_ADD, "large".getBytes(StandardCharsets.UTF_8), new byte[2 * 1024 * 1024]));
+            try {
+                CacheProtocol.sendEncoded(channel, frame);
+            } catch (IOException e) {
+                // closed by the server before the whole frame was sent
+            }
+
+            channel.configureBlocking(false);
+            await().atMost(Duration.ofSeconds(5)).until(() -> isClosedByPeer(channel));
+        }
+
+        try (SocketChannel channel = connect(PORT)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            assertThat(request(channel, buffer, new ChunkAssembler(), CacheProtocol.createHeartbeatMessage()).getStatus())
+                    .isEqualTo(CacheProtocol.STATUS_OK);
+        }
+    }
+
+    private static boolean isClosedByPeer(SocketChannel channel) {
+        try {
+            return channel.read(ByteBuffer.allocate(1)) < 0;
+        } catch (IOException e) {
+            return true; // reset
+        }
+    }
+
+    private static byte[] randomValue() {
+        byte[] value = new byte[VALUE_SIZE];
+        new Random(42).nextBytes(value);
+        return value;
+    }
+}
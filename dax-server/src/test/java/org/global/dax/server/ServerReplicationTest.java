@@ -0,0 +1,96 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.global.dax.server.TestServers.connect;
+import static org.global.dax.server.TestServers.request;
+
+@Tag("integration")
+class ServerReplicationTest {
+
+    private static final int PRIMARY_PORT = 19091;
+    private static final int REPLICA_PORT = 19092;
+
+    private ServerMain primary;
+    private ServerMain replica;
+
+    @BeforeEach
+    void setUp() {
+        primary = TestServers.start(PRIMARY_PORT, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        primary.stop();
+        if (replica != null) {
+            replica.stop();
+        }
+    }
+
+    @Test
+    void replicaReceivesSnapshotThenMutationStream() throws IOException {
+        try (SocketChannel client = connect(PRIMARY_PORT)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+
+            // Written before the replica exists, must arrive with the snapshot
+            assertThat(request(client, buffer, CacheProtocol.createAddMessage("AAAA", "snapshot")).getStatus())
+                    .isEqualTo(CacheProtocol.STATUS_OK);
+
+            replica = TestServers.start(REPLICA_PORT, new InetSocketAddress("localhost", PRIMARY_PORT));
+            await().atMost(Duration.ofSeconds(5)).until(() -> replica.getReplicaLink().isSynced());
+            assertThat(new String(replica.getCache().get("AAAA"))).isEqualTo("snapshot");
+
+            // Written afterwards, must arrive through the mutation stream
+            request(client, buffer, CacheProtocol.createAddMessage("BBBB", "stream"));
+            request(client, buffer, CacheProtocol.createRemoveMessage("AAAA"));
+
+            await().atMost(Duration.ofSeconds(5)).until(() -> replica.getCache().get("AAAA") == null);
+            assertThat(new String(replica.getCache().get("BBBB"))).isEqualTo("stream");
+            assertThat(replica.getReplicaLink().getLastAppliedSequence())
+                    .isEqualTo(primary.getReplicationSource().getSequence());
+        }
+    }
+
+    @Test
+    void replicaServesReadsAndRejectsWrites() throws IOException {
+        try (SocketChannel client = connect(PRIMARY_PORT)) {
+            request(client, ByteBuffer.allocate(1024 * 1024), CacheProtocol.createAddMessage("CCCC", "value"));
+        }
+
+        replica = TestServers.start(REPLICA_PORT, new InetSocketAddress("localhost", PRIMARY_PORT));
+        await().atMost(Duration.ofSeconds(5)).until(() -> replica.getCache().get("CCCC") != null);
+
+        try (SocketChannel client = connect(REPLICA_PORT)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+
+            CacheProtocol.Message get = request(client, buffer, CacheProtocol.createGetMessage("CCCC"));
+            assertThat(get.getStatus()).isEqualTo(CacheProtocol.STATUS_OK);
+            assertThat(get.getValueAsString()).isEqualTo("value");
+
+            CacheProtocol.Message add = request(client, buffer, CacheProtocol.createAddMessage("DDDD", "value"));
+            assertThat(add.getStatus()).isEqualTo(CacheProtocol.STATUS_ERROR);
+        }
+    }
+
+    @Test
+    void replicaReportsBoundedLagWhileIdle() {
+        replica = TestServers.start(REPLICA_PORT, new InetSocketAddress("localhost", PRIMARY_PORT));
+        await().atMost(Duration.ofSeconds(5)).until(() -> replica.getReplicaLink().isSynced());
+
+        // Idle batches keep flowing, so staleness never grows far beyond the idle interval
+        await().pollDelay(Duration.ofSeconds(2)).atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                assertThat(replica.getReplicaLink().getStalenessMillis()).isBetween(0L, 1500L));
+    }
+}
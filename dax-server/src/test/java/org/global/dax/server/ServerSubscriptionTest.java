@@ -0,0 +1,137 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.global.dax.server.TestServers.connect;
+import static org.global.dax.server.TestServers.read;
+import static org.global.dax.server.TestServers.request;
+
+@Tag("integration")
+class ServerSubscriptionTest {
+
+    private static final int PORT = 19101;
+
+    private ServerMain server;
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void notifiesSubscribersOfKeysAndRanges() throws IOException {
+        server = TestServers.start(new ServerConfig().withPort(PORT).withRequestLogging(false));
+
+        try (SocketChannel subscriber = connect(PORT); SocketChannel writer = connect(PORT)) {
+            ByteBuffer subscriberBuffer = ByteBuffer.allocate(1024 * 1024);
+            ByteBuffer writerBuffer = ByteBuffer.allocate(1024 * 1024);
+
+            assertThat(request(subscriber, subscriberBuffer, CacheProtocol.createSubscribeMessage("ABCD")).getStatus())
+                    .isEqualTo(CacheProtocol.STATUS_OK);
+            assertThat(request(subscriber, subscriberBuffer, CacheProtocol.createSubscribeRangeMessage("R", "S")).getStatus())
+                    .isEqualTo(CacheProtocol.STATUS_OK);
+            assertThat(request(subscriber, subscriberBuffer, CacheProtocol.createSubscribeRangeMessage("S", "R")).getStatus())
+                    .isEqualTo(CacheProtocol.STATUS_ERROR);
+
+            request(writer, writerBuffer, CacheProtocol.createAddMessage("ABCD", "v1"));
+            CacheProtocol.Message notification = read(subscriber, subscriberBuffer);
+            assertThat(notification.getOperation()).isEqualTo(CacheProtocol.OP_NOTIFY);
+            assertThat(notification.getStatus()).isEqualTo(CacheProtocol.STATUS_OK);
+            assertThat(notification.getKeyAsString()).isEqualTo("ABCD");
+            assertThat(notification.getValueAsString()).isEqualTo("v1");
+
+            // Out of the range, nothing is sent
+            request(writer, writerBuffer, CacheProtocol.createAddMessage("S1", "v1"));
+            request(writer, writerBuffer, CacheProtocol.createRemoveMessage("R1"));
+            request(writer, writerBuffer, CacheProtocol.createAddMessage("R1", "v1"));
+            notification = read(subscriber, subscriberBuffer);
+            assertThat(notification.getKeyAsString()).isEqualTo("R1");
+            assertThat(notification.getValueAsString()).isEqualTo("v1");
+
+            request(writer, writerBuffer, CacheProtocol.createRemoveMessage("R1"));
+            notification = read(subscriber, subscriberBuffer);
+            assertThat(notification.getKeyAsString()).isEqualTo("R1");
+            assertThat(notification.getStatus()).isEqualTo(CacheProtocol.STATUS_NOT_FOUND);
+
+            assertThat(request(subscriber, subscriberBuffer, CacheProtocol.createUnsubscribeMessage("ABCD")).getStatus())
+                    .isEqualTo(CacheProtocol.STATUS_OK);
+            assertThat(request(subscriber, subscriberBuffer, CacheProtocol.createUnsubscribeMessage("ABCD")).getStatus())
+                    .isEqualTo(CacheProtocol.STATUS_NOT_FOUND);
+            request(writer, writerBuffer, CacheProtocol.createAddMessage("ABCD", "v2"));
+
+            // The next message on the subscriber connection is the answer to its own request
+            CacheProtocol.Message response = request(subscriber, subscriberBuffer, CacheProtocol.createHeartbeatMessage());
+            assertThat(response.getOperation()).isEqualTo(CacheProtocol.OP_RESPONSE);
+        }
+    }
+
+    @Test
+    void subscriptionWithoutValueSubscribesToTheKey() throws IOException {
+        server = TestServers.start(new ServerConfig().withPort(PORT).withRequestLogging(false));
+
+        try (SocketChannel channel = connect(PORT)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            byte[] key = "ABCD".getBytes(StandardCharsets.UTF_8);
+
+            CacheProtocol.Message response =
+                    request(channel, buffer, new CacheProtocol.Message(CacheProtocol.OP_SUBSCRIBE, key, new byte[0]));
+            assertThat(response.getStatus()).isEqualTo(CacheProtocol.STATUS_OK);
+            response = request(channel, buffer, new CacheProtocol.Message(CacheProtocol.OP_UNSUBSCRIBE, key, new byte[0]));
+            assertThat(response.getStatus()).isEqualTo(CacheProtocol.STATUS_OK);
+
+            // Still serving
+            response = request(channel, buffer, CacheProtocol.createHeartbeatMessage());
+            assertThat(response.getOperation()).isEqualTo(CacheProtocol.OP_RESPONSE);
+        }
+    }
+
+    @Test
+    void coalescesChangesAndOverflowsPastTheConnectionLimit() throws IOException {
+        server = TestServers.start(new ServerConfig().withPort(PORT).withRequestLogging(false)
+                .withConnectionLimits(8, 4 * 1024 * 1024));
+
+        try (SocketChannel subscriber = connect(PORT); SocketChannel writer = connect(PORT)) {
+            ByteBuffer subscriberBuffer = ByteBuffer.allocate(1024 * 1024);
+            ByteBuffer writerBuffer = ByteBuffer.allocate(1024 * 1024);
+            request(subscriber, subscriberBuffer, CacheProtocol.createSubscribeMessage("HOT"));
+
+            // Pipelined, handled in a single turn of the server loop
+            ByteBuffer[] writes = new ByteBuffer[5];
+            for (int i = 0; i < writes.length; i++) {
+                writes[i] = CacheProtocol.encode(CacheProtocol.createAddMessage("HOT", "v" + i));
+            }
+            writer.write(writes);
+            for (int i = 0; i < writes.length; i++) {
+                read(writer, writerBuffer);
+            }
+
+            CacheProtocol.Message notification;
+            do {
+                notification = read(subscriber, subscriberBuffer);
+            } while (!"v4".equals(notification.getValueAsString()));
+            assertThat(server.getKeyspaceNotifier().getNotificationsCoalesced()).isPositive();
+
+            request(subscriber, subscriberBuffer, CacheProtocol.createSubscribeRangeMessage("K", null));
+            writes = new ByteBuffer[12];
+            for (int i = 0; i < writes.length; i++) {
+                writes[i] = CacheProtocol.encode(CacheProtocol.createAddMessage("K" + i, "v"));
+            }
+            writer.write(writes);
+
+            // More keys changed in a turn than the connection may have queued
+            notification = read(subscriber, subscriberBuffer);
+            assertThat(notification.getOperation()).isEqualTo(CacheProtocol.OP_NOTIFY);
+            assertThat(notification.getStatus()).isEqualTo(CacheProtocol.STATUS_ERROR);
+            assertThat(server.getKeyspaceNotifier().getOverflows()).isEqualTo(1);
+        }
+    }
+}
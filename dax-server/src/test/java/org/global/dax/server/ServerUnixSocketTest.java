@@ -0,0 +1,57 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.global.dax.server.TestServers.connect;
+import static org.global.dax.server.TestServers.request;
+
+@Tag("integration")
+class ServerUnixSocketTest {
+
+    private static final int PORT = 19098;
+
+    @TempDir
+    Path directory;
+
+    private ServerMain server;
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void servesClientsOnTheUnixSocketAndTcpFromTheSameStore() throws Exception {
+        Path socket = directory.resolve("dax.sock");
+        // Left behind by a server that crashed, replaced on start
+        Files.createFile(socket);
+        server = TestServers.start(new ServerConfig().withPort(PORT).withUnixSocketPath(socket));
+
+        try (SocketChannel unix = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+             SocketChannel tcp = connect(PORT)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            assertThat(request(unix, buffer, CacheProtocol.createAddMessage("KEY", "local")).getStatus())
+                    .isEqualTo(CacheProtocol.STATUS_OK);
+
+            CacheProtocol.Message response = request(tcp, buffer, CacheProtocol.createGetMessage("KEY"));
+            assertThat(new String(response.getValue(), StandardCharsets.UTF_8)).isEqualTo("local");
+        }
+
+        server.stop();
+        await().atMost(Duration.ofSeconds(5)).until(() -> !Files.exists(socket));
+    }
+}
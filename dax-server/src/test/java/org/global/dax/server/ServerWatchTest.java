@@ -0,0 +1,133 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.global.dax.server.TestServers.connect;
+import static org.global.dax.server.TestServers.read;
+import static org.global.dax.server.TestServers.request;
+
+@Tag("integration")
+class ServerWatchTest {
+
+    private static final int PORT = 19102;
+    private static final int WATCHERS = 1000;
+
+    private ServerMain server;
+
+    @BeforeEach
+    void setUp() {
+        server = TestServers.start(new ServerConfig().withPort(PORT).withRequestLogging(false));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void answersAtOnceWhenTheKeyIsPresent() throws IOException {
+        try (SocketChannel channel = connect(PORT)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            request(channel, buffer, CacheProtocol.createAddMessage("ABCD", "v1"));
+
+            CacheProtocol.Message response =
+                    request(channel, buffer, CacheProtocol.createWatchMessage("ABCD", 60_000, 1));
+            assertThat(response.getOperation()).isEqualTo(CacheProtocol.OP_WATCHED);
+            assertThat(CacheProtocol.getWatchId(response)).isEqualTo(1);
+            assertThat(response.getStatus()).isEqualTo(CacheProtocol.STATUS_OK);
+            assertThat(response.getValueAsString()).isEqualTo("v1");
+            assertThat(server.getKeyWatchers().size()).isZero();
+        }
+    }
+
+    @Test
+    void completesEveryParkedWatcherOnTheFirstAdd() throws IOException {
+        try (SocketChannel watcher = connect(PORT); SocketChannel writer = connect(PORT)) {
+            ByteBuffer watcherBuffer = ByteBuffer.allocate(1024 * 1024);
+            ByteBuffer writerBuffer = ByteBuffer.allocate(1024 * 1024);
+
+            ByteBuffer[] watches = new ByteBuffer[WATCHERS];
+            for (int i = 0; i < WATCHERS; i++) {
+                watches[i] = CacheProtocol.encode(CacheProtocol.createWatchMessage("EFGH", 60_000, i));
+            }
+            watcher.write(watches);
+            await().atMost(Duration.ofSeconds(5)).until(() -> server.getKeyWatchers().size() == WATCHERS);
+
+            // Parked watchers of another key do not hold up writes
+            request(writer, writerBuffer, CacheProtocol.createAddMessage("OTHER", "v1"));
+            request(writer, writerBuffer, CacheProtocol.createAddMessage("EFGH", "v1"));
+
+            Set<Integer> answered = new HashSet<>();
+            for (int i = 0; i < WATCHERS; i++) {
+                CacheProtocol.Message response = read(watcher, watcherBuffer);
+                assertThat(response.getOperation()).isEqualTo(CacheProtocol.OP_WATCHED);
+                assertThat(response.getValueAsString()).isEqualTo("v1");
+                answered.add(CacheProtocol.getWatchId(response));
+            }
+            assertThat(answered).hasSize(WATCHERS);
+            assertThat(server.getKeyWatchers().size()).isZero();
+            assertThat(server.getKeyWatchers().getWatchedKeyCount()).isZero();
+        }
+    }
+
+    @Test
+    void answersNotFoundAtTheDeadline() throws IOException {
+        try (SocketChannel channel = connect(PORT)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+
+            long start = System.nanoTime();
+            CacheProtocol.Message response = request(channel, buffer, CacheProtocol.createWatchMessage("IJKL", 200, 1));
+
+            assertThat(CacheProtocol.getWatchId(response)).isEqualTo(1);
+            assertThat(response.getStatus()).isEqualTo(CacheProtocol.STATUS_NOT_FOUND);
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThan(Duration.ofMillis(190));
+            assertThat(server.getKeyWatchers().getWatchesTimedOut()).isEqualTo(1);
+            assertThat(server.getKeyWatchers().getWatchedKeyCount()).isZero();
+        }
+    }
+
+    @Test
+    void dropsTheWatchersOfAClosedConnection() throws IOException {
+        try (SocketChannel channel = connect(PORT)) {
+            CacheProtocol.sendMessage(channel, CacheProtocol.createWatchMessage("QRST", Long.MAX_VALUE, 1));
+            CacheProtocol.sendMessage(channel, CacheProtocol.createWatchMessage("UVWX", 60_000, 2));
+            await().atMost(Duration.ofSeconds(5)).until(() -> server.getKeyWatchers().size() == 2);
+        }
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> server.getKeyWatchers().isEmpty());
+        assertThat(server.getKeyWatchers().getWatchedKeyCount()).isZero();
+    }
+
+    @Test
+    void answersOtherRequestsOfTheKeyWhileTheWatchIsParked() throws IOException {
+        try (SocketChannel channel = connect(PORT)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+            CacheProtocol.sendMessage(channel, CacheProtocol.createWatchMessage("MNOP", 60_000, 7));
+
+            CacheProtocol.Message get = request(channel, buffer, CacheProtocol.createGetMessage("MNOP"));
+            assertThat(get.getOperation()).isEqualTo(CacheProtocol.OP_RESPONSE);
+            assertThat(get.getStatus()).isEqualTo(CacheProtocol.STATUS_NOT_FOUND);
+
+            CacheProtocol.Message add = request(channel, buffer, CacheProtocol.createAddMessage("MNOP", "v1"));
+            assertThat(add.getOperation()).isEqualTo(CacheProtocol.OP_RESPONSE);
+
+            CacheProtocol.Message watched = read(channel, buffer);
+            assertThat(watched.getOperation()).isEqualTo(CacheProtocol.OP_WATCHED);
+            assertThat(CacheProtocol.getWatchId(watched)).isEqualTo(7);
+            assertThat(watched.getValueAsString()).isEqualTo("v1");
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.global.dax.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CacheStoreTest {
+
+    private final CacheStore store = new CacheStore();
+
+    @Test
+    void compareAndSetOnlyAppliesToTheExpectedVersion() {
+        CacheEntry created = store.compareAndSet("LEAD", CacheEntry.NO_VERSION, bytes("node-1"));
+        assertThat(created).isNotNull();
+
+        // Another node racing for the same lease
+        assertThat(store.compareAndSet("LEAD", CacheEntry.NO_VERSION, bytes("node-2"))).isNull();
+
+        CacheEntry renewed = store.compareAndSet("LEAD", created.getVersion(), bytes("node-1"));
+        assertThat(renewed.getVersion()).isGreaterThan(created.getVersion());
+        assertThat(store.compareAndSet("LEAD", created.getVersion(), bytes("node-2"))).isNull();
+        assertThat(store.get("LEAD")).isEqualTo(bytes("node-1"));
+    }
+
+    @Test
+    void everyWriteChangesTheVersion() {
+        store.put("KEY1", bytes("a"));
+        long version = store.getEntry("KEY1").getVersion();
+
+        store.put("KEY1", bytes("a"));
+
+        assertThat(store.getEntry("KEY1").getVersion()).isNotEqualTo(version);
+    }
+
+    @Test
+    void concurrentIncrementsAreNotLost() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        store.increment("CNT!", 1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(store.get("CNT!")).isEqualTo(bytes("40000"));
+        assertThat(store.increment("CNT!", -40_001).getValue()).isEqualTo(bytes("-1"));
+    }
+
+    @Test
+    void incrementRejectsValuesThatAreNotIntegers() {
+        store.put("NAME", bytes("dax"));
+
+        assertThatThrownBy(() -> store.increment("NAME", 1)).isInstanceOf(NumberFormatException.class);
+        assertThat(store.get("NAME")).isEqualTo(bytes("dax"));
+    }
+
+    @Test
+    void getAndSetReturnsThePreviousValue() {
+        assertThat(store.getAndSet("KEY1", bytes("a"))).isNull();
+        assertThat(store.getAndSet("KEY1", bytes("b")).getValue()).isEqualTo(bytes("a"));
+        assertThat(store.get("KEY1")).isEqualTo(bytes("b"));
+    }
+
+    @Test
+    void notifiesListenersOfAtomicWrites() {
+        List<String> added = new ArrayList<>();
+        store.addListener(new MutationListener() {
+            @Override
+            public void onAdd(String key, byte[] value) {
+                added.add(key + "=" + new String(value, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void onRemove(String key) {
+            }
+        });
+
+        store.increment("CNT!", 5);
+        store.compareAndSet("CNT!", CacheEntry.NO_VERSION, bytes("0")); // conflict, not notified
+        store.getAndSet("CNT!", bytes("7"));
+
+        assertThat(added).containsExactly("CNT!=5", "CNT!=7");
+    }
+
+    @Test
+    void keepsKeysInOrderAcrossWrites() {
+        store.put("DDDD", bytes("4"));
+        store.put("BBBB", bytes("2"));
+        store.increment("CCCC", 3);
+        store.put("AAAA", bytes("1"));
+        store.put("BBBB", bytes("2b"));
+        store.remove("DDDD");
+
+        assertThat(store.sortedKeys()).containsExactly("AAAA", "BBBB", "CCCC");
+
+        store.clear();
+        assertThat(store.sortedKeys()).isEmpty();
+    }
+
+    @Test
+    void listsKeysBetweenTwoBounds() {
+        for (String key : List.of("K001", "K002", "K003", "K010", "L001")) {
+            store.put(key, bytes(key));
+        }
+
+        assertThat(store.keysBetween("K002", "K010")).containsExactly("K002", "K003");
+        assertThat(store.keysBetween("K00", "K1")).containsExactly("K001", "K002", "K003", "K010");
+        assertThat(store.keysBetween("K010", null)).containsExactly("K010", "L001");
+        assertThat(store.keysBetween("L", "K")).isEmpty();
+    }
+
+    @Test
+    void sharesIdenticalValuesUntilTheLastOneIsReplaced() {
+        CacheStore deduplicating = new CacheStore(true);
+        deduplicating.put("CFG1", bytes("{\"retries\": 3}"));
+        deduplicating.put("CFG2", bytes("{\"retries\": 3}"));
+        deduplicating.put("CFG3", bytes("{\"retries\": 3}"));
+
+        assertThat(deduplicating.get("CFG2")).isSameAs(deduplicating.get("CFG1"));
+        assertThat(deduplicating.getValuePool().getUniqueValues()).isEqualTo(1);
+        assertThat(deduplicating.getValuePool().getSavedBytes()).isEqualTo(2 * 14);
+
+        deduplicating.put("CFG1", bytes("{}"));
+        deduplicating.remove("CFG2");
+        assertThat(deduplicating.getValuePool().getSavedBytes()).isZero();
+
+        deduplicating.remove("CFG3");
+        assertThat(deduplicating.getValuePool().getUniqueValues()).isEqualTo(1); // only "{}" left
+    }
+
+    @Test
+    void countsASharedValueOnceInTheResidentBytes() {
+        CacheStore deduplicating = new CacheStore(true);
+        deduplicating.put("CFG1", bytes("{\"retries\": 3}"));
+        deduplicating.put("CFG2", bytes("{\"retries\": 3}"));
+        deduplicating.put("CFG3", bytes("{}"));
+        assertThat(deduplicating.getResidentBytes()).isEqualTo(14 + 2);
+
+        deduplicating.remove("CFG1");
+        assertThat(deduplicating.getResidentBytes()).isEqualTo(14 + 2);
+
+        deduplicating.put("CFG2", bytes("{}"));
+        assertThat(deduplicating.getResidentBytes()).isEqualTo(2);
+
+        deduplicating.remove("CFG2");
+        deduplicating.remove("CFG3");
+        assertThat(deduplicating.getResidentBytes()).isZero();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,121 @@
+package org.global.dax.store;
+
+import org.global.dax.handlers.CacheMessageHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TieredStorageTest {
+
+    private final CacheStore store = new CacheStore();
+
+    @TempDir
+    Path directory;
+
+    private TieredStorage tieredStorage;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        tieredStorage.close();
+    }
+
+    @Test
+    void demotesColdValuesAndPromotesThemOnRead() throws IOException {
+        tieredStorage = new TieredStorage(store, new SegmentLog(directory, 4096), 200);
+        for (int i = 0; i < 10; i++) {
+            store.put("KEY" + i, value(i, 50));
+        }
+        long version = store.getEntry("KEY0").getVersion();
+
+        tieredStorage.run();
+
+        assertThat(store.getResidentBytes()).isLessThanOrEqualTo(200);
+        assertThat(tieredStorage.getDemotions()).isGreaterThanOrEqualTo(6);
+        assertThat(store.size()).isEqualTo(10);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(store.get("KEY" + i)).isEqualTo(value(i, 50));
+        }
+        assertThat(store.getPromotions()).isEqualTo(tieredStorage.getDemotions());
+        assertThat(store.getEntry("KEY0").getVersion()).isEqualTo(version);
+    }
+
+    @Test
+    void keepsValuesUsedSinceTheLastSweepInMemory() throws IOException {
+        tieredStorage = new TieredStorage(store, new SegmentLog(directory, 4096), 200);
+        for (int i = 0; i < 10; i++) {
+            store.put("KEY" + i, value(i, 50));
+        }
+        tieredStorage.run();
+        long promotions = store.getPromotions();
+
+        // Over budget again, the values left in memory by the first sweep are the cold ones now
+        store.put("NEW1", value(1, 50));
+        store.put("NEW2", value(2, 50));
+        tieredStorage.run();
+
+        assertThat(store.get("NEW1")).isEqualTo(value(1, 50));
+        assertThat(store.get("NEW2")).isEqualTo(value(2, 50));
+        assertThat(store.getPromotions()).isEqualTo(promotions);
+    }
+
+    @Test
+    void listsDemotedValuesWithoutPromotingThem() throws IOException {
+        tieredStorage = new TieredStorage(store, new SegmentLog(directory, 4096), 200);
+        for (int i = 0; i < 10; i++) {
+            store.put("KEY" + i, value('a' + i, 50));
+        }
+        tieredStorage.run();
+        long residentBytes = store.getResidentBytes();
+
+        // What GET ALL answers
+        String listing = new CacheMessageHandler(store).convertKeysToString(store.sortedKeys());
+
+        assertThat(listing.lines()).hasSize(10).contains("KEY0: " + new String(value('a', 50)));
+        assertThat(store.getPromotions()).isZero();
+        assertThat(store.getResidentBytes()).isEqualTo(residentBytes);
+    }
+
+    @Test
+    void compactsSegmentsOfReplacedValues() throws IOException {
+        tieredStorage = new TieredStorage(store, new SegmentLog(directory, 256), 0);
+        for (int i = 0; i < 20; i++) {
+            store.put("KEY" + i, value(i, 50));
+        }
+        tieredStorage.run();
+        int segments = tieredStorage.getLog().getSegmentCount();
+        assertThat(segments).isGreaterThan(2);
+
+        // Only one value in three is still live on disk
+        for (int i = 0; i < 20; i++) {
+            if (i % 3 != 0) {
+                store.remove("KEY" + i);
+            }
+        }
+        tieredStorage.run();
+
+        assertThat(tieredStorage.getCompactedSegments()).isPositive();
+        assertThat(tieredStorage.getLog().getSegmentCount()).isLessThan(segments);
+        assertThat(tieredStorage.getLog().getDeadBytes()).isLessThan(tieredStorage.getLog().getDiskBytes());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count()).isEqualTo(tieredStorage.getLog().getSegmentCount());
+        }
+        for (int i = 0; i < 20; i += 3) {
+            assertThat(store.get("KEY" + i)).isEqualTo(value(i, 50));
+        }
+    }
+
+    private static byte[] value(int seed, int length) {
+        byte[] value = new byte[length];
+        Arrays.fill(value, (byte) seed);
+        return value;
+    }
+}
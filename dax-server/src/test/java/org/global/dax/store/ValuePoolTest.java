@@ -0,0 +1,54 @@
+package org.global.dax.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ValuePoolTest {
+
+    @Test
+    void neverSharesValuesWithTheSameHashButDifferentBytes() {
+        // Every value collides
+        ValuePool pool = new ValuePool(value -> 0);
+        byte[] first = bytes("{\"a\": 1}");
+        byte[] second = bytes("{\"b\": 2}");
+
+        assertThat(pool.intern(first)).isSameAs(first);
+        assertThat(pool.intern(second)).isSameAs(second);
+        assertThat(pool.intern(bytes("{\"a\": 1}"))).isSameAs(first);
+        assertThat(pool.getUniqueValues()).isEqualTo(2);
+
+        pool.release(second);
+        assertThat(pool.getUniqueValues()).isEqualTo(1);
+        assertThat(pool.intern(bytes("{\"a\": 1}"))).isSameAs(first);
+    }
+
+    @Test
+    void ignoresCopiesThatWereNotPooled() {
+        ValuePool pool = new ValuePool();
+        byte[] pooled = pool.intern(bytes("{}"));
+
+        pool.release(bytes("{}"));
+
+        assertThat(pool.getUniqueValues()).isEqualTo(1);
+        assertThat(pool.intern(bytes("{}"))).isSameAs(pooled);
+        assertThat(pool.getSavedBytes()).isEqualTo(2);
+    }
+
+    @Test
+    void hashesEveryByte() {
+        byte[] value = new byte[17];
+        int hash = ValuePool.hash(value);
+        for (int i = 0; i < value.length; i++) {
+            value[i] = 1;
+            assertThat(ValuePool.hash(value)).isNotEqualTo(hash);
+            value[i] = 0;
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
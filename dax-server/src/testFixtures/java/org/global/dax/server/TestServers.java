@@ -0,0 +1,110 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheProtocol;
+import org.global.dax.shared.ChunkAssembler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Runs cache servers in the test JVM and exchanges messages with them over blocking channels, for the integration tests
+ */
+public final class TestServers {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(5);
+
+    private TestServers() {
+    }
+
+    /**
+     * Starts a server and waits until it accepts connections, on its Unix domain socket when it has one
+     */
+    public static ServerMain start(ServerConfig config) {
+        ServerMain server = new ServerMain(config);
+        run(server, "server-" + config.getPort());
+        awaitListening(config.getUnixSocketPath() != null
+                ? UnixDomainSocketAddress.of(config.getUnixSocketPath())
+                : address(config.getPort()));
+        return server;
+    }
+
+    /**
+     * Starts a server, as a replica of the primary when one is given, and waits until it accepts connections
+     */
+    public static ServerMain start(int port, InetSocketAddress primaryAddress) {
+        ServerMain server = new ServerMain(port, primaryAddress);
+        run(server, "server-" + port);
+        awaitListening(address(port));
+        return server;
+    }
+
+    /**
+     * Runs a server on a daemon thread, without waiting for it to listen
+     */
+    public static Thread run(ServerMain server, String name) {
+        Thread thread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    public static void awaitListening(SocketAddress address) {
+        await().atMost(STARTUP_TIMEOUT).ignoreExceptions().until(() -> {
+            SocketChannel.open(address).close();
+            return true;
+        });
+    }
+
+    public static InetSocketAddress address(int port) {
+        return new InetSocketAddress("localhost", port);
+    }
+
+    public static SocketChannel connect(int port) throws IOException {
+        return SocketChannel.open(address(port));
+    }
+
+    public static CacheProtocol.Message request(SocketChannel channel, ByteBuffer buffer,
+                                                CacheProtocol.Message message) throws IOException {
+        CacheProtocol.sendMessage(channel, message);
+        return read(channel, buffer);
+    }
+
+    public static CacheProtocol.Message read(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        CacheProtocol.Message message;
+        while ((message = CacheProtocol.readMessage(channel, buffer)) == null) {
+            // blocking channel, keep reading until the message is complete
+        }
+        return message;
+    }
+
+    /**
+     * Sends a message and reads the response, reassembled when it comes in chunks
+     */
+    public static CacheProtocol.Message request(SocketChannel channel, ByteBuffer buffer, ChunkAssembler assembler,
+                                                CacheProtocol.Message message) throws IOException {
+        CacheProtocol.sendMessage(channel, message);
+        return read(channel, buffer, assembler);
+    }
+
+    public static CacheProtocol.Message read(SocketChannel channel, ByteBuffer buffer,
+                                             ChunkAssembler assembler) throws IOException {
+        CacheProtocol.Message message = null;
+        while (message == null) {
+            message = assembler.accept(read(channel, buffer));
+        }
+        return message;
+    }
+}
@@ -0,0 +1,106 @@
+package org.global.dax.shared;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Low-latency mode of an event loop.
+ *
+ * Instead of blocking in {@code select}, the loop polls its selector with {@code selectNow}: a message arriving is
+ * handled on the next poll, without waking the thread up from the kernel. Polls that find nothing spin for a while,
+ * then back off to short parks so an idle loop does not keep a core busy forever.
+ *
+ * Its sockets also get TCP_NODELAY, a small request or response is sent at once instead of waiting for the
+ * acknowledgement of the previous one (Nagle's algorithm), and socket buffers of the given size.
+ */
+public final class BusyPoll {
+
+    public static final int DEFAULT_SPIN_TRIES = 10_000;
+    public static final long DEFAULT_PARK_NANOS = 50_000; // 50us
+    public static final int DEFAULT_SOCKET_BUFFER_SIZE = 256 * 1024; // 256KB
+
+    private int spinTries = DEFAULT_SPIN_TRIES;
+    private long parkNanos = DEFAULT_PARK_NANOS;
+    private int receiveBufferSize = DEFAULT_SOCKET_BUFFER_SIZE;
+    private int sendBufferSize = DEFAULT_SOCKET_BUFFER_SIZE;
+
+    public int getSpinTries() {
+        return spinTries;
+    }
+
+    public long getParkNanos() {
+        return parkNanos;
+    }
+
+    /**
+     * Empty polls spent spinning before the loop parks between polls, and how long it parks. Work handed to the
+     * loop by another thread unparks it at once.
+     */
+    public BusyPoll withBackoff(int spinTries, long parkNanos) {
+        this.spinTries = spinTries;
+        this.parkNanos = parkNanos;
+        return this;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * SO_RCVBUF and SO_SNDBUF of the sockets, 0 keeps the system default
+     */
+    public BusyPoll withSocketBuffers(int receiveBufferSize, int sendBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+        this.sendBufferSize = sendBufferSize;
+        return this;
+    }
+
+    /**
+     * Waits before the next poll
+     *
+     * @param idleCount number of polls in a row that found nothing to do
+     */
+    public void idle(int idleCount) {
+        if (idleCount < spinTries) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(parkNanos);
+        }
+    }
+
+    /**
+     * Tunes a connected socket. Options the channel does not have, like TCP_NODELAY on a Unix domain socket, are
+     * skipped.
+     */
+    public void configure(SocketChannel channel) throws IOException {
+        if (channel.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        configureBuffers(channel, receiveBufferSize, sendBufferSize);
+    }
+
+    /**
+     * Sizes the receive buffer of a listening socket, before it is bound: the buffer of accepted sockets comes from
+     * it, and a TCP window above 64KB is only negotiated if the buffer is that large when the connection is set up
+     */
+    public void configureListener(NetworkChannel channel) throws IOException {
+        configureBuffers(channel, receiveBufferSize, 0);
+    }
+
+    private static void configureBuffers(NetworkChannel channel, int receiveBufferSize, int sendBufferSize)
+            throws IOException {
+        if (receiveBufferSize > 0 && channel.supportedOptions().contains(StandardSocketOptions.SO_RCVBUF)) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+        }
+        if (sendBufferSize > 0 && channel.supportedOptions().contains(StandardSocketOptions.SO_SNDBUF)) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+        }
+    }
+}
@@ -4,4 +4,8 @@ public class CacheException extends RuntimeException{
     public CacheException(Throwable cause) {
         super(cause);
     }
+
+    public CacheException(String message) {
+        super(message);
+    }
 }
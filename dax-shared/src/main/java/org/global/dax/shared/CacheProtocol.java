@@ -1,8 +1,13 @@
 package org.global.dax.shared;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
@@ -23,19 +28,64 @@ public class CacheProtocol {
     public static final byte OP_GET = 0x02;
     public static final byte OP_REMOVE = 0x03;
     public static final byte OP_HEARTBEAT = 0x04;
+    public static final byte OP_TRACKING = 0x05;
+    public static final byte OP_STATS = 0x06;
+    public static final byte OP_GETS = 0x07;   // GET returning the version of the value
+    public static final byte OP_CAS = 0x08;
+    public static final byte OP_INCR = 0x09;
+    public static final byte OP_DECR = 0x0A;
+    public static final byte OP_GETSET = 0x0B;
+    public static final byte OP_RANGE = 0x0C;  // keys in [key, value), in order, with their values
+    public static final byte OP_SUBSCRIBE = 0x0D;   // notifications of the changes of a key or key range
+    public static final byte OP_UNSUBSCRIBE = 0x0E;
+    public static final byte OP_WATCH = 0x0F;  // GET waiting up to a timeout for a missing key to be added
     public static final byte OP_RESPONSE = 0x10;
     public static final byte OP_ERROR = 0x11;
+    public static final byte OP_INVALIDATE = 0x12; // server initiated
+    public static final byte OP_CHUNK = 0x13; // part of a value too large for a single frame
+    public static final byte OP_NOTIFY = 0x14; // server initiated, a subscribed key changed
+    public static final byte OP_WATCHED = 0x15; // answer to a WATCH, keyed by the id of the watch
+
+    // Replication operation codes (server to server)
+    public static final byte OP_REPL_SYNC = 0x20;
+    public static final byte OP_REPL_BATCH = 0x21;
+    public static final byte OP_HANDOFF = 0x22; // hot restart, from the new process to the one it replaces
+
+    // Phase of a HANDOFF, its value: the new process asks for the store, then tells it accepts clients on the port
+    public static final byte HANDOFF_SYNC = 0x00;
+    public static final byte HANDOFF_READY = 0x01;
+
+    // Kind of a SUBSCRIBE or UNSUBSCRIBE, the first byte of its value. A range is followed by its upper bound.
+    public static final byte SUBSCRIBE_KEY = 0x00;
+    public static final byte SUBSCRIBE_RANGE = 0x01;
 
     // Status codes
     public static final byte STATUS_OK = 0x00;
     public static final byte STATUS_NOT_FOUND = 0x01;
     public static final byte STATUS_ERROR = 0x02;
+    public static final byte STATUS_BUSY = 0x03; // request rejected unexecuted, retry after a back-off
+    public static final byte STATUS_CONFLICT = 0x04; // CAS version did not match
+
+    // Size of the version stamps carried by GETS and CAS
+    public static final int VERSION_SIZE = 8;
 
     // Header size constants
     public static final int HEADER_SIZE = 14; // 4 (magic) + 1 (version) + 1 (op) + 4 (key len) + 4 (value len)
-    public static final int MAX_KEY_SIZE = 1048576; // 1 MB max key size
+    public static final int MAX_KEY_SIZE = 64 * 1024; // 64 KB, a chunk with the largest key fits in a 1 MB buffer
     public static final int MAX_VALUE_SIZE = 16777216; // 16 MB max value size
 
+    // Values larger than a chunk travel as a sequence of OP_CHUNK frames, see encodeFrames
+    public static final int CHUNK_SIZE = 256 * 1024;
+    public static final int CHUNK_HEADER_SIZE = 9; // 1 (operation) + 4 (total value len) + 4 (offset)
+
+    public static final int WATCH_REQUEST_SIZE = 12; // 8 (timeout) + 4 (watch id)
+    public static final long MAX_WATCH_TIMEOUT_MS = 24 * 60 * 60 * 1000L; // longer timeouts are cut to a day
+
+    // Datagrams carry a request id in front of a single frame: [4 bytes: Request id] [frame]
+    public static final int REQUEST_ID_SIZE = 4;
+    public static final int NO_RESPONSE = 0; // request id of fire-and-forget requests, never answered
+    public static final int MAX_DATAGRAM_SIZE = 1472; // 1500 bytes MTU minus IPv4 and UDP headers, never fragmented
+
     /**
      * Represents a protocol message with its components
      */
@@ -97,7 +147,8 @@ public class CacheProtocol {
             return "Message{" +
                     "version=" + version +
                     ", operation=" + operationToString(operation) +
-                    ", status=" + (operation == OP_RESPONSE || operation == OP_ERROR ? statusToString(status) : "N/A") +
+                    ", status=" + (operation == OP_RESPONSE || operation == OP_ERROR || operation == OP_NOTIFY
+                            || operation == OP_WATCHED ? statusToString(status) : "N/A") +
                     ", keySize=" + (key != null ? key.length : 0) +
                     ", key='" + getKeyAsString() + '\'' +
                     ", valueSize=" + (value != null ? value.length : 0) +
@@ -105,55 +156,219 @@ public class CacheProtocol {
                     '}';
         }
 
-        private String operationToString(byte op) {
-            switch (op) {
-                case OP_ADD: return "ADD";
-                case OP_GET: return "GET";
-                case OP_REMOVE: return "REMOVE";
-                case OP_HEARTBEAT: return "HEARTBEAT";
-                case OP_RESPONSE: return "RESPONSE";
-                case OP_ERROR: return "ERROR";
-                default: return "UNKNOWN(" + op + ")";
-            }
-        }
-
         private String statusToString(byte status) {
             switch (status) {
                 case STATUS_OK: return "OK";
                 case STATUS_NOT_FOUND: return "NOT_FOUND";
                 case STATUS_ERROR: return "ERROR";
+                case STATUS_BUSY: return "BUSY";
+                case STATUS_CONFLICT: return "CONFLICT";
                 default: return "UNKNOWN(" + status + ")";
             }
         }
     }
 
+    /**
+     * Name of an operation code, for logs and recorded events
+     */
+    public static String operationToString(byte op) {
+        switch (op) {
+            case OP_ADD: return "ADD";
+            case OP_GET: return "GET";
+            case OP_REMOVE: return "REMOVE";
+            case OP_HEARTBEAT: return "HEARTBEAT";
+            case OP_TRACKING: return "TRACKING";
+            case OP_STATS: return "STATS";
+            case OP_GETS: return "GETS";
+            case OP_CAS: return "CAS";
+            case OP_INCR: return "INCR";
+            case OP_DECR: return "DECR";
+            case OP_GETSET: return "GETSET";
+            case OP_RANGE: return "RANGE";
+            case OP_SUBSCRIBE: return "SUBSCRIBE";
+            case OP_UNSUBSCRIBE: return "UNSUBSCRIBE";
+            case OP_WATCH: return "WATCH";
+            case OP_RESPONSE: return "RESPONSE";
+            case OP_ERROR: return "ERROR";
+            case OP_INVALIDATE: return "INVALIDATE";
+            case OP_CHUNK: return "CHUNK";
+            case OP_NOTIFY: return "NOTIFY";
+            case OP_WATCHED: return "WATCHED";
+            case OP_REPL_SYNC: return "REPL_SYNC";
+            case OP_REPL_BATCH: return "REPL_BATCH";
+            case OP_HANDOFF: return "HANDOFF";
+            default: return "UNKNOWN(" + op + ")";
+        }
+    }
+
     /**
      * Creates an ADD message
      */
     public static Message createAddMessage(String key, String value) {
-        return new Message(OP_ADD,
-                key.getBytes(StandardCharsets.UTF_8),
-                value.getBytes(StandardCharsets.UTF_8));
+        return createAddMessage(key.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates an ADD message from a key and value already encoded
+     */
+    public static Message createAddMessage(byte[] key, byte[] value) {
+        return new Message(OP_ADD, key, value);
     }
 
     /**
      * Creates a GET message
      */
     public static Message createGetMessage(String key) {
-        return new Message(OP_GET,
-                key.getBytes(StandardCharsets.UTF_8),
-                new byte[0]);
+        return createGetMessage(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a GET message from a key already encoded
+     */
+    public static Message createGetMessage(byte[] key) {
+        return new Message(OP_GET, key, new byte[0]);
     }
 
     /**
      * Creates a REMOVE message
      */
     public static Message createRemoveMessage(String key) {
-        return new Message(OP_REMOVE,
+        return createRemoveMessage(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a REMOVE message from a key already encoded
+     */
+    public static Message createRemoveMessage(byte[] key) {
+        return new Message(OP_REMOVE, key, new byte[0]);
+    }
+
+    /**
+     * Creates a GETS message, answered with [8 bytes: version] [value]
+     */
+    public static Message createGetsMessage(String key) {
+        return new Message(OP_GETS,
                 key.getBytes(StandardCharsets.UTF_8),
                 new byte[0]);
     }
 
+    /**
+     * Creates a CAS message, setting the value only if the key is still at the expected version
+     * (0 for a key that must not exist yet). Answered with the new version, or with
+     * STATUS_CONFLICT and the current version.
+     *
+     * Value format: [8 bytes: expected version] [value]
+     */
+    public static Message createCasMessage(String key, long expectedVersion, String value) {
+        return createCasMessage(key.getBytes(StandardCharsets.UTF_8), expectedVersion,
+                value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a CAS message from a key and value already encoded
+     */
+    public static Message createCasMessage(byte[] key, long expectedVersion, byte[] value) {
+        return new Message(OP_CAS,
+                key,
+                ByteBuffer.allocate(VERSION_SIZE + value.length)
+                        .putLong(expectedVersion)
+                        .put(value)
+                        .array());
+    }
+
+    /**
+     * Creates an INCR message adding delta to a decimal integer value, answered with the new value
+     */
+    public static Message createIncrMessage(String key, long delta) {
+        return new Message(OP_INCR,
+                key.getBytes(StandardCharsets.UTF_8),
+                Long.toString(delta).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Creates a DECR message subtracting delta from a decimal integer value, answered with the new value
+     */
+    public static Message createDecrMessage(String key, long delta) {
+        return new Message(OP_DECR,
+                key.getBytes(StandardCharsets.UTF_8),
+                Long.toString(delta).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Creates a GETSET message, setting the value and answering with the previous one
+     */
+    public static Message createGetSetMessage(String key, String value) {
+        return createGetSetMessage(key.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a GETSET message from a key and value already encoded
+     */
+    public static Message createGetSetMessage(byte[] key, byte[] value) {
+        return new Message(OP_GETSET, key, value);
+    }
+
+    /**
+     * Creates a RANGE message, listing the keys from {@code from} (inclusive) to {@code to} (exclusive, null for
+     * no upper bound) in order, with their values
+     */
+    public static Message createRangeMessage(String from, String to) {
+        return new Message(OP_RANGE,
+                from.getBytes(StandardCharsets.UTF_8),
+                to != null ? to.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+    }
+
+    /**
+     * Creates a WATCH message, answered with the value of the key as soon as it is present, or with
+     * {@code STATUS_NOT_FOUND} if it is still missing after the timeout. The answer is an {@link #OP_WATCHED} keyed
+     * by the id of the watch, the server holds the request while it answers other requests of the same key.
+     *
+     * Value format: [8 bytes: timeout in milliseconds][4 bytes: watch id]
+     */
+    public static Message createWatchMessage(String key, long timeoutMillis, int watchId) {
+        return new Message(OP_WATCH,
+                key.getBytes(StandardCharsets.UTF_8),
+                ByteBuffer.allocate(WATCH_REQUEST_SIZE).putLong(timeoutMillis).putInt(watchId).array());
+    }
+
+    /**
+     * The id of the watch an {@link #OP_WATCHED} answers
+     */
+    public static int getWatchId(Message watched) {
+        return ByteBuffer.wrap(watched.getKey()).getInt();
+    }
+
+    /**
+     * Creates a SUBSCRIBE message for the changes of a single key
+     */
+    public static Message createSubscribeMessage(String key) {
+        return createSubscription(OP_SUBSCRIBE, key, SUBSCRIBE_KEY, null);
+    }
+
+    /**
+     * Creates a SUBSCRIBE message for the changes of the keys from {@code from} (inclusive) to {@code to}
+     * (exclusive, null for no upper bound)
+     */
+    public static Message createSubscribeRangeMessage(String from, String to) {
+        return createSubscription(OP_SUBSCRIBE, from, SUBSCRIBE_RANGE, to);
+    }
+
+    public static Message createUnsubscribeMessage(String key) {
+        return createSubscription(OP_UNSUBSCRIBE, key, SUBSCRIBE_KEY, null);
+    }
+
+    public static Message createUnsubscribeRangeMessage(String from, String to) {
+        return createSubscription(OP_UNSUBSCRIBE, from, SUBSCRIBE_RANGE, to);
+    }
+
+    private static Message createSubscription(byte operation, String key, byte kind, String to) {
+        byte[] bound = to != null ? to.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        byte[] value = new byte[1 + bound.length];
+        value[0] = kind;
+        System.arraycopy(bound, 0, value, 1, bound.length);
+        return new Message(operation, key.getBytes(StandardCharsets.UTF_8), value);
+    }
+
     /**
      * Creates a HEARTBEAT message
      */
@@ -161,6 +376,50 @@ public class CacheProtocol {
         return new Message(OP_HEARTBEAT, "heartbeat".getBytes(StandardCharsets.UTF_8),new byte[0]);
     }
 
+    /**
+     * Creates a STATS message
+     */
+    public static Message createStatsMessage() {
+        return new Message(OP_STATS, "stats".getBytes(StandardCharsets.UTF_8), new byte[0]);
+    }
+
+    /**
+     * Creates a TRACKING message, after which the server pushes an INVALIDATE message
+     * whenever a key previously read by this connection changes
+     */
+    public static Message createTrackingMessage() {
+        return new Message(OP_TRACKING, "tracking".getBytes(StandardCharsets.UTF_8), new byte[0]);
+    }
+
+    /**
+     * Creates an INVALIDATE message, pushed by the server to connections tracking the key
+     */
+    public static Message createInvalidateMessage(byte[] key) {
+        return new Message(OP_INVALIDATE, key, new byte[0]);
+    }
+
+    /**
+     * Creates a HANDOFF message. SYNC is answered with the store as snapshot batches, followed by an OK response and
+     * the mutation stream. READY makes the old process stop accepting and drain its connections.
+     */
+    public static Message createHandoffMessage(byte phase) {
+        return new Message(OP_HANDOFF, "handoff".getBytes(StandardCharsets.UTF_8), new byte[]{phase});
+    }
+
+    /**
+     * Creates a REPL_SYNC message, sent by a replica to request a snapshot followed by the mutation stream
+     */
+    public static Message createSyncMessage() {
+        return new Message(OP_REPL_SYNC, "sync".getBytes(StandardCharsets.UTF_8), new byte[0]);
+    }
+
+    /**
+     * Creates a REPL_BATCH message carrying a batch of encoded mutations
+     */
+    public static Message createBatchMessage(byte[] header, byte[] records) {
+        return new Message(OP_REPL_BATCH, header, records);
+    }
+
     /**
      * Creates a response message
      */
@@ -172,23 +431,195 @@ public class CacheProtocol {
      * Creates an error message
      */
     public static Message createErrorMessage(String errorMessage) {
-        return new Message(OP_ERROR, STATUS_ERROR, new byte[0],
+        return createErrorMessage(new byte[0], errorMessage);
+    }
+
+    /**
+     * Creates an error message answering a request, keyed like the request so the client hands it to that request
+     */
+    public static Message createErrorMessage(byte[] key, String errorMessage) {
+        return new Message(OP_ERROR, STATUS_ERROR, key != null ? key : new byte[0],
                 errorMessage.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
-     * Sends a message through the specified SocketChannel
+     * Sends a message through the specified channel, in chunks if its value is too large for one frame
+     */
+    public static void sendMessage(GatheringByteChannel channel, Message message) throws IOException {
+        ByteBuffer[] frames = encodeFrames(message);
+        if (frames.length == 1) {
+            sendEncoded(channel, frames[0]);
+            return;
+        }
+
+        long remaining = 0;
+        for (ByteBuffer frame : frames) {
+            remaining += frame.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(frames);
+        }
+    }
+
+    /**
+     * Sends a value straight from a file, in chunks, without copying it through the heap.
+     * The channel must be in blocking mode.
+     */
+    public static void sendChunked(SocketChannel channel, byte operation, byte[] key,
+                                   FileChannel file, long position, int length) throws IOException {
+        checkSizes(key.length, length);
+        for (int offset = 0; offset < length; offset += CHUNK_SIZE) {
+            int chunkLength = Math.min(CHUNK_SIZE, length - offset);
+            ByteBuffer header = chunkHeader(operation, key, length, offset, chunkLength);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+
+            long sent = 0;
+            while (sent < chunkLength) {
+                sent += file.transferTo(position + offset + sent, chunkLength - sent, channel);
+            }
+        }
+    }
+
+    /**
+     * Whether the value of a message is too large for a single frame
+     */
+    public static boolean isChunked(Message message) {
+        return message.getValue() != null && message.getValue().length > CHUNK_SIZE;
+    }
+
+    /**
+     * Encodes a message into read-only frames: a single frame, or a sequence of chunk frames when its value is
+     * larger than {@link #CHUNK_SIZE}. Chunks reference the value of the message rather than copying it.
      */
-    public static void sendMessage(SocketChannel channel, Message message) throws IOException {
+    public static ByteBuffer[] encodeFrames(Message message) {
+        if (!isChunked(message)) {
+            return new ByteBuffer[]{encode(message)};
+        }
         byte[] key = message.getKey() != null ? message.getKey() : new byte[0];
-        byte[] value = message.getValue() != null ? message.getValue() : new byte[0];
+        return encodeChunks(message.getOperation(), key, null, ByteBuffer.wrap(message.getValue()));
+    }
+
+    /**
+     * Encodes an OP_RESPONSE into read-only frames without copying the value behind the status byte,
+     * chunked like {@link #encodeFrames}
+     */
+    public static ByteBuffer[] encodeResponseFrames(byte status, byte[] key, byte[] value) {
+        if (value.length + 1 <= CHUNK_SIZE) {
+            byte[] responseValue = new byte[value.length + 1];
+            responseValue[0] = status;
+            System.arraycopy(value, 0, responseValue, 1, value.length);
+            return new ByteBuffer[]{encode(createResponseMessage(status, key, responseValue))};
+        }
+        return encodeChunks(OP_RESPONSE, key != null ? key : new byte[0], status, ByteBuffer.wrap(value));
+    }
+
+    /**
+     * Encodes the {@link #OP_WATCHED} answer of a watch, the value behind the status. The value is never copied, the
+     * frames of the watchers of a key all reference the same value.
+     */
+    public static ByteBuffer[] encodeWatchedFrames(byte status, int watchId, byte[] value) {
+        byte[] key = ByteBuffer.allocate(Integer.BYTES).putInt(watchId).array();
+        if (value.length + 1 <= CHUNK_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + key.length + 1);
+            header.putInt(MAGIC_NUMBER);
+            header.put(VERSION);
+            header.put(OP_WATCHED);
+            header.putInt(key.length);
+            header.putInt(value.length + 1);
+            header.put(key);
+            header.put(status);
+            header.flip();
+            return new ByteBuffer[]{header.asReadOnlyBuffer(), ByteBuffer.wrap(value).asReadOnlyBuffer()};
+        }
+        return encodeChunks(OP_WATCHED, key, status, ByteBuffer.wrap(value));
+    }
 
-        if (key.length > MAX_KEY_SIZE) {
+    /**
+     * Encodes an OP_NOTIFY pushed to the subscribers of a key: the new value behind {@code STATUS_OK}, or
+     * {@code STATUS_NOT_FOUND} alone for a removed key. Chunked like {@link #encodeFrames}.
+     */
+    public static ByteBuffer[] encodeNotificationFrames(byte status, byte[] key, byte[] value) {
+        if (value == null) {
+            return new ByteBuffer[]{encode(new Message(OP_NOTIFY, status, key, new byte[]{status}))};
+        }
+        if (value.length + 1 <= CHUNK_SIZE) {
+            byte[] notificationValue = new byte[value.length + 1];
+            notificationValue[0] = status;
+            System.arraycopy(value, 0, notificationValue, 1, value.length);
+            return new ByteBuffer[]{encode(new Message(OP_NOTIFY, status, key, notificationValue))};
+        }
+        return encodeChunks(OP_NOTIFY, key, status, ByteBuffer.wrap(value));
+    }
+
+    /**
+     * Splits a value in chunk frames, each one a header buffer followed by a read-only slice of the value.
+     * The prefix byte, if any, is sent in front of the value (the status of responses).
+     */
+    private static ByteBuffer[] encodeChunks(byte operation, byte[] key, Byte prefix, ByteBuffer value) {
+        int prefixLength = prefix != null ? 1 : 0;
+        int totalLength = prefixLength + value.remaining();
+        checkSizes(key.length, totalLength);
+
+        int chunkCount = (totalLength + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        ByteBuffer[] frames = new ByteBuffer[chunkCount * 2];
+        int valuePosition = value.position();
+        for (int i = 0, offset = 0; i < chunkCount; i++, offset += CHUNK_SIZE) {
+            int chunkLength = Math.min(CHUNK_SIZE, totalLength - offset);
+            ByteBuffer header = chunkHeader(operation, key, totalLength, offset, chunkLength);
+            int sliceLength = chunkLength;
+            if (offset == 0 && prefix != null) {
+                header.put(prefix);
+                sliceLength--;
+            }
+            header.flip();
+
+            ByteBuffer slice = value.duplicate();
+            slice.position(valuePosition).limit(valuePosition + sliceLength);
+            valuePosition += sliceLength;
+
+            frames[2 * i] = header.asReadOnlyBuffer();
+            frames[2 * i + 1] = slice.slice().asReadOnlyBuffer();
+        }
+        return frames;
+    }
+
+    /**
+     * Header of a chunk frame up to its payload, with room for the prefix byte of a first chunk
+     */
+    private static ByteBuffer chunkHeader(byte operation, byte[] key, int totalLength, int offset, int chunkLength) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + key.length + CHUNK_HEADER_SIZE + 1);
+        header.putInt(MAGIC_NUMBER);
+        header.put(VERSION);
+        header.put(OP_CHUNK);
+        header.putInt(key.length);
+        header.putInt(CHUNK_HEADER_SIZE + chunkLength);
+        header.put(key);
+        header.put(operation);
+        header.putInt(totalLength);
+        header.putInt(offset);
+        return header;
+    }
+
+    private static void checkSizes(int keyLength, int valueLength) {
+        if (keyLength > MAX_KEY_SIZE) {
             throw new IllegalArgumentException("Key exceeds maximum size of " + MAX_KEY_SIZE + " bytes");
         }
-        if (value.length > MAX_VALUE_SIZE) {
+        if (valueLength > MAX_VALUE_SIZE) {
             throw new IllegalArgumentException("Value exceeds maximum size of " + MAX_VALUE_SIZE + " bytes");
         }
+    }
+
+    /**
+     * Encodes a message into a read-only frame, ready to be sent any number of times with {@link #sendEncoded}
+     */
+    public static ByteBuffer encode(Message message) {
+        byte[] key = message.getKey() != null ? message.getKey() : new byte[0];
+        byte[] value = message.getValue() != null ? message.getValue() : new byte[0];
+
+        checkSizes(key.length, value.length);
 
         // Create buffer for the complete message (header + key + value)
         ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + key.length + value.length);
@@ -210,6 +641,14 @@ public class CacheProtocol {
 
         // Prepare buffer for reading by the channel
         buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Sends a frame built by {@link #encode}, the frame itself is left untouched so it can be shared
+     */
+    public static void sendEncoded(WritableByteChannel channel, ByteBuffer frame) throws IOException {
+        ByteBuffer buffer = frame.duplicate();
 
         // Write the entire buffer to the channel
         while (buffer.hasRemaining()) {
@@ -218,37 +657,112 @@ public class CacheProtocol {
     }
 
     /**
-     * Reads a message from the specified SocketChannel
+     * Encodes a request id and a message into a datagram, ready to be sent.
+     * Fails if they do not fit in {@link #MAX_DATAGRAM_SIZE}, such messages must go over TCP.
+     */
+    public static void encodeDatagram(int requestId, Message message, ByteBuffer datagram) {
+        byte[] key = message.getKey() != null ? message.getKey() : new byte[0];
+        byte[] value = message.getValue() != null ? message.getValue() : new byte[0];
+
+        int size = REQUEST_ID_SIZE + HEADER_SIZE + key.length + value.length;
+        if (size > MAX_DATAGRAM_SIZE || size > datagram.capacity()) {
+            throw new IllegalArgumentException("Message of " + size + " bytes exceeds a datagram");
+        }
+
+        datagram.clear();
+        datagram.putInt(requestId);
+        datagram.putInt(MAGIC_NUMBER);
+        datagram.put(VERSION);
+        datagram.put(message.getOperation());
+        datagram.putInt(key.length);
+        datagram.putInt(value.length);
+        datagram.put(key);
+        datagram.put(value);
+        datagram.flip();
+    }
+
+    /**
+     * Decodes the frame of a received datagram, positioned right after its request id.
+     * A datagram holds exactly one frame, anything else is rejected.
+     */
+    public static Message decodeDatagram(ByteBuffer datagram) throws IOException {
+        if (datagram.remaining() < HEADER_SIZE) {
+            throw new IOException("Truncated datagram of " + datagram.remaining() + " bytes");
+        }
+
+        int magic = datagram.getInt();
+        if (magic != MAGIC_NUMBER) {
+            throw new IOException("Invalid magic number: " + Integer.toHexString(magic));
+        }
+        byte version = datagram.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported protocol version: " + version);
+        }
+
+        byte operation = datagram.get();
+        int keyLength = datagram.getInt();
+        int valueLength = datagram.getInt();
+        if (keyLength < 0 || valueLength < 0 || (long) keyLength + valueLength != datagram.remaining()) {
+            throw new IOException("Datagram lengths do not match its size");
+        }
+
+        byte[] key = null;
+        if (keyLength > 0) {
+            key = new byte[keyLength];
+            datagram.get(key);
+        }
+        byte[] value = null;
+        if (valueLength > 0) {
+            value = new byte[valueLength];
+            datagram.get(value);
+        }
+        return createMessage(operation, key, value);
+    }
+
+    /**
+     * Reads a message from the specified channel
      * Returns null if the message is incomplete and more data is needed
      */
-    public static Message readMessage(SocketChannel channel, ByteBuffer buffer) throws IOException {
+    public static Message readMessage(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        FrameView frame = new FrameView();
+        if (!readFrame(channel, buffer, frame)) {
+            return null;
+        }
+        Message message = frame.toMessage();
+        frame.release();
+        return message;
+    }
+
+    /**
+     * Reads the next frame from the specified channel into the buffer, pointing the view at it without copying.
+     * Returns false if the frame is incomplete and more data is needed. Once handled, the frame must be released
+     * with {@link FrameView#release()} before the next one is read.
+     */
+    public static boolean readFrame(ReadableByteChannel channel, ByteBuffer buffer, FrameView frame) throws IOException {
         // First, try to read enough for the header
         if (buffer.position() < HEADER_SIZE) {
-            channel.read(buffer);
+            readFromChannel(channel, buffer);
 
-            // If we still don't have enough for the header, return null
+            // If we still don't have enough for the header, there is no frame yet
             if (buffer.position() < HEADER_SIZE) {
-                return null;
+                return false;
             }
         }
 
-        // Prepare buffer for reading
-        buffer.flip();
-
-        // Read and validate header fields
-        int magic = buffer.getInt();
+        // Read and validate header fields in place, the buffer stays ready for more data
+        int magic = buffer.getInt(0);
         if (magic != MAGIC_NUMBER) {
             throw new IOException("Invalid magic number: " + Integer.toHexString(magic));
         }
 
-        byte version = buffer.get();
+        byte version = buffer.get(4);
         if (version != VERSION) {
             throw new IOException("Unsupported protocol version: " + version);
         }
 
-        byte operation = buffer.get();
-        int keyLength = buffer.getInt();
-        int valueLength = buffer.getInt();
+        byte operation = buffer.get(5);
+        int keyLength = buffer.getInt(6);
+        int valueLength = buffer.getInt(10);
 
         if (keyLength < 0 || keyLength > MAX_KEY_SIZE) {
             throw new IOException("Invalid key length: " + keyLength);
@@ -257,67 +771,68 @@ public class CacheProtocol {
             throw new IOException("Invalid value length: " + valueLength);
         }
 
-        // Calculate total message size
+        // A frame that cannot fit in the buffer would never complete, larger values must travel as OP_CHUNK frames
         int totalMessageSize = HEADER_SIZE + keyLength + valueLength;
+        if (totalMessageSize > buffer.capacity()) {
+            throw new IOException("Frame of " + totalMessageSize + " bytes exceeds the buffer of " + buffer.capacity()
+                    + " bytes, larger values must be chunked");
+        }
 
-        // Check if we have the complete message
-        if (buffer.limit() < totalMessageSize) {
-            // Restore position to continue reading
-            buffer.position(buffer.limit());
-            buffer.limit(buffer.capacity());
-
-            // Read more data
-            channel.read(buffer);
-
-            // Check if we now have enough data
+        // Check if we have the complete frame, reading more data if not
+        if (buffer.position() < totalMessageSize) {
+            readFromChannel(channel, buffer);
             if (buffer.position() < totalMessageSize) {
-                // Still not enough data
-                buffer.flip();
-                buffer.position(buffer.limit());
-                buffer.limit(buffer.capacity());
-                return null;
+                return false;
             }
-
-            // Reset for reading
-            buffer.flip();
-
-            // Skip header we've already processed
-            buffer.position(HEADER_SIZE);
         }
 
-        // Read key
-        byte[] key = null;
-        if (keyLength > 0) {
-            key = new byte[keyLength];
-            buffer.get(key);
+        frame.wrap(buffer, operation, keyLength, valueLength);
+        return true;
+    }
+
+    /**
+     * Encodes a response into the target buffer, the status going in front of the value as on the wire.
+     * Returns false, leaving nothing in the target, when the frame does not fit in it.
+     *
+     * @param value the value, null for a response with the status alone
+     */
+    public static boolean encodeResponse(ByteBuffer target, byte status, KeyView key, byte[] value) {
+        int valueLength = 1 + (value != null ? value.length : 0);
+        if (target.remaining() < HEADER_SIZE + key.size() + valueLength) {
+            return false;
         }
 
-        // Read value
-        byte[] value = null;
-        if (valueLength > 0) {
-            value = new byte[valueLength];
-            buffer.get(value);
+        target.putInt(MAGIC_NUMBER);
+        target.put(VERSION);
+        target.put(OP_RESPONSE);
+        target.putInt(key.size());
+        target.putInt(valueLength);
+        key.writeTo(target);
+        target.put(status);
+        if (value != null) {
+            target.put(value);
         }
+        return true;
+    }
 
-        // Create message based on operation
-        Message message;
-        if (operation == OP_RESPONSE || operation == OP_HEARTBEAT || operation == OP_ERROR) {
+    /**
+     * Creates a received message based on its operation, from the value as it was on the wire
+     */
+    static Message createMessage(byte operation, byte[] key, byte[] value) {
+        if (operation == OP_RESPONSE || operation == OP_HEARTBEAT || operation == OP_ERROR || operation == OP_NOTIFY
+                || operation == OP_WATCHED) {
             // For responses, first byte of value is status code
             byte status = (value != null && value.length > 0) ? value[0] : STATUS_OK;
             byte[] actualValue = (value != null && value.length > 1) ?
                     Arrays.copyOfRange(value, 1, value.length) : new byte[0];
-            message = new Message(operation, status, key, actualValue);
-        } else {
-            message = new Message(operation, key, value);
+            return new Message(operation, status, key, actualValue);
         }
+        return new Message(operation, key, value);
+    }
 
-        // If there's more data, compact the buffer
-        if (buffer.hasRemaining()) {
-            buffer.compact();
-        } else {
-            buffer.clear();
+    private static void readFromChannel(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        if (channel.read(buffer) < 0) {
+            throw new EOFException("Connection closed by peer");
         }
-
-        return message;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,139 @@
+package org.global.dax.shared;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reassembles the values sent as OP_CHUNK frames by {@link CacheProtocol#encodeFrames}.
+ *
+ * Each chunk is copied into the value of its message as soon as it is read, so a connection buffer only ever
+ * holds one chunk and never needs to fit the whole value. Values are assembled by key, chunks of different
+ * keys may interleave on the connection but the chunks of one value must arrive in order. A value grows as its
+ * chunks arrive rather than being allocated at the length its first chunk claims, and the values in progress of a
+ * connection may only hold {@link #MAX_PARTIAL_BYTES} in total.
+ *
+ * Not thread safe, one instance per connection used by its reading thread.
+ */
+public final class ChunkAssembler {
+
+    // Values in the middle of being assembled, bounding the memory a connection can hold on to
+    public static final int MAX_PARTIAL_VALUES = 16;
+    public static final int MAX_PARTIAL_BYTES = 2 * CacheProtocol.MAX_VALUE_SIZE;
+
+    private final Map<ByteBuffer, Partial> partials = new HashMap<>();
+    private final int maxPartialBytes;
+    // Bytes allocated for the values in progress
+    private long partialBytes = 0;
+
+    public ChunkAssembler() {
+        this(MAX_PARTIAL_BYTES);
+    }
+
+    ChunkAssembler(int maxPartialBytes) {
+        this.maxPartialBytes = maxPartialBytes;
+    }
+
+    /**
+     * Returns the message as is if it is not a chunk, the reassembled message once its last chunk arrived,
+     * or null while more chunks are expected
+     */
+    public CacheProtocol.Message accept(CacheProtocol.Message message) throws IOException {
+        if (message.getOperation() != CacheProtocol.OP_CHUNK) {
+            return message;
+        }
+
+        byte[] key = message.getKey() != null ? message.getKey() : new byte[0];
+        byte[] chunk = message.getValue();
+        if (chunk == null || chunk.length < CacheProtocol.CHUNK_HEADER_SIZE) {
+            throw new IOException("Truncated chunk header");
+        }
+        ByteBuffer header = ByteBuffer.wrap(chunk);
+        byte operation = header.get();
+        int totalLength = header.getInt();
+        int offset = header.getInt();
+        int length = header.remaining();
+
+        if (operation == CacheProtocol.OP_CHUNK) {
+            throw new IOException("Nested chunk");
+        }
+        if (totalLength <= 0 || totalLength > CacheProtocol.MAX_VALUE_SIZE) {
+            throw new IOException("Invalid chunked value length: " + totalLength);
+        }
+
+        ByteBuffer mapKey = ByteBuffer.wrap(key);
+        Partial partial = partials.get(mapKey);
+        if (offset == 0) {
+            if (partial != null) {
+                throw new IOException("Chunked value restarted before its end");
+            }
+            if (partials.size() >= MAX_PARTIAL_VALUES) {
+                throw new IOException("Too many chunked values in progress");
+            }
+            partial = new Partial(operation, totalLength);
+            partials.put(mapKey, partial);
+        } else if (partial == null || partial.received != offset
+                || partial.operation != operation || partial.totalLength != totalLength) {
+            throw new IOException("Chunk out of sequence at offset " + offset);
+        }
+        if (length > totalLength - offset) {
+            throw new IOException("Chunk overflows its value");
+        }
+
+        grow(partial, offset + length);
+        System.arraycopy(chunk, CacheProtocol.CHUNK_HEADER_SIZE, partial.value, offset, length);
+        partial.received += length;
+        if (partial.received < totalLength) {
+            return null;
+        }
+
+        partials.remove(mapKey);
+        partialBytes -= partial.value.length;
+        return CacheProtocol.createMessage(partial.operation, message.getKey(), partial.value);
+    }
+
+    /**
+     * Number of values waiting for more chunks
+     */
+    public int size() {
+        return partials.size();
+    }
+
+    /**
+     * Drops the values in progress, for a connection that starts over
+     */
+    public void clear() {
+        partials.clear();
+        partialBytes = 0;
+    }
+
+    /**
+     * Makes room for the bytes received so far, doubling the value up to its total length
+     */
+    private void grow(Partial partial, int length) throws IOException {
+        if (length <= partial.value.length) {
+            return;
+        }
+        int capacity = Math.min(partial.totalLength, Math.max(length, 2 * partial.value.length));
+        partialBytes += capacity - partial.value.length;
+        if (partialBytes > maxPartialBytes) {
+            throw new IOException("Chunked values in progress exceed " + maxPartialBytes + " bytes");
+        }
+        partial.value = Arrays.copyOf(partial.value, capacity);
+    }
+
+    private static final class Partial {
+
+        private final byte operation;
+        private final int totalLength;
+        private byte[] value = new byte[0];
+        private int received;
+
+        private Partial(byte operation, int totalLength) {
+            this.operation = operation;
+            this.totalLength = totalLength;
+        }
+    }
+}
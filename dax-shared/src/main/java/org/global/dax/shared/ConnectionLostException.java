@@ -0,0 +1,11 @@
+package org.global.dax.shared;
+
+/**
+ * The connection to the server was lost while a request waited for its response, the request may or may not
+ * have been executed
+ */
+public class ConnectionLostException extends CacheException {
+    public ConnectionLostException(String key) {
+        super("Connection lost before the response for " + key);
+    }
+}
@@ -0,0 +1,71 @@
+package org.global.dax.shared;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A frame read in place at the start of a read buffer, exposing its operation, key and value where they are
+ * instead of copying them into a {@link CacheProtocol.Message}.
+ *
+ * One view is reused for every frame of a connection: {@link CacheProtocol#readFrame} points it at the next
+ * complete frame, and {@link #release()} drops that frame from the buffer once it was handled. Nothing read
+ * from the view, its key included, may be kept past the release.
+ */
+public final class FrameView {
+
+    private final KeyView key = new KeyView();
+
+    private ByteBuffer buffer;
+    private byte operation;
+    private int keyLength;
+    private int valueLength;
+
+    void wrap(ByteBuffer buffer, byte operation, int keyLength, int valueLength) {
+        this.buffer = buffer;
+        this.operation = operation;
+        this.keyLength = keyLength;
+        this.valueLength = valueLength;
+        key.wrap(buffer, CacheProtocol.HEADER_SIZE, keyLength);
+    }
+
+    public byte getOperation() {
+        return operation;
+    }
+
+    public KeyView getKey() {
+        return key;
+    }
+
+    public int getValueLength() {
+        return valueLength;
+    }
+
+    /**
+     * Size of the frame on the wire, header included
+     */
+    public int getFrameSize() {
+        return CacheProtocol.HEADER_SIZE + keyLength + valueLength;
+    }
+
+    /**
+     * Copies the frame into a message, as {@link CacheProtocol#readMessage} would have returned it
+     */
+    public CacheProtocol.Message toMessage() {
+        byte[] keyBytes = keyLength > 0 ? key.toBytes() : null;
+        byte[] value = null;
+        if (valueLength > 0) {
+            value = new byte[valueLength];
+            buffer.get(CacheProtocol.HEADER_SIZE + keyLength, value);
+        }
+        return CacheProtocol.createMessage(operation, keyBytes, value);
+    }
+
+    /**
+     * Drops the frame from the read buffer, moving the bytes read after it to the start
+     */
+    public void release() {
+        buffer.flip();
+        buffer.position(getFrameSize());
+        buffer.compact();
+        buffer = null;
+    }
+}
@@ -0,0 +1,136 @@
+package org.global.dax.shared;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The key of a received frame, read in place in the buffer it arrived in.
+ *
+ * Its hash code is the one of the {@link String} the key decodes to, and it equals such a String, so it can look
+ * up maps keyed by Strings ({@link java.util.HashMap}, {@link java.util.concurrent.ConcurrentHashMap}) without
+ * decoding the key: those maps call {@code equals} on the key they are given. The reverse does not hold, a
+ * String never equals a view, so a view must never be stored in a map, only used to look one up.
+ *
+ * ASCII keys are compared byte by byte without allocating, other keys are decoded once per frame.
+ * A view is only valid until its frame is released, {@link #toString()} gives a key that can be kept.
+ */
+public final class KeyView {
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    // Computed on first use, frames only decoded into messages never need them
+    private boolean analyzed;
+    private int hash;
+
+    // Decoded key when it is not ASCII, null otherwise
+    private String decoded;
+
+    void wrap(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.analyzed = false;
+        this.decoded = null;
+    }
+
+    private void analyze() {
+        if (analyzed) {
+            return;
+        }
+        analyzed = true;
+
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(offset + i);
+            if (b < 0) {
+                decoded = new String(toBytes(), StandardCharsets.UTF_8);
+                h = decoded.hashCode();
+                break;
+            }
+            h = 31 * h + b;
+        }
+        hash = h;
+    }
+
+    /**
+     * Number of bytes of the key
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * Whether the key is the specified ASCII string, ignoring case
+     */
+    public boolean equalsIgnoreCase(String ascii) {
+        analyze();
+        if (decoded != null) {
+            return decoded.equalsIgnoreCase(ascii);
+        }
+        if (ascii.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = (char) buffer.get(offset + i);
+            if (Character.toUpperCase(c) != Character.toUpperCase(ascii.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the bytes of the key
+     */
+    public byte[] toBytes() {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes the bytes of the key at the position of the target, moving it past them
+     */
+    void writeTo(ByteBuffer target) {
+        target.put(target.position(), buffer, offset, length);
+        target.position(target.position() + length);
+    }
+
+    @Override
+    public int hashCode() {
+        analyze();
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        analyze();
+        if (decoded != null) {
+            return decoded.equals(other);
+        }
+        if (!(other instanceof String)) {
+            return false;
+        }
+        String string = (String) other;
+        if (string.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (string.charAt(i) != buffer.get(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the key, the returned String stays valid once the frame is released
+     */
+    @Override
+    public String toString() {
+        analyze();
+        return decoded != null ? decoded : new String(toBytes(), StandardCharsets.UTF_8);
+    }
+}
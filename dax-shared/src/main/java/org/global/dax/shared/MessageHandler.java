@@ -1,11 +1,12 @@
 package org.global.dax.shared;
 
 import java.io.IOException;
-import java.nio.channels.SocketChannel;
 
 /**
  * Protocol handler interface for processing messages
+ *
+ * @param <C> the connection the message was received on, used to send the response
  */
-public interface MessageHandler {
-    void handleMessage(CacheProtocol.Message message, SocketChannel channel) throws IOException;
+public interface MessageHandler<C> {
+    void handleMessage(CacheProtocol.Message message, C connection) throws IOException;
 }
@@ -5,5 +5,24 @@ public final class Properties {
     public static final String HOST = "localhost";
     public static final int PORT = 9090;
 
+    // System property holding the path of a Unix domain socket, used instead of HOST/PORT by same-host clients
+    public static final String UNIX_SOCKET_PROPERTY = "dax.socket";
+
+    // System property holding the directory where same-host clients publish their shared memory rings
+    public static final String SHARED_MEMORY_PROPERTY = "dax.shm";
+
+    // System properties holding the directory of the server disk tier, and the bytes of values it keeps in memory
+    public static final String DISK_TIER_PROPERTY = "dax.tier";
+    public static final String DISK_TIER_MEMORY_PROPERTY = "dax.tier.memory";
+
+    // System property turning on the deduplication of identical values by the server
+    public static final String DEDUP_PROPERTY = "dax.dedup";
+
+    // System property turning on the low-latency event loop (busy polling, TCP_NODELAY), on the server and clients
+    public static final String BUSY_POLL_PROPERTY = "dax.busypoll";
+
+    // System property holding the path of the Unix domain socket a restarted server takes the store and port over on
+    public static final String HANDOFF_SOCKET_PROPERTY = "dax.handoff";
+
     private Properties() {} // prevent instantiation
 }
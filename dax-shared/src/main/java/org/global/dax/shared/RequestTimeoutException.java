@@ -0,0 +1,10 @@
+package org.global.dax.shared;
+
+/**
+ * No response arrived for a request before its deadline, the request may or may not have been executed
+ */
+public class RequestTimeoutException extends CacheException {
+    public RequestTimeoutException(String key, long timeoutMillis) {
+        super("No response for " + key + " within " + timeoutMillis + " ms");
+    }
+}
@@ -0,0 +1,10 @@
+package org.global.dax.shared;
+
+/**
+ * The server rejected a request without executing it because it is overloaded, the request can be retried after a back-off
+ */
+public class ServerBusyException extends CacheException {
+    public ServerBusyException(String key) {
+        super("Server busy, retry " + key + " later");
+    }
+}
@@ -0,0 +1,192 @@
+package org.global.dax.shared;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Duplex byte channel between a client and a server on the same host, made of two {@link SharedMemoryRing}s in a
+ * memory-mapped file: requests flow from the client to the server in the first ring, responses back in the second.
+ * Frames go through unchanged, so both sides use the usual {@link CacheProtocol} codec on top of it.
+ *
+ * File layout: [4 bytes: Magic number] [4 bytes: Ring capacity] [4 bytes: Client closed] [4 bytes: Server closed],
+ * padded to a cache line, then the request ring and the response ring.
+ *
+ * The channel never blocks: reads return 0 when the ring is empty and writes return 0 when it is full, callers
+ * poll with a {@link WaitStrategy}. Reads return -1 once the other side closed and everything it wrote was read.
+ * Each side must be used by a single thread at a time.
+ */
+public final class SharedMemoryChannel implements ByteChannel, GatheringByteChannel {
+
+    public static final int DEFAULT_CAPACITY = 1024 * 1024; // 1MB per direction
+    public static final String FILE_SUFFIX = ".ring";
+
+    private static final int MAGIC_NUMBER = 0x52494E47; // "RING" in ASCII
+    private static final int FILE_HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int CLIENT_CLOSED_OFFSET = 8;
+    private static final int SERVER_CLOSED_OFFSET = 12;
+
+    private static final VarHandle FLAG = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final Path path;
+    private final MappedByteBuffer memory;
+    private final SharedMemoryRing inbound;
+    private final SharedMemoryRing outbound;
+    private final int closedOffset;
+    private final int peerClosedOffset;
+    private final boolean client;
+    private boolean open = true;
+
+    private SharedMemoryChannel(Path path, MappedByteBuffer memory, int capacity, boolean client) {
+        this.path = path;
+        this.memory = memory;
+        SharedMemoryRing requests = new SharedMemoryRing(memory, FILE_HEADER_SIZE, capacity);
+        SharedMemoryRing responses = new SharedMemoryRing(memory, FILE_HEADER_SIZE + SharedMemoryRing.size(capacity), capacity);
+        this.inbound = client ? responses : requests;
+        this.outbound = client ? requests : responses;
+        this.closedOffset = client ? CLIENT_CLOSED_OFFSET : SERVER_CLOSED_OFFSET;
+        this.peerClosedOffset = client ? SERVER_CLOSED_OFFSET : CLIENT_CLOSED_OFFSET;
+        this.client = client;
+    }
+
+    /**
+     * Creates the client side of a new channel in the directory watched by a server. The file is fully
+     * initialized before it appears under its final name, so the server never maps a half-written header.
+     */
+    public static SharedMemoryChannel create(Path directory, String name, int capacity) throws IOException {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+        Path temporary = directory.resolve(name + ".tmp");
+        Path path = directory.resolve(name + FILE_SUFFIX);
+        MappedByteBuffer memory = map(temporary, FILE_HEADER_SIZE + 2 * SharedMemoryRing.size(capacity), true);
+        memory.putInt(MAGIC_OFFSET, MAGIC_NUMBER);
+        memory.putInt(CAPACITY_OFFSET, capacity);
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        return new SharedMemoryChannel(path, memory, capacity, true);
+    }
+
+    /**
+     * Opens the server side of a channel created by a client
+     */
+    public static SharedMemoryChannel open(Path path) throws IOException {
+        long size = Files.size(path);
+        if (size < FILE_HEADER_SIZE || size > Integer.MAX_VALUE) {
+            throw new IOException("Not a ring file: " + path);
+        }
+        MappedByteBuffer memory = map(path, (int) size, false);
+        int capacity = memory.getInt(CAPACITY_OFFSET);
+        if (memory.getInt(MAGIC_OFFSET) != MAGIC_NUMBER || Integer.bitCount(capacity) != 1
+                || size != FILE_HEADER_SIZE + 2L * SharedMemoryRing.size(capacity)) {
+            throw new IOException("Not a ring file: " + path);
+        }
+        return new SharedMemoryChannel(path, memory, capacity, false);
+    }
+
+    private static MappedByteBuffer map(Path path, int size, boolean create) throws IOException {
+        StandardOpenOption[] options = create
+                ? new StandardOpenOption[]{StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+        // The mapping stays valid once the file channel is closed
+        try (FileChannel file = FileChannel.open(path, options)) {
+            MappedByteBuffer memory = file.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            memory.order(ByteOrder.nativeOrder());
+            return memory;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer target) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        int read = inbound.read(target);
+        if (read == 0 && isPeerClosed() && inbound.available() == 0) {
+            return -1;
+        }
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        if (isPeerClosed()) {
+            throw new IOException("Closed by peer");
+        }
+        return outbound.write(source);
+    }
+
+    @Override
+    public long write(ByteBuffer[] sources, int offset, int length) throws IOException {
+        long written = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int remaining = sources[i].remaining();
+            int count = write(sources[i]);
+            written += count;
+            if (count < remaining) {
+                break; // ring full
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public long write(ByteBuffer[] sources) throws IOException {
+        return write(sources, 0, sources.length);
+    }
+
+    /**
+     * Bytes waiting to be read
+     */
+    public int available() {
+        return inbound.available();
+    }
+
+    /**
+     * Whether the other side closed the channel, bytes it wrote before may still be waiting to be read
+     */
+    public boolean isPeerClosed() {
+        return (int) FLAG.getAcquire(memory, peerClosedOffset) != 0;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Tells the other side the channel is closed. The server deletes the file when it closes its side, a client
+     * closing first leaves the file to the server, which finds it closed on its next read.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        // Volatile on both ends, two sides closing at once cannot both miss the flag of the other
+        FLAG.setVolatile(memory, closedOffset, 1);
+        if (!client || (int) FLAG.getVolatile(memory, peerClosedOffset) != 0) {
+            Files.deleteIfExists(path);
+        }
+    }
+}
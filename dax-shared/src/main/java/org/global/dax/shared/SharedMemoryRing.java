@@ -0,0 +1,104 @@
+package org.global.dax.shared;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Single producer single consumer ring of bytes in a region of shared memory.
+ *
+ * The region starts with the producer position and the consumer position, each on its own cache line, followed
+ * by the data. Positions count the bytes written and read since the ring was created, the producer publishes
+ * the bytes it wrote with a release store of its position and the consumer frees them the same way, so each
+ * side only ever writes one of the two positions and no lock is needed across processes.
+ */
+final class SharedMemoryRing {
+
+    static final int HEADER_SIZE = 128; // producer position, consumer position, each on a 64 byte cache line
+    private static final int PRODUCER_OFFSET = 0;
+    private static final int CONSUMER_OFFSET = 64;
+
+    private static final VarHandle POSITION = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer memory;
+    private final int headerOffset;
+    private final int dataOffset;
+    private final int capacity;
+    private final int mask;
+
+    /**
+     * @param memory   direct buffer holding the ring, usually a mapped file
+     * @param offset   start of the ring in the buffer, aligned on a cache line
+     * @param capacity size of the data, a power of two
+     */
+    SharedMemoryRing(ByteBuffer memory, int offset, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+        this.memory = memory;
+        this.headerOffset = offset;
+        this.dataOffset = offset + HEADER_SIZE;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Copies as many bytes as there is free space for, returning how many were written
+     */
+    int write(ByteBuffer source) {
+        long producer = (long) POSITION.getOpaque(memory, headerOffset + PRODUCER_OFFSET);
+        long consumer = (long) POSITION.getAcquire(memory, headerOffset + CONSUMER_OFFSET);
+        int length = Math.min(source.remaining(), capacity - (int) (producer - consumer));
+        if (length == 0) {
+            return 0;
+        }
+
+        int index = (int) (producer & mask);
+        int first = Math.min(length, capacity - index);
+        memory.put(dataOffset + index, source, source.position(), first);
+        if (first < length) {
+            memory.put(dataOffset, source, source.position() + first, length - first);
+        }
+        source.position(source.position() + length);
+
+        POSITION.setRelease(memory, headerOffset + PRODUCER_OFFSET, producer + length);
+        return length;
+    }
+
+    /**
+     * Copies as many bytes as are available and fit, returning how many were read
+     */
+    int read(ByteBuffer target) {
+        long consumer = (long) POSITION.getOpaque(memory, headerOffset + CONSUMER_OFFSET);
+        long producer = (long) POSITION.getAcquire(memory, headerOffset + PRODUCER_OFFSET);
+        int length = Math.min(target.remaining(), (int) (producer - consumer));
+        if (length == 0) {
+            return 0;
+        }
+
+        int index = (int) (consumer & mask);
+        int first = Math.min(length, capacity - index);
+        target.put(target.position(), memory, dataOffset + index, first);
+        if (first < length) {
+            target.put(target.position() + first, memory, dataOffset, length - first);
+        }
+        target.position(target.position() + length);
+
+        POSITION.setRelease(memory, headerOffset + CONSUMER_OFFSET, consumer + length);
+        return length;
+    }
+
+    /**
+     * Bytes written and not read yet
+     */
+    int available() {
+        long producer = (long) POSITION.getAcquire(memory, headerOffset + PRODUCER_OFFSET);
+        long consumer = (long) POSITION.getOpaque(memory, headerOffset + CONSUMER_OFFSET);
+        return (int) (producer - consumer);
+    }
+
+    static int size(int capacity) {
+        return HEADER_SIZE + capacity;
+    }
+}
@@ -1,6 +1,8 @@
 package org.global.dax.shared;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public final class StringUtil {
 
@@ -21,19 +23,14 @@ public final class StringUtil {
             throw new IllegalArgumentException("Input cannot be null and fixedByteLength must be at least 1.");
         }
 
-        // Encode the string to bytes using UTF-8
-        byte[] encodedBytes = input.getBytes(StandardCharsets.UTF_8);
-
-        if (encodedBytes.length > fixedByteLength) {
-            // If the encoded length exceeds the fixed byte length, truncate it
-            return truncateStringToBytes(input, fixedByteLength);
-        } else if (encodedBytes.length < fixedByteLength) {
-            // If the encoded length is less, pad the string
-            return padStringToBytes(input, fixedByteLength);
+        // Same string when it already has the exact length, most keys do
+        if (isAscii(input) && input.length() == fixedByteLength) {
+            return input;
         }
 
-        // If it matches exactly, return the original string
-        return input;
+        byte[] bytes = new byte[fixedByteLength];
+        encodeFixed(input, fixedByteLength, bytes, 0);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
     public static String limitValue(String value) {
@@ -45,43 +42,192 @@ public final class StringUtil {
             throw new IllegalArgumentException("Input cannot be null and fixedSize must be at least 1.");
         }
 
-        // If the input byte array is longer than the fixed size, truncate it
-        if (input.getBytes(StandardCharsets.UTF_8).length > limitSize) {
-            return truncateStringToBytes(input, limitSize);
+        // A string of at most limitSize chars cannot exceed limitSize bytes once ASCII, the common case
+        int length = input.length();
+        if (length <= limitSize && isAscii(input)) {
+            return input;
+        }
+
+        int end = truncatedLength(input, limitSize);
+        return end == length ? input : input.substring(0, end);
+    }
+
+    /**
+     * Encodes a string in UTF-8 into the destination in a single pass, stopping before the first character
+     * that would exceed maxBytes, and returns the number of bytes written
+     */
+    public static int encode(String input, int maxBytes, byte[] destination, int offset) {
+        int length = input.length();
+        int limit = Math.min(maxBytes, destination.length - offset);
+        int position = offset;
+        int i = 0;
+
+        // ASCII fast path, one byte per char
+        int asciiEnd = Math.min(length, limit);
+        while (i < asciiEnd) {
+            char c = input.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            destination[position++] = (byte) c;
+            i++;
+        }
+
+        int end = offset + limit;
+        while (i < length) {
+            char c = input.charAt(i);
+            int codePoint = c;
+            int chars = 1;
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(input.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, input.charAt(i + 1));
+                chars = 2;
+            } else if (Character.isSurrogate(c)) {
+                codePoint = '?'; // unpaired surrogate, replaced as String.getBytes does
+            }
+
+            int size = utf8Size(codePoint);
+            if (position + size > end) {
+                break;
+            }
+            position = putUtf8(codePoint, size, destination, position);
+            i += chars;
+        }
+        return position - offset;
+    }
+
+    /**
+     * Encodes a string into exactly fixedBytes bytes of the destination, truncated or padded with spaces
+     */
+    public static int encodeFixed(String input, int fixedBytes, byte[] destination, int offset) {
+        int written = encode(input, fixedBytes, destination, offset);
+        Arrays.fill(destination, offset + written, offset + fixedBytes, (byte) ' ');
+        return fixedBytes;
+    }
+
+    /**
+     * Encodes a string in UTF-8 into the buffer, at most maxBytes and never more than its remaining space
+     */
+    public static int encode(String input, int maxBytes, ByteBuffer destination) {
+        int written;
+        int limit = Math.min(maxBytes, destination.remaining());
+        if (destination.hasArray()) {
+            written = encode(input, limit, destination.array(), destination.arrayOffset() + destination.position());
+        } else {
+            byte[] bytes = new byte[Math.min(limit, maxEncodedLength(input))];
+            written = encode(input, limit, bytes, 0);
+            destination.put(bytes, 0, written);
+            return written;
         }
+        destination.position(destination.position() + written);
+        return written;
+    }
 
-        // If already matching, return the original array
-        return input;
+    /**
+     * Encodes a string into exactly fixedBytes bytes of the buffer, truncated or padded with spaces
+     */
+    public static int encodeFixed(String input, int fixedBytes, ByteBuffer destination) {
+        int written = encode(input, fixedBytes, destination);
+        for (int i = written; i < fixedBytes; i++) {
+            destination.put((byte) ' ');
+        }
+        return fixedBytes;
     }
 
+    /**
+     * Encodes a key to the fixed key size
+     */
+    public static byte[] encodeKey(String key) {
+        byte[] bytes = new byte[FIXED_KEY_BYTES];
+        encodeFixed(key, FIXED_KEY_BYTES, bytes, 0);
+        return bytes;
+    }
 
-    private static String truncateStringToBytes(String input, int fixedByteLength) {
-        StringBuilder trimmedString = new StringBuilder();
-        int byteCount = 0;
+    /**
+     * Encodes a value, truncated to the maximum value size
+     */
+    public static byte[] encodeValue(String value) {
+        byte[] bytes = new byte[Math.min(MAX_VALUE_BYTES, maxEncodedLength(value))];
+        int written = encode(value, MAX_VALUE_BYTES, bytes, 0);
+        return written == bytes.length ? bytes : Arrays.copyOf(bytes, written);
+    }
 
-        for (char c : input.toCharArray()) {
-            byte[] charBytes = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
-            if (byteCount + charBytes.length > fixedByteLength) {
-                break; // Stop if adding this character would exceed the limit
+    private static boolean isAscii(String input) {
+        for (int i = 0, length = input.length(); i < length; i++) {
+            if (input.charAt(i) >= 0x80) {
+                return false;
             }
-            trimmedString.append(c);
-            byteCount += charBytes.length; // Increase the byte count
         }
+        return true;
+    }
 
-        return trimmedString.toString(); // Return the trimmed string
+    /**
+     * Number of chars of the longest prefix encoding to at most maxBytes, without splitting a character
+     */
+    private static int truncatedLength(String input, int maxBytes) {
+        int length = input.length();
+        int bytes = 0;
+        int i = 0;
+        while (i < length) {
+            char c = input.charAt(i);
+            int chars = 1;
+            int size;
+            if (c < 0x80) {
+                size = 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(input.charAt(i + 1))) {
+                size = 4;
+                chars = 2;
+            } else if (Character.isSurrogate(c)) {
+                size = 1;
+            } else {
+                size = utf8Size(c);
+            }
+
+            if (bytes + size > maxBytes) {
+                break;
+            }
+            bytes += size;
+            i += chars;
+        }
+        return i;
     }
 
-    private static String padStringToBytes(String input, int fixedByteLength) {
-        StringBuilder paddedString = new StringBuilder(input);
-        int byteCount = input.getBytes(StandardCharsets.UTF_8).length;
+    private static int maxEncodedLength(String input) {
+        // At most 3 bytes per char, surrogate pairs take 4 bytes for 2 chars
+        return (int) Math.min(Integer.MAX_VALUE, 3L * input.length());
+    }
 
-        // Pad with spaces or any desired character until the byte length matches
-        while (byteCount < fixedByteLength) {
-            paddedString.append(" "); // Using space as a padding character
-            byteCount = paddedString.toString().getBytes(StandardCharsets.UTF_8).length;
+    private static int utf8Size(int codePoint) {
+        if (codePoint < 0x80) {
+            return 1;
+        } else if (codePoint < 0x800) {
+            return 2;
+        } else if (codePoint < 0x10000) {
+            return 3;
         }
+        return 4;
+    }
 
-        return paddedString.toString(); // Return the padded string
+    private static int putUtf8(int codePoint, int size, byte[] destination, int position) {
+        switch (size) {
+            case 1:
+                destination[position++] = (byte) codePoint;
+                break;
+            case 2:
+                destination[position++] = (byte) (0xC0 | (codePoint >> 6));
+                destination[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                break;
+            case 3:
+                destination[position++] = (byte) (0xE0 | (codePoint >> 12));
+                destination[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                destination[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                break;
+            default:
+                destination[position++] = (byte) (0xF0 | (codePoint >> 18));
+                destination[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                destination[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                destination[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        return position;
     }
 
 }
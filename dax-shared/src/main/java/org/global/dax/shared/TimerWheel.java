@@ -0,0 +1,159 @@
+package org.global.dax.shared;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel holding a large number of timeouts at O(1) cost per schedule and cancel.
+ *
+ * Time is split in ticks and each timeout goes in the bucket of the tick it expires in, modulo the number
+ * of buckets. Advancing the wheel only visits the buckets of the ticks elapsed since the last call, so the
+ * cost does not depend on the number of timeouts. Timeouts more than one turn of the wheel away stay in
+ * their bucket until the turn they expire in. Timeouts fire up to one tick late, never early.
+ *
+ * Not thread safe, callers serialize access (usually by only touching the wheel from their event loop).
+ */
+public final class TimerWheel<T> {
+
+    private final long tickMillis;
+    private final Timeout<T>[] buckets;
+    private final int mask;
+
+    private final ArrayDeque<T> expired = new ArrayDeque<>();
+
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis precision of the timeouts
+     * @param bucketCount number of buckets, rounded up to a power of two
+     * @param nowMillis current time, in the same clock as every later call
+     */
+    public TimerWheel(long tickMillis, int bucketCount, long nowMillis) {
+        if (tickMillis < 1 || bucketCount < 1) {
+            throw new IllegalArgumentException("Tick and bucket count must be positive");
+        }
+        int capacity = Integer.highestOneBit(Math.max(1, bucketCount - 1)) << 1;
+        this.tickMillis = tickMillis;
+        @SuppressWarnings("unchecked")
+        Timeout<T>[] buckets = (Timeout<T>[]) new Timeout<?>[capacity];
+        this.buckets = buckets;
+        this.mask = capacity - 1;
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Schedules an item to expire at the deadline, returning the handle to cancel it
+     */
+    public Timeout<T> schedule(T item, long deadlineMillis) {
+        // Never behind the current tick, the bucket would only be visited a full turn later
+        long tick = Math.max(deadlineMillis / tickMillis, currentTick + 1);
+        Timeout<T> timeout = new Timeout<>(this, item, deadlineMillis, (int) (tick & mask));
+
+        Timeout<T> head = buckets[timeout.bucket];
+        timeout.next = head;
+        if (head != null) {
+            head.previous = timeout;
+        }
+        buckets[timeout.bucket] = timeout;
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Expires the timeouts whose deadline has passed, in no particular order, returning how many expired.
+     * The action may schedule or cancel timeouts, though cancelling one expiring in the same call no longer stops it.
+     */
+    public int advance(long nowMillis, Consumer<T> action) {
+        long nowTick = nowMillis / tickMillis;
+        // After a long pause every bucket is visited once, not once per elapsed tick
+        long firstTick = Math.max(currentTick, nowTick - mask);
+
+        // Unlinked first and fired after, the actions are free to change the buckets
+        for (long tick = firstTick; tick <= nowTick; tick++) {
+            Timeout<T> timeout = buckets[(int) (tick & mask)];
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                if (timeout.deadlineMillis <= nowMillis) {
+                    unlink(timeout);
+                    expired.add(timeout.item);
+                }
+                timeout = next;
+            }
+        }
+        currentTick = nowTick;
+
+        int count = expired.size();
+        T item;
+        while ((item = expired.poll()) != null) {
+            action.accept(item);
+        }
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.next = null;
+        timeout.previous = null;
+        timeout.wheel = null;
+        size--;
+    }
+
+    /**
+     * A scheduled item, linked in its bucket
+     */
+    public static final class Timeout<T> {
+
+        private TimerWheel<T> wheel;
+        private final T item;
+        private final long deadlineMillis;
+        private final int bucket;
+
+        private Timeout<T> next;
+        private Timeout<T> previous;
+
+        private Timeout(TimerWheel<T> wheel, T item, long deadlineMillis, int bucket) {
+            this.wheel = wheel;
+            this.item = item;
+            this.deadlineMillis = deadlineMillis;
+            this.bucket = bucket;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+
+        /**
+         * Whether the timeout is still in the wheel, neither expired nor cancelled
+         */
+        public boolean isPending() {
+            return wheel != null;
+        }
+
+        /**
+         * Removes the timeout from the wheel, returning false if it already expired or was cancelled
+         */
+        public boolean cancel() {
+            if (wheel == null) {
+                return false;
+            }
+            wheel.unlink(this);
+            return true;
+        }
+    }
+}
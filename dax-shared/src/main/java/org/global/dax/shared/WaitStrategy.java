@@ -0,0 +1,43 @@
+package org.global.dax.shared;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread polling shared memory waits while there is nothing to do
+ */
+public enum WaitStrategy {
+
+    /**
+     * Spins on the CPU, the lowest latency at the cost of a core kept busy
+     */
+    BUSY_SPIN {
+        @Override
+        public void idle(int idleCount) {
+            Thread.onSpinWait();
+        }
+    },
+
+    /**
+     * Spins for a short while, then parks for a few microseconds between polls, leaving the core to others
+     */
+    PARK {
+        @Override
+        public void idle(int idleCount) {
+            if (idleCount < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    };
+
+    private static final int SPIN_TRIES = 1000;
+    private static final long PARK_NANOS = 20_000; // 20us
+
+    /**
+     * Waits before the next poll
+     *
+     * @param idleCount number of polls in a row that found nothing to do
+     */
+    public abstract void idle(int idleCount);
+}
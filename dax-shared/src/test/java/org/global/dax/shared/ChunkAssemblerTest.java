@@ -0,0 +1,53 @@
+package org.global.dax.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChunkAssemblerTest {
+
+    @Test
+    void reassemblesAValueFromItsChunks() throws IOException {
+        byte[] value = new byte[3 * CacheProtocol.CHUNK_SIZE + 5];
+        new Random(42).nextBytes(value);
+        ChunkAssembler assembler = new ChunkAssembler();
+
+        CacheProtocol.Message message = null;
+        for (int offset = 0; offset < value.length; offset += CacheProtocol.CHUNK_SIZE) {
+            int length = Math.min(CacheProtocol.CHUNK_SIZE, value.length - offset);
+            assertThat(message).isNull();
+            message = assembler.accept(chunk("KEY1", value.length, offset, Arrays.copyOfRange(value, offset, offset + length)));
+        }
+
+        assertThat(message.getOperation()).isEqualTo(CacheProtocol.OP_ADD);
+        assertThat(message.getValue()).isEqualTo(value);
+        assertThat(assembler.size()).isZero();
+    }
+
+    @Test
+    void boundsTheBytesHeldByValuesInProgressRatherThanTheLengthsTheyClaim() throws IOException {
+        ChunkAssembler assembler = new ChunkAssembler(2 * CacheProtocol.CHUNK_SIZE);
+
+        // Tiny first chunks of the largest values, nothing is allocated for what they have not sent
+        for (int i = 0; i < ChunkAssembler.MAX_PARTIAL_VALUES; i++) {
+            assembler.accept(chunk("KEY" + i, CacheProtocol.MAX_VALUE_SIZE, 0, new byte[16]));
+        }
+        assembler.accept(chunk("KEY0", CacheProtocol.MAX_VALUE_SIZE, 16, new byte[CacheProtocol.CHUNK_SIZE]));
+
+        assertThatThrownBy(() -> assembler.accept(chunk("KEY0", CacheProtocol.MAX_VALUE_SIZE, 16 + CacheProtocol.CHUNK_SIZE, new byte[CacheProtocol.CHUNK_SIZE])))
+                .isInstanceOf(IOException.class);
+    }
+
+    private static CacheProtocol.Message chunk(String key, int totalLength, int offset, byte[] data) {
+        ByteBuffer value = ByteBuffer.allocate(CacheProtocol.CHUNK_HEADER_SIZE + data.length);
+        value.put(CacheProtocol.OP_ADD).putInt(totalLength).putInt(offset).put(data);
+        return new CacheProtocol.Message(CacheProtocol.OP_CHUNK, key.getBytes(StandardCharsets.UTF_8), value.array());
+    }
+}
@@ -0,0 +1,113 @@
+package org.global.dax.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FrameViewTest {
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private final FrameView frame = new FrameView();
+
+    @Test
+    void readsConsecutiveFramesInPlace() throws IOException {
+        ReadableByteChannel channel = channelOf(
+                CacheProtocol.createGetMessage("user:1"),
+                CacheProtocol.createAddMessage("user:2", "Alice"));
+
+        assertThat(CacheProtocol.readFrame(channel, buffer, frame)).isTrue();
+        assertThat(frame.getOperation()).isEqualTo(CacheProtocol.OP_GET);
+        assertThat(frame.getKey().toString()).isEqualTo("user:1");
+        assertThat(frame.getValueLength()).isZero();
+        frame.release();
+
+        // Already in the buffer, no read needed
+        assertThat(CacheProtocol.readFrame(channel, buffer, frame)).isTrue();
+        CacheProtocol.Message message = frame.toMessage();
+        assertThat(message.getOperation()).isEqualTo(CacheProtocol.OP_ADD);
+        assertThat(message.getKeyAsString()).isEqualTo("user:2");
+        assertThat(message.getValueAsString()).isEqualTo("Alice");
+        frame.release();
+
+        assertThat(buffer.position()).isZero();
+    }
+
+    @Test
+    void waitsForTheRestOfAPartialFrame() throws IOException {
+        ByteBuffer encoded = CacheProtocol.encode(CacheProtocol.createAddMessage("key", "value"));
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        pipe.sink().write(ByteBuffer.wrap(bytes, 0, bytes.length - 2));
+        assertThat(CacheProtocol.readFrame(pipe.source(), buffer, frame)).isFalse();
+
+        pipe.sink().write(ByteBuffer.wrap(bytes, bytes.length - 2, 2));
+        assertThat(CacheProtocol.readFrame(pipe.source(), buffer, frame)).isTrue();
+        assertThat(frame.toMessage().getValueAsString()).isEqualTo("value");
+    }
+
+    @Test
+    void keyViewLooksUpMapsKeyedByStrings() throws IOException {
+        Map<String, Integer> map = new HashMap<>();
+        map.put("user:1", 1);
+        map.put("caf\u00e9", 2);
+
+        ReadableByteChannel channel = channelOf(
+                CacheProtocol.createGetMessage("user:1"),
+                CacheProtocol.createGetMessage("caf\u00e9"),
+                CacheProtocol.createGetMessage("user:3"));
+
+        CacheProtocol.readFrame(channel, buffer, frame);
+        assertThat(frame.getKey().hashCode()).isEqualTo("user:1".hashCode());
+        assertThat(map.get(frame.getKey())).isEqualTo(1);
+        frame.release();
+
+        // Not ASCII, decoded to compare
+        CacheProtocol.readFrame(channel, buffer, frame);
+        assertThat(frame.getKey().hashCode()).isEqualTo("caf\u00e9".hashCode());
+        assertThat(map.get(frame.getKey())).isEqualTo(2);
+        frame.release();
+
+        CacheProtocol.readFrame(channel, buffer, frame);
+        assertThat(map.get(frame.getKey())).isNull();
+        assertThat(frame.getKey().equalsIgnoreCase("USER:3")).isTrue();
+    }
+
+    @Test
+    void encodesResponsesForKeysReadInPlace() throws IOException {
+        CacheProtocol.readFrame(channelOf(CacheProtocol.createGetMessage("user:1")), buffer, frame);
+
+        ByteBuffer response = ByteBuffer.allocate(64);
+        assertThat(CacheProtocol.encodeResponse(response, CacheProtocol.STATUS_OK, frame.getKey(),
+                "Alice".getBytes(StandardCharsets.UTF_8))).isTrue();
+        assertThat(CacheProtocol.encodeResponse(ByteBuffer.allocate(16), CacheProtocol.STATUS_OK, frame.getKey(),
+                "Alice".getBytes(StandardCharsets.UTF_8))).isFalse();
+
+        response.flip();
+        CacheProtocol.Message message = CacheProtocol.readMessage(
+                Channels.newChannel(new ByteArrayInputStream(new byte[0])), ByteBuffer.allocate(64).put(response));
+        assertThat(message.getStatus()).isEqualTo(CacheProtocol.STATUS_OK);
+        assertThat(message.getKeyAsString()).isEqualTo("user:1");
+        assertThat(message.getValueAsString()).isEqualTo("Alice");
+    }
+
+    private static ReadableByteChannel channelOf(CacheProtocol.Message... messages) {
+        ByteBuffer all = ByteBuffer.allocate(1024);
+        for (CacheProtocol.Message message : messages) {
+            all.put(CacheProtocol.encode(message));
+        }
+        return Channels.newChannel(new ByteArrayInputStream(all.array(), 0, all.position()));
+    }
+}
@@ -4,6 +4,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @ExtendWith(MockitoExtension.class)
@@ -22,4 +27,61 @@ class StringUtilTest {
         assertEquals("ABC ", StringUtil.limitKey("ABC"));
     }
 
+    @Test
+    void limitNeverSplitsACharacter() {
+        // e acute takes 2 bytes, the euro sign 3 bytes
+        assertEquals("A\u00e9", StringUtil.limit("A\u00e9\u20ac", 4));
+        assertEquals("A\u00e9\u20ac", StringUtil.limit("A\u00e9\u20ac", 6));
+    }
+
+    @Test
+    void fixPadsATruncatedKeyToItsFixedLength() {
+        assertEquals("AB  ", StringUtil.limitKey("AB\u20ac"));
+        assertEquals("\u00e9\u00e9", StringUtil.limitKey("\u00e9\u00e9\u00e9"));
+    }
+
+    @Test
+    void encodeWritesIntoTheDestinationAtTheOffset() {
+        byte[] destination = new byte[8];
+
+        int written = StringUtil.encode("AB\u00e9CD", 4, destination, 2);
+
+        assertEquals(4, written);
+        assertArrayEquals("AB\u00e9".getBytes(StandardCharsets.UTF_8), Arrays.copyOfRange(destination, 2, 6));
+    }
+
+    @Test
+    void encodeMatchesStringEncoding() {
+        String input = "key-\u00e9\u20ac\uD83D\uDE00-end";
+        byte[] destination = new byte[64];
+
+        int written = StringUtil.encode(input, destination.length, destination, 0);
+
+        assertArrayEquals(input.getBytes(StandardCharsets.UTF_8), Arrays.copyOf(destination, written));
+    }
+
+    @Test
+    void encodeFixedIntoBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+
+        StringUtil.encodeFixed("AB", StringUtil.FIXED_KEY_BYTES, buffer);
+        StringUtil.encode("value", 16, buffer);
+
+        assertEquals("AB  value", new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8));
+        assertArrayEquals("ABCD".getBytes(StandardCharsets.UTF_8), StringUtil.encodeKey("ABCDEFG"));
+    }
+
+    @Test
+    void encodedKeyAndValueBuildTheSameFrameAsLimitedStrings() {
+        String key = "k\u00e9y!";
+        String value = "\u00e9t\u00e9".repeat(1000);
+
+        ByteBuffer fromBytes = CacheProtocol.encode(
+                CacheProtocol.createAddMessage(StringUtil.encodeKey(key), StringUtil.encodeValue(value)));
+        ByteBuffer fromStrings = CacheProtocol.encode(
+                CacheProtocol.createAddMessage(StringUtil.limitKey(key), StringUtil.limitValue(value)));
+
+        assertEquals(fromStrings, fromBytes);
+    }
+
 }
@@ -0,0 +1,92 @@
+package org.global.dax.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimerWheelTest {
+
+    @Test
+    void expiresTimeoutsOnceTheirDeadlinePassed() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+        List<String> expired = new ArrayList<>();
+        wheel.schedule("A", 25);
+        wheel.schedule("B", 45);
+
+        wheel.advance(24, expired::add);
+        assertThat(expired).isEmpty();
+
+        wheel.advance(30, expired::add);
+        assertThat(expired).containsExactly("A");
+
+        wheel.advance(50, expired::add);
+        assertThat(expired).containsExactly("A", "B");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void keepsTimeoutsMoreThanOneTurnAwayUntilTheirTurn() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+        List<String> expired = new ArrayList<>();
+        // Same bucket as 50, three turns later
+        wheel.schedule("LATE", 290);
+
+        for (long now = 0; now < 290; now += 10) {
+            wheel.advance(now, expired::add);
+        }
+        assertThat(expired).isEmpty();
+
+        wheel.advance(290, expired::add);
+        assertThat(expired).containsExactly("LATE");
+    }
+
+    @Test
+    void expiresEverythingDueAfterALongPause() {
+        TimerWheel<Integer> wheel = new TimerWheel<>(10, 8, 0);
+        List<Integer> expired = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            wheel.schedule(i, i * 10L);
+        }
+
+        wheel.advance(10_000, expired::add);
+
+        assertThat(expired).hasSize(100);
+    }
+
+    @Test
+    void cancelledTimeoutsNeverExpire() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+        List<String> expired = new ArrayList<>();
+        TimerWheel.Timeout<String> timeout = wheel.schedule("A", 20);
+        wheel.schedule("B", 20);
+
+        assertThat(timeout.cancel()).isTrue();
+        assertThat(timeout.cancel()).isFalse();
+        wheel.advance(100, expired::add);
+
+        assertThat(expired).containsExactly("B");
+        assertThat(timeout.isPending()).isFalse();
+    }
+
+    @Test
+    void actionsCanRescheduleAndCancel() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+        List<String> expired = new ArrayList<>();
+        TimerWheel.Timeout<String> other = wheel.schedule("OTHER", 20);
+        wheel.schedule("A", 20);
+
+        wheel.advance(20, key -> {
+            expired.add(key);
+            other.cancel();
+            if (key.equals("A")) {
+                wheel.schedule("A-AGAIN", 40);
+            }
+        });
+        wheel.advance(40, expired::add);
+
+        assertThat(expired).contains("A", "A-AGAIN");
+    }
+}